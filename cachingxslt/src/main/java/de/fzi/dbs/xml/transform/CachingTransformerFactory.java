@@ -4,8 +4,14 @@ import java.io.File;
 import java.lang.String;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.xml.transform.Source;
 import javax.xml.transform.Templates;
@@ -22,20 +28,86 @@ import org.apache.log4j.Logger;
  * This implementation caches templates that were loaded from local files
  * so that consequent calls to local stylesheets require stylesheet reparsing
  * only if stylesheet was changed.
+ * <p/>
+ * The cache is a concurrent map: threads asking for cached templates never
+ * wait, each stylesheet is compiled once by the first thread asking for it.
+ * Stylesheet files are not checked when a transformer is created; a background
+ * thread checks the modification date of the cached stylesheets every
+ * <code>geonetwork.xslt.cache.checkInterval</code> seconds (system property,
+ * default 5) and drops the changed ones. Set the property to 0 to never check
+ * them (frozen cache, for production): the cache is then only reloaded by
+ * {@link #clearCache()}.
  */
 public class CachingTransformerFactory extends TransformerFactoryImpl
 {
+  /** System property with the seconds between two checks of the stylesheet files, 0 to never check them. */
+  public static final String CHECK_INTERVAL_PROPERTY = "geonetwork.xslt.cache.checkInterval";
+
   /** Map to hold templates cache. */
-  private static Map<String, TemplatesCacheEntry> templatesCache = new HashMap<String, TemplatesCacheEntry>();
+  private static final ConcurrentMap<String, TemplatesCacheEntry> templatesCache =
+    new ConcurrentHashMap<String, TemplatesCacheEntry>();
 
   /** Factory logger. */
   protected static final Logger logger =
     Logger.getLogger(CachingTransformerFactory.class);
 
-  /** Active readers count. */
-  static int activeReaders = 0;
-  /** Active writers count. */
-  static int activeWriters = 0;
+  /** Transformers created from cached templates. */
+  private static final AtomicLong hits = new AtomicLong();
+  /** Stylesheets compiled. */
+  private static final AtomicLong compilations = new AtomicLong();
+  /** Time spent compiling stylesheets, in ms. */
+  private static final AtomicLong compilationTime = new AtomicLong();
+  /** Checks the cached stylesheets periodically, null if the cache is frozen. */
+  private static final ScheduledExecutorService checker;
+
+  static
+  {
+    long checkInterval = 5;
+    try
+    {
+      checkInterval = Long.parseLong(System.getProperty(CHECK_INTERVAL_PROPERTY, "5"));
+    }
+    catch (NumberFormatException nfe)
+    {
+      logger.warn("Invalid " + CHECK_INTERVAL_PROPERTY + ", using " + checkInterval + "s");
+    }
+    if (checkInterval > 0)
+    {
+      checker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+      {
+        public Thread newThread(Runnable runnable)
+        {
+          Thread thread = new Thread(runnable, "xslt-cache-check");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+      checker.scheduleWithFixedDelay(new Runnable()
+      {
+        public void run()
+        {
+          removeModified();
+        }
+      }, checkInterval, checkInterval, TimeUnit.SECONDS);
+    }
+    else
+    {
+      checker = null;
+      logger.info("Stylesheet cache is frozen, stylesheet changes are ignored");
+    }
+  }
+
+  /**
+   * Stops checking the cached stylesheets, called when the application is
+   * stopped so that the check thread does not keep the webapp classes loaded.
+   */
+  public static void shutdown()
+  {
+    if (checker != null)
+    {
+      checker.shutdownNow();
+    }
+  }
 
 	/**
 	 * Clear the stylesheet cache. This is not part of the 
@@ -44,11 +116,41 @@ public class CachingTransformerFactory extends TransformerFactoryImpl
 	 *
 	 */
 	public void clearCache() {
-    beforeWrite();
     templatesCache.clear();
-    afterWrite();
 	}
 
+  /**
+   * @return the number of transformers created from cached templates
+   */
+  public static long getHits()
+  {
+    return hits.get();
+  }
+
+  /**
+   * @return the number of stylesheets compiled
+   */
+  public static long getCompilations()
+  {
+    return compilations.get();
+  }
+
+  /**
+   * @return the time spent compiling stylesheets, in ms
+   */
+  public static long getCompilationTime()
+  {
+    return compilationTime.get();
+  }
+
+  /**
+   * @return the number of cached stylesheets
+   */
+  public static int getSize()
+  {
+    return templatesCache.size();
+  }
+
   /**
    * Process the source into a Transformer object. If source is a StreamSource
    * with <code>systemID</code> pointing to a file, transformer is produced
@@ -99,117 +201,37 @@ public class CachingTransformerFactory extends TransformerFactoryImpl
   protected Transformer newTransformer(final File file)
     throws TransformerConfigurationException
   {
+    final String absolutePath = file.getAbsolutePath();
     // Search the cache for the templates entry
-    TemplatesCacheEntry templatesCacheEntry = read(file.getAbsolutePath());
+    TemplatesCacheEntry templatesCacheEntry = templatesCache.get(absolutePath);
 
-    // If entry found
-    if (templatesCacheEntry != null)
-    {
-      // Check timestamp of modification
-      if (templatesCacheEntry.lastModified
-        < templatesCacheEntry.templatesFile.lastModified())
-        templatesCacheEntry = null;
-    }
-    // If no templatesEntry is found or this entry was obsolete
+    // If no templatesEntry is found or this entry was dropped by the check
+    // of the stylesheet files
     if (templatesCacheEntry == null)
     {
-//      System.out.println("Loading transformation [" + file.getAbsolutePath() + "].");
-      // If this file does not exists, throw the exception
-      if (!file.exists())
-      {
-        throw new TransformerConfigurationException(
-          "Requested transformation ["
-          + file.getAbsolutePath()
-          + "] does not exist.");
-      }
-
-      // Create new cache entry
-      templatesCacheEntry =
-        new TemplatesCacheEntry(newTemplates(new StreamSource(file)), file);
-
-      // Save this entry to the cache
-      write(file.getAbsolutePath(), templatesCacheEntry);
+      final TemplatesCacheEntry newEntry = new TemplatesCacheEntry(new File(absolutePath));
+      templatesCacheEntry = templatesCache.putIfAbsent(absolutePath, newEntry);
+      if (templatesCacheEntry == null)
+        templatesCacheEntry = newEntry;
     }
-//    else
-//    {
-//      System.out.println("Using cached transformation [" + file.getAbsolutePath() + "].");
-//    }
-    return templatesCacheEntry.templates.newTransformer();
-  }
-
-  /**
-   * Returns a templates cache entry for the specified absolute path.
-   * @param absolutePath absolute path of the entry.
-   * @return Templates cache entry for the specified path.
-   */
-  protected TemplatesCacheEntry read(String absolutePath)
-  {
-    beforeRead();
-    final TemplatesCacheEntry templatesCacheEntry = templatesCache.get(absolutePath);
-    afterRead();
-    return templatesCacheEntry;
-  }
-
-  /**
-   * Saves templates cache entry for the specified absolute path.
-   * @param absolutePath absolute path of the entry.
-   * @param templatesCacheEntry templates cache entry to save.
-   */
-  protected void write(String absolutePath, TemplatesCacheEntry templatesCacheEntry)
-  {
-    beforeWrite();
-    templatesCache.put(absolutePath, templatesCacheEntry);
-    afterWrite();
-  }
-
-  /**
-   * Invoked just before reading, waits until reading is allowed.
-   */
-  protected synchronized void beforeRead()
-  {
-    while (activeWriters > 0)
-      try
-      {
-        wait();
-      }
-      catch (InterruptedException iex)
-      {
-      }
-    ++activeReaders;
-  }
-
-  /**
-   * Invoked just after reading.
-   */
-  protected synchronized void afterRead()
-  {
-    --activeReaders;
-    notifyAll();
+    return templatesCacheEntry.getTemplates(this).newTransformer();
   }
 
   /**
-   * Invoked just before writing, waits until writing is allowed.
+   * Drops the cached templates whose stylesheet file was modified since
+   * they were compiled.
    */
-  protected synchronized void beforeWrite()
+  private static void removeModified()
   {
-    while (activeReaders > 0 || activeWriters > 0)
-      try
-      {
-        wait();
-      }
-      catch (InterruptedException iex)
+    for (Map.Entry<String, TemplatesCacheEntry> entry : templatesCache.entrySet())
+    {
+      if (entry.getValue().isModified())
       {
+        if (logger.isDebugEnabled())
+          logger.debug("Stylesheet [" + entry.getKey() + "] was modified, dropping it from the cache.");
+        templatesCache.remove(entry.getKey(), entry.getValue());
       }
-    ++activeWriters;
-  }
-
-  /**
-   * Invoked just after writing.
-   */
-  protected synchronized void afterWrite()
-  {
-    --activeWriters;
-    notifyAll();
+    }
   }
 
   /**
@@ -220,22 +242,67 @@ public class CachingTransformerFactory extends TransformerFactoryImpl
     /** When was the cached entry last modified. */
     private long lastModified;
 
-    /** Cached templates object. */
-    private Templates templates;
+    /** Cached templates object, null until compiled. */
+    private volatile Templates templates;
 
     /** Templates file object. */
-    private File templatesFile;
+    private final File templatesFile;
 
     /**
      * Constructs a new cache entry.
-     * @param templates templates to cache.
-     * @param templatesFile file, from which this transformer was loaded.
+     * @param templatesFile file, from which this transformer is loaded.
      */
-    private TemplatesCacheEntry(final Templates templates, final File templatesFile)
+    private TemplatesCacheEntry(final File templatesFile)
     {
-      this.templates = templates;
       this.templatesFile = templatesFile;
-      this.lastModified = templatesFile.lastModified();
+    }
+
+    /**
+     * Returns the templates, compiling them if this is the first call (the
+     * other threads asking for them wait for the compilation).
+     * @param factory factory compiling the stylesheet.
+     */
+    private Templates getTemplates(final TransformerFactoryImpl factory)
+      throws TransformerConfigurationException
+    {
+      Templates result = templates;
+      if (result != null)
+      {
+        hits.incrementAndGet();
+        return result;
+      }
+      synchronized (this)
+      {
+        if (templates == null)
+        {
+          // If this file does not exists, throw the exception
+          if (!templatesFile.exists())
+          {
+            throw new TransformerConfigurationException(
+              "Requested transformation ["
+              + templatesFile.getAbsolutePath()
+              + "] does not exist.");
+          }
+          long start = System.currentTimeMillis();
+          lastModified = templatesFile.lastModified();
+          templates = factory.newTemplates(new StreamSource(templatesFile));
+          compilations.incrementAndGet();
+          compilationTime.addAndGet(System.currentTimeMillis() - start);
+        }
+        else
+        {
+          hits.incrementAndGet();
+        }
+        return templates;
+      }
+    }
+
+    /**
+     * @return true if the stylesheet file was modified since it was compiled.
+     */
+    private boolean isModified()
+    {
+      return templates != null && lastModified != templatesFile.lastModified();
     }
   }
 }
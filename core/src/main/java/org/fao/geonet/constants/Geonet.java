@@ -498,6 +498,13 @@ public final class Geonet {
 		public static final String STAT_LUCENE_TERMS_EXCLUDE = "statLuceneTermsExclude";
 		public static final String STAT_LOG_ASYNCH = "statLogAsynch";
 		public static final String MAX_WRITES_IN_TRANSACTION = "maxWritesInTransaction";
+		public static final String INDEXING_FETCH_THREADS = "indexingFetchThreads";
+		public static final String INDEXING_QUEUE_SIZE = "indexingQueueSize";
+		public static final String QUERY_RESULT_CACHE_SIZE = "queryResultCacheSize";
+		public static final String CSW_RECORD_CACHE_SIZE = "cswRecordCacheSize";
+		public static final String CSW_RECORD_CACHE_DISK_SIZE = "cswRecordCacheDiskSize";
+		public static final String PARSED_METADATA_CACHE_SIZE = "parsedMetadataCacheSize";
+		public static final String BINARY_METADATA_STORE = "binaryMetadataStore";
 		public static final String USE_SUBVERSION  = "useSubversion";
 		public static final String SUBVERSION_PATH = "subversionPath";
 		public static final String STATUS_ACTIONS_CLASS = "statusActionsClass";
@@ -0,0 +1,206 @@
+//=============================================================================
+//===	Copyright (C) 2001-2007 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package org.fao.geonet.kernel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jeeves.resources.dbms.Dbms;
+import jeeves.utils.Log;
+import jeeves.utils.Xml;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.fao.geonet.constants.Geonet;
+import org.jdom.Element;
+
+/**
+ * Metadata records in the {@link CompactXml} form, in files of a directory (one per record), so that the records are
+ * read without parsing their xml text.
+ * <p/>
+ * The xml text of the Metadata table stays the reference: a file also holds the change date, the length and the hash
+ * of the text it was made from and it is only used if they match the record read from the database. Files are written
+ * by the {@link XmlSerializer} when a record is inserted or updated, or when it is read and has no (up to date) file.
+ * {@link #rebuild(Dbms)} writes the files of all the records again.
+ */
+public class BinaryMetadataStore {
+    private static final int MAGIC = 0x474e4d31;
+
+    private final File directory;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param directory where the files are written
+     */
+    public BinaryMetadataStore(File directory) {
+        this.directory = directory;
+        directory.mkdirs();
+    }
+
+    /**
+     * @param id the metadata id
+     * @param changeDate the change date of the record read from the database
+     * @param xml the xml of the record read from the database
+     * @return the metadata or null if it has no file or the file was written from another version of the record
+     */
+    public Element read(String id, String changeDate, String xml) {
+        DataInputStream in;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file(id))));
+        } catch (FileNotFoundException e) {
+            misses.incrementAndGet();
+            return null;
+        }
+        try {
+            if (in.readInt() != MAGIC || !in.readUTF().equals(String.valueOf(changeDate))
+                    || in.readInt() != xml.length() || in.readInt() != xml.hashCode()) {
+                misses.incrementAndGet();
+                return null;
+            }
+            Element metadata = CompactXml.read(in);
+            hits.incrementAndGet();
+            return metadata;
+        } catch (IOException e) {
+            Log.warning(Geonet.DATA_MANAGER, "Can't read binary metadata " + id + ": " + e.getMessage());
+            misses.incrementAndGet();
+            return null;
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Writes the file of a record. Errors are logged, the record will be parsed from its xml.
+     *
+     * @param metadata the metadata parsed from the xml
+     */
+    public void write(String id, String changeDate, String xml, Element metadata) {
+        File file = file(id);
+        File tmp = null;
+        DataOutputStream out = null;
+        try {
+            file.getParentFile().mkdirs();
+            tmp = File.createTempFile(id, ".tmp", file.getParentFile());
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(MAGIC);
+            out.writeUTF(String.valueOf(changeDate));
+            out.writeInt(xml.length());
+            out.writeInt(xml.hashCode());
+            CompactXml.write(metadata, out);
+            out.close();
+            out = null;
+            // a reader sees the previous file or the new one, never a partial one
+            if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file))) {
+                throw new IOException("Can't rename " + tmp + " to " + file);
+            }
+            tmp = null;
+        } catch (IOException e) {
+            Log.warning(Geonet.DATA_MANAGER, "Can't write binary metadata " + id + ": " + e.getMessage());
+        } finally {
+            IOUtils.closeQuietly(out);
+            if (tmp != null) {
+                FileUtils.deleteQuietly(tmp);
+            }
+        }
+    }
+
+    /**
+     * Writes the file of a record from the xml stored in the database. The xml is parsed, so that the file holds the
+     * tree a read of the record would parse, not the tree the xml was serialized from (the serializer indents it).
+     * If the xml can't be parsed the file is deleted.
+     */
+    public void write(String id, String changeDate, String xml) {
+        Element metadata;
+        try {
+            metadata = Xml.loadString(xml, false);
+        } catch (Exception e) {
+            Log.warning(Geonet.DATA_MANAGER, "Can't parse metadata " + id + ": " + e.getMessage());
+            delete(id);
+            return;
+        }
+        write(id, changeDate, xml, metadata);
+    }
+
+    /**
+     * Deletes the file of a record.
+     */
+    public void delete(String id) {
+        FileUtils.deleteQuietly(file(id));
+    }
+
+    /**
+     * Deletes all the files and writes the files of all the records of the Metadata table again.
+     *
+     * @return the number of records written
+     */
+    public int rebuild(Dbms dbms) throws Exception {
+        Log.info(Geonet.DATA_MANAGER, "Rebuilding binary metadata in " + directory);
+        FileUtils.deleteDirectory(directory);
+        directory.mkdirs();
+
+        final int[] count = {0};
+        dbms.selectRows("SELECT id, changeDate, data FROM Metadata", new Dbms.RowHandler() {
+            public boolean handle(Dbms.Row row) throws SQLException {
+                String id = row.getString(1);
+                String xml = row.getString(3);
+                try {
+                    write(id, row.getString(2), xml, Xml.loadString(xml, false));
+                    count[0]++;
+                } catch (Exception e) {
+                    Log.warning(Geonet.DATA_MANAGER, "Can't parse metadata " + id + ": " + e.getMessage());
+                }
+                return true;
+            }
+        });
+        Log.info(Geonet.DATA_MANAGER, "Binary metadata rebuilt: " + count[0] + " records");
+        return count[0];
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Files are spread in sub directories of 1000 ids.
+     */
+    private File file(String id) {
+        String bucket = id.length() > 3 ? id.substring(0, id.length() - 3) : "0";
+        return new File(new File(directory, bucket), id + ".gnb");
+    }
+}
@@ -0,0 +1,302 @@
+//=============================================================================
+//===	Copyright (C) 2001-2007 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package org.fao.geonet.kernel;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jdom.Attribute;
+import org.jdom.CDATA;
+import org.jdom.Comment;
+import org.jdom.Content;
+import org.jdom.Element;
+import org.jdom.EntityRef;
+import org.jdom.JDOMFactory;
+import org.jdom.Namespace;
+import org.jdom.ProcessingInstruction;
+import org.jdom.Text;
+import org.jdom.UncheckedJDOMFactory;
+
+/**
+ * Compact binary form of a JDOM tree, read several times faster than the xml text is parsed: there is no character
+ * level tokenizing, the names, namespaces and attribute values are written once and then referenced by their index,
+ * and the tree is built without the checks done on names and content (they were done when the xml was parsed).
+ * <p/>
+ * The text nodes are kept as they are, so the tree read is the tree written (including the whitespace).
+ */
+public final class CompactXml {
+    private static final byte END = 0;
+    private static final byte ELEMENT = 1;
+    private static final byte TEXT = 2;
+    private static final byte CDATA_SECTION = 3;
+    private static final byte COMMENT = 4;
+    private static final byte PROCESSING_INSTRUCTION = 5;
+    private static final byte ENTITY_REF = 6;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final JDOMFactory FACTORY = new UncheckedJDOMFactory();
+
+    private CompactXml() {
+    }
+
+    /**
+     * Writes an element and its content.
+     */
+    public static void write(Element element, DataOutput out) throws IOException {
+        new Writer(out).writeElement(element);
+    }
+
+    /**
+     * Reads an element written by {@link #write(Element, DataOutput)}.
+     */
+    public static Element read(DataInput in) throws IOException {
+        Reader reader = new Reader(in);
+        if (in.readByte() != ELEMENT) {
+            throw new IOException("Not a compact xml element");
+        }
+        return reader.readElement();
+    }
+
+    private static final class Writer {
+        private final DataOutput out;
+        private final Map<String, Integer> strings = new HashMap<String, Integer>();
+        /** Keyed on prefix and uri (Namespace.equals only compares the uri) */
+        private final Map<String, Integer> namespaces = new HashMap<String, Integer>();
+
+        Writer(DataOutput out) {
+            this.out = out;
+        }
+
+        void writeElement(Element element) throws IOException {
+            out.writeByte(ELEMENT);
+            writeToken(element.getName());
+            writeNamespace(element.getNamespace());
+
+            List<?> declarations = element.getAdditionalNamespaces();
+            writeVarInt(declarations.size());
+            for (Object declaration : declarations) {
+                writeNamespace((Namespace) declaration);
+            }
+
+            List<?> attributes = element.getAttributes();
+            writeVarInt(attributes.size());
+            for (Object object : attributes) {
+                Attribute attribute = (Attribute) object;
+                writeToken(attribute.getName());
+                writeNamespace(attribute.getNamespace());
+                writeToken(attribute.getValue());
+                out.writeByte(attribute.getAttributeType());
+            }
+
+            for (Object content : element.getContent()) {
+                if (content instanceof Element) {
+                    writeElement((Element) content);
+                } else if (content instanceof CDATA) {
+                    out.writeByte(CDATA_SECTION);
+                    writeString(((Text) content).getText());
+                } else if (content instanceof Text) {
+                    out.writeByte(TEXT);
+                    writeString(((Text) content).getText());
+                } else if (content instanceof Comment) {
+                    out.writeByte(COMMENT);
+                    writeString(((Comment) content).getText());
+                } else if (content instanceof ProcessingInstruction) {
+                    ProcessingInstruction pi = (ProcessingInstruction) content;
+                    out.writeByte(PROCESSING_INSTRUCTION);
+                    writeToken(pi.getTarget());
+                    writeString(pi.getData());
+                } else if (content instanceof EntityRef) {
+                    EntityRef ref = (EntityRef) content;
+                    out.writeByte(ENTITY_REF);
+                    writeToken(ref.getName());
+                    writeNullableToken(ref.getPublicID());
+                    writeNullableToken(ref.getSystemID());
+                }
+            }
+            out.writeByte(END);
+        }
+
+        /**
+         * Writes 0 and the string the first time it is seen, then its index + 1.
+         */
+        private void writeToken(String token) throws IOException {
+            Integer index = strings.get(token);
+            if (index != null) {
+                writeVarInt(index + 1);
+            } else {
+                strings.put(token, strings.size());
+                writeVarInt(0);
+                writeString(token);
+            }
+        }
+
+        private void writeNullableToken(String token) throws IOException {
+            out.writeBoolean(token != null);
+            if (token != null) {
+                writeToken(token);
+            }
+        }
+
+        private void writeNamespace(Namespace namespace) throws IOException {
+            String key = namespace.getPrefix() + ' ' + namespace.getURI();
+            Integer index = namespaces.get(key);
+            if (index != null) {
+                writeVarInt(index + 1);
+            } else {
+                namespaces.put(key, namespaces.size());
+                writeVarInt(0);
+                writeToken(namespace.getPrefix());
+                writeToken(namespace.getURI());
+            }
+        }
+
+        private void writeString(String string) throws IOException {
+            byte[] bytes = string.getBytes(UTF8);
+            writeVarInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private void writeVarInt(int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                out.writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte(value);
+        }
+    }
+
+    private static final class Reader {
+        private final DataInput in;
+        private final List<String> strings = new ArrayList<String>();
+        private final List<Namespace> namespaces = new ArrayList<Namespace>();
+        private byte[] buffer = new byte[256];
+
+        Reader(DataInput in) {
+            this.in = in;
+        }
+
+        Element readElement() throws IOException {
+            String name = readToken();
+            Element element = FACTORY.element(name, readNamespace());
+
+            int declarations = readVarInt();
+            for (int i = 0; i < declarations; i++) {
+                FACTORY.addNamespaceDeclaration(element, readNamespace());
+            }
+
+            int attributes = readVarInt();
+            for (int i = 0; i < attributes; i++) {
+                String attributeName = readToken();
+                Namespace namespace = readNamespace();
+                String value = readToken();
+                int type = in.readByte();
+                FACTORY.setAttribute(element, FACTORY.attribute(attributeName, value, type, namespace));
+            }
+
+            byte type;
+            while ((type = in.readByte()) != END) {
+                Content content;
+                switch (type) {
+                    case ELEMENT:
+                        content = readElement();
+                        break;
+                    case TEXT:
+                        content = FACTORY.text(readString());
+                        break;
+                    case CDATA_SECTION:
+                        content = FACTORY.cdata(readString());
+                        break;
+                    case COMMENT:
+                        content = FACTORY.comment(readString());
+                        break;
+                    case PROCESSING_INSTRUCTION:
+                        String target = readToken();
+                        content = FACTORY.processingInstruction(target, readString());
+                        break;
+                    case ENTITY_REF:
+                        String refName = readToken();
+                        String publicId = readNullableToken();
+                        content = FACTORY.entityRef(refName, publicId, readNullableToken());
+                        break;
+                    default:
+                        throw new IOException("Unknown compact xml node type " + type);
+                }
+                FACTORY.addContent(element, content);
+            }
+            return element;
+        }
+
+        private String readToken() throws IOException {
+            int index = readVarInt();
+            if (index > 0) {
+                return strings.get(index - 1);
+            }
+            String token = readString();
+            strings.add(token);
+            return token;
+        }
+
+        private String readNullableToken() throws IOException {
+            return in.readBoolean() ? readToken() : null;
+        }
+
+        private Namespace readNamespace() throws IOException {
+            int index = readVarInt();
+            if (index > 0) {
+                return namespaces.get(index - 1);
+            }
+            String prefix = readToken();
+            Namespace namespace = Namespace.getNamespace(prefix, readToken());
+            namespaces.add(namespace);
+            return namespace;
+        }
+
+        private String readString() throws IOException {
+            int length = readVarInt();
+            if (buffer.length < length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            in.readFully(buffer, 0, length);
+            return new String(buffer, 0, length, UTF8);
+        }
+
+        private int readVarInt() throws IOException {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = in.readByte();
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+}
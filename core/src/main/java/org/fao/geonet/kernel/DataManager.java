@@ -28,6 +28,7 @@
 package org.fao.geonet.kernel;
 
 import java.io.File;
+import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -42,11 +43,13 @@ import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.Vector;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
+import javax.xml.transform.Source;
 
 import jeeves.config.springutil.JeevesApplicationContext;
 import jeeves.constants.Jeeves;
@@ -59,7 +62,6 @@ import jeeves.server.UserSession;
 import jeeves.server.context.ServiceContext;
 import jeeves.utils.Log;
 import jeeves.utils.SerialFactory;
-import jeeves.utils.Util;
 import jeeves.utils.Xml;
 import jeeves.utils.Xml.ErrorHandler;
 import jeeves.xlink.Processor;
@@ -75,6 +77,7 @@ import org.fao.geonet.exceptions.NoSchemaMatchesException;
 import org.fao.geonet.exceptions.SchemaMatchConflictException;
 import org.fao.geonet.exceptions.SchematronValidationErrorEx;
 import org.fao.geonet.kernel.schema.MetadataSchema;
+import org.fao.geonet.kernel.search.IndexedChangeDates;
 import org.fao.geonet.kernel.search.SearchManager;
 import org.fao.geonet.kernel.search.spatial.Pair;
 import org.fao.geonet.kernel.setting.SettingManager;
@@ -105,6 +108,10 @@ public class DataManager {
     //--------------------------------------------------------------------------
 
     private static final String MD_ON_HARV = "(SELECT id FROM Metadata WHERE harvestUuid=?)";
+    /**
+     * Maximum number of metadata ids in the IN clause of the statements of a batch delete.
+     */
+    private static final int BATCH_DELETE_SIZE = 500;
     /**
      *
      * @return
@@ -130,6 +137,8 @@ public class DataManager {
         this.dataDir = parameterObject.dataDir;
         this.thesaurusDir = parameterObject.thesaurusDir;
         this.appPath = parameterObject.appPath;
+        this.indexingFetchThreads = parameterObject.indexingFetchThreads;
+        this.indexingQueueSize = parameterObject.indexingQueueSize;
 
         stylePath = parameterObject.context.getAppPath() + FS + Geonet.Path.STYLESHEETS + FS;
 
@@ -156,55 +165,73 @@ public class DataManager {
     public synchronized void init(ServiceContext context, Dbms dbms, Boolean force) throws Exception {
 
 
-        // get all metadata from DB
-        Element result = dbms.select("SELECT id, changeDate FROM Metadata ORDER BY id ASC");
-
-        if(Log.isDebugEnabled(Geonet.DATA_MANAGER))
-            Log.debug(Geonet.DATA_MANAGER, "DB CONTENT:\n'"+ Xml.getString(result) +"'");
-
-        // get lastchangedate of all metadata in index
-        Map<String,String> docs = searchMan.getDocsChangeDate();
-
         // set up results HashMap for post processing of records to be indexed
-        ArrayList<String> toIndex = new ArrayList<String>();
+        final ArrayList<String> toIndex = new ArrayList<String>();
+        final ArrayList<String> toDelete = new ArrayList<String>();
+        final boolean forceIndex = force;
 
         if (Log.isDebugEnabled(Geonet.DATA_MANAGER))
             Log.debug(Geonet.DATA_MANAGER, "INDEX CONTENT:");
 
-        // index all metadata in DBMS if needed
-        for(int i = 0; i < result.getContentSize(); i++) {
-            // get metadata
-            Element record = (Element) result.getContent(i);
-            String  id     = record.getChildText("id");
+        // walk the metadata of the DBMS and of the index side by side in id
+        // order (merge join), neither is loaded in memory
+        final IndexedChangeDates docs = searchMan.getDocsChangeDate();
+        try {
+            final boolean[] hasDoc = { docs.next() };
 
-            if (Log.isDebugEnabled(Geonet.DATA_MANAGER))
-                Log.debug(Geonet.DATA_MANAGER, "- record ("+ id +")");
+            dbms.selectRows("SELECT id, changeDate FROM Metadata ORDER BY id ASC", new Dbms.RowHandler() {
+                public boolean handle(Dbms.Row record) throws SQLException {
+                    // get metadata
+                    int     id     = record.getInt(1);
 
-            String idxLastChange = docs.get(id);
+                    if (Log.isDebugEnabled(Geonet.DATA_MANAGER))
+                        Log.debug(Geonet.DATA_MANAGER, "- record ("+ id +")");
 
-            // if metadata is not indexed index it
-            if (idxLastChange == null) {
-                Log.debug(Geonet.DATA_MANAGER, "-  will be indexed");
-                toIndex.add(id);
+                    try {
+                        // index records before this one are not in DBMS
+                        while (hasDoc[0] && docs.id() < id) {
+                            toDelete.add(String.valueOf(docs.id()));
+                            hasDoc[0] = docs.next();
+                        }
 
-                // else, if indexed version is not the latest index it
-            } else {
-                docs.remove(id);
+                        // if metadata is not indexed index it
+                        if (!hasDoc[0] || docs.id() > id) {
+                            Log.debug(Geonet.DATA_MANAGER, "-  will be indexed");
+                            toIndex.add(String.valueOf(id));
 
-                String lastChange    = record.getChildText("changedate");
+                            // else, if indexed version is not the latest index it
+                        } else {
+                            String idxLastChange = docs.changeDate();
+                            hasDoc[0] = docs.next();
 
-                if(Log.isDebugEnabled(Geonet.DATA_MANAGER))
-                    Log.debug(Geonet.DATA_MANAGER, "- lastChange: " + lastChange);
-                if(Log.isDebugEnabled(Geonet.DATA_MANAGER))
-                    Log.debug(Geonet.DATA_MANAGER, "- idxLastChange: " + idxLastChange);
+                            String lastChange    = record.getString(2);
 
-                // date in index contains 't', date in DBMS contains 'T'
-                if (force || !idxLastChange.equalsIgnoreCase(lastChange)) {
-                    if(Log.isDebugEnabled(Geonet.DATA_MANAGER))
-                        Log.debug(Geonet.DATA_MANAGER, "-  will be indexed");
-                    toIndex.add(id);
+                            if(Log.isDebugEnabled(Geonet.DATA_MANAGER))
+                                Log.debug(Geonet.DATA_MANAGER, "- lastChange: " + lastChange);
+                            if(Log.isDebugEnabled(Geonet.DATA_MANAGER))
+                                Log.debug(Geonet.DATA_MANAGER, "- idxLastChange: " + idxLastChange);
+
+                            // date in index contains 't', date in DBMS contains 'T'
+                            if (forceIndex || idxLastChange == null || !idxLastChange.equalsIgnoreCase(lastChange)) {
+                                if(Log.isDebugEnabled(Geonet.DATA_MANAGER))
+                                    Log.debug(Geonet.DATA_MANAGER, "-  will be indexed");
+                                toIndex.add(String.valueOf(id));
+                            }
+                        }
+                    } catch (IOException e) {
+                        throw new SQLException("Can't read the index while reading the metadata table", e);
+                    }
+                    return true;
                 }
+            });
+
+            // the remaining index records are not in DBMS
+            while (hasDoc[0]) {
+                toDelete.add(String.valueOf(docs.id()));
+                hasDoc[0] = docs.next();
             }
+        } finally {
+            docs.close();
         }
 
         // if anything to index then schedule it to be done after servlet is
@@ -213,13 +240,13 @@ public class DataManager {
             batchRebuild(context,toIndex);
         }
 
-        if (docs.size() > 0) { // anything left?
+        if (toDelete.size() > 0) { // anything left?
             if(Log.isDebugEnabled(Geonet.DATA_MANAGER))
                 Log.debug(Geonet.DATA_MANAGER, "INDEX HAS RECORDS THAT ARE NOT IN DB:");
         }
 
         // remove from index metadata not in DBMS
-        for ( String id : docs.keySet() )
+        for ( String id : toDelete )
         {
             searchMan.delete("_id", id);
 
@@ -255,32 +282,25 @@ public class DataManager {
     }
 
     /**
-     * TODO javadoc.
+     * Reindexes the records in the background through an {@link IndexingPipeline}.
      *
      * @param context
      * @param ids
      */
     private void batchRebuild(ServiceContext context, List<String> ids) {
+        IndexingPipeline pipeline = new IndexingPipeline(this, context, ids, indexingFetchThreads,
+                ThreadUtils.getNumberOfThreads(), indexingQueueSize);
+        batchIndexingProgress = pipeline.getProgress();
+        pipeline.start();
+    }
 
-        // split reindexing task according to number of processors we can assign
-        int threadCount = ThreadUtils.getNumberOfThreads();
-        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
-
-        int perThread;
-        if (ids.size() < threadCount) perThread = ids.size();
-        else perThread = ids.size() / threadCount;
-        int index = 0;
-
-        while(index < ids.size()) {
-            int start = index;
-            int count = Math.min(perThread,ids.size()-start);
-            // create threads to process this chunk of ids
-            Runnable worker = new IndexMetadataTask(context, ids, start, count);
-            executor.execute(worker);
-            index += count;
-        }
-
-        executor.shutdown();
+    /**
+     * Progress of the last batch reindexing (at startup, after a rebuild of the index or of the records with XLinks).
+     *
+     * @return the progress or null if no batch reindexing was started
+     */
+    public IndexingProgress getBatchIndexingProgress() {
+        return batchIndexingProgress;
     }
 
     /**
@@ -336,6 +356,10 @@ public class DataManager {
     Set<IndexMetadataTask> indexing = Collections.synchronizedSet(new HashSet<IndexMetadataTask>());
     
     public boolean isIndexing() {
+        IndexingProgress progress = batchIndexingProgress;
+        if (progress != null && progress.isRunning()) {
+            return true;
+        }
         synchronized (indexing) {
             return !indexing.isEmpty();
         }
@@ -348,8 +372,6 @@ public class DataManager {
 
         private final ServiceContext context;
         private final List<String> ids;
-        private int beginIndex;
-        private int count;
         private JeevesUser user;
 
         IndexMetadataTask(ServiceContext context, List<String> ids) {
@@ -359,21 +381,6 @@ public class DataManager {
             
             this.context = context;
             this.ids = ids;
-            this.beginIndex = 0;
-            this.count = ids.size();
-            if(context.getUserSession() != null) {
-                this.user = context.getUserSession().getPrincipal();
-            }
-        }
-        IndexMetadataTask(ServiceContext context, List<String> ids, int beginIndex, int count) {
-            synchronized (indexing) {
-                indexing.add(this);
-            }
-            
-            this.context = context;
-            this.ids = ids;
-            this.beginIndex = beginIndex;
-            this.count = count;
             if(context.getUserSession() != null) {
                 this.user = context.getUserSession().getPrincipal();
             }
@@ -396,21 +403,9 @@ public class DataManager {
                     context.getUserSession().loginAs(user);
                 }
                 try {
-
+                    // servlet up so safe to index all metadata that needs indexing
                     if (ids.size() > 1) {
-                        // servlet up so safe to index all metadata that needs indexing
-                        try {
-                            for(int i=beginIndex; i<beginIndex+count; i++) {
-                                try {
-                                    indexMetadata(dbms, ids.get(i).toString());
-                                }
-                                catch (Exception e) {
-                                    Log.error(Geonet.INDEX_ENGINE, "Error indexing metadata '"+ids.get(i)+"': "+e.getMessage()+"\n"+ Util.getStackTrace(e));
-                                }
-                            }
-                        }
-                        finally {
-                        }
+                        indexMetadata(dbms, ids);
                     }
                     else {
                         indexMetadata(dbms, ids.get(0));
@@ -441,155 +436,233 @@ public class DataManager {
      * @throws Exception
      */
     public void indexMetadata(Dbms dbms, String id) throws Exception {
+        indexMetadataOrLog(dbms, id, null);
+    }
+
+    /**
+     * Indexes a list of metadata records. The database rows needed for the index fields are loaded for blocks of
+     * {@link IndexFieldsPrefetch#BLOCK_SIZE} records at a time instead of record by record.
+     *
+     * @param dbms
+     * @param ids
+     * @throws Exception
+     */
+    public void indexMetadata(Dbms dbms, List<String> ids) throws Exception {
+        for (int start = 0; start < ids.size(); start += IndexFieldsPrefetch.BLOCK_SIZE) {
+            List<String> block = ids.subList(start, Math.min(start + IndexFieldsPrefetch.BLOCK_SIZE, ids.size()));
+            IndexFieldsPrefetch prefetch;
+            try {
+                prefetch = IndexFieldsPrefetch.load(dbms, block);
+            } catch (SQLException e) {
+                Log.error(Geonet.DATA_MANAGER, "Failed to load index fields of " + block.size() + " records, indexing them one by one. Error: " + e.getMessage());
+                prefetch = null;
+            }
+            for (String id : block) {
+                indexMetadataOrLog(dbms, id, prefetch);
+            }
+        }
+    }
+
+    /**
+     * Indexes a metadata record, logging the error if it can't be indexed.
+     */
+    private void indexMetadataOrLog(Dbms dbms, String id, IndexFieldsPrefetch prefetch) {
         try {
-            Vector<Element> moreFields = new Vector<Element>();
-            int id$ = Integer.valueOf(id);
-
-            // get metadata, extracting and indexing any xlinks
-            Element md   = xmlSerializer.selectNoXLinkResolver(dbms, "Metadata", id, true);
-            if (xmlSerializer.resolveXLinks()) {
-                List<Attribute> xlinks = Processor.getXLinks(md);
-                if (xlinks.size() > 0) {
-                    moreFields.add(SearchManager.makeField("_hasxlinks", "1", true, true));
-                    StringBuilder sb = new StringBuilder();
-                    for (Attribute xlink : xlinks) {
-                        sb.append(xlink.getValue()); sb.append(" ");
-                    }
-                    moreFields.add(SearchManager.makeField("_xlink", sb.toString(), true, true));
-                    Processor.detachXLink(md);
-                }
-                else {
-                    moreFields.add(SearchManager.makeField("_hasxlinks", "0", true, true));
+            indexMetadata(dbms, id, prefetch);
+        }
+        catch (Exception x) {
+            Log.error(Geonet.DATA_MANAGER, "The metadata document index with id=" + id + " is corrupt/invalid - ignoring it. Error: " + x.getMessage());
+            x.printStackTrace();
+        }
+    }
+
+    /**
+     * Indexes a metadata record using the rows of the prefetch when available.
+     *
+     * @param dbms
+     * @param id
+     * @param prefetch rows loaded for a block of records or null to query the database for this record only
+     * @throws Exception if the record can't be indexed
+     */
+    void indexMetadata(Dbms dbms, String id, IndexFieldsPrefetch prefetch) throws Exception {
+        Vector<Element> moreFields = new Vector<Element>();
+        int id$ = Integer.valueOf(id);
+
+        // get metadata, extracting and indexing any xlinks
+        Element md   = xmlSerializer.selectNoXLinkResolver(dbms, "Metadata", id, true);
+        if (xmlSerializer.resolveXLinks()) {
+            List<Attribute> xlinks = Processor.getXLinks(md);
+            if (xlinks.size() > 0) {
+                moreFields.add(SearchManager.makeField("_hasxlinks", "1", true, true));
+                StringBuilder sb = new StringBuilder();
+                for (Attribute xlink : xlinks) {
+                    sb.append(xlink.getValue()); sb.append(" ");
                 }
+                moreFields.add(SearchManager.makeField("_xlink", sb.toString(), true, true));
+                Processor.detachXLink(md);
             }
             else {
                 moreFields.add(SearchManager.makeField("_hasxlinks", "0", true, true));
             }
+        }
+        else {
+            moreFields.add(SearchManager.makeField("_hasxlinks", "0", true, true));
+        }
 
-            // get metadata table fields
+        // get metadata table fields
+        Element rec;
+        if (prefetch != null && prefetch.getMetadata(id$) != null) {
+            rec = prefetch.getMetadata(id$);
+        } else {
             String query = "SELECT schemaId, createDate, changeDate, source, isTemplate, root, " +
                     "title, uuid, isHarvested, owner, groupOwner, popularity, rating, displayOrder FROM Metadata WHERE id = ?";
 
-            Element rec = dbms.select(query, id$).getChild("record");
-
-            String  schema     = rec.getChildText("schemaid");
-            String  createDate = rec.getChildText("createdate");
-            String  changeDate = rec.getChildText("changedate");
-            String  source     = rec.getChildText("source");
-            String  isTemplate = rec.getChildText("istemplate");
-            String  root       = rec.getChildText("root");
-            String  title      = rec.getChildText("title");
-            String  uuid       = rec.getChildText("uuid");
-            String  isHarvested= rec.getChildText("isharvested");
-            String  owner      = rec.getChildText("owner");
-            String  groupOwner = rec.getChildText("groupowner");
-            String  popularity = rec.getChildText("popularity");
-            String  rating     = rec.getChildText("rating");
-            String  displayOrder = rec.getChildText("displayorder");
+            rec = dbms.select(query, id$).getChild("record");
+            prefetch = null;
+        }
 
-            if(Log.isDebugEnabled(Geonet.DATA_MANAGER)) {
-                Log.debug(Geonet.DATA_MANAGER, "record schema (" + schema + ")"); //DEBUG
-                Log.debug(Geonet.DATA_MANAGER, "record createDate (" + createDate + ")"); //DEBUG
-            }
+        String  schema     = rec.getChildText("schemaid");
+        String  createDate = rec.getChildText("createdate");
+        String  changeDate = rec.getChildText("changedate");
+        String  source     = rec.getChildText("source");
+        String  isTemplate = rec.getChildText("istemplate");
+        String  root       = rec.getChildText("root");
+        String  title      = rec.getChildText("title");
+        String  uuid       = rec.getChildText("uuid");
+        String  isHarvested= rec.getChildText("isharvested");
+        String  owner      = rec.getChildText("owner");
+        String  groupOwner = rec.getChildText("groupowner");
+        String  popularity = rec.getChildText("popularity");
+        String  rating     = rec.getChildText("rating");
+        String  displayOrder = rec.getChildText("displayorder");
 
-            moreFields.add(SearchManager.makeField("_root",        root,        true, true));
-            moreFields.add(SearchManager.makeField("_schema",      schema,      true, true));
-            moreFields.add(SearchManager.makeField("_createDate",  createDate,  true, true));
-            moreFields.add(SearchManager.makeField("_changeDate",  changeDate,  true, true));
-            moreFields.add(SearchManager.makeField("_source",      source,      true, true));
-            moreFields.add(SearchManager.makeField("_isTemplate",  isTemplate,  true, true));
-            moreFields.add(SearchManager.makeField("_title",       title,       true, true));
-            moreFields.add(SearchManager.makeField("_uuid",        uuid,        true, true));
-            moreFields.add(SearchManager.makeField("_isHarvested", isHarvested, true, true));
-            moreFields.add(SearchManager.makeField("_owner",       owner,       true, true));
-            moreFields.add(SearchManager.makeField("_dummy",       "0",        false, true));
-            moreFields.add(SearchManager.makeField("_popularity",  popularity,  true, true));
-            moreFields.add(SearchManager.makeField("_rating",      rating,      true, true));
-            moreFields.add(SearchManager.makeField("_displayOrder",displayOrder, true, false));
-
-            if (owner != null) {
+        if(Log.isDebugEnabled(Geonet.DATA_MANAGER)) {
+            Log.debug(Geonet.DATA_MANAGER, "record schema (" + schema + ")"); //DEBUG
+            Log.debug(Geonet.DATA_MANAGER, "record createDate (" + createDate + ")"); //DEBUG
+        }
+
+        moreFields.add(SearchManager.makeField("_root",        root,        true, true));
+        moreFields.add(SearchManager.makeField("_schema",      schema,      true, true));
+        moreFields.add(SearchManager.makeField("_createDate",  createDate,  true, true));
+        moreFields.add(SearchManager.makeField("_changeDate",  changeDate,  true, true));
+        moreFields.add(SearchManager.makeField("_source",      source,      true, true));
+        moreFields.add(SearchManager.makeField("_isTemplate",  isTemplate,  true, true));
+        moreFields.add(SearchManager.makeField("_title",       title,       true, true));
+        moreFields.add(SearchManager.makeField("_uuid",        uuid,        true, true));
+        moreFields.add(SearchManager.makeField("_isHarvested", isHarvested, true, true));
+        moreFields.add(SearchManager.makeField("_owner",       owner,       true, true));
+        moreFields.add(SearchManager.makeField("_dummy",       "0",        false, true));
+        moreFields.add(SearchManager.makeField("_popularity",  popularity,  true, true));
+        moreFields.add(SearchManager.makeField("_rating",      rating,      true, true));
+        moreFields.add(SearchManager.makeField("_displayOrder",displayOrder, true, false));
+
+        if (owner != null) {
+            Element user;
+            if (prefetch != null) {
+                user = prefetch.getUser(Integer.valueOf(owner));
+            } else {
                 String userQuery = "SELECT username, surname, name, profile FROM Users WHERE id = ?";
 
-                Element user = dbms.select(userQuery,  Integer.valueOf(owner)).getChild("record");
+                user = dbms.select(userQuery,  Integer.valueOf(owner)).getChild("record");
+            }
 
-                if (user != null) {
-                    moreFields.add(SearchManager.makeField("_userinfo",
-                            user.getChildText("username") + "|" + user.getChildText("surname") + "|" +
-                                    user.getChildText("name") + "|" + user.getChildText("profile"),
-                            true, false));
-                }
+            if (user != null) {
+                moreFields.add(SearchManager.makeField("_userinfo",
+                        user.getChildText("username") + "|" + user.getChildText("surname") + "|" +
+                                user.getChildText("name") + "|" + user.getChildText("profile"),
+                        true, false));
             }
-            if (groupOwner != null)
-                moreFields.add(SearchManager.makeField("_groupOwner", groupOwner, true, true));
+        }
+        if (groupOwner != null)
+            moreFields.add(SearchManager.makeField("_groupOwner", groupOwner, true, true));
 
-            // get privileges
+        // get privileges
+        List<Element> operations;
+        if (prefetch != null) {
+            operations = prefetch.getOperations(id$);
+        } else {
             @SuppressWarnings("unchecked")
-            List<Element> operations = dbms
+            List<Element> children = dbms
                     .select("SELECT groupId, operationId, g.name FROM OperationAllowed o, groups g WHERE g.id = o.groupId AND metadataId = ? ORDER BY operationId ASC", id$)
                     .getChildren();
+            operations = children;
+        }
 
-            for (Element operation : operations) {
-                String groupId = operation.getChildText("groupid");
-                String operationId = operation.getChildText("operationid");
-                moreFields.add(SearchManager.makeField("_op" + operationId, groupId, true, true));
-                if(operationId.equals("0")) {
-                    String name = operation.getChildText("name");
-                    moreFields.add(SearchManager.makeField("_groupPublished", name, true, true));
-                }
+        for (Element operation : operations) {
+            String groupId = operation.getChildText("groupid");
+            String operationId = operation.getChildText("operationid");
+            moreFields.add(SearchManager.makeField("_op" + operationId, groupId, true, true));
+            if(operationId.equals("0")) {
+                String name = operation.getChildText("name");
+                moreFields.add(SearchManager.makeField("_groupPublished", name, true, true));
             }
-            // get categories
+        }
+        // get categories
+        List<Element> categories;
+        if (prefetch != null) {
+            categories = prefetch.getCategories(id$);
+        } else {
             @SuppressWarnings("unchecked")
-            List<Element> categories = dbms
+            List<Element> children = dbms
                     .select("SELECT id, name FROM MetadataCateg, Categories WHERE metadataId = ? AND categoryId = id ORDER BY id", id$)
                     .getChildren();
+            categories = children;
+        }
 
-            for (Element category : categories) {
-                String categoryName = category.getChildText("name");
-                moreFields.add(SearchManager.makeField("_cat", categoryName, true, true));
-            }
+        for (Element category : categories) {
+            String categoryName = category.getChildText("name");
+            moreFields.add(SearchManager.makeField("_cat", categoryName, true, true));
+        }
 
-            // get status
+        // get status
+        List<Element> statuses;
+        if (prefetch != null) {
+            statuses = prefetch.getStatuses(id$);
+        } else {
             @SuppressWarnings("unchecked")
-            List<Element> statuses = dbms.select("SELECT statusId, userId, changeDate FROM MetadataStatus WHERE metadataId = ? ORDER BY changeDate DESC", id$)
+            List<Element> children = dbms.select("SELECT statusId, userId, changeDate FROM MetadataStatus WHERE metadataId = ? ORDER BY changeDate DESC", id$)
                     .getChildren();
-            if (statuses.size() > 0) {
-                Element stat = (Element)statuses.get(0);
-                String status = stat.getChildText("statusid");
-                moreFields.add(SearchManager.makeField("_status", status, true, true));
-                String statusChangeDate = stat.getChildText("changedate");
-                moreFields.add(SearchManager.makeField("_statusChangeDate", statusChangeDate, true, true));
-            }
-
-            // getValidationInfo
-            // -1 : not evaluated
-            // 0 : invalid
-            // 1 : valid
+            statuses = children;
+        }
+        if (statuses.size() > 0) {
+            Element stat = (Element)statuses.get(0);
+            String status = stat.getChildText("statusid");
+            moreFields.add(SearchManager.makeField("_status", status, true, true));
+            String statusChangeDate = stat.getChildText("changedate");
+            moreFields.add(SearchManager.makeField("_statusChangeDate", statusChangeDate, true, true));
+        }
+
+        // getValidationInfo
+        // -1 : not evaluated
+        // 0 : invalid
+        // 1 : valid
+        List<Element> validationInfo;
+        if (prefetch != null) {
+            validationInfo = prefetch.getValidation(id$);
+        } else {
             @SuppressWarnings("unchecked")
-            List<Element> validationInfo = dbms
+            List<Element> children = dbms
                     .select("SELECT valType, status FROM Validation WHERE metadataId = ?", id$)
                     .getChildren();
-            if (validationInfo.size() == 0) {
-                moreFields.add(SearchManager.makeField("_valid", "-1", true, true));
-            }
-            else {
-                String isValid = "1";
-                for (Object elem : validationInfo) {
-                    Element vi = (Element) elem;
-                    String type = vi.getChildText("valtype");
-                    String status = vi.getChildText("status");
-                    if ("0".equals(status)) {
-                        isValid = "0";
-                    }
-                    moreFields.add(SearchManager.makeField("_valid_" + type, status, true, true));
+            validationInfo = children;
+        }
+        if (validationInfo.size() == 0) {
+            moreFields.add(SearchManager.makeField("_valid", "-1", true, true));
+        }
+        else {
+            String isValid = "1";
+            for (Object elem : validationInfo) {
+                Element vi = (Element) elem;
+                String type = vi.getChildText("valtype");
+                String status = vi.getChildText("status");
+                if ("0".equals(status)) {
+                    isValid = "0";
                 }
-                moreFields.add(SearchManager.makeField("_valid", isValid, true, true));
+                moreFields.add(SearchManager.makeField("_valid_" + type, status, true, true));
             }
-            searchMan.index(schemaMan.getSchemaDir(schema), md, id, moreFields, isTemplate, title);
-        }
-        catch (Exception x) {
-            Log.error(Geonet.DATA_MANAGER, "The metadata document index with id=" + id + " is corrupt/invalid - ignoring it. Error: " + x.getMessage());
-            x.printStackTrace();
+            moreFields.add(SearchManager.makeField("_valid", isValid, true, true));
         }
+        searchMan.index(schemaMan.getSchemaDir(schema), md, id, moreFields, isTemplate, title);
     }
 
     /**
@@ -875,55 +948,33 @@ public class DataManager {
         Element schemaTronXmlOut = new Element("schematronerrors",
                 Edit.NAMESPACE);
         if (rules != null) {
+            // the sets of rules are independent, run them concurrently on a read only copy of the metadata
+            Source sharedMd = rules.length > 1 ? Xml.buildSharedTree(md) : null;
+
+            List<SchematronRuleSet> ruleSets = new ArrayList<SchematronRuleSet>(rules.length);
+            List<Future<Element>> reports = new ArrayList<Future<Element>>(rules.length);
             for (String rule : rules) {
-                // -- create a report for current rules.
-                // Identified by a rule attribute set to shematron file name
-                if(Log.isDebugEnabled(Geonet.DATA_MANAGER))
-                    Log.debug(Geonet.DATA_MANAGER, " - rule:" + rule);
-                String ruleId = rule.substring(0, rule.indexOf(".xsl"));
-                Element report = new Element("report", Edit.NAMESPACE);
-                report.setAttribute("rule", ruleId,
-                        Edit.NAMESPACE);
-
-                String schemaTronXmlXslt = metadataSchema.getSchemaDir() + File.separator
-                        + "schematron" + File.separator + rule;
-                try {
-                    Map<String,String> params = new HashMap<String,String>();
-                    params.put("lang", lang);
-                    params.put("rule", rule);
-                    params.put("thesaurusDir", this.thesaurusDir);
-                    Element xmlReport = Xml.transform(md, schemaTronXmlXslt, params);
-                    if (xmlReport != null) {
-                        report.addContent(xmlReport);
-                        // add results to persitent validation information
-                        int firedRules = 0;
-                        Iterator<?> firedRulesElems = xmlReport.getDescendants(new ElementFilter ("fired-rule", Namespace.getNamespace("http://purl.oclc.org/dsdl/svrl")));
-                        while (firedRulesElems.hasNext()) {
-                            firedRulesElems.next();
-                            firedRules ++;
-                        }
-                        int invalidRules = 0;
-                        Iterator<?> faileAssertElements = xmlReport.getDescendants(new ElementFilter ("failed-assert", Namespace.getNamespace("http://purl.oclc.org/dsdl/svrl")));
-                        while (faileAssertElements.hasNext()) {
-                            faileAssertElements.next();
-                            invalidRules ++;
-                        }
-                        Integer[] results = {invalidRules!=0?0:1, firedRules, invalidRules};
-                        if (valTypeAndStatus != null) {
-                            valTypeAndStatus.put(ruleId, results);
-                        }
+                SchematronRuleSet ruleSet = new SchematronRuleSet(metadataSchema, rule, lang, md, sharedMd);
+                ruleSets.add(ruleSet);
+                if (sharedMd != null) {
+                    reports.add(SchematronExecutionService.getExecutionService().submit(ruleSet));
+                }
+            }
+            for (int i = 0; i < ruleSets.size(); i++) {
+                SchematronRuleSet ruleSet = ruleSets.get(i);
+                Element report;
+                if (sharedMd != null) {
+                    try {
+                        report = reports.get(i).get();
+                    } catch (ExecutionException e) {
+                        throw new Exception("Schematron rules " + ruleSet.ruleId + " failed", e.getCause());
                     }
-                } catch (Exception e) {
-                    Log.error(Geonet.DATA_MANAGER,"WARNING: schematron xslt "+schemaTronXmlXslt+" failed");
-
-                    // If an error occurs that prevents to verify schematron rules, add to show in report
-                    Element errorReport = new Element("schematronVerificationError", Edit.NAMESPACE);
-                    errorReport.addContent("Schematron error ocurred, rules could not be verified: " + e.getMessage());
-                    report.addContent(errorReport);
-
-                    e.printStackTrace();
+                } else {
+                    report = ruleSet.call();
+                }
+                if (ruleSet.results != null && valTypeAndStatus != null) {
+                    valTypeAndStatus.put(ruleSet.ruleId, ruleSet.results);
                 }
-
                 // -- append report to main XML report.
                 schemaTronXmlOut.addContent(report);
             }
@@ -931,6 +982,90 @@ public class DataManager {
         return schemaTronXmlOut;
     }
 
+    /**
+     * Creates the report of a set of schematron rules. The time spent is set in the duration attribute (in ms) of
+     * the report.
+     */
+    private final class SchematronRuleSet implements Callable<Element> {
+        private final String rule;
+        private final String ruleId;
+        private final String schemaTronXmlXslt;
+        private final String lang;
+        private final Element md;
+        private final Source sharedMd;
+        /** Whether the metadata is valid, the fired rules and the failed asserts, null if the rules were not run */
+        private Integer[] results;
+
+        /**
+         * @param md the metadata, used if sharedMd is null
+         * @param sharedMd a copy of the metadata shared by the sets of rules, or null
+         */
+        SchematronRuleSet(MetadataSchema metadataSchema, String rule, String lang, Element md, Source sharedMd) {
+            this.rule = rule;
+            this.ruleId = rule.substring(0, rule.indexOf(".xsl"));
+            this.schemaTronXmlXslt = metadataSchema.getSchemaDir() + File.separator
+                    + "schematron" + File.separator + rule;
+            this.lang = lang;
+            this.md = md;
+            this.sharedMd = sharedMd;
+        }
+
+        public Element call() {
+            // -- create a report for current rules.
+            // Identified by a rule attribute set to shematron file name
+            if(Log.isDebugEnabled(Geonet.DATA_MANAGER))
+                Log.debug(Geonet.DATA_MANAGER, " - rule:" + rule);
+            Element report = new Element("report", Edit.NAMESPACE);
+            report.setAttribute("rule", ruleId,
+                    Edit.NAMESPACE);
+
+            long start = System.currentTimeMillis();
+            try {
+                Map<String,String> params = new HashMap<String,String>();
+                params.put("lang", lang);
+                params.put("rule", rule);
+                params.put("thesaurusDir", thesaurusDir);
+                Element xmlReport;
+                if (sharedMd != null) {
+                    xmlReport = Xml.transform(sharedMd, schemaTronXmlXslt, params);
+                } else {
+                    xmlReport = Xml.transform(md, schemaTronXmlXslt, params);
+                }
+                if (xmlReport != null) {
+                    report.addContent(xmlReport);
+                    // add results to persitent validation information
+                    int firedRules = 0;
+                    Iterator<?> firedRulesElems = xmlReport.getDescendants(new ElementFilter ("fired-rule", Namespace.getNamespace("http://purl.oclc.org/dsdl/svrl")));
+                    while (firedRulesElems.hasNext()) {
+                        firedRulesElems.next();
+                        firedRules ++;
+                    }
+                    int invalidRules = 0;
+                    Iterator<?> faileAssertElements = xmlReport.getDescendants(new ElementFilter ("failed-assert", Namespace.getNamespace("http://purl.oclc.org/dsdl/svrl")));
+                    while (faileAssertElements.hasNext()) {
+                        faileAssertElements.next();
+                        invalidRules ++;
+                    }
+                    results = new Integer[] {invalidRules!=0?0:1, firedRules, invalidRules};
+                }
+            } catch (Exception e) {
+                Log.error(Geonet.DATA_MANAGER,"WARNING: schematron xslt "+schemaTronXmlXslt+" failed");
+
+                // If an error occurs that prevents to verify schematron rules, add to show in report
+                Element errorReport = new Element("schematronVerificationError", Edit.NAMESPACE);
+                errorReport.addContent("Schematron error ocurred, rules could not be verified: " + e.getMessage());
+                report.addContent(errorReport);
+
+                e.printStackTrace();
+            }
+            long duration = System.currentTimeMillis() - start;
+            report.setAttribute("duration", String.valueOf(duration), Edit.NAMESPACE);
+            if(Log.isDebugEnabled(Geonet.DATA_MANAGER))
+                Log.debug(Geonet.DATA_MANAGER, " - rule:" + rule + " run in " + duration + "ms");
+            return report;
+        }
+    }
+
     /**
      * Valid the metadata record against its schema. For each error found, an xsderror attribute is added to
      * the corresponding element trying to find the element based on the xpath return by the ErrorHandler.
@@ -1144,6 +1279,27 @@ public class DataManager {
         return record.getChildText("uuid");
     }
 
+    /**
+     * Returns the change date and the xml (not parsed) of a metadata as stored in the database, in the changedate and
+     * data children of the record, or null if there is no metadata with this id.
+     *
+     * @param dbms
+     * @param id
+     * @return
+     * @throws Exception
+     */
+    public Element getMetadataChangeDateAndData(Dbms dbms, String id) throws Exception {
+        String query = "SELECT changeDate, data FROM Metadata WHERE id=?";
+
+        @SuppressWarnings("unchecked")
+        List<Element> list = dbms.select(query, Integer.valueOf(id)).getChildren();
+
+        if (list.size() == 0)
+            return null;
+
+        return list.get(0);
+    }
+
     /**
      *
      * @param dbms
@@ -2134,6 +2290,73 @@ public class DataManager {
         dbms.commit();
     }
 
+    /**
+     * Removes some metadata. Faster than doing one by one: the related rows are deleted with one statement per
+     * {@link #BATCH_DELETE_SIZE} metadata and the index is updated once.
+     *
+     * @param context
+     * @param dbms
+     * @param ids
+     * @throws Exception
+     */
+    public synchronized void deleteBatchMetadata(ServiceContext context, Dbms dbms, List<String> ids) throws Exception {
+        deleteBatchMetadata(context, dbms, ids, true);
+    }
+
+    /**
+     * Removes some metadata without notifying the metadata notifier service, see
+     * {@link #deleteMetadataGroup(ServiceContext, Dbms, String)}.
+     *
+     * @param context
+     * @param dbms
+     * @param ids
+     * @throws Exception
+     */
+    public synchronized void deleteBatchMetadataGroup(ServiceContext context, Dbms dbms, List<String> ids) throws Exception {
+        deleteBatchMetadata(context, dbms, ids, false);
+    }
+
+    private void deleteBatchMetadata(ServiceContext context, Dbms dbms, List<String> ids, boolean notify) throws Exception {
+        if (ids.isEmpty()) {
+            return;
+        }
+        for (int start = 0; start < ids.size(); start += BATCH_DELETE_SIZE) {
+            List<String> batch = ids.subList(start, Math.min(ids.size(), start + BATCH_DELETE_SIZE));
+
+            Object[] args = new Object[batch.size()];
+            StringBuilder in = new StringBuilder(" IN (");
+            for (int i = 0; i < args.length; i++) {
+                args[i] = Integer.valueOf(batch.get(i));
+                in.append(i == 0 ? "?" : ",?");
+            }
+            in.append(')');
+
+            List<?> notified = notify
+                    ? dbms.select("SELECT id, uuid FROM Metadata WHERE isTemplate='n' AND id" + in, args).getChildren()
+                    : Collections.emptyList();
+
+            dbms.execute("DELETE FROM OperationAllowed WHERE metadataId" + in, args);
+            dbms.execute("DELETE FROM MetadataCateg WHERE metadataId" + in, args);
+            dbms.execute("DELETE FROM MetadataRating WHERE metadataId" + in, args);
+            dbms.execute("DELETE FROM Validation WHERE metadataId" + in, args);
+            dbms.execute("DELETE FROM MetadataStatus WHERE metadataId" + in, args);
+
+            //--- remove metadata
+            for (String id : batch) {
+                xmlSerializer.delete(dbms, "Metadata", id, context);
+            }
+
+            // Notifies the metadata change to metatada notifier service
+            for (Object o : notified) {
+                Element el = (Element) o;
+                notifyMetadataDelete(dbms, el.getChildText("id"), el.getChildText("uuid"));
+            }
+        }
+
+        //--- update search criteria
+        searchMan.delete("_id", ids);
+    }
+
     /**
      *
      * @param context
@@ -3428,6 +3651,9 @@ public class DataManager {
     private static String FS = File.separator;
     private XmlSerializer xmlSerializer;
     private SvnManager svnManager;
+    private int indexingFetchThreads;
+    private int indexingQueueSize;
+    private volatile IndexingProgress batchIndexingProgress;
 
     /**
      * TODO javadoc.
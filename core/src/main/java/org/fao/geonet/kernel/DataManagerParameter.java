@@ -19,6 +19,10 @@ public class DataManagerParameter {
 	public String dataDir;
 	public String thesaurusDir;
 	public String appPath;
+	/** Number of threads loading database rows during a batch reindexing. */
+	public int indexingFetchThreads = 1;
+	/** Maximum number of loaded records waiting for an indexing thread during a batch reindexing. */
+	public int indexingQueueSize = 1000;
 
 	public DataManagerParameter(ServiceContext context, SvnManager svnManager,
 			XmlSerializer xmlSerializer, SchemaManager scm, SearchManager sm,
@@ -0,0 +1,225 @@
+//=============================================================================
+//===	Copyright (C) 2001-2007 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package org.fao.geonet.kernel;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import jeeves.constants.Jeeves;
+import jeeves.resources.dbms.Dbms;
+import jeeves.utils.Log;
+
+import org.fao.geonet.constants.Geonet;
+import org.jdom.Element;
+
+/**
+ * Database rows needed to build the extra index fields of a block of metadata records.
+ * <p/>
+ * {@link DataManager#indexMetadata(Dbms, String)} runs one query per table and per record. When a lot of records
+ * are (re)indexed, the rows of the Metadata, Users, OperationAllowed, MetadataCateg, MetadataStatus and Validation
+ * tables are loaded here for the whole block with one set based query per table.
+ */
+final class IndexFieldsPrefetch {
+    /**
+     * Number of records loaded by one prefetch. Keeps the IN clauses well below the 1000 elements limit of Oracle.
+     */
+    static final int BLOCK_SIZE = 500;
+
+    private final Map<Integer, Element> metadata = new HashMap<Integer, Element>();
+    private final Map<Integer, Element> users = new HashMap<Integer, Element>();
+    private final Map<Integer, List<Element>> operations = new HashMap<Integer, List<Element>>();
+    private final Map<Integer, List<Element>> categories = new HashMap<Integer, List<Element>>();
+    private final Map<Integer, List<Element>> statuses = new HashMap<Integer, List<Element>>();
+    private final Map<Integer, List<Element>> validation = new HashMap<Integer, List<Element>>();
+
+    private IndexFieldsPrefetch() {
+    }
+
+    /**
+     * Loads the rows of all the tables for the given metadata ids. If a query fails, the transaction is rolled back
+     * to where it was before the prefetch (some databases, like PostgreSQL, reject any further query in a transaction
+     * where a statement failed) so that the records can still be read one by one with the same Dbms.
+     *
+     * @param dbms the database to query
+     * @param ids the metadata ids, at most {@link #BLOCK_SIZE}
+     * @return the loaded rows
+     * @throws SQLException
+     */
+    static IndexFieldsPrefetch load(Dbms dbms, List<String> ids) throws SQLException {
+        Connection conn = dbms.getConnection();
+        Savepoint savepoint = conn.getAutoCommit() ? null : conn.setSavepoint();
+        IndexFieldsPrefetch prefetch;
+        try {
+            prefetch = loadRows(dbms, ids);
+        } catch (SQLException e) {
+            if (savepoint != null) {
+                conn.rollback(savepoint);
+            }
+            throw e;
+        }
+        if (savepoint != null) {
+            releaseSavepoint(conn, savepoint);
+        }
+        return prefetch;
+    }
+
+    /**
+     * Releases the savepoint of a successful prefetch, so that a reindex does not keep one savepoint per block until
+     * the end of the transaction. Some drivers (e.g. Oracle) do not support it: the savepoint is then released with
+     * the transaction.
+     */
+    private static void releaseSavepoint(Connection conn, Savepoint savepoint) {
+        try {
+            conn.releaseSavepoint(savepoint);
+        } catch (SQLException e) {
+            if (Log.isDebugEnabled(Geonet.DATA_MANAGER)) {
+                Log.debug(Geonet.DATA_MANAGER, "Savepoint of the index fields prefetch not released: " + e.getMessage());
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static IndexFieldsPrefetch loadRows(Dbms dbms, List<String> ids) throws SQLException {
+        IndexFieldsPrefetch prefetch = new IndexFieldsPrefetch();
+
+        Set<Integer> mdIds = new LinkedHashSet<Integer>();
+        for (String id : ids) {
+            mdIds.add(Integer.valueOf(id));
+        }
+        if (mdIds.isEmpty()) {
+            return prefetch;
+        }
+        String in = inClause(mdIds.size());
+        Object[] args = mdIds.toArray();
+
+        Element result = dbms.select("SELECT id, schemaId, createDate, changeDate, source, isTemplate, root, " +
+                "title, uuid, isHarvested, owner, groupOwner, popularity, rating, displayOrder FROM Metadata WHERE id IN " + in, args);
+
+        Set<Integer> owners = new LinkedHashSet<Integer>();
+        for (Element record : (List<Element>) result.getChildren(Jeeves.Elem.RECORD)) {
+            prefetch.metadata.put(Integer.valueOf(record.getChildText("id")), record);
+            String owner = record.getChildText("owner");
+            if (owner != null) {
+                owners.add(Integer.valueOf(owner));
+            }
+        }
+
+        if (!owners.isEmpty()) {
+            Element userResult = dbms.select("SELECT id, username, surname, name, profile FROM Users WHERE id IN "
+                    + inClause(owners.size()), owners.toArray());
+            for (Element record : (List<Element>) userResult.getChildren(Jeeves.Elem.RECORD)) {
+                prefetch.users.put(Integer.valueOf(record.getChildText("id")), record);
+            }
+        }
+
+        group(dbms.select("SELECT metadataId, groupId, operationId, g.name FROM OperationAllowed o, groups g " +
+                "WHERE g.id = o.groupId AND metadataId IN " + in + " ORDER BY metadataId, operationId ASC", args), prefetch.operations);
+        group(dbms.select("SELECT metadataId, id, name FROM MetadataCateg, Categories " +
+                "WHERE metadataId IN " + in + " AND categoryId = id ORDER BY metadataId, id", args), prefetch.categories);
+        group(dbms.select("SELECT metadataId, statusId, userId, changeDate FROM MetadataStatus " +
+                "WHERE metadataId IN " + in + " ORDER BY metadataId, changeDate DESC", args), prefetch.statuses);
+        group(dbms.select("SELECT metadataId, valType, status FROM Validation WHERE metadataId IN " + in, args), prefetch.validation);
+
+        return prefetch;
+    }
+
+    /**
+     * @return the Metadata table row of the record or null if the record was not found when the block was loaded
+     */
+    Element getMetadata(int id) {
+        return metadata.get(id);
+    }
+
+    /**
+     * @return the Users table row of the owner or null if the owner does not exist
+     */
+    Element getUser(int owner) {
+        return users.get(owner);
+    }
+
+    List<Element> getOperations(int id) {
+        return get(operations, id);
+    }
+
+    List<Element> getCategories(int id) {
+        return get(categories, id);
+    }
+
+    /**
+     * @return the status rows of the record, most recent first
+     */
+    List<Element> getStatuses(int id) {
+        return get(statuses, id);
+    }
+
+    List<Element> getValidation(int id) {
+        return get(validation, id);
+    }
+
+    private static List<Element> get(Map<Integer, List<Element>> rows, int id) {
+        List<Element> list = rows.get(id);
+        if (list == null) {
+            return Collections.emptyList();
+        }
+        return list;
+    }
+
+    /**
+     * Splits the records of a select on the metadataid column, keeping the order of the query.
+     */
+    @SuppressWarnings("unchecked")
+    private static void group(Element result, Map<Integer, List<Element>> target) {
+        for (Element record : (Collection<Element>) result.getChildren(Jeeves.Elem.RECORD)) {
+            Integer mdId = Integer.valueOf(record.getChildText("metadataid"));
+            List<Element> list = target.get(mdId);
+            if (list == null) {
+                list = new ArrayList<Element>();
+                target.put(mdId, list);
+            }
+            list.add(record);
+        }
+    }
+
+    private static String inClause(int size) {
+        StringBuilder sb = new StringBuilder(size * 2 + 2);
+        sb.append('(');
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append('?');
+        }
+        sb.append(')');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,242 @@
+//=============================================================================
+//===	Copyright (C) 2001-2007 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package org.fao.geonet.kernel;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jeeves.guiservices.session.JeevesUser;
+import jeeves.resources.dbms.Dbms;
+import jeeves.server.context.ServiceContext;
+import jeeves.utils.Log;
+import jeeves.utils.Util;
+
+import org.fao.geonet.constants.Geonet;
+
+/**
+ * Reindexes a list of metadata records in two stages connected by a bounded queue.
+ * <p/>
+ * The fetch stage threads take the next block of ids, load the rows needed for the index fields
+ * ({@link IndexFieldsPrefetch}) and queue the records one by one. The index stage threads take the records from the
+ * queue, transform them and add them to the index. Because the index threads take single records, a block of slow
+ * records (XLinks for example) is shared by all the index threads instead of stalling one of them, and because the
+ * queue is bounded the fetch stage never gets more than a few blocks ahead of the index stage.
+ */
+final class IndexingPipeline {
+    private static final Item END = new Item(null, null);
+
+    private final DataManager dataManager;
+    private final ServiceContext context;
+    private final List<String> ids;
+    private final int fetchThreads;
+    private final int indexThreads;
+    private final BlockingQueue<Item> queue;
+    private final IndexingProgress progress;
+    private final AtomicInteger nextBlock = new AtomicInteger();
+    private final AtomicInteger runningFetchers;
+    private final AtomicInteger runningIndexers;
+    private final JeevesUser user;
+
+    /**
+     * @param fetchThreads number of threads loading the database rows
+     * @param indexThreads number of threads indexing the records
+     * @param queueSize maximum number of fetched records waiting to be indexed
+     */
+    IndexingPipeline(DataManager dataManager, ServiceContext context, List<String> ids, int fetchThreads, int indexThreads,
+                     int queueSize) {
+        this.dataManager = dataManager;
+        this.context = context;
+        this.ids = ids;
+        this.fetchThreads = Math.max(1, fetchThreads);
+        this.indexThreads = Math.max(1, indexThreads);
+        this.queue = new ArrayBlockingQueue<Item>(Math.max(queueSize, IndexFieldsPrefetch.BLOCK_SIZE));
+        this.progress = new IndexingProgress(ids.size(), queue);
+        this.runningFetchers = new AtomicInteger(this.fetchThreads);
+        this.runningIndexers = new AtomicInteger(this.indexThreads);
+        if (context.getUserSession() != null) {
+            this.user = context.getUserSession().getPrincipal();
+        } else {
+            this.user = null;
+        }
+    }
+
+    IndexingProgress getProgress() {
+        return progress;
+    }
+
+    /**
+     * Starts the fetch and index threads and returns immediately. The executor is shut down once the tasks are
+     * submitted, also if a thread cannot be started, so its threads end with the tasks.
+     */
+    void start() {
+        Log.info(Geonet.INDEX_ENGINE, "Reindexing " + ids.size() + " records with " + fetchThreads + " fetch thread(s) and "
+                                      + indexThreads + " indexing thread(s)");
+        ExecutorService executor = Executors.newFixedThreadPool(fetchThreads + indexThreads);
+        try {
+            for (int i = 0; i < fetchThreads; i++) {
+                executor.execute(new FetchTask());
+            }
+            for (int i = 0; i < indexThreads; i++) {
+                executor.execute(new IndexTask());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Sets up the thread like IndexMetadataTask does and waits for the servlet to be initialized so that links to
+     * local fragments are resolvable.
+     */
+    private Dbms open() throws Exception {
+        context.setAsThreadLocal();
+        while (!context.isServletInitialized()) {
+            if (Log.isDebugEnabled(Geonet.DATA_MANAGER))
+                Log.debug(Geonet.DATA_MANAGER, "Waiting for servlet to finish initializing..");
+            Thread.sleep(10000); // sleep 10 seconds
+        }
+        if (user != null && context.getUserSession().getUserId() == null) {
+            context.getUserSession().loginAs(user);
+        }
+        return (Dbms) context.getResourceManager().openDirect(Geonet.Res.MAIN_DB);
+    }
+
+    /**
+     * Waits for room in the queue.
+     *
+     * @return false if all the index threads have stopped and nothing will ever be taken from the queue
+     */
+    private boolean put(Item item) throws InterruptedException {
+        while (!queue.offer(item, 1, TimeUnit.SECONDS)) {
+            if (runningIndexers.get() == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void close(Dbms dbms) {
+        if (dbms == null) {
+            return;
+        }
+        try {
+            //-- commit Dbms resource (which makes it available to pool again)
+            context.getResourceManager().close(Geonet.Res.MAIN_DB, dbms);
+        } catch (Exception e) {
+            Log.error(Geonet.DATA_MANAGER, "Failed to close the indexing database connection: " + e.getMessage());
+        }
+    }
+
+    private final class FetchTask implements Runnable {
+        public void run() {
+            Dbms dbms = null;
+            try {
+                dbms = open();
+                int start;
+                while ((start = nextBlock.getAndAdd(IndexFieldsPrefetch.BLOCK_SIZE)) < ids.size()) {
+                    List<String> block = ids.subList(start, Math.min(start + IndexFieldsPrefetch.BLOCK_SIZE, ids.size()));
+                    IndexFieldsPrefetch prefetch;
+                    try {
+                        prefetch = IndexFieldsPrefetch.load(dbms, block);
+                    } catch (Exception e) {
+                        Log.error(Geonet.DATA_MANAGER, "Failed to load index fields of " + block.size()
+                                                       + " records, indexing them one by one. Error: " + e.getMessage());
+                        prefetch = null;
+                    }
+                    progress.recordsFetched(block.size());
+                    for (String id : block) {
+                        if (!put(new Item(id, prefetch))) {
+                            return;
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Log.warning(Geonet.DATA_MANAGER, "Reindexing fetch thread interrupted");
+            } catch (Exception e) {
+                Log.error(Geonet.DATA_MANAGER, "Reindexing fetch thread threw exception: " + e.getMessage() + "\n" + Util.getStackTrace(e));
+            } finally {
+                close(dbms);
+                if (runningFetchers.decrementAndGet() == 0) {
+                    endIndexers();
+                }
+            }
+        }
+
+        private void endIndexers() {
+            try {
+                for (int i = 0; i < indexThreads; i++) {
+                    if (!put(END)) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Log.error(Geonet.DATA_MANAGER, "Interrupted while stopping the reindexing threads");
+            }
+        }
+    }
+
+    private final class IndexTask implements Runnable {
+        public void run() {
+            Dbms dbms = null;
+            try {
+                dbms = open();
+                Item item;
+                while ((item = queue.take()) != END) {
+                    try {
+                        dataManager.indexMetadata(dbms, item.id, item.prefetch);
+                        progress.recordIndexed();
+                    } catch (Exception e) {
+                        progress.recordFailed();
+                        Log.error(Geonet.INDEX_ENGINE, "Error indexing metadata '" + item.id + "': " + e.getMessage() + "\n" + Util.getStackTrace(e));
+                    }
+                }
+            } catch (InterruptedException e) {
+                Log.warning(Geonet.DATA_MANAGER, "Reindexing thread interrupted");
+            } catch (Exception e) {
+                Log.error(Geonet.DATA_MANAGER, "Reindexing thread threw exception: " + e.getMessage() + "\n" + Util.getStackTrace(e));
+            } finally {
+                close(dbms);
+                if (runningIndexers.decrementAndGet() == 0) {
+                    progress.finished();
+                    Log.info(Geonet.INDEX_ENGINE, "Reindexing finished: " + progress);
+                }
+            }
+        }
+    }
+
+    private static final class Item {
+        final String id;
+        final IndexFieldsPrefetch prefetch;
+
+        Item(String id, IndexFieldsPrefetch prefetch) {
+            this.id = id;
+            this.prefetch = prefetch;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+//=============================================================================
+//===	Copyright (C) 2001-2007 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package org.fao.geonet.kernel;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Live progress of a batch reindexing job (see {@link DataManager#getBatchIndexingProgress()}).
+ * <p/>
+ * Read by the org.fao.geonet.monitor.index gauges.
+ */
+public class IndexingProgress {
+    private final int total;
+    private final long startTime = System.currentTimeMillis();
+    private final AtomicInteger fetched = new AtomicInteger();
+    private final AtomicInteger indexed = new AtomicInteger();
+    private final AtomicInteger errors = new AtomicInteger();
+    private final BlockingQueue<?> queue;
+    private volatile long endTime = -1;
+
+    IndexingProgress(int total, BlockingQueue<?> queue) {
+        this.total = total;
+        this.queue = queue;
+    }
+
+    void recordsFetched(int count) {
+        fetched.addAndGet(count);
+    }
+
+    void recordIndexed() {
+        indexed.incrementAndGet();
+    }
+
+    void recordFailed() {
+        errors.incrementAndGet();
+    }
+
+    void finished() {
+        endTime = System.currentTimeMillis();
+    }
+
+    public boolean isRunning() {
+        return endTime < 0;
+    }
+
+    /**
+     * @return number of records to index in this job
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * @return number of records whose database rows have been loaded
+     */
+    public int getFetched() {
+        return fetched.get();
+    }
+
+    /**
+     * @return number of records indexed so far, including failed ones
+     */
+    public int getIndexed() {
+        return indexed.get() + errors.get();
+    }
+
+    public int getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * @return number of fetched records waiting for an indexing thread
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public double getRecordsPerSecond() {
+        long end = isRunning() ? System.currentTimeMillis() : endTime;
+        long duration = Math.max(1, end - startTime);
+        return getIndexed() * 1000d / duration;
+    }
+
+    /**
+     * @return estimated number of seconds until the job is finished or -1 if not known yet
+     */
+    public long getEstimatedSecondsRemaining() {
+        if (!isRunning()) {
+            return 0;
+        }
+        double rate = getRecordsPerSecond();
+        if (rate <= 0) {
+            return -1;
+        }
+        return Math.round((total - getIndexed()) / rate);
+    }
+
+    @Override
+    public String toString() {
+        return getIndexed() + "/" + total + " records indexed (" + errors.get() + " errors, " + Math.round(getRecordsPerSecond())
+               + " records/sec, " + getQueueDepth() + " queued)";
+    }
+}
@@ -0,0 +1,157 @@
+//=============================================================================
+//===	Copyright (C) 2001-2007 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package org.fao.geonet.kernel;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jdom.Element;
+
+/**
+ * Parsed xml of the metadata records read by the {@link XmlSerializer}, so that the records read again and again
+ * (search results, CSW, OAI-PMH) are copied rather than parsed each time.
+ * <p/>
+ * There is one entry per metadata id. An entry is used only if the change date and the xml read from the database are
+ * the ones it was parsed from (the length and hash of the xml are compared), so a record updated without the
+ * serializer is never served stale. The least recently used entries are evicted first when the estimated memory is
+ * over the budget. The entry of a metadata is removed when it is updated or deleted.
+ */
+public class ParsedMetadataCache implements MetadataChangeListener {
+    private static final long ENTRY_OVERHEAD = 200;
+    /** Estimated memory used by a JDOM tree for each char of its xml */
+    private static final long BYTES_PER_CHAR = 8;
+
+    private final long maxBytes;
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private long bytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param maxBytes estimated memory used by the entries above which entries are evicted, 0 to disable the cache
+     */
+    public ParsedMetadataCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * @param id the metadata id
+     * @param changeDate the change date of the record read from the database
+     * @param xml the xml of the record read from the database
+     * @return a copy of the parsed xml or null if it is not in the cache
+     */
+    public Element get(String id, String changeDate, String xml) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(id);
+        }
+        if (entry == null || !entry.isParsedFrom(changeDate, xml)) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return (Element) entry.metadata.clone();
+    }
+
+    /**
+     * @param metadata the parsed xml, a copy is kept
+     */
+    public void put(String id, String changeDate, String xml, Element metadata) {
+        long size = ENTRY_OVERHEAD + BYTES_PER_CHAR * xml.length();
+        if (size > maxBytes) {
+            return;
+        }
+        Entry entry = new Entry(changeDate, xml, (Element) metadata.clone(), size);
+        synchronized (this) {
+            Entry previous = entries.put(id, entry);
+            if (previous != null) {
+                bytes -= previous.size;
+            }
+            bytes += size;
+            for (Iterator<Entry> iterator = entries.values().iterator(); bytes > maxBytes && iterator.hasNext();) {
+                bytes -= iterator.next().size;
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized void metadataUpdated(String id) {
+        remove(id);
+    }
+
+    public synchronized void metadataDeleted(String id) {
+        remove(id);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return estimated memory used by the entries
+     */
+    public synchronized long getSizeInBytes() {
+        return bytes;
+    }
+
+    private void remove(String id) {
+        Entry entry = entries.remove(id);
+        if (entry != null) {
+            bytes -= entry.size;
+        }
+    }
+
+    private static final class Entry {
+        private final String changeDate;
+        private final int length;
+        private final int hash;
+        /** Never modified, only copied */
+        private final Element metadata;
+        private final long size;
+
+        Entry(String changeDate, String xml, Element metadata, long size) {
+            this.changeDate = changeDate;
+            this.length = xml.length();
+            this.hash = xml.hashCode();
+            this.metadata = metadata;
+            this.size = size;
+        }
+
+        boolean isParsedFrom(String changeDate, String xml) {
+            return this.changeDate != null && this.changeDate.equals(changeDate)
+                    && length == xml.length() && hash == xml.hashCode();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package org.fao.geonet.kernel;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executionservice running the schematron rule sets of the validations. It has one thread per processor and a
+ * bounded queue; when the queue is full the rule set is run by the validating thread, so batch validations can not
+ * pile up more work than the processors can do. It is shut down in org.fao.geonet.GeoNetwork.stop(), the rule sets
+ * submitted after that are run by the validating thread too, so a validation never waits for a dropped rule set.
+ */
+public class SchematronExecutionService {
+
+    private static final int QUEUE_SIZE = 100;
+
+    private static ExecutorService executionService = newExecutionService();
+
+    public static ExecutorService getExecutionService() {
+        return executionService;
+    }
+
+    private static ExecutorService newExecutionService() {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(QUEUE_SIZE), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "schematron-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }, new RunInCallerPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Runs the rejected task in the submitting thread, unlike {@link ThreadPoolExecutor.CallerRunsPolicy} also when
+     * the executor is shut down.
+     */
+    private static final class RunInCallerPolicy implements RejectedExecutionHandler {
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+            task.run();
+        }
+    }
+}
@@ -30,6 +30,7 @@ import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import jeeves.constants.Jeeves;
 import jeeves.resources.dbms.Dbms;
@@ -77,6 +78,12 @@ public abstract class XmlSerializer {
 	
 	protected SettingManager sm;
 
+	private final List<MetadataChangeListener> changeListeners = new CopyOnWriteArrayList<MetadataChangeListener>();
+
+	private ParsedMetadataCache parsedMetadataCache;
+
+	private BinaryMetadataStore binaryMetadataStore;
+
 	public static class ThreadLocalConfiguration {
 	    private boolean forceHideWithheld = false;
 
@@ -110,6 +117,35 @@ public abstract class XmlSerializer {
 		sm = sMan;
 	}
 
+    /**
+     * Registers a listener told of the updates and deletions of metadata records.
+     *
+     * @param listener
+     */
+	public void addChangeListener(MetadataChangeListener listener) {
+		changeListeners.add(listener);
+	}
+
+    /**
+     * Keeps the parsed xml of the records read from the Metadata table in the given cache.
+     *
+     * @param cache
+     */
+	public void setParsedMetadataCache(ParsedMetadataCache cache) {
+		parsedMetadataCache = cache;
+		addChangeListener(cache);
+	}
+
+    /**
+     * Keeps the records of the Metadata table in the given binary store, written when the records are inserted and
+     * updated, and read instead of parsing their xml.
+     *
+     * @param store
+     */
+	public void setBinaryMetadataStore(BinaryMetadataStore store) {
+		binaryMetadataStore = store;
+	}
+
     /**
      *
      * @return
@@ -151,27 +187,59 @@ public abstract class XmlSerializer {
 			return null;
 
 		String xmlData = record.getChildText("data");
-		Element metadata = Xml.loadString(xmlData, false);
+		String changeDate = record.getChildText("changedate");
+		boolean isMetadata = "Metadata".equals(table);
+		Element metadata = null;
+		if (isMetadata && parsedMetadataCache != null) {
+			metadata = parsedMetadataCache.get(id, changeDate, xmlData);
+		}
+		if (metadata == null) {
+			if (isMetadata && binaryMetadataStore != null) {
+				metadata = binaryMetadataStore.read(id, changeDate, xmlData);
+			}
+			if (metadata == null) {
+				metadata = Xml.loadString(xmlData, false);
+				if (isMetadata && binaryMetadataStore != null) {
+					binaryMetadataStore.write(id, changeDate, xmlData, metadata);
+				}
+			}
+			if (isMetadata && parsedMetadataCache != null) {
+				parsedMetadataCache.put(id, changeDate, xmlData, metadata);
+			}
+		}
 
 		logEmptyWithheld(id, metadata, "XmlSerializer.internalSelect");
 		
-		if (!isIndexingTask) { 
-			boolean hideWithheldElements = sm.getValueAsBool("system/"+Geonet.Config.HIDE_WITHHELD_ELEMENTS+"/enable", false);
-			ServiceContext context = ServiceContext.get();
-    		if(context != null) {
-    			GeonetContext gc = (GeonetContext) context.getHandlerContext(Geonet.CONTEXT_NAME);
-    			boolean canEdit = gc.getBean(AccessManager.class).canEdit(context, id);
-    			if(canEdit) {
-    				hideWithheldElements = false;
-    			}
-    		}
-    		if (hideWithheldElements || (getThreadLocal(false) != null && getThreadLocal(false).forceHideWithheld)) {
-    		    removeWithheldElements(metadata, sm);
-    		}
+		if (!isIndexingTask && isHidingWithheldElements(id)) {
+		    removeWithheldElements(metadata, sm);
 		}
 		return (Element) metadata.detach();
 	}
 
+    /**
+     * Tells if the withheld elements of a metadata are removed when it is selected for the user of the current
+     * service context: they are if the setting is on and the user can't edit the metadata, or if the thread forces it.
+     *
+     * @param id
+     * @return
+     * @throws Exception
+     */
+	public boolean isHidingWithheldElements(String id) throws Exception {
+		if (getThreadLocal(false) != null && getThreadLocal(false).forceHideWithheld) {
+			return true;
+		}
+		boolean hideWithheldElements = sm.getValueAsBool("system/"+Geonet.Config.HIDE_WITHHELD_ELEMENTS+"/enable", false);
+		ServiceContext context = ServiceContext.get();
+		if(hideWithheldElements && context != null) {
+			GeonetContext gc = (GeonetContext) context.getHandlerContext(Geonet.CONTEXT_NAME);
+			boolean canEdit = gc.getBean(AccessManager.class).canEdit(context, id);
+			if(canEdit) {
+				hideWithheldElements = false;
+			}
+		}
+		return hideWithheldElements;
+	}
+
     private boolean logEmptyWithheld(String id, Element metadata, String methodName) {
         boolean hideWithheldElements = sm.getValueAsBool("system/" + Geonet.Config.HIDE_WITHHELD_ELEMENTS + "/enable", false);
         if (hideWithheldElements && Log.isEnabledFor(Geonet.DATA_MANAGER, Priority.WARN_INT)) {
@@ -275,7 +343,8 @@ public abstract class XmlSerializer {
 		Vector<Serializable> args = new Vector<Serializable>();
 		args.add(serial);
 		args.add(schema);
-		args.add(Xml.getString(xml));
+		String data = Xml.getString(xml);
+		args.add(data);
 		args.add(createDate);
 		args.add(changeDate);
 		args.add(source);
@@ -301,6 +370,9 @@ public abstract class XmlSerializer {
 
 		String query = "INSERT INTO Metadata (" + fields + ") VALUES(" + values + ")";
 		dbms.execute(query, args.toArray());
+		if (binaryMetadataStore != null) {
+			binaryMetadataStore.write(Integer.toString(serial), changeDate, data);
+		}
 
 		return Integer.toString(serial);
 	}
@@ -371,6 +443,17 @@ public abstract class XmlSerializer {
                 dbms.execute(queryMinor, metadata, root, metadataId);
             }
         }
+        if (binaryMetadataStore != null) {
+            if (updateDateStamp) {
+                binaryMetadataStore.write(id, changeDate, metadata);
+            } else {
+                // the change date is not known, the file is written again when the record is read
+                binaryMetadataStore.delete(id);
+            }
+        }
+        for (MetadataChangeListener listener : changeListeners) {
+            listener.metadataUpdated(id);
+        }
 	}
 
     /**
@@ -387,6 +470,14 @@ public abstract class XmlSerializer {
 		// rely on the admin clearing cache and reindexing regularly
 		String query = "DELETE FROM " + table + " WHERE id=?";
 		dbms.execute(query, Integer.valueOf(id));
+		if ("Metadata".equals(table)) {
+			if (binaryMetadataStore != null) {
+				binaryMetadataStore.delete(id);
+			}
+			for (MetadataChangeListener listener : changeListeners) {
+				listener.metadataDeleted(id);
+			}
+		}
 	}
 
     /**
@@ -29,16 +29,15 @@ import jeeves.server.ServiceConfig;
 import jeeves.server.context.ServiceContext;
 import jeeves.utils.Xml;
 import org.fao.geonet.GeonetContext;
-import org.fao.geonet.constants.Edit;
 import org.fao.geonet.constants.Geonet;
-import org.fao.geonet.kernel.search.MetaSearcher;
+import org.fao.geonet.kernel.search.LuceneSearcher;
 import org.fao.geonet.kernel.search.SearchManager;
+import org.fao.geonet.kernel.search.spatial.Pair;
 import org.fao.oaipmh.exceptions.IdDoesNotExistException;
 import org.fao.oaipmh.exceptions.OaiPmhException;
 import org.jdom.Element;
 
 import java.io.File;
-import java.util.ArrayList;
 import java.util.List;
 
 //=============================================================================
@@ -47,8 +46,6 @@ public class Lib
 {
 	public static final int MAX_RECORDS = 10;
 
-	public static final String SESSION_OBJECT = "oai-list-records-result";
-
 	//---------------------------------------------------------------------------
 	//---
 	//--- API methods
@@ -115,40 +112,36 @@ public class Lib
 
 	//---------------------------------------------------------------------------
 
-	public static List<Integer> search(ServiceContext context, Element params) throws Exception
+	/** Returns the id and change date of the next metadata matching the params
+	  * after the given position, in the (change date, id) order.
+	  *
+	  * @param afterChangeDate change date of the last metadata returned, null for the first page
+	  * @param afterId         id of the last metadata returned
+	  */
+
+	public static List<Pair<String, String>> search(ServiceContext context, Element params, String afterChangeDate,
+																	String afterId, int max) throws Exception
 	{
 		GeonetContext gc = (GeonetContext) context.getHandlerContext(Geonet.CONTEXT_NAME);
 		SearchManager sm = gc.getBean(SearchManager.class);
 
-		MetaSearcher searcher = sm.newSearcher(SearchManager.LUCENE, Geonet.File.SEARCH_LUCENE);
+		LuceneSearcher searcher = (LuceneSearcher) sm.newSearcher(SearchManager.LUCENE, Geonet.File.SEARCH_LUCENE);
 
         if(context.isDebug()) context.debug("Searching with params:\n"+ Xml.getString(params));
 
-		searcher.search(context, params, dummyConfig);
-
-		params.addContent(new Element("fast").setText("true"));
-		params.addContent(new Element("from").setText("1"));
-		params.addContent(new Element("to").setText(searcher.getSize() +""));
-
-		context.info("Records found : "+ searcher.getSize());
-
-		Element records = searcher.present(context, params, dummyConfig);
-
-		records.getChild("summary").detach();
+		try
+		{
+			List<Pair<String, String>> result = searcher.searchAfter(context, params, dummyConfig, afterChangeDate,
+																					  afterId, max);
 
-		List<Integer> result = new ArrayList<Integer>();
+			context.info("Records found : "+ searcher.getSize() +", returned : "+ result.size());
 
-		for (Object o : records.getChildren())
+			return result;
+		}
+		finally
 		{
-			Element rec  = (Element) o;
-			Element info = rec.getChild("info", Edit.NAMESPACE);
-
-			result.add(Integer.parseInt(info.getChildText("id")));
+			searcher.close();
 		}
-
-		searcher.close();
-
-		return result;
 	}
 
 	//---------------------------------------------------------------------------
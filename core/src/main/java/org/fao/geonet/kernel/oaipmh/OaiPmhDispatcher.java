@@ -65,13 +65,11 @@ public class OaiPmhDispatcher
 
 	public OaiPmhDispatcher(SettingManager sm, SchemaManager scm)
 	{
-		ResumptionTokenCache cache = new ResumptionTokenCache(sm);
-		
 		register(new GetRecord());
 		register(new Identify());
-		register(new ListIdentifiers(cache, sm, scm));
+		register(new ListIdentifiers(sm, scm));
 		register(new ListMetadataFormats());
-		register(new ListRecords(cache, sm, scm));
+		register(new ListRecords(sm, scm));
 		register(new ListSets());
 	}
 
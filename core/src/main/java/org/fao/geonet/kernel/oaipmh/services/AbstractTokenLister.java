@@ -8,10 +8,9 @@ import org.fao.geonet.kernel.SchemaManager;
 import org.fao.geonet.kernel.oaipmh.Lib;
 import org.fao.geonet.kernel.oaipmh.OaiPmhDispatcher;
 import org.fao.geonet.kernel.oaipmh.OaiPmhService;
-import org.fao.geonet.kernel.oaipmh.ResumptionTokenCache;
+import org.fao.geonet.kernel.search.spatial.Pair;
 import org.fao.geonet.kernel.setting.SettingManager;
 import org.fao.oaipmh.exceptions.BadArgumentException;
-import org.fao.oaipmh.exceptions.BadResumptionTokenException;
 import org.fao.oaipmh.exceptions.NoRecordsMatchException;
 import org.fao.oaipmh.requests.AbstractRequest;
 import org.fao.oaipmh.requests.TokenListRequest;
@@ -27,7 +26,6 @@ import java.util.List;
 
 public abstract class AbstractTokenLister implements OaiPmhService {
 
-	protected ResumptionTokenCache cache;
 	private SettingManager settingMan;
 	private SchemaManager schemaMan;
 	
@@ -66,13 +64,17 @@ public abstract class AbstractTokenLister implements OaiPmhService {
 		return dateUntil;
 	}
 	
-	public AbstractTokenLister(ResumptionTokenCache cache, SettingManager sm, SchemaManager scm) {
-		this.cache=cache;
+	public AbstractTokenLister(SettingManager sm, SchemaManager scm) {
 		this.settingMan = sm;
 		this.schemaMan = scm;
 	}
 	
 	
+	/**
+	 * Each page is read by a new search of the records following the position
+	 * kept in the resumption token (see {@link GeonetworkResumptionToken}), so
+	 * nothing is kept on the server between two pages.
+	 */
 	public AbstractResponse execute(AbstractRequest request,
 			ServiceContext context) throws Exception {
 
@@ -81,103 +83,120 @@ public abstract class AbstractTokenLister implements OaiPmhService {
 		
 		TokenListRequest  req = (TokenListRequest)  request;
 
-		//UserSession  session = context.getUserSession();
-		SearchResult result;
-
-		//String token = req.getResumptionToken();
 		String strToken = req.getResumptionToken();
-		GeonetworkResumptionToken token = null;
-		
-
-		
-		int pos = 0;
+		GeonetworkResumptionToken token = new GeonetworkResumptionToken(req);
 
 		if ( strToken == null )
 		{
             if(Log.isDebugEnabled(Geonet.OAI_HARVESTER))
                 Log.debug(Geonet.OAI_HARVESTER,"OAI " +this.getClass().getSimpleName()+ " : new request (no resumptionToken)");
-			Element params = new Element("request");
 
 			ISODate from   = req.getFrom();
 			ISODate until  = req.getUntil();
-			String  set    = req.getSet();
-			String  prefix = req.getMetadataPrefix();
-
-			if (from != null)
-			{
-				String sFrom = from.isShort ? from.getDate() : from.toString();
-				params.addContent(new Element(getDateFrom()).setText(sFrom));
-			}
-
-			if (until != null)
-			{
-				String sTo = until.isShort ? until.getDate() : until.toString();
-				params.addContent(new Element(getDateUntil()).setText(sTo));
-			}
 
 			if (from != null && until != null && from.sub(until) > 0)
 				throw new BadArgumentException("From is greater than until");
+		}
+		else
+		{
+            if(Log.isDebugEnabled(Geonet.OAI_HARVESTER))
+                Log.debug(Geonet.OAI_HARVESTER,"OAI " +this.getClass().getSimpleName()+ " : using ResumptionToken :"+strToken);
+		}
 
-			if (set != null)
-				params.addContent(new Element("category").setText(set));
-
-			params.addContent(new Element("_schema").setText(prefix));
-
-			// now do the search
-			result     = new SearchResult(prefix);
-			if (schemaMan.existsSchema(prefix)) {
-				result.setIds(Lib.search(context, params));
-			} else {
-				// collect up all the schemas that we can convert to create prefix,
-				// search ids and add to the result set 
-				List<String> schemas = getSchemasThatCanConvertTo(prefix);
-				for (String schema : schemas) {
-					params.removeChild("_schema");
-					params.addContent(new Element("_schema").setText(schema));
-					result.addIds(Lib.search(context, (Element)params.clone()));
-				}
-				if (schemas.size() == 0) result.setIds(new ArrayList<Integer>());
-			}
+		Element params = new Element("request");
 
-			if (result.getIds().size() == 0)
-				throw new NoRecordsMatchException("No results");
+		if (token.getFrom().length() != 0)
+			params.addContent(new Element(getDateFrom()).setText(token.getFrom()));
+
+		if (token.getUntil().length() != 0)
+			params.addContent(new Element(getDateUntil()).setText(token.getUntil()));
+
+		if (token.getSet().length() != 0)
+			params.addContent(new Element("category").setText(token.getSet()));
+
+		// search the schemas that we can convert to create prefix at once
+		String schemas = getSchemas(token.getPrefix());
+
+		if (schemas == null)
+			throw new NoRecordsMatchException("No results");
+
+		params.addContent(new Element("_schema").setText(schemas));
+
+		// skip the pages of records that cannot be disseminated
+		ListResponse res;
+		boolean more;
+
+		do
+		{
+			String after = token.getChangeDate().length() == 0 ? null : token.getChangeDate();
+
+			// one more record than the page tells if there is a next page
+			List<Pair<String, String>> page = Lib.search(context, (Element) params.clone(), after, token.getId(),
+																		Lib.MAX_RECORDS + 1);
 
-			// we only need a new token if the result set is big enough
-			if (result.getIds().size() > Lib.MAX_RECORDS ) {
-				token = new GeonetworkResumptionToken(req,result);
-				cache.storeResumptionToken(token);
+			more = page.size() > Lib.MAX_RECORDS;
+
+			if (more)
+				page = page.subList(0, Lib.MAX_RECORDS);
+
+			List<Integer> ids = new ArrayList<Integer>();
+
+			for (Pair<String, String> record : page)
+				ids.add(Integer.parseInt(record.one()));
+
+			SearchResult result = new SearchResult(token.getPrefix());
+			result.setIds(ids);
+
+			res = processRequest(req, 0, result, context);
+
+			if (more)
+			{
+				Pair<String, String> last = page.get(page.size() - 1);
+				token.setupToken(last.two(), last.one(), token.getPos() + page.size());
 			}
-			
 		}
-		else
+		while (more && res.getSize() == 0);
+
+		if (strToken == null && !more)
 		{
-			//result = (SearchResult) session.getProperty(Lib.SESSION_OBJECT);
-			token = cache.getResumptionToken( GeonetworkResumptionToken.buildKey(req)  );
-            if(Log.isDebugEnabled(Geonet.OAI_HARVESTER))
-                Log.debug(Geonet.OAI_HARVESTER,"OAI ListRecords : using ResumptionToken :"+GeonetworkResumptionToken.buildKey(req));
-			
-			if (token  == null)
-				throw new BadResumptionTokenException("No session for token : "+ GeonetworkResumptionToken.buildKey(req));
-
-			result = token.getRes();
-			
-			//pos = result.parseToken(token);
-			pos = GeonetworkResumptionToken.getPos(req);
+			// the whole list fits in one page: no token at all
+			if (res.getSize() == 0)
+				throw new NoRecordsMatchException("No results");
+
+			return res;
 		}
 
-		ListResponse res = processRequest(req,pos,result,context);
-		pos = pos + res.getSize();
-		
-		if (token == null && res.getSize() == 0)
-			throw new NoRecordsMatchException("No results");
-		
-		//result.setupToken(res, pos);
-		if (token != null) token.setupToken(pos);
+		if (!more)
+			token.reset();
+
 		res.setResumptionToken(token);
 
 		return res;
-		
-		
+	}
+
+	//---------------------------------------------------------------------------
+	/** Returns the schema matching the prefix or the schemas that can convert
+	  * to it, separated by 'or', null if there is none
+	  */
+
+	private String getSchemas(String prefix) {
+		if (schemaMan.existsSchema(prefix))
+			return prefix;
+
+		List<String> schemas = getSchemasThatCanConvertTo(prefix);
+
+		if (schemas.isEmpty())
+			return null;
+
+		StringBuilder sb = new StringBuilder();
+
+		for (String schema : schemas) {
+			if (sb.length() != 0)
+				sb.append(" or ");
+			sb.append(schema);
+		}
+
+		return sb.toString();
 	}
 
 	//---------------------------------------------------------------------------
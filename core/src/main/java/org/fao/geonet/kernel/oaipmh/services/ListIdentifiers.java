@@ -31,7 +31,6 @@ import jeeves.server.context.ServiceContext;
 import org.fao.geonet.constants.Geonet;
 import org.fao.geonet.GeonetContext;
 import org.fao.geonet.kernel.oaipmh.Lib;
-import org.fao.geonet.kernel.oaipmh.ResumptionTokenCache;
 import org.fao.geonet.kernel.SchemaManager;
 import org.fao.geonet.kernel.setting.SettingManager;
 import org.fao.oaipmh.requests.ListIdentifiersRequest;
@@ -47,8 +46,8 @@ import org.jdom.Element;
 
 public class ListIdentifiers extends AbstractTokenLister
 {
-	public ListIdentifiers(ResumptionTokenCache cache, SettingManager sm, SchemaManager scm) {
-		super(cache, sm, scm);
+	public ListIdentifiers(SettingManager sm, SchemaManager scm) {
+		super(sm, scm);
 	}
 
 	public String getVerb() { return ListIdentifiersRequest.VERB; }
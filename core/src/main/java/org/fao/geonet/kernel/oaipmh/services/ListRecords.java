@@ -27,7 +27,6 @@ package org.fao.geonet.kernel.oaipmh.services;
 import jeeves.server.context.ServiceContext;
 
 import org.fao.geonet.kernel.oaipmh.Lib;
-import org.fao.geonet.kernel.oaipmh.ResumptionTokenCache;
 import org.fao.geonet.kernel.SchemaManager;
 import org.fao.geonet.kernel.setting.SettingManager;
 import org.fao.oaipmh.exceptions.CannotDisseminateFormatException;
@@ -44,8 +43,8 @@ public class ListRecords extends AbstractTokenLister
 {
 
 
-	public ListRecords(ResumptionTokenCache cache, SettingManager sm, SchemaManager scm) {
-	    super(cache, sm, scm);
+	public ListRecords(SettingManager sm, SchemaManager scm) {
+	    super(sm, scm);
 	}
 
 	public String getVerb() { return ListRecordsRequest.VERB; }
@@ -0,0 +1,285 @@
+//==============================================================================
+//===	Copyright (C) 2001-2007 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package org.fao.geonet.kernel.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DocTermOrds;
+import org.apache.lucene.index.DocTermOrds.TermOrdsIterator;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefHash;
+import org.apache.lucene.util.PriorityQueue;
+import org.fao.geonet.kernel.search.LuceneConfig.Facet;
+
+/**
+ * Counts the facet values of the hits without the taxonomy index.
+ * <p/>
+ * The values are read from the not tokenized {@link Facet#FIELD_PREFIX} fields added to the documents when the
+ * {@link Facet.Engine#DOC_VALUES} engine is configured. The terms of these fields are uninverted once per segment
+ * (and kept by the {@link FieldCache} until the segment is closed), so the hits are counted in an int array per field
+ * indexed by the term ordinal of the segment. When only one segment has values of a field (e.g. an optimized
+ * index), the ordinals are in the order of the values and only the values with the highest counts are decoded.
+ * Otherwise the ordinals of the segments do not match: every value counted in a segment is decoded when the next
+ * segment is collected, and its count is added to the count of the value.
+ * <p/>
+ * A collector is not thread safe, use one per search.
+ */
+final class DocValuesFacetCollector extends Collector {
+    private final List<String> indexKeys;
+    private final String[] fields;
+    private final BytesRefHash[] values;
+    private final int[][] totals;
+
+    private AtomicReader reader;
+    private final DocTermOrds[] ords;
+    private final TermOrdsIterator[] iterators;
+    private final int[][] counts;
+    private final int[] buffer = new int[16];
+
+    /**
+     * @param indexKeys the index keys of the facets of the summary
+     */
+    DocValuesFacetCollector(Collection<String> indexKeys) {
+        this(indexKeys, Facet.FIELD_PREFIX);
+    }
+
+    /**
+     * @param indexKeys the index keys of the facets
+     * @param fieldPrefix prepended to the index keys to get the names of the not tokenized fields counted
+     */
+    DocValuesFacetCollector(Collection<String> indexKeys, String fieldPrefix) {
+        this.indexKeys = new ArrayList<String>(indexKeys);
+        int size = this.indexKeys.size();
+        fields = new String[size];
+        values = new BytesRefHash[size];
+        totals = new int[size][];
+        for (int i = 0; i < size; i++) {
+            fields[i] = fieldPrefix + this.indexKeys.get(i);
+        }
+        ords = new DocTermOrds[size];
+        iterators = new TermOrdsIterator[size];
+        counts = new int[size][];
+    }
+
+    @Override
+    public void setScorer(Scorer scorer) {
+    }
+
+    @Override
+    public void setNextReader(AtomicReaderContext context) throws IOException {
+        mergeSegment();
+        reader = context.reader();
+        for (int i = 0; i < fields.length; i++) {
+            DocTermOrds segmentOrds = FieldCache.DEFAULT.getDocTermOrds(reader, fields[i]);
+            if (segmentOrds.numTerms() == 0) {
+                ords[i] = null;
+                counts[i] = null;
+            } else {
+                ords[i] = segmentOrds;
+                counts[i] = new int[segmentOrds.numTerms()];
+            }
+            iterators[i] = null;
+        }
+    }
+
+    @Override
+    public void collect(int doc) {
+        for (int i = 0; i < ords.length; i++) {
+            if (ords[i] == null) {
+                continue;
+            }
+            TermOrdsIterator iterator = ords[i].lookup(doc, iterators[i]);
+            iterators[i] = iterator;
+            int[] fieldCounts = counts[i];
+            int read;
+            do {
+                read = iterator.read(buffer);
+                for (int j = 0; j < read; j++) {
+                    fieldCounts[buffer[j]]++;
+                }
+            } while (read == buffer.length);
+        }
+    }
+
+    @Override
+    public boolean acceptsDocsOutOfOrder() {
+        return true;
+    }
+
+    /**
+     * Adds the counts of the current segment to the counts by value.
+     */
+    private void mergeSegment() throws IOException {
+        for (int i = 0; i < ords.length; i++) {
+            mergeSegment(i);
+        }
+    }
+
+    private void mergeSegment(int i) throws IOException {
+        if (ords[i] == null) {
+            return;
+        }
+        TermsEnum termsEnum = ords[i].getOrdTermsEnum(reader);
+        int[] fieldCounts = counts[i];
+        if (values[i] == null) {
+            values[i] = new BytesRefHash();
+            totals[i] = new int[Math.max(16, fieldCounts.length)];
+        }
+        for (int ord = 0; ord < fieldCounts.length; ord++) {
+            int count = fieldCounts[ord];
+            if (count == 0) {
+                continue;
+            }
+            int id = values[i].add(ords[i].lookupTerm(termsEnum, ord));
+            if (id < 0) {
+                id = -id - 1;
+            } else if (id >= totals[i].length) {
+                totals[i] = ArrayUtil.grow(totals[i], id + 1);
+            }
+            totals[i][id] += count;
+        }
+        ords[i] = null;
+        counts[i] = null;
+    }
+
+    /**
+     * @param indexKey the index key of a facet
+     * @param max the maximum number of values
+     * @return the values with the highest counts, by count descending (and value ascending for the same count)
+     */
+    Map<String, Double> getFacetValues(String indexKey, int max) throws IOException {
+        int index = indexKeys.indexOf(indexKey);
+        if (index < 0 || max <= 0) {
+            return Collections.emptyMap();
+        }
+        if (values[index] == null) {
+            return getSegmentValues(index, max);
+        }
+        mergeSegment(index);
+        BytesRefHash fieldValues = values[index];
+        TopValues top = new TopValues(fieldValues, totals[index], Math.min(max, fieldValues.size()));
+        for (int id = 0; id < fieldValues.size(); id++) {
+            top.insertWithOverflow(id);
+        }
+        int[] ids = new int[top.size()];
+        for (int i = ids.length - 1; i >= 0; i--) {
+            ids[i] = top.pop();
+        }
+        Map<String, Double> facetValues = new LinkedHashMap<String, Double>();
+        BytesRef value = new BytesRef();
+        for (int id : ids) {
+            facetValues.put(fieldValues.get(id, value).utf8ToString(), (double) totals[index][id]);
+        }
+        return facetValues;
+    }
+
+    /**
+     * Returns the values with the highest counts when no other segment was counted, without merging: the ordinals of
+     * a segment are in the order of the values, so only the values returned are decoded.
+     */
+    private Map<String, Double> getSegmentValues(int index, int max) throws IOException {
+        if (ords[index] == null) {
+            return Collections.emptyMap();
+        }
+        int[] fieldCounts = counts[index];
+        TopOrds top = new TopOrds(fieldCounts, Math.min(max, fieldCounts.length));
+        for (int ord = 0; ord < fieldCounts.length; ord++) {
+            if (fieldCounts[ord] > 0) {
+                top.insertWithOverflow(ord);
+            }
+        }
+        int[] topOrds = new int[top.size()];
+        for (int i = topOrds.length - 1; i >= 0; i--) {
+            topOrds[i] = top.pop();
+        }
+        Map<String, Double> facetValues = new LinkedHashMap<String, Double>();
+        TermsEnum termsEnum = ords[index].getOrdTermsEnum(reader);
+        for (int ord : topOrds) {
+            facetValues.put(ords[index].lookupTerm(termsEnum, ord).utf8ToString(), (double) fieldCounts[ord]);
+        }
+        return facetValues;
+    }
+
+    /**
+     * The ordinals of a segment with the highest counts, the least one on top.
+     */
+    private static final class TopOrds extends PriorityQueue<Integer> {
+        private final int[] counts;
+
+        TopOrds(int[] counts, int max) {
+            super(max);
+            this.counts = counts;
+        }
+
+        @Override
+        protected boolean lessThan(Integer a, Integer b) {
+            int countA = counts[a];
+            int countB = counts[b];
+            if (countA != countB) {
+                return countA < countB;
+            }
+            // a greater ordinal is a greater value
+            return a > b;
+        }
+    }
+
+    /**
+     * The ids of the values with the highest counts, the least one on top.
+     */
+    private static final class TopValues extends PriorityQueue<Integer> {
+        private final BytesRefHash values;
+        private final int[] totals;
+        private final BytesRef value1 = new BytesRef();
+        private final BytesRef value2 = new BytesRef();
+
+        TopValues(BytesRefHash values, int[] totals, int max) {
+            super(max);
+            this.values = values;
+            this.totals = totals;
+        }
+
+        @Override
+        protected boolean lessThan(Integer a, Integer b) {
+            int countA = totals[a];
+            int countB = totals[b];
+            if (countA != countB) {
+                return countA < countB;
+            }
+            return values.get(a, value1).compareTo(values.get(b, value2)) > 0;
+        }
+    }
+}
@@ -115,4 +115,25 @@ public class DuplicateDocFilter extends Filter {
 		return new DocIdBitSet(bits);
 	}
 
+    /**
+     * Filters of the same query (see {@link QueryResultCache#equivalent(Query, Query)}) and maximum number of results
+     * select the same documents.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof DuplicateDocFilter)) {
+            return false;
+        }
+        DuplicateDocFilter other = (DuplicateDocFilter) obj;
+        return _maxResults == other._maxResults && QueryResultCache.equivalent(_query, other._query);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * QueryResultCache.hashCode(_query) + _maxResults;
+    }
+
 }
@@ -0,0 +1,114 @@
+//==============================================================================
+//===	Copyright (C) 2001-2008 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+package org.fao.geonet.kernel.search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.fao.geonet.kernel.search.SearchManager.LuceneFieldAttribute;
+import org.jdom.Element;
+
+/**
+ * The fields of a Lucene document as produced by the index-fields.xsl and language-index-fields.xsl stylesheets of a
+ * schema (a <code>&lt;Document locale=""&gt;</code> element with <code>&lt;Field name string store index/&gt;</code>
+ * children), kept as plain values instead of a JDOM tree.
+ */
+final class IndexDocument {
+    private final String locale;
+    private final List<IndexField> fields = new ArrayList<IndexField>();
+
+    /**
+     * @param locale the locale attribute of the document, may be null
+     */
+    IndexDocument(String locale) {
+        this.locale = locale;
+    }
+
+    String getLocale() {
+        return locale;
+    }
+
+    List<IndexField> getFields() {
+        return fields;
+    }
+
+    void addField(String name, String string, boolean store, boolean index) {
+        fields.add(new IndexField(name, string, store, index));
+    }
+
+    /**
+     * Adds a field made by {@link SearchManager#makeField(String, String, boolean, boolean)}.
+     */
+    void addField(Element field) {
+        addField(field.getAttributeValue(LuceneFieldAttribute.NAME.toString()),
+                field.getAttributeValue(LuceneFieldAttribute.STRING.toString()),
+                "true".equals(field.getAttributeValue(LuceneFieldAttribute.STORE.toString())),
+                "true".equals(field.getAttributeValue(LuceneFieldAttribute.INDEX.toString())));
+    }
+
+    /**
+     * @return the document as the xml produced by the index stylesheets, for the {@link
+     * org.fao.geonet.kernel.search.function.DocumentBoosting} and the logs
+     */
+    Element toElement() {
+        Element document = new Element("Document");
+        if (locale != null) {
+            document.setAttribute("locale", locale);
+        }
+        for (IndexField field : fields) {
+            document.addContent(SearchManager.makeField(field.name, field.string, field.store, field.index));
+        }
+        return document;
+    }
+
+    static final class IndexField implements Comparable<IndexField> {
+        final String name;
+        final String string;
+        final boolean store;
+        final boolean index;
+
+        IndexField(String name, String string, boolean store, boolean index) {
+            this.name = name;
+            this.string = string == null ? "" : string;
+            this.store = store;
+            this.index = index;
+        }
+
+        /**
+         * Orders the fields on name, value, store and index, like the attribute values of the Field elements.
+         */
+        public int compareTo(IndexField other) {
+            int result = name.compareTo(other.name);
+            if (result == 0) {
+                result = string.compareTo(other.string);
+            }
+            if (result == 0) {
+                result = Boolean.toString(store).compareTo(Boolean.toString(other.store));
+            }
+            if (result == 0) {
+                result = Boolean.toString(index).compareTo(Boolean.toString(other.index));
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+//==============================================================================
+//===	Copyright (C) 2001-2008 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+package org.fao.geonet.kernel.search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Receives the output of the index stylesheets of a schema and collects the <code>Document</code> elements and their
+ * <code>Field</code> children as {@link IndexDocument}s, so that the output is not built as a JDOM tree.
+ */
+final class IndexDocumentHandler extends DefaultHandler {
+    private final List<IndexDocument> documents = new ArrayList<IndexDocument>();
+    private IndexDocument current;
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+        String name = localName.length() > 0 ? localName : qName;
+        if ("Document".equals(name)) {
+            current = new IndexDocument(attributes.getValue("locale"));
+            documents.add(current);
+        } else if ("Field".equals(name) && current != null) {
+            current.addField(attributes.getValue(SearchManager.LuceneFieldAttribute.NAME.toString()),
+                    attributes.getValue(SearchManager.LuceneFieldAttribute.STRING.toString()),
+                    "true".equals(attributes.getValue(SearchManager.LuceneFieldAttribute.STORE.toString())),
+                    "true".equals(attributes.getValue(SearchManager.LuceneFieldAttribute.INDEX.toString())));
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+        String name = localName.length() > 0 ? localName : qName;
+        if ("Document".equals(name)) {
+            current = null;
+        }
+    }
+
+    /**
+     * @return the documents in the order of the output
+     */
+    List<IndexDocument> getDocuments() {
+        return documents;
+    }
+}
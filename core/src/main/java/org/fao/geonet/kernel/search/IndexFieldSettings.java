@@ -0,0 +1,128 @@
+//==============================================================================
+//===	Copyright (C) 2001-2008 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+package org.fao.geonet.kernel.search;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.FieldType.NumericType;
+import org.fao.geonet.kernel.search.LuceneConfig.Facet;
+import org.fao.geonet.kernel.search.LuceneConfig.FacetConfig;
+import org.fao.geonet.kernel.search.LuceneConfig.LuceneConfigNumericField;
+
+/**
+ * Indexing settings of each field name, read once from a {@link LuceneConfig} instead of for every field of every
+ * indexed document.
+ * <p/>
+ * The {@link FieldType}s are frozen and shared by all the documents. A new instance must be created when the Lucene
+ * configuration is reloaded.
+ */
+final class IndexFieldSettings {
+    private final LuceneConfig config;
+    private final ConcurrentMap<String, Settings> fields = new ConcurrentHashMap<String, Settings>();
+
+    IndexFieldSettings(LuceneConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * @return true if the settings were read from this Lucene configuration
+     */
+    boolean isFor(LuceneConfig luceneConfig) {
+        return config == luceneConfig;
+    }
+
+    Settings get(String name) {
+        Settings settings = fields.get(name);
+        if (settings == null) {
+            settings = new Settings(config, name);
+            Settings existing = fields.putIfAbsent(name, settings);
+            if (existing != null) {
+                settings = existing;
+            }
+        }
+        return settings;
+    }
+
+    /**
+     * The settings of one field name.
+     */
+    static final class Settings {
+        final LuceneConfigNumericField numeric;
+        final Float boost;
+        /**
+         * True to add the values of the field to the taxonomy index.
+         */
+        final boolean facet;
+        /**
+         * The not tokenized field the values are copied to for the doc values facet engine, null if the field is not
+         * a facet or if the taxonomy engine is used.
+         */
+        final String facetField;
+        private final FieldType[] types = new FieldType[4];
+
+        private Settings(LuceneConfig config, String name) {
+            this.numeric = config.getNumericField(name);
+            this.boost = config.getFieldBoost(name);
+            Map<String, FacetConfig> hits = config.getTaxonomy().get("hits");
+            boolean isFacet = hits != null && hits.get(name) != null;
+            boolean docValues = config.getFacetEngine() == Facet.Engine.DOC_VALUES;
+            this.facet = isFacet && !docValues;
+            this.facetField = isFacet && docValues ? Facet.FIELD_PREFIX + name : null;
+
+            boolean tokenized = config.isTokenizedField(name);
+            for (int i = 0; i < types.length; i++) {
+                FieldType fieldType = new FieldType();
+                fieldType.setStored((i & 1) != 0);
+                fieldType.setIndexed((i & 2) != 0);
+                fieldType.setTokenized(tokenized);
+                if (numeric != null) {
+                    fieldType.setNumericType(numericType(numeric.getType()));
+                }
+                fieldType.freeze();
+                types[i] = fieldType;
+            }
+        }
+
+        /**
+         * @return the shared field type, with the numeric type set for numeric fields
+         */
+        FieldType type(boolean store, boolean index) {
+            return types[(store ? 1 : 0) | (index ? 2 : 0)];
+        }
+
+        private static NumericType numericType(String type) {
+            if ("double".equals(type)) {
+                return NumericType.DOUBLE;
+            } else if ("float".equals(type)) {
+                return NumericType.FLOAT;
+            } else if ("long".equals(type)) {
+                return NumericType.LONG;
+            } else {
+                return NumericType.INT;
+            }
+        }
+    }
+}
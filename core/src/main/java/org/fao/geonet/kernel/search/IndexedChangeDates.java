@@ -0,0 +1,245 @@
+//==============================================================================
+//===	Copyright (C) 2001-2007 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package org.fao.geonet.kernel.search;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Walks the metadata ids of the index in increasing numeric order with the change date of each record, so the index
+ * can be compared with the Metadata table (read with <code>ORDER BY id</code>) by a merge join.
+ * <p/>
+ * The ids are read from the term dictionary of the _id field. The terms are sorted as strings, so the numbers with
+ * one digit are read first, then the numbers with two digits, etc. Within a pass the terms with another number of
+ * digits are skipped with a seek. The change date of a record is read from the _changeDate terms uninverted per
+ * segment by the {@link FieldCache} (as for the sort on the change date), no stored field is loaded. Terms that are not
+ * positive numbers are skipped.
+ * <p/>
+ * Not thread safe. The cursor holds an index reader until it is closed.
+ */
+public class IndexedChangeDates implements Closeable {
+    /** The most digits of a positive int */
+    private static final int MAX_DIGITS = String.valueOf(Integer.MAX_VALUE).length();
+
+    private final Closeable lease;
+    private final List<AtomicReaderContext> leaves;
+    private final FieldCache.DocTermsIndex[] changeDates;
+    private final Bits liveDocs;
+    private final TermsEnum terms;
+    private final BytesRef seekTerm = new BytesRef(MAX_DIGITS);
+    private final BytesRef changeDateTerm = new BytesRef();
+    private DocsEnum docs;
+
+    /** The number of digits of the ids of the current pass */
+    private int digits;
+    private boolean passOver = true;
+    private boolean exhausted;
+
+    private int id;
+    private String changeDate;
+
+    /**
+     * @param reader the reader of the index
+     * @param lease released with the reader when the cursor is closed
+     */
+    IndexedChangeDates(IndexReader reader, Closeable lease) throws IOException {
+        this.lease = lease;
+        this.leaves = reader.leaves();
+        this.changeDates = new FieldCache.DocTermsIndex[leaves.size()];
+        this.liveDocs = MultiFields.getLiveDocs(reader);
+
+        Terms idTerms = MultiFields.getTerms(reader, LuceneIndexField.ID);
+        this.terms = idTerms == null ? null : idTerms.iterator(null);
+        this.exhausted = terms == null;
+    }
+
+    /**
+     * Moves to the next record of the index.
+     *
+     * @return false if there are no more records
+     */
+    public boolean next() throws IOException {
+        while (!exhausted) {
+            BytesRef term = nextTerm();
+            if (term == null) {
+                continue;
+            }
+            docs = terms.docs(liveDocs, docs, 0);
+            int doc = docs.nextDoc();
+            if (doc == DocIdSetIterator.NO_MORE_DOCS) {
+                // only deleted documents have this id
+                continue;
+            }
+            try {
+                id = Integer.parseInt(term.utf8ToString());
+            } catch (NumberFormatException e) {
+                // more than Integer.MAX_VALUE
+                continue;
+            }
+            changeDate = changeDate(doc);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the metadata id of the current record
+     */
+    public int id() {
+        return id;
+    }
+
+    /**
+     * @return the indexed change date of the current record (lower case) or null if it has none
+     */
+    public String changeDate() {
+        return changeDate;
+    }
+
+    public void close() throws IOException {
+        lease.close();
+    }
+
+    /**
+     * Returns the next term of the current pass, or null when the pass is over (or {@link #exhausted} is set).
+     */
+    private BytesRef nextTerm() throws IOException {
+        BytesRef term;
+        if (passOver) {
+            digits++;
+            seekTerm.grow(digits);
+            seekTerm.bytes[0] = '1';
+            for (int i = 1; i < digits; i++) {
+                seekTerm.bytes[i] = '0';
+            }
+            seekTerm.length = digits;
+            if (digits > MAX_DIGITS || terms.seekCeil(seekTerm) == TermsEnum.SeekStatus.END) {
+                // no term is greater than 10..0 so there are no more numbers with as many digits or more
+                exhausted = true;
+                return null;
+            }
+            term = terms.term();
+        } else {
+            term = terms.next();
+        }
+        term = skipOtherLengths(term);
+        passOver = term == null;
+        return term;
+    }
+
+    /**
+     * Returns the first term from the given one that is a number with the digits of the current pass, or null if
+     * there is none.
+     */
+    private BytesRef skipOtherLengths(BytesRef term) throws IOException {
+        while (term != null) {
+            int prefix = digitPrefix(term);
+            if (prefix == digits && term.length == digits) {
+                return term;
+            }
+            if (prefix >= digits) {
+                // a longer number, skip all the terms that start with the same digits
+                seekTerm.copyBytes(term);
+                seekTerm.length = digits;
+                if (!increment(seekTerm)) {
+                    return null;
+                }
+            } else if (prefix > 0 && prefix == term.length) {
+                // a shorter number, the next candidate is the number padded with zeros
+                seekTerm.copyBytes(term);
+                seekTerm.grow(digits);
+                for (int i = term.length; i < digits; i++) {
+                    seekTerm.bytes[i] = '0';
+                }
+                seekTerm.length = digits;
+            } else {
+                // not a number
+                term = terms.next();
+                continue;
+            }
+            term = terms.seekCeil(seekTerm) == TermsEnum.SeekStatus.END ? null : terms.term();
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of digits the term starts with (0 if it starts with a zero)
+     */
+    private static int digitPrefix(BytesRef term) {
+        if (term.length == 0 || term.bytes[term.offset] == '0') {
+            return 0;
+        }
+        int i = 0;
+        while (i < term.length) {
+            byte b = term.bytes[term.offset + i];
+            if (b < '0' || b > '9') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Adds one to the number of the term.
+     *
+     * @return false if all the digits are nines (the pass is over)
+     */
+    private static boolean increment(BytesRef term) {
+        for (int i = term.offset + term.length - 1; i >= term.offset; i--) {
+            if (term.bytes[i] != '9') {
+                term.bytes[i]++;
+                return true;
+            }
+            term.bytes[i] = '0';
+        }
+        return false;
+    }
+
+    private String changeDate(int doc) throws IOException {
+        int leaf = ReaderUtil.subIndex(doc, leaves);
+        AtomicReaderContext context = leaves.get(leaf);
+        if (changeDates[leaf] == null) {
+            changeDates[leaf] = FieldCache.DEFAULT.getTermsIndex(context.reader(), "_changeDate");
+        }
+        int ord = changeDates[leaf].getOrd(doc - context.docBase);
+        if (ord == 0) {
+            return null;
+        }
+        return changeDates[leaf].lookup(ord, changeDateTerm).utf8ToString();
+    }
+}
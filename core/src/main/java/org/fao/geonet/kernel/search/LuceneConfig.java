@@ -109,6 +109,36 @@ public class LuceneConfig {
         public enum SortOrder {
             ASCENDING, DESCENDING
         }
+
+        /**
+         * Define how the facet summary is computed.
+         */
+        public enum Engine {
+            /**
+             * Count the categories of the taxonomy index
+             */
+            TAXONOMY,
+            /**
+             * Count the terms of the facet fields of the documents, uninverted
+             * per segment (see {@link DocValuesFacetCollector})
+             */
+            DOC_VALUES;
+
+            public static Engine find(String lookupName, Engine defaultValue) {
+                for (Engine engine : values()) {
+                    if (engine.name().replace("_", "").equalsIgnoreCase(lookupName)) {
+                        return engine;
+                    }
+                }
+                return defaultValue;
+            }
+        }
+
+        /**
+         * Prefix of the not tokenized field added to the documents for each
+         * facet value when the {@link Engine#DOC_VALUES} engine is used.
+         */
+        public static final String FIELD_PREFIX = "_facet_";
     }
     
     /**
@@ -315,6 +345,7 @@ public class LuceneConfig {
 	private boolean useNRTManagerReopenThread = true;
 	private double nrtManagerReopenThreadMaxStaleSec = 5;
 	private double nrtManagerReopenThreadMinStaleSec = 0.1f;
+	private Facet.Engine facetEngine = Facet.Engine.TAXONOMY;
 	
 	private Version LUCENE_VERSION = Geonet.LUCENE_VERSION;
 	private Set<String> multilingualSortFields = new HashSet<String>();
@@ -427,6 +458,15 @@ public class LuceneConfig {
 			                "Invalid Double value for nrtManagerReopenThreadMinStaleSec. Using default value.");
 			    }
 			}
+			String engine = elem.getChildText("facetEngine");
+			if (engine != null) {
+			    facetEngine = Facet.Engine.find(engine.trim(), null);
+			    if (facetEngine == null) {
+			        Log.warning(Geonet.SEARCH_ENGINE,
+			                "Invalid value for facetEngine: " + engine + ". Using default value.");
+			        facetEngine = Facet.Engine.TAXONOMY;
+			    }
+			}
 
 			// Tokenized fields
 			elem = luceneConfig.getChild("tokenized");
@@ -970,6 +1010,7 @@ public class LuceneConfig {
 		sb.append("  * trackDocScores: " + isTrackDocScores() + " \n");
 		sb.append("  * trackMaxScore: " + isTrackMaxScore() + " \n");
 		sb.append("  * docsScoredInOrder: " + isDocsScoredInOrder() + " \n");
+		sb.append(" * Facet engine: " + getFacetEngine() + "\n");
 		sb.append("Taxonomy configuration: "
 				+ getTaxonomy().keySet().toString() + "\n");
 		for (String key : getTaxonomy().keySet()) {
@@ -1032,6 +1073,14 @@ public class LuceneConfig {
 		this.taxonomy = taxonomy;
 	}
 
+	/**
+	 * @return the engine computing the facet summary. The index must be
+	 *         rebuilt when the engine is changed.
+	 */
+	public Facet.Engine getFacetEngine() {
+		return facetEngine;
+	}
+
     public static String multilingualSortFieldName(String fieldName, String locale) {
         return fieldName + "|" + locale;
     }
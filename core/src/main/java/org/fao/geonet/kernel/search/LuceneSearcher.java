@@ -39,7 +39,6 @@ import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.document.DocumentStoredFieldVisitor;
 import org.apache.lucene.facet.search.FacetsCollector;
 import org.apache.lucene.facet.search.params.CountFacetRequest;
 import org.apache.lucene.facet.search.params.FacetRequest;
@@ -58,6 +57,7 @@ import org.apache.lucene.queries.ChainedFilter;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.CachingWrapperFilter;
+import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.Filter;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MatchAllDocsQuery;
@@ -72,6 +72,7 @@ import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TermRangeQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.util.BytesRef;
 import org.fao.geonet.GeonetContext;
 import org.fao.geonet.constants.Edit;
 import org.fao.geonet.constants.Geonet;
@@ -114,6 +115,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * search metadata locally using lucene.
@@ -141,6 +143,17 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
 	 */
 	private String _geomWKT = null;
     private long _versionToken = -1;
+    private final SearchResultCache _resultCache = new SearchResultCache();
+    /**
+     * Key of the current query in the results shared between users, null if the results are not shared.
+     */
+    private QueryResultCache.Key _sharedResultKey;
+
+    /**
+     * Total order of the metadata used by {@link #searchAfter}.
+     */
+    private static final Sort CHANGE_DATE_ORDER = new Sort(new SortField("_changeDate", SortField.Type.STRING),
+            new SortField(LuceneIndexField.ID, SortField.Type.STRING));
 
     /**
      * constructor
@@ -272,60 +285,55 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
 			response.addContent((Element)_elSummary.clone());
 
 		if (getTo() > 0) {
-			TopDocs tdocs = performQuery(getFrom()-1, getTo(), false); // get enough hits to show a page	
-
-			int nrHits = getTo() - (getFrom()-1);
-			if (tdocs.scoreDocs.length >= nrHits) {
-				for (int i = 0; i < nrHits; i++) {
-					Document doc;
-                    IndexAndTaxonomy indexAndTaxonomy = _sm.getIndexReader(_language, _versionToken);
-                    _versionToken = indexAndTaxonomy.version;
-                    try {
-                        if (inFastMode) {
-                            // no selector
-                            doc = indexAndTaxonomy.indexReader.document(tdocs.scoreDocs[i].doc);
-                        } else {
-                            DocumentStoredFieldVisitor docVisitor = new DocumentStoredFieldVisitor("_id");
-                            indexAndTaxonomy.indexReader.document(tdocs.scoreDocs[i].doc, docVisitor);
-                            doc = docVisitor.getDocument();
-                        }
-                    } finally {
-                        _sm.releaseIndexReader(indexAndTaxonomy);
+            // one reader for the query and the page: the doc ids are only valid for the version they were found on
+            IndexAndTaxonomy indexAndTaxonomy = _sm.getIndexReader(_language, _versionToken);
+            try {
+                TopDocs tdocs = performQuery(indexAndTaxonomy, getFrom()-1, getTo(), false); // get enough hits to show a page
+
+                int nrHits = getTo() - (getFrom()-1);
+                if (tdocs.scoreDocs.length < nrHits) {
+                    throw new Exception("Failed: Not enough search results ("+tdocs.scoreDocs.length+") available to meet request for "+nrHits+".");
+                }
+
+                // no selector in fast mode
+                StoredFieldsLoader loader = inFastMode ? new StoredFieldsLoader((Set<String>) null) : new StoredFieldsLoader("_id");
+                Document[] docs = loader.load(indexAndTaxonomy.indexReader, tdocs.scoreDocs, 0, nrHits);
+                for (int i = 0; i < nrHits; i++) {
+                    Document doc = docs[i];
+                    String id = doc.get("_id");
+                    Element md = null;
+
+                    if (fast) {
+                        md = LuceneSearcher.getMetadataFromIndex(doc, id, false, null, null, null);
                     }
-					String id = doc.get("_id");
-					Element md = null;
-	
-					if (fast) {
-						md = LuceneSearcher.getMetadataFromIndex(doc, id, false, null, null, null);
-					}
                     else if ("index".equals(sFast)) {
-					    // Retrieve information from the index for the record
-						md = LuceneSearcher.getMetadataFromIndex(doc, id, true, _language == null ? srvContext.getLanguage() : _language, _luceneConfig.getMultilingualSortFields(), _luceneConfig.getDumpFields());
-					    
-						// Retrieve dynamic properties according to context (eg. editable)
+                        // Retrieve information from the index for the record
+                        md = LuceneSearcher.getMetadataFromIndex(doc, id, true, _language == null ? srvContext.getLanguage() : _language, _luceneConfig.getMultilingualSortFields(), _luceneConfig.getDumpFields());
+
+                        // Retrieve dynamic properties according to context (eg. editable)
                         gc.getBean(DataManager.class).buildExtraMetadataInfo(srvContext, id, md.getChild(Edit.RootChild.INFO, Edit.NAMESPACE));
                     }
                     else if (srvContext != null) {
                         boolean forEditing = false, withValidationErrors = false, keepXlinkAttributes = false;
                         md = gc.getBean(DataManager.class).getMetadata(srvContext, id, forEditing, withValidationErrors, keepXlinkAttributes);
-					}
-	
-					//--- a metadata could have been deleted just before showing 
-					//--- search results
-	
-					if (md != null) {
-						// Calculate score and add it to info elem
-						if (_luceneConfig.isTrackDocScores()) {
-							Float score = tdocs.scoreDocs[i].score;
-							Element info = md.getChild (Edit.RootChild.INFO, Edit.NAMESPACE);
-							addElement(info, Edit.Info.Elem.SCORE, score.toString());
-						}
-						response.addContent(md);
-					}
-				}
-			} else {
-				throw new Exception("Failed: Not enough search results ("+tdocs.scoreDocs.length+") available to meet request for "+nrHits+".");
-			}
+                    }
+
+                    //--- a metadata could have been deleted just before showing 
+                    //--- search results
+
+                    if (md != null) {
+                        // Calculate score and add it to info elem
+                        if (_luceneConfig.isTrackDocScores()) {
+                            Float score = tdocs.scoreDocs[i].score;
+                            Element info = md.getChild (Edit.RootChild.INFO, Edit.NAMESPACE);
+                            addElement(info, Edit.Info.Elem.SCORE, score.toString());
+                        }
+                        response.addContent(md);
+                    }
+                }
+            } finally {
+                _sm.releaseIndexReader(indexAndTaxonomy);
+            }
 		}
 		
 		return response;
@@ -376,22 +384,17 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
 		elData.addContent(new Element("to").setText(getSize() + ""));
 
 		if (getTo() > 0) {
-			TopDocs tdocs = performQuery(0, getSize(), false);
-
-			for (int i = 0; i < tdocs.scoreDocs.length; i++) {
-				if (counter >= maxNumberOfTerms) {
-					break;
-				}
-				Document doc;
-
-                DocumentStoredFieldVisitor docVisitor = new DocumentStoredFieldVisitor(Collections.singleton(searchField));
-                IndexAndTaxonomy indexAndTaxonomy = _sm.getIndexReader(_language, _versionToken);
-                _versionToken = indexAndTaxonomy.version;
-                try {
-                    indexAndTaxonomy.indexReader.document(tdocs.scoreDocs[i].doc, docVisitor);
-                    doc = docVisitor.getDocument();
+            IndexAndTaxonomy indexAndTaxonomy = _sm.getIndexReader(_language, _versionToken);
+            try {
+                TopDocs tdocs = performQuery(indexAndTaxonomy, 0, getSize(), false);
+                StoredFieldsLoader loader = new StoredFieldsLoader(searchField);
+                Document[] docs = loader.load(indexAndTaxonomy.indexReader, tdocs.scoreDocs, 0, tdocs.scoreDocs.length);
 
-                    String[] values = doc.getValues(searchField);
+                for (int i = 0; i < docs.length; i++) {
+                    if (counter >= maxNumberOfTerms) {
+                        break;
+                    }
+                    String[] values = docs[i].getValues(searchField);
 
                     for (int j = 0; j < values.length; ++j) {
                         if (searchValue.equals("") || StringUtils.containsIgnoreCase(values[j], searchValueWithoutWildcard)) {
@@ -409,10 +412,10 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
                             counter++;
                         }
                     }
-                } finally {
-                    _sm.releaseIndexReader(indexAndTaxonomy);
                 }
-			}
+            } finally {
+                _sm.releaseIndexReader(indexAndTaxonomy);
+            }
 		}
 		
 		// Filter values which does not reach the threshold
@@ -552,6 +555,7 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
 	private void computeQuery(ServiceContext srvContext, int endHits, Element request, ServiceConfig config) throws Exception {
 
         _language = determineLanguage(srvContext, request, _sm.get_settingInfo());
+        String privileges = null;
         
 		if (srvContext != null) {
 			GeonetContext gc = (GeonetContext) srvContext.getHandlerContext(Geonet.CONTEXT_NAME);
@@ -562,6 +566,7 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
             List<Element> requestedGroups = request.getChildren(SearchParameter.GROUP);
             Set<String> userGroups = gc.getBean(AccessManager.class).getUserGroups(dbms, srvContext.getUserSession(), srvContext.getIpAddress(), false);
             UserSession userSession = srvContext.getUserSession();
+            privileges = privileges(userGroups, userSession);
             // unless you are logged in as Administrator, check if you are allowed to query the groups in the query
             if (userSession == null || userSession.getProfile() == null ||
                     ! (userSession.getProfile().equals(Geonet.Profile.ADMINISTRATOR) && userSession.isAuthenticated())) {
@@ -742,6 +747,13 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
         _sort = LuceneSearcher.makeSort(Collections.singletonList(Pair.read(sortBy, sortOrder)), _language, sortRequestedLanguageOnTop);
 		
 		_resultType = config.getValue(Geonet.SearchResult.RESULT_TYPE, Geonet.SearchResult.ResultType.HITS);
+
+        // the spatial filter is not part of the key, so the results of spatial searches are not shared
+        if (privileges != null && spatialfilter == null && _sm.getQueryResultCache().isEnabled()) {
+            _sharedResultKey = new QueryResultCache.Key(_query, filter, privileges, _sort, _language, _resultType);
+        } else {
+            _sharedResultKey = null;
+        }
 		/* resultType is not specified in search params - it's in config?
 		Content child = request.getChild(Geonet.SearchResult.RESULT_TYPE);
         if (child == null) {
@@ -780,6 +792,23 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
 		}
 	}
 
+    /**
+     * @return the groups, user and profile the privilege clauses of the query are made of
+     */
+    private static String privileges(Set<String> userGroups, UserSession userSession) {
+        StringBuilder privileges = new StringBuilder();
+        for (String group : new TreeSet<String>(userGroups)) {
+            privileges.append(group).append(',');
+        }
+        if (userSession != null) {
+            privileges.append('|').append(userSession.getUserId());
+            if (userSession.isAuthenticated()) {
+                privileges.append('|').append(userSession.getProfile());
+            }
+        }
+        return privileges.toString();
+    }
+
 	/**
 	 * Executes Lucene query with sorting option.
 	 * 
@@ -794,26 +823,67 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
      */
 	private TopDocs performQuery(int startHit, int endHit, boolean buildSummary) throws Exception {
 		IndexAndTaxonomy indexAndTaxonomy = _sm.getIndexReader(_language, _versionToken);
-        _versionToken = indexAndTaxonomy.version;
-        Pair<TopDocs,Element> results;
         try {
-            results = doSearchAndMakeSummary( endHit, startHit, endHit, 
-    				_language, _luceneConfig.getTaxonomy().get(_resultType), indexAndTaxonomy.indexReader, 
-    				_query, _filter, _sort, indexAndTaxonomy.taxonomyReader, buildSummary, _luceneConfig.isTrackDocScores(),
-    				_luceneConfig.isTrackMaxScore(), _luceneConfig.isDocsScoredInOrder()
-    		);
+            return performQuery(indexAndTaxonomy, startHit, endHit, buildSummary);
         } finally {
             _sm.releaseIndexReader(indexAndTaxonomy);
         }
+	}
+
+    /**
+     * Executes the query on readers leased by the caller, who keeps them to load the stored fields of the hits.
+     *
+     * @see #performQuery(int, int, boolean)
+     */
+	private TopDocs performQuery(IndexAndTaxonomy indexAndTaxonomy, int startHit, int endHit, boolean buildSummary) throws Exception {
+        _versionToken = indexAndTaxonomy.version;
+        if (!buildSummary) {
+            TopDocs cached = _resultCache.get(_versionToken, _query, _filter, _sort, _language, startHit, endHit);
+            if (cached != null) {
+                _numHits = cached.totalHits;
+                if(Log.isDebugEnabled(Geonet.SEARCH_ENGINE))
+                    Log.debug(Geonet.SEARCH_ENGINE, "Hits " + startHit + " ... " + endHit + " found in the result cache");
+                return cached;
+            }
+        }
+        QueryResultCache sharedResults = _sm.getQueryResultCache();
+        if (_sharedResultKey != null) {
+            QueryResultCache.Entry shared = sharedResults.get(_versionToken, _sharedResultKey, endHit, buildSummary);
+            if (shared != null) {
+                TopDocs hits = shared.topDocs();
+                _resultCache.put(_versionToken, _query, _filter, _sort, _language, hits);
+                _numHits = hits.totalHits;
+                if (shared.summary != null) {
+                    _elSummary = (Element) shared.summary.clone();
+                } else if (buildSummary || _elSummary == null) {
+                    _elSummary = new Element("summary").setAttribute("count", _numHits + "").setAttribute("type", "local");
+                }
+                if(Log.isDebugEnabled(Geonet.SEARCH_ENGINE))
+                    Log.debug(Geonet.SEARCH_ENGINE, "Hits " + startHit + " ... " + endHit + " found in the shared result cache");
+                return SearchResultCache.page(hits, startHit, endHit);
+            }
+        }
+
+        // collect the next pages too so that they are served from the result cache
+        int numHits = SearchResultCache.hitsToCollect(startHit, endHit);
+        Pair<TopDocs,Element> results = doSearchAndMakeSummary( numHits, 0, numHits, 
+				_language, _luceneConfig.getTaxonomy().get(_resultType), indexAndTaxonomy.indexReader, 
+				_query, _filter, _sort, indexAndTaxonomy.taxonomyReader, _luceneConfig.getFacetEngine(), buildSummary, _luceneConfig.isTrackDocScores(),
+				_luceneConfig.isTrackMaxScore(), _luceneConfig.isDocsScoredInOrder()
+		);
 		
 		TopDocs hits = results.one();
+		_resultCache.put(_versionToken, _query, _filter, _sort, _language, hits);
 		_elSummary = results.two();
 		_numHits = Integer.parseInt(_elSummary.getAttributeValue("count"));
+        if (_sharedResultKey != null) {
+            sharedResults.put(_versionToken, _sharedResultKey, hits, buildSummary ? (Element) _elSummary.clone() : null);
+        }
 
         if(Log.isDebugEnabled(Geonet.SEARCH_ENGINE))
             Log.debug(Geonet.SEARCH_ENGINE, "Hits found : "+_numHits+"");
 		
-		return hits;
+		return SearchResultCache.page(hits, startHit, endHit);
 	}
 
     /**
@@ -1112,6 +1182,23 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
 
 
 	
+	/**
+	 * Counts the values of a not tokenized field in all the documents matching a query, without loading any stored
+	 * field: the terms of the field are uninverted once per segment (and kept by the FieldCache) and the ordinals
+	 * of the matching documents are counted as for the {@link Facet.Engine#DOC_VALUES} summary.
+	 * 
+	 * @param reader	reader
+	 * @param query	query
+	 * @param field	a not tokenized and not numeric field
+	 * @return	the number of documents for each value, by count descending (and value ascending for the same count)
+	 * @throws IOException
+	 */
+	public static Map<String, Double> countFieldValues(IndexReader reader, Query query, String field) throws IOException {
+		DocValuesFacetCollector collector = new DocValuesFacetCollector(Collections.singleton(field), "");
+		new IndexSearcher(reader).search(query, collector);
+		return collector.getFacetValues(field, Integer.MAX_VALUE);
+	}
+
 	/**
 	 * Do Lucene search and optionally build a summary for the search.
 	 * 
@@ -1138,6 +1225,22 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
 			Map<String, FacetConfig> summaryConfig, IndexReader reader, 
 			Query query, Filter cFilter, Sort sort, TaxonomyReader taxonomyReader, boolean buildSummary, boolean trackDocScores,
 			boolean trackMaxScore, boolean docsScoredInOrder) throws Exception
+	{
+		return doSearchAndMakeSummary(numHits, startHit, endHit, langCode, summaryConfig, reader, query, cFilter, sort,
+				taxonomyReader, Facet.Engine.TAXONOMY, buildSummary, trackDocScores, trackMaxScore, docsScoredInOrder);
+	}
+
+	/**
+	 * Do Lucene search and optionally build a summary for the search with the configured facet engine.
+	 * 
+	 * @param taxonomyReader	A {@link TaxonomyReader} use to compute facets with the {@link Facet.Engine#TAXONOMY} engine
+	 * @param facetEngine	the engine computing the summary, see {@link LuceneConfig#getFacetEngine()}
+	 * @see #doSearchAndMakeSummary(int, int, int, String, Map, IndexReader, Query, Filter, Sort, TaxonomyReader, boolean, boolean, boolean, boolean)
+	 */
+	public static Pair<TopDocs, Element> doSearchAndMakeSummary(int numHits, int startHit, int endHit, String langCode, 
+			Map<String, FacetConfig> summaryConfig, IndexReader reader, 
+			Query query, Filter cFilter, Sort sort, TaxonomyReader taxonomyReader, Facet.Engine facetEngine,
+			boolean buildSummary, boolean trackDocScores, boolean trackMaxScore, boolean docsScoredInOrder) throws Exception
 	{
 		Log.debug(Geonet.SEARCH_ENGINE, "Build summary: " + buildSummary);
         if(Log.isDebugEnabled(Geonet.SEARCH_ENGINE))
@@ -1156,7 +1259,17 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
 
         Element elSummary= new Element("summary");
 
-        if (taxonomyReader != null && buildSummary) {
+        if (buildSummary && facetEngine == Facet.Engine.DOC_VALUES && summaryConfig != null) {
+            DocValuesFacetCollector facetCollector = new DocValuesFacetCollector(summaryConfig.keySet());
+
+            searcher.search(query, cFilter, MultiCollector.wrap(tfc, facetCollector));
+            try {
+                buildFacetSummary(elSummary, summaryConfig, facetCollector, langCode);
+            } catch (Exception e) {
+                e.printStackTrace();
+                Log.warning(Geonet.FACET_ENGINE, "BuildFacetSummary error. " + e.getMessage());
+            }
+        } else if (taxonomyReader != null && buildSummary) {
         	// configure facets from configuration file
         	FacetSearchParams fsp = buildFacetSearchParams(summaryConfig);
         	FacetsCollector facetCollector = new FacetsCollector(fsp,
@@ -1196,8 +1309,6 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
     private static void buildFacetSummary(Element elSummary,
             Map<String, FacetConfig> summaryConfigValues,
             FacetsCollector facetCollector, String langCode) throws IOException {
-        DecimalFormat doubleFormat = new DecimalFormat("0");
-
         try {
             for (Iterator<FacetResult> iterator = facetCollector
                     .getFacetResults().iterator(); iterator.hasNext();) {
@@ -1206,28 +1317,10 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
                 String label = result.getFacetResultNode().getLabel()
                         .toString();
                 FacetConfig config = summaryConfigValues.get(label);
-                String facetName = config.getPlural();
-
 
-                final Translator translator;
-                if (ServiceContext.get() != null) {
-                    try {
-                        ServiceContext context = ServiceContext.get();
-                        
-                        translator = config.getTranslator(context, langCode);
-                    } catch (Exception e) {
-                        throw new RuntimeException(e);
-                    }
-                } else {
-                    translator = Translator.NULL_TRANSLATOR;
-                }
-                
-                Element facets = new Element(facetName);
+                Map<String, Double> facetValues = new LinkedHashMap<String, Double>();
                 FacetResultNode frn = result.getFacetResultNode();
                 if (frn.getNumSubResults() != 0) {
-
-                    Map<String, Double> facetValues = new LinkedHashMap<String, Double>();
-
                     // facetValues = new TreeMap<String, Double>(comparator)
                     for (Iterator<? extends FacetResultNode> subresults = frn.getSubResults().iterator(); subresults
                             .hasNext();) {
@@ -1236,92 +1329,8 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
                         facetValues.put(node.getLabel().components[node.getLabel().length-1],
                                 node.getValue());
                     }
-                    List<Entry<String, Double>> entries = new ArrayList<Entry<String, Double>>(
-                            facetValues.entrySet());
-
-                    if (Log.isDebugEnabled(Geonet.FACET_ENGINE)) {
-                        Log.debug(Geonet.FACET_ENGINE, facetName
-                                + ":\tSorting facet by " + config.getSortBy().toString()
-                                + " (" + config.getSortOrder().toString() + ")");
-                    }
-
-                    // No need for a custom comparator Lucene facet request is
-                    // made by count descending order
-                    if (Facet.SortBy.COUNT != config.getSortBy()) {
-                        Comparator<Entry<String, Double>> c = null;
-                        if (Facet.SortBy.LABEL == config.getSortBy()) {
-                            c = new Comparator<Entry<String, Double>>() {
-
-                                @Override
-                                public int compare(Entry<String, Double> o1, Entry<String, Double> o2) {
-                                    String label1 = null;
-                                    String label2 = null;
-                                    if (translator != null) {
-                                        label1 = translator.translate(o1.getKey());
-                                        label2 = translator.translate(o2.getKey());
-                                    }
-                                    if (label1 == null) {
-                                        label1 = o1.getKey();
-                                    }
-                                    if (label2 == null) {
-                                        label2 = o2.getKey();
-                                    }
-                                    return label1.compareTo(label2);
-                                }
-                            };
-                        } else if (Facet.SortBy.NUMVALUE == config.getSortBy()) {
-                            // Create a numeric comparator
-                            c = new Comparator<Entry<String, Double>>() {
-                                public int compare(final Entry<String, Double> e1, final Entry<String, Double> e2) {
-                                    try {
-                                        Double d1 = Double.valueOf(e1.getKey());
-                                        Double d2 = Double.valueOf(e2.getKey());
-
-                                        return d1.compareTo(d2);
-                                    } catch (NumberFormatException e) {
-                                        // String comparison
-                                        Log.warning(Geonet.FACET_ENGINE,
-                                                "Failed to compare numeric values (" + e1.getKey() + " / " + e2.getKey()
-                                                        + ") for facet. Check sortBy option in summary configuration.");
-                                        return e1.getKey().compareTo(e2.getKey());
-                                    }
-                                }
-                            };
-                        } else {
-                            c = new Comparator<Entry<String, Double>>() {
-                                public int compare(final Entry<String, Double> e1, final Entry<String, Double> e2) {
-                                    return e1.getKey().compareTo(e2.getKey());
-                                }
-                            };
-                        }
-                        Collections.sort(entries, c);
-
-                        if (Facet.SortOrder.DESCENDING == config.getSortOrder()) {
-                            Collections.reverse(entries);
-                        }
-                    }
-                    for (Entry<String, Double> entry : entries) {
-                        String facetValue = entry.getKey();
-                        String facetCount = doubleFormat.format(entry
-                                .getValue());
-
-                        if (Log.isDebugEnabled(Geonet.FACET_ENGINE)) {
-                            Log.debug(Geonet.FACET_ENGINE, " - " + facetValue
-                                    + " (" + facetCount + ")");
-                        }
-                        
-                        String translatedValue = translator.translate(facetValue);
-                        
-                        Element facet = new Element(config.getName());
-                        facet.setAttribute("count", facetCount);
-                        facet.setAttribute("name", facetValue);
-                        if (translatedValue != null) {
-                            facet.setAttribute("label", translatedValue);
-                        }
-                        facets.addContent(facet);
-                    }
                 }
-                elSummary.addContent(facets);
+                elSummary.addContent(buildFacet(config, facetValues, langCode));
             }
         } catch (ArrayIndexOutOfBoundsException e) {
             Log.error(
@@ -1333,6 +1342,140 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
         }
     }
 
+    /**
+     * Create an XML summary from the facet values counted without the taxonomy index.
+     *
+     * @param elSummary	The element in which to add the facet report
+     * @param summaryConfigValues	The summary configuration
+     * @param facetCollector
+     * @param langCode
+     * @throws IOException
+     */
+    private static void buildFacetSummary(Element elSummary,
+            Map<String, FacetConfig> summaryConfigValues,
+            DocValuesFacetCollector facetCollector, String langCode) throws IOException {
+        for (Map.Entry<String, FacetConfig> entry : summaryConfigValues.entrySet()) {
+            FacetConfig config = entry.getValue();
+            Map<String, Double> facetValues = facetCollector.getFacetValues(entry.getKey(), config.getMax());
+            elSummary.addContent(buildFacet(config, facetValues, langCode));
+        }
+    }
+
+    /**
+     * Create the XML report of a facet.
+     *
+     * @param config	The facet configuration
+     * @param facetValues	The values and their count, by count descending
+     * @param langCode
+     * @return the element containing the facet values
+     */
+    private static Element buildFacet(FacetConfig config, Map<String, Double> facetValues, String langCode) {
+        DecimalFormat doubleFormat = new DecimalFormat("0");
+        String facetName = config.getPlural();
+
+        final Translator translator;
+        if (ServiceContext.get() != null) {
+            try {
+                ServiceContext context = ServiceContext.get();
+                
+                translator = config.getTranslator(context, langCode);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        } else {
+            translator = Translator.NULL_TRANSLATOR;
+        }
+        
+        Element facets = new Element(facetName);
+        if (!facetValues.isEmpty()) {
+            List<Entry<String, Double>> entries = new ArrayList<Entry<String, Double>>(
+                    facetValues.entrySet());
+
+            if (Log.isDebugEnabled(Geonet.FACET_ENGINE)) {
+                Log.debug(Geonet.FACET_ENGINE, facetName
+                        + ":\tSorting facet by " + config.getSortBy().toString()
+                        + " (" + config.getSortOrder().toString() + ")");
+            }
+
+            // No need for a custom comparator Lucene facet request is
+            // made by count descending order
+            if (Facet.SortBy.COUNT != config.getSortBy()) {
+                Comparator<Entry<String, Double>> c = null;
+                if (Facet.SortBy.LABEL == config.getSortBy()) {
+                    c = new Comparator<Entry<String, Double>>() {
+
+                        @Override
+                        public int compare(Entry<String, Double> o1, Entry<String, Double> o2) {
+                            String label1 = null;
+                            String label2 = null;
+                            if (translator != null) {
+                                label1 = translator.translate(o1.getKey());
+                                label2 = translator.translate(o2.getKey());
+                            }
+                            if (label1 == null) {
+                                label1 = o1.getKey();
+                            }
+                            if (label2 == null) {
+                                label2 = o2.getKey();
+                            }
+                            return label1.compareTo(label2);
+                        }
+                    };
+                } else if (Facet.SortBy.NUMVALUE == config.getSortBy()) {
+                    // Create a numeric comparator
+                    c = new Comparator<Entry<String, Double>>() {
+                        public int compare(final Entry<String, Double> e1, final Entry<String, Double> e2) {
+                            try {
+                                Double d1 = Double.valueOf(e1.getKey());
+                                Double d2 = Double.valueOf(e2.getKey());
+
+                                return d1.compareTo(d2);
+                            } catch (NumberFormatException e) {
+                                // String comparison
+                                Log.warning(Geonet.FACET_ENGINE,
+                                        "Failed to compare numeric values (" + e1.getKey() + " / " + e2.getKey()
+                                                + ") for facet. Check sortBy option in summary configuration.");
+                                return e1.getKey().compareTo(e2.getKey());
+                            }
+                        }
+                    };
+                } else {
+                    c = new Comparator<Entry<String, Double>>() {
+                        public int compare(final Entry<String, Double> e1, final Entry<String, Double> e2) {
+                            return e1.getKey().compareTo(e2.getKey());
+                        }
+                    };
+                }
+                Collections.sort(entries, c);
+
+                if (Facet.SortOrder.DESCENDING == config.getSortOrder()) {
+                    Collections.reverse(entries);
+                }
+            }
+            for (Entry<String, Double> entry : entries) {
+                String facetValue = entry.getKey();
+                String facetCount = doubleFormat.format(entry
+                        .getValue());
+
+                if (Log.isDebugEnabled(Geonet.FACET_ENGINE)) {
+                    Log.debug(Geonet.FACET_ENGINE, " - " + facetValue
+                            + " (" + facetCount + ")");
+                }
+                
+                String translatedValue = translator.translate(facetValue);
+                
+                Element facet = new Element(config.getName());
+                facet.setAttribute("count", facetCount);
+                facet.setAttribute("name", facetValue);
+                if (translatedValue != null) {
+                    facet.setAttribute("label", translatedValue);
+                }
+                facets.addContent(facet);
+            }
+        }
+        return facets;
+    }
+
 	/**
 	 * Build facet search params according to the summary configuration file.
 	 * 
@@ -1457,14 +1600,11 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
 	 */
     public List<String> getAllUuids(int maxHits, ServiceContext context) throws Exception {
         List<String> response = new ArrayList<String>();
-		TopDocs tdocs = performQuery(0, maxHits, false);
-		IndexAndTaxonomy indexAndTaxonomy = _sm.getIndexReader(_language, _versionToken);
-        _versionToken = indexAndTaxonomy.version;
+        IndexAndTaxonomy indexAndTaxonomy = _sm.getIndexReader(_language, _versionToken);
         try {
-            for ( ScoreDoc sdoc : tdocs.scoreDocs ) {
-                DocumentStoredFieldVisitor docVisitor = new DocumentStoredFieldVisitor("_uuid");
-                indexAndTaxonomy.indexReader.document(sdoc.doc, docVisitor);
-                Document doc = docVisitor.getDocument();
+            TopDocs tdocs = performQuery(indexAndTaxonomy, 0, maxHits, false);
+            StoredFieldsLoader loader = new StoredFieldsLoader("_uuid");
+            for (Document doc : loader.load(indexAndTaxonomy.indexReader, tdocs.scoreDocs, 0, tdocs.scoreDocs.length)) {
                 String uuid = doc.get("_uuid");
                 if (uuid != null) response.add(uuid);
             }
@@ -1486,16 +1626,12 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
     public Map<Integer,MdInfo> getAllMdInfo(int maxHits) throws Exception {
 
       Map<Integer,MdInfo> response = new HashMap<Integer,MdInfo>();
-      TopDocs tdocs = performQuery(0, maxHits, false);
       IndexAndTaxonomy indexAndTaxonomy = _sm.getIndexReader(_language, _versionToken);
-      _versionToken = indexAndTaxonomy.version;
       try {
-          for ( ScoreDoc sdoc : tdocs.scoreDocs ) {
-              DocumentStoredFieldVisitor docVisitor = new DocumentStoredFieldVisitor("_id", "_root", "_schema", "_createDate", "_changeDate",
-                      "_source", "_isTemplate", "_title", "_uuid", "_isHarvested", "_owner", "_groupOwner");
-              indexAndTaxonomy.indexReader.document(sdoc.doc, docVisitor);
-              Document doc = docVisitor.getDocument();
-    
+          TopDocs tdocs = performQuery(indexAndTaxonomy, 0, maxHits, false);
+          StoredFieldsLoader loader = new StoredFieldsLoader("_id", "_root", "_schema", "_createDate", "_changeDate",
+                  "_source", "_isTemplate", "_title", "_uuid", "_isHarvested", "_owner", "_groupOwner");
+          for (Document doc : loader.load(indexAndTaxonomy.indexReader, tdocs.scoreDocs, 0, tdocs.scoreDocs.length)) {
               MdInfo mdInfo = new MdInfo(doc);
 
               response.put(Integer.parseInt(mdInfo.id), mdInfo);
@@ -1506,6 +1642,48 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
       return response;
     }
 
+    /**
+     * Returns the metadata matching the request which follow a position in the (change date, id) order. Nothing is
+     * kept between two calls: the caller gives the change date and id of the last metadata returned to get the next
+     * ones, so a long list is read page by page with a bounded query per page.
+     *
+     * @param afterChangeDate change date of the last metadata returned, null to start with the first one
+     * @param afterId id of the last metadata returned
+     * @param maxHits maximum number of metadata returned
+     * @return the id and change date of the metadata
+     * @throws Exception
+     */
+    public List<Pair<String, String>> searchAfter(ServiceContext srvContext, Element request, ServiceConfig config,
+                                                  String afterChangeDate, String afterId, int maxHits) throws Exception {
+        computeQuery(srvContext, maxHits, request, config);
+
+        List<Pair<String, String>> response = new ArrayList<Pair<String, String>>();
+        IndexAndTaxonomy indexAndTaxonomy = _sm.getIndexReader(_language, -1);
+        try {
+            IndexReader reader = indexAndTaxonomy.indexReader;
+            FieldDoc after = null;
+            if (afterChangeDate != null) {
+                // documents with equal sort values are ordered by doc id: the last doc id skips them all
+                after = new FieldDoc(reader.maxDoc() - 1, Float.NaN,
+                        new Object[] { new BytesRef(afterChangeDate), new BytesRef(afterId) });
+            }
+            TopDocs tdocs = new IndexSearcher(reader).searchAfter(after, _query, _filter, maxHits, CHANGE_DATE_ORDER);
+            _numHits = tdocs.totalHits;
+
+            for (ScoreDoc scoreDoc : tdocs.scoreDocs) {
+                Object[] values = ((FieldDoc) scoreDoc).fields;
+                response.add(Pair.read(sortValue(values[1]), sortValue(values[0])));
+            }
+        } finally {
+            _sm.releaseIndexReader(indexAndTaxonomy);
+        }
+        return response;
+    }
+
+    private static String sortValue(Object sortValue) {
+        return sortValue == null ? "" : ((BytesRef) sortValue).utf8ToString();
+    }
+
     /**
      * Searches in Lucene index and return Lucene index field value. Metadata records is retrieved based on its uuid.
      *
@@ -1599,13 +1777,10 @@ public class LuceneSearcher extends MetaSearcher implements MetadataRecordSelect
             Filter filter = NoFilterFilter.instance();
             TopDocs tdocs = searcher.search(query, filter, numberOfHits, sort);
             
-            for( ScoreDoc sdoc : tdocs.scoreDocs ) {
+            StoredFieldsLoader loader = new StoredFieldsLoader(returnFields);
+            for( Document doc : loader.load(reader, tdocs.scoreDocs, 0, tdocs.scoreDocs.length) ) {
                 Map<String, String> values = new HashMap<String, String>();
                 
-                DocumentStoredFieldVisitor docVisitor = new DocumentStoredFieldVisitor(returnFields);
-                reader.document(sdoc.doc, docVisitor);
-                Document doc = docVisitor.getDocument();
-                
                 for( String fieldname : returnFields ) {
                     values.put(fieldname, doc.get(fieldname));
                 }
@@ -0,0 +1,300 @@
+//==============================================================================
+//===	Copyright (C) 2001-2007 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package org.fao.geonet.kernel.search;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jeeves.utils.Xml;
+
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TopDocs;
+import org.fao.geonet.kernel.search.SearchResultCache.Hits;
+import org.jdom.Element;
+
+/**
+ * Results of the searches shared by all the users: the top hits and the summary of a query, so that the same search
+ * run by many users (the home page or the facet landing pages for example) is only run once per index version.
+ * <p/>
+ * The entries are keyed on the query, the filter and the privileges of the user (groups, owner and
+ * profile), so a result is never returned to a user with other privileges even if the privilege clauses of the query
+ * are the same. The size of the cache is bounded by an estimate of the memory used by the entries, the least recently
+ * used entries are evicted first. The whole cache is dropped when a search is run on a newer version of the index.
+ * <p/>
+ * The hit, miss and eviction counts are exported by the org.fao.geonet.monitor.search gauges.
+ */
+public class QueryResultCache {
+    private static final long ENTRY_OVERHEAD = 200;
+    /** Estimated memory used by the query and the filter of a key */
+    private static final long KEY_OVERHEAD = 2000;
+
+    private final long maxBytes;
+    private final Map<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+    private long version = -1;
+    private long bytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxBytes estimated memory used by the entries above which entries are evicted, 0 to disable the cache
+     */
+    public QueryResultCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * @param version version of the index readers the search is run on
+     * @param endHit the last hit needed
+     * @param summary true if the summary is needed
+     * @return the result or null if the cache has no result for the query with enough hits or without the summary
+     */
+    synchronized Entry get(long version, Key key, int endHit, boolean summary) {
+        if (version > this.version) {
+            clear(version);
+        }
+        Entry entry = version == this.version ? entries.get(key) : null;
+        if (entry == null || !entry.hits.covers(endHit) || (summary && entry.summary == null)) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry;
+    }
+
+    /**
+     * @param version version of the index readers the search was run on
+     * @param topDocs the hits from the first one
+     * @param summary the summary or null if it was not built
+     */
+    synchronized void put(long version, Key key, TopDocs topDocs, Element summary) {
+        if (!isEnabled() || version < this.version) {
+            return;
+        }
+        if (version > this.version) {
+            clear(version);
+        }
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            bytes -= previous.bytes;
+            if (summary == null) {
+                // same query on the same index version, only the number of hits differs
+                summary = previous.summary;
+            }
+        }
+        Entry entry = new Entry(key, new Hits(topDocs), summary);
+        if (entry.bytes > maxBytes) {
+            return;
+        }
+        entries.put(key, entry);
+        bytes += entry.bytes;
+        for (Iterator<Entry> iterator = entries.values().iterator(); bytes > maxBytes && iterator.hasNext();) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            bytes -= eldest.bytes;
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void clear(long newVersion) {
+        entries.clear();
+        bytes = 0;
+        version = newVersion;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return estimated memory used by the entries
+     */
+    public synchronized long getSizeInBytes() {
+        return bytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * @return true if the queries are equal (see {@link Query#equals(Object)}), the clauses of boolean queries being
+     *         compared in any order so that the same criteria in another order are the same query
+     */
+    static boolean equivalent(Query a, Query b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        if (!(a instanceof BooleanQuery) || !(b instanceof BooleanQuery)) {
+            return a.equals(b);
+        }
+        BooleanQuery qa = (BooleanQuery) a;
+        BooleanQuery qb = (BooleanQuery) b;
+        if (qa.getClass() != qb.getClass() || qa.getBoost() != qb.getBoost()
+                || qa.getMinimumNumberShouldMatch() != qb.getMinimumNumberShouldMatch()
+                || qa.isCoordDisabled() != qb.isCoordDisabled() || qa.clauses().size() != qb.clauses().size()) {
+            return false;
+        }
+        List<BooleanClause> unmatched = new ArrayList<BooleanClause>(qb.clauses());
+        for (BooleanClause clause : qa.clauses()) {
+            boolean matched = false;
+            for (Iterator<BooleanClause> iterator = unmatched.iterator(); iterator.hasNext();) {
+                BooleanClause other = iterator.next();
+                if (clause.getOccur() == other.getOccur() && equivalent(clause.getQuery(), other.getQuery())) {
+                    iterator.remove();
+                    matched = true;
+                    break;
+                }
+            }
+            if (!matched) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return a hash code consistent with {@link #equivalent(Query, Query)}
+     */
+    static int hashCode(Query query) {
+        if (query == null) {
+            return 0;
+        }
+        if (!(query instanceof BooleanQuery)) {
+            return query.hashCode();
+        }
+        BooleanQuery booleanQuery = (BooleanQuery) query;
+        // the sum does not depend on the order of the clauses
+        int clauses = 0;
+        for (BooleanClause clause : booleanQuery.getClauses()) {
+            clauses += 31 * clause.getOccur().hashCode() + hashCode(clause.getQuery());
+        }
+        int result = Float.floatToIntBits(booleanQuery.getBoost()) ^ clauses;
+        result = 31 * result + booleanQuery.getMinimumNumberShouldMatch();
+        return 31 * result + (booleanQuery.isCoordDisabled() ? 17 : 0);
+    }
+
+    /**
+     * A query run by a user with some privileges. The query and the filter are compared with their equals method,
+     * so they must not be modified once the key is built.
+     */
+    static final class Key {
+        private final Query query;
+        private final Filter filter;
+        private final String privileges;
+        private final Sort sort;
+        private final String language;
+        private final String resultType;
+        private final int hashCode;
+
+        /**
+         * @param filter the filter of the search, it must implement equals
+         * @param privileges the groups, owner and profile of the user
+         * @param resultType the summary configuration
+         */
+        Key(Query query, Filter filter, String privileges, Sort sort, String language, String resultType) {
+            this.query = query;
+            this.filter = filter;
+            this.privileges = privileges;
+            this.sort = sort;
+            this.language = language;
+            this.resultType = resultType;
+            int result = QueryResultCache.hashCode(query);
+            result = 31 * result + (filter == null ? 0 : filter.hashCode());
+            result = 31 * result + privileges.hashCode();
+            result = 31 * result + (sort == null ? 0 : sort.hashCode());
+            result = 31 * result + (language == null ? 0 : language.hashCode());
+            result = 31 * result + (resultType == null ? 0 : resultType.hashCode());
+            this.hashCode = result;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hashCode == other.hashCode && equivalent(query, other.query) && equal(filter, other.filter)
+                   && privileges.equals(other.privileges)
+                   && equal(sort, other.sort) && equal(language, other.language) && equal(resultType, other.resultType);
+        }
+
+        private static boolean equal(Object a, Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    /**
+     * The top hits and the summary of a query. The summary must be cloned before being modified.
+     */
+    static final class Entry {
+        final Hits hits;
+        final Element summary;
+        final long bytes;
+
+        private Entry(Key key, Hits hits, Element summary) {
+            this.hits = hits;
+            this.summary = summary;
+            // 2 bytes per char, a doc id and a score per hit
+            long size = ENTRY_OVERHEAD + KEY_OVERHEAD + 2L * key.privileges.length() + 8L * hits.docs.length;
+            if (summary != null) {
+                size += 2L * Xml.getString(summary).length();
+            }
+            this.bytes = size;
+        }
+
+        TopDocs topDocs() {
+            return hits.topDocs(0, hits.docs.length);
+        }
+    }
+}
@@ -24,7 +24,6 @@ package org.fao.geonet.kernel.search;
 
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
-import com.vividsolutions.jts.index.SpatialIndex;
 import jeeves.exceptions.JeevesException;
 import jeeves.resources.dbms.Dbms;
 import jeeves.server.context.ServiceContext;
@@ -42,10 +41,10 @@ import org.apache.lucene.document.DocumentStoredFieldVisitor;
 import org.apache.lucene.document.DoubleField;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.FieldType;
-import org.apache.lucene.document.FieldType.NumericType;
 import org.apache.lucene.document.FloatField;
 import org.apache.lucene.document.IntField;
 import org.apache.lucene.document.LongField;
+import org.apache.lucene.document.StringField;
 import org.apache.lucene.facet.taxonomy.CategoryPath;
 import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.FieldInfo.IndexOptions;
@@ -69,6 +68,7 @@ import org.fao.geonet.kernel.search.index.LuceneIndexWriterFactory;
 import org.fao.geonet.kernel.search.spatial.ContainsFilter;
 import org.fao.geonet.kernel.search.spatial.CrossesFilter;
 import org.fao.geonet.kernel.search.spatial.EqualsFilter;
+import org.fao.geonet.kernel.search.spatial.GeometryIndex;
 import org.fao.geonet.kernel.search.spatial.IntersectionFilter;
 import org.fao.geonet.kernel.search.spatial.IsFullyOutsideOfFilter;
 import org.fao.geonet.kernel.search.spatial.OgcGenericFilters;
@@ -87,14 +87,17 @@ import org.geotools.data.Transaction;
 import org.geotools.gml3.GMLConfiguration;
 import org.geotools.xml.Configuration;
 import org.geotools.xml.Parser;
-import org.jdom.Content;
 import org.jdom.Element;
+import org.jdom.transform.JDOMSource;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.filter.capability.FilterCapabilities;
 import org.springframework.context.ApplicationContext;
 
 import javax.servlet.ServletContext;
+import javax.xml.transform.Source;
+import javax.xml.transform.sax.SAXResult;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
@@ -102,7 +105,6 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -123,6 +125,21 @@ import java.util.concurrent.locks.ReentrantLock;
 public class SearchManager {
 	private static final String INDEXING_ERROR_MSG = "_indexingErrorMsg";
 	private static final String INDEXING_ERROR_FIELD = "_indexingError";
+	private static final FieldType STORE_NOT_TOKENIZED_FIELD_TYPE = new FieldType();
+	private static final FieldType MULTILINGUAL_SORT_FIELD_TYPE = new FieldType();
+	static {
+		STORE_NOT_TOKENIZED_FIELD_TYPE.setIndexed(true);
+		STORE_NOT_TOKENIZED_FIELD_TYPE.setTokenized(false);
+		STORE_NOT_TOKENIZED_FIELD_TYPE.setStored(true);
+		STORE_NOT_TOKENIZED_FIELD_TYPE.freeze();
+
+		MULTILINGUAL_SORT_FIELD_TYPE.setIndexed(true);
+		MULTILINGUAL_SORT_FIELD_TYPE.setIndexOptions(IndexOptions.DOCS_ONLY);
+		MULTILINGUAL_SORT_FIELD_TYPE.setOmitNorms(true);
+		MULTILINGUAL_SORT_FIELD_TYPE.setTokenized(false);
+		MULTILINGUAL_SORT_FIELD_TYPE.setStored(true);
+		MULTILINGUAL_SORT_FIELD_TYPE.freeze();
+	}
 	public static final int LUCENE = 1;
 	public static final int Z3950 = 2;
 	public static final int UNUSED = 3;
@@ -174,6 +191,8 @@ public class SearchManager {
 	private boolean _logAsynch;
 	private final LuceneOptimizerManager _luceneOptimizerManager;
     private LuceneIndexLanguageTracker _tracker;
+    private volatile IndexFieldSettings _indexFieldSettings;
+    private final QueryResultCache _queryResultCache;
     private ApplicationContext _applicationContext;
 
 
@@ -219,6 +238,19 @@ public class SearchManager {
 	private LuceneConfig getLuceneConfig() {
 	    return _applicationContext.getBean(LuceneConfig.class);
 	}
+
+	/**
+	 * @return the per field indexing settings of the current Lucene configuration
+	 */
+	private IndexFieldSettings getIndexFieldSettings() {
+	    LuceneConfig luceneConfig = getLuceneConfig();
+	    IndexFieldSettings settings = _indexFieldSettings;
+	    if (settings == null || !settings.isFor(luceneConfig)) {
+	        settings = new IndexFieldSettings(luceneConfig);
+	        _indexFieldSettings = settings;
+	    }
+	    return settings;
+	}
 	/**
 	 *
 	 * @return	The current analyzer used by the search manager.
@@ -484,6 +516,7 @@ public class SearchManager {
      * @param luceneTermsToExclude
      * @param dataStore
      * @param maxWritesInTransaction
+     * @param queryResultCacheSize maximum memory used by the search results shared between users, in bytes
      * @param si
      * @param scm
      * @param servletContext
@@ -491,7 +524,7 @@ public class SearchManager {
      */
 	public SearchManager(String appPath, String luceneDir, String htmlCacheDir, String thesauriDir,
                          String summaryConfigXmlFile, boolean logAsynch,  boolean logSpatialObject, String luceneTermsToExclude,
-                         DataStore dataStore, int maxWritesInTransaction, SettingInfo si, SchemaManager scm,
+                         DataStore dataStore, int maxWritesInTransaction, long queryResultCacheSize, SettingInfo si, SchemaManager scm,
                          ServletContext servletContext, ApplicationContext applicationContext) throws Exception {
 	    this._applicationContext = applicationContext;
 		_scm = scm;
@@ -521,7 +554,7 @@ public class SearchManager {
         }
         IO.mkdirs(_luceneDir.getParentFile(), "Lucene Index container directory");
 
-        _spatial = new Spatial(dataStore, maxWritesInTransaction);
+        _spatial = new Spatial(dataStore, maxWritesInTransaction, new File(luceneDir, SpatialIndexWriter.SNAPSHOT_FILENAME));
 
 		_luceneTaxonomyDir = new File(luceneDir + TAXONOMY_DIR);
 		if (!_luceneTaxonomyDir.isAbsolute()) _luceneTaxonomyDir = new File(luceneDir+ TAXONOMY_DIR);
@@ -530,6 +563,7 @@ public class SearchManager {
      	 _logAsynch = logAsynch;
 		 _logSpatialObject = logSpatialObject;
 		 _luceneTermsToExclude = luceneTermsToExclude;
+		 _queryResultCache = new QueryResultCache(queryResultCacheSize);
 
 		initLucene();
 		initZ3950();
@@ -748,76 +782,75 @@ public class SearchManager {
                                    boolean group) throws Exception
      {
         
-		Element xmlDoc;
+		List<IndexDocument> indexDocuments;
 
 		// check for subtemplates
 		if (isTemplate.equals("s")) {
 			// create empty document with only title and "any" fields
-			xmlDoc = new Element("Document");
-
-			Element defaultDoc = new Element("Document");
-            defaultDoc.setAttribute(Geonet.LUCENE_LOCALE_KEY, Geonet.DEFAULT_LANGUAGE);
-            xmlDoc.addContent(defaultDoc);
+			IndexDocument defaultDoc = new IndexDocument(null);
+			indexDocuments = Collections.singletonList(defaultDoc);
 
            StringBuilder sb = new StringBuilder();
 			allText(metadata, sb);
-			SearchManager.addField(defaultDoc, LuceneIndexField.TITLE, title, true, true);
-			SearchManager.addField(defaultDoc, LuceneIndexField.ANY, sb.toString(), true, true);
+			defaultDoc.addField(LuceneIndexField.TITLE, title, true, true);
+			defaultDoc.addField(LuceneIndexField.ANY, sb.toString(), true, true);
 		}
         else {
             if(Log.isDebugEnabled(Geonet.INDEX_ENGINE))
                 Log.debug(Geonet.INDEX_ENGINE, "Metadata to index:\n" + Xml.getString(metadata));
 
-            xmlDoc = getIndexFields(schemaDir, metadata);
+            indexDocuments = getIndexFields(schemaDir, metadata);
 
             if(Log.isDebugEnabled(Geonet.INDEX_ENGINE))
-                Log.debug(Geonet.INDEX_ENGINE, "Indexing fields:\n" + Xml.getString(xmlDoc));
+                Log.debug(Geonet.INDEX_ENGINE, "Indexing fields:\n" + Xml.getString(toElement(indexDocuments)));
 		}
 
-        @SuppressWarnings(value = "unchecked")
-        List<Element> documentElements = xmlDoc.getContent();
-        Collection<Field> multilingualSortFields = findMultilingualSortElements(documentElements);
+        Collection<Field> multilingualSortFields = findMultilingualSortElements(indexDocuments);
+        IndexFieldSettings fieldSettings = getIndexFieldSettings();
 
         List<Pair<String, Pair<Document, List<CategoryPath>>>> documents = new ArrayList<Pair<String, Pair<Document, List<CategoryPath>>>>();
-        for( Element doc : documentElements ) {
+        for( IndexDocument doc : indexDocuments ) {
             // add _id field
-            SearchManager.addField(doc, LuceneIndexField.ID, id, true, true);
+            doc.addField(LuceneIndexField.ID, id, true, true);
 
             // add more fields
             for( Element moreField : moreFields ) {
-                doc.addContent((Content) moreField.clone());
+                doc.addField(moreField);
             }
 
             String locale = getLocaleFromIndexDoc(doc);
-            documents.add(Pair.read(locale, newDocument(doc, multilingualSortFields)));
+            documents.add(Pair.read(locale, newDocument(doc, multilingualSortFields, fieldSettings)));
         }
         if(Log.isDebugEnabled(Geonet.INDEX_ENGINE))
-            Log.debug(Geonet.INDEX_ENGINE, "Lucene document:\n" + Xml.getString(xmlDoc));
+            Log.debug(Geonet.INDEX_ENGINE, "Lucene document:\n" + Xml.getString(toElement(indexDocuments)));
         return documents;
 	}
 
-    private Collection<Field> findMultilingualSortElements(List<Element> documentElements) {
+    /**
+     * @return the documents as the xml produced by the index stylesheets, for the logs
+     */
+    private Element toElement(List<IndexDocument> indexDocuments) {
+        Element documents = new Element("Documents");
+        for (IndexDocument doc : indexDocuments) {
+            documents.addContent(doc.toElement());
+        }
+        return documents;
+    }
+
+    private Collection<Field> findMultilingualSortElements(List<IndexDocument> documents) {
         Map<String, Field> multilingualSortFields = new HashMap<String, Field>();
-        
-        for (Element doc : documentElements) {
+        Set<String> configuredMultilingualSortFields = getLuceneConfig().getMultilingualSortFields();
+
+        for (IndexDocument doc : documents) {
             String locale = getLocaleFromIndexDoc(doc);
 
-            List<?> fields = doc.getChildren("Field");
-            Set<String> configuredMultilingualSortFields = getLuceneConfig().getMultilingualSortFields();
-            for (Object object : fields) {
-                Element field = (Element) object;
-                String fieldName = field.getAttributeValue("name");
+            for (IndexDocument.IndexField field : doc.getFields()) {
+                String fieldName = field.name;
                 if (configuredMultilingualSortFields.contains(fieldName)) {
                     String nameWithLocale = LuceneConfig.multilingualSortFieldName(fieldName, locale);
                     if (!multilingualSortFields.containsKey(nameWithLocale)) {
-                        String fieldValue = field.getAttributeValue("string");
-                        FieldType fieldType = new FieldType();
-                        fieldType.setIndexed(true);
-                        fieldType.setIndexOptions(IndexOptions.DOCS_ONLY);
-                        fieldType.setOmitNorms(true);
-                        fieldType.setTokenized(false);
-                        fieldType.setStored(true);
-                        multilingualSortFields.put(nameWithLocale, new Field(nameWithLocale, fieldValue, fieldType));
+                        String fieldValue = field.string;
+                        multilingualSortFields.put(nameWithLocale, new Field(nameWithLocale, fieldValue, MULTILINGUAL_SORT_FIELD_TYPE));
                     }
                 }
             }
@@ -825,28 +858,14 @@ public class SearchManager {
         return multilingualSortFields.values();
     }
 
-	private String getLocaleFromIndexDoc(Element doc) {
-		String locale = doc.getAttributeValue("locale");
+	private String getLocaleFromIndexDoc(IndexDocument doc) {
+		String locale = doc.getLocale();
 		if(locale == null || locale.trim().isEmpty()) {
 		    locale = Geonet.DEFAULT_LANGUAGE;
 		}
 		return locale;
 	}
 
-	/**
-	 * Creates a new XML field for the Lucene index and add it to the document.
-     *
-	 * @param xmlDoc
-	 * @param name
-	 * @param value
-	 * @param store
-	 * @param index
-	 */
-	private static void addField(Element xmlDoc, String name, String value, boolean store, boolean index) {
-		Element field = makeField(name, value, store, index);
-		xmlDoc.addContent(field);
-	}
-
     /**
     * Creates a new XML field for the Lucene index.
     * 
@@ -983,38 +1002,28 @@ public class SearchManager {
 	}
 
     /**
-     * TODO javadoc.
+     * Returns a cursor over the ids and change dates of the indexed records, in increasing id order.
+     * The cursor holds an index reader, it must be closed.
      *
      * @return
      * @throws Exception
      */
-	public Map<String,String> getDocsChangeDate() throws Exception {
-        IndexAndTaxonomy indexAndTaxonomy= getNewIndexReader(null);
+	public IndexedChangeDates getDocsChangeDate() throws Exception {
+        final IndexAndTaxonomy indexAndTaxonomy= getNewIndexReader(null);
 		try {
-		    GeonetworkMultiReader reader = indexAndTaxonomy.indexReader;
-
-			int capacity = (int)(reader.maxDoc() / 0.75)+1;
-			Map<String,String> docs = new HashMap<String,String>(capacity);
-			for (int i = 0; i < reader.maxDoc(); i++) {
-				// Commented this out for lucene 4.0 and NRT indexing.  It shouldn't be needed I would guess but leave it here
-				// for a bit longer:  Commented out since: Dec 10 2012
-				// FIXME: strange lucene hack: sometimes it tries to load a deleted document
-				// if (reader.isDeleted(i)) continue;
-				
-				DocumentStoredFieldVisitor idChangeDateSelector = new DocumentStoredFieldVisitor("_id", "_changeDate");
-                reader.document(i, idChangeDateSelector);
-                Document doc = idChangeDateSelector.getDocument();
-				String id = doc.get("_id");
-				if (id == null) {
-					Log.error(Geonet.INDEX_ENGINE, "Document with no _id field skipped! Document is "+doc);
-					continue;
+			return new IndexedChangeDates(indexAndTaxonomy.indexReader, new Closeable() {
+				public void close() throws IOException {
+					try {
+						releaseIndexReader(indexAndTaxonomy);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new IOException(e);
+					}
 				}
-				docs.put(id, doc.get("_changeDate"));
-			}
-			return docs;
-		}
-        finally {
+			});
+		} catch (IOException e) {
 			releaseIndexReader(indexAndTaxonomy);
+			throw e;
 		}
 	}
 
@@ -1158,39 +1167,52 @@ public class SearchManager {
 	// utilities
 
     /**
-     * TODO javadoc.
+     * Runs the index stylesheets of the schema on a metadata record. The output of the stylesheets is received as SAX
+     * events straight into {@link IndexDocument}s rather than built as a JDOM tree.
      *
      * @param schemaDir
      * @param xml
-     * @return
+     * @return one document for the default language and one for each other language
      * @throws Exception
      */
-    Element getIndexFields(String schemaDir, Element xml) throws Exception {
-        Element documents = new Element("Documents");
+    List<IndexDocument> getIndexFields(String schemaDir, Element xml) throws Exception {
+        List<IndexDocument> documents = new ArrayList<IndexDocument>();
         try {
             String defaultStyleSheet = new File(schemaDir, "index-fields.xsl").getAbsolutePath();
             String otherLocalesStyleSheet = new File(schemaDir, "language-index-fields.xsl").getAbsolutePath();
             Map<String, String> params = new HashMap<String, String>();
             params.put("inspire", Boolean.toString(_inspireEnabled));
             params.put("thesauriDir", _thesauriDir);
-            Element defaultLang = Xml.transform(xml, defaultStyleSheet, params);
-            if (new File(otherLocalesStyleSheet).exists()) {
-                @SuppressWarnings(value = "unchecked")
-                List<Element> otherLanguages = Xml.transform(xml, otherLocalesStyleSheet, params).removeContent();
-                mergeDefaultLang(defaultLang, otherLanguages);
-                documents.addContent(otherLanguages);
+            boolean otherLocales = new File(otherLocalesStyleSheet).exists();
+
+            // both stylesheets read the same tree, built once
+            Source source = otherLocales ? Xml.buildSharedTree(xml) : null;
+            if (source == null) {
+                source = new JDOMSource(new org.jdom.Document((Element) xml.detach()));
+            }
+
+            IndexDocumentHandler defaultLang = new IndexDocumentHandler();
+            Xml.transform(source, defaultStyleSheet, new SAXResult(defaultLang), params);
+            if (otherLocales) {
+                IndexDocumentHandler otherLanguages = new IndexDocumentHandler();
+                Xml.transform(source, otherLocalesStyleSheet, new SAXResult(otherLanguages), params);
+                for (IndexDocument defaultDoc : defaultLang.getDocuments()) {
+                    mergeDefaultLang(defaultDoc, otherLanguages.getDocuments());
+                }
+                documents.addAll(otherLanguages.getDocuments());
             }
-            documents.addContent(defaultLang);
+            documents.addAll(defaultLang.getDocuments());
         }
         catch (Exception e) {
             Log.error(Geonet.INDEX_ENGINE, "Indexing stylesheet contains errors : " + e.getMessage() + "\n\t Marking the metadata as _indexingError=1 in index");
-            Element xmlDoc = new Element("Document");
-            SearchManager.addField(xmlDoc, INDEXING_ERROR_FIELD, "1", true, true);
-            SearchManager.addField(xmlDoc, INDEXING_ERROR_MSG, "GNIDX-XSL||" + e.getMessage(), true, false);
+            documents.clear();
+            IndexDocument xmlDoc = new IndexDocument(null);
+            xmlDoc.addField(INDEXING_ERROR_FIELD, "1", true, true);
+            xmlDoc.addField(INDEXING_ERROR_MSG, "GNIDX-XSL||" + e.getMessage(), true, false);
             StringBuilder sb = new StringBuilder();
             allText(xml, sb);
-            SearchManager.addField(xmlDoc, "any", sb.toString(), false, true);
-            documents.addContent(xmlDoc);
+            xmlDoc.addField("any", sb.toString(), false, true);
+            documents.add(xmlDoc);
         }
         return documents;
     }
@@ -1204,79 +1226,28 @@ public class SearchManager {
      * @param defaultLang
      * @param otherLanguages
      */
-    @SuppressWarnings(value = "unchecked")
-    private void mergeDefaultLang( Element defaultLang, List<Element> otherLanguages ) {
-        final String langCode;
-        if (defaultLang.getAttribute("locale") == null) {
-            langCode = "";
-        }
-        else {
-            langCode = defaultLang.getAttributeValue("locale");
-        }
+    private void mergeDefaultLang( IndexDocument defaultLang, List<IndexDocument> otherLanguages ) {
+        final String langCode = defaultLang.getLocale() == null ? "" : defaultLang.getLocale();
 
-        Element toMerge = null;
+        IndexDocument toMerge = null;
 
-        for( Element element : otherLanguages ) {
-            String clangCode;
-            if (element.getAttribute("locale") == null) {
-                clangCode = "";
-            }
-            else {
-                clangCode = element.getAttributeValue("locale");
-            }
+        for( IndexDocument document : otherLanguages ) {
+            String clangCode = document.getLocale() == null ? "" : document.getLocale();
 
             if (clangCode.equals(langCode)) {
-                toMerge = element;
+                toMerge = document;
                 break;
             }
         }
 
-        SortedSet<Element> toInclude = new TreeSet<Element>(new Comparator<Element>(){
-            public int compare( Element o1, Element o2 ) {
-                // <Field name="_locale" string="{string($iso3LangId)}" store="true" index="true" token="false"/>
-                int name = compare(o1, o2, "name");
-                int string = compare(o1, o2, "string");
-                int store = compare(o1, o2, "store");
-                int index = compare(o1, o2, "index");
-                if (name != 0) {
-                    return name;
-                }
-                if (string != 0) {
-                    return string;
-                }
-                if (store != 0) {
-                    return store;
-                }
-                if (index != 0) {
-                    return index;
-                }
-                return 0;
-            }
-            private int compare( Element o1, Element o2, String attName ) {
-                return safeGet(o1, attName).compareTo(safeGet(o2, attName));
-            }
-            public String safeGet( Element e, String attName ) {
-                String att = e.getAttributeValue(attName);
-                if (att == null) {
-                    return "";
-                } else {
-                    return att;
-                }
-            }
-        });
-
         if (toMerge != null) {
-            toMerge.detach();
             otherLanguages.remove(toMerge);
-            for( Element element : (List<Element>) defaultLang.getChildren() ) {
-                toInclude.add(element);
-            }
-            for( Element element : (List<Element>) toMerge.getChildren() ) {
-                toInclude.add(element);
-            }
-            toMerge.removeContent();
-            defaultLang.removeContent();
-            defaultLang.addContent(toInclude);
+            // fields sorted on name, string, store and index, without duplicates
+            SortedSet<IndexDocument.IndexField> toInclude = new TreeSet<IndexDocument.IndexField>();
+            toInclude.addAll(defaultLang.getFields());
+            toInclude.addAll(toMerge.getFields());
+            defaultLang.getFields().clear();
+            defaultLang.getFields().addAll(toInclude);
         }
     }
 
@@ -1407,7 +1378,8 @@ public class SearchManager {
      * @param multilingualSortFields 
      * @return
      */
-	private Pair<Document, List<CategoryPath>> newDocument(Element xml, Collection<Field> multilingualSortFields)
+	private Pair<Document, List<CategoryPath>> newDocument(IndexDocument xml, Collection<Field> multilingualSortFields,
+	        IndexFieldSettings fieldSettings)
 	{
 		Document doc = new Document();
 		List<CategoryPath> categories = new ArrayList<CategoryPath>();
@@ -1416,19 +1388,10 @@ public class SearchManager {
 		for (Field field : multilingualSortFields) {
             doc.add(field);
         }
-		final FieldType storeNotTokenizedFieldType = new FieldType();
-		storeNotTokenizedFieldType.setIndexed(true);
-		storeNotTokenizedFieldType.setTokenized(false);
-		storeNotTokenizedFieldType.setStored(true);
-
-		final FieldType storeNotIndexedFieldType = new FieldType();
-		storeNotIndexedFieldType.setIndexed(true);
-		storeNotIndexedFieldType.setTokenized(false);
-		storeNotIndexedFieldType.setStored(true);
 		float documentBoost = 1;
         // Set boost to promote some types of document selectively according to DocumentBoosting class
         if (_documentBoostClass != null) {
-            Float f = (_documentBoostClass).getBoost(xml);
+            Float f = (_documentBoostClass).getBoost(xml.toElement());
             if (f != null) {
                 if(Log.isDebugEnabled(Geonet.INDEX_ENGINE))
                     Log.debug(Geonet.INDEX_ENGINE, "Boosting document with boost factor: " + f);
@@ -1437,33 +1400,24 @@ public class SearchManager {
         }
 
 		boolean hasLocaleField = false;
-        for (Object o : xml.getChildren()) {
-            Element field = (Element) o;
-            String name = field.getAttributeValue(LuceneFieldAttribute.NAME.toString());
-            String string = field.getAttributeValue(LuceneFieldAttribute.STRING.toString()); // Lower case field is handled by Lucene Analyzer.
+        for (IndexDocument.IndexField field : xml.getFields()) {
+            String name = field.name;
+            String string = field.string; // Lower case field is handled by Lucene Analyzer.
             if(name.equals(Geonet.LUCENE_LOCALE_KEY)) hasLocaleField = true;
             if (string.trim().length() > 0) {
-            	String sStore = field.getAttributeValue(LuceneFieldAttribute.STORE.toString());
-                String sIndex = field.getAttributeValue(LuceneFieldAttribute.INDEX.toString());
-
-                boolean bStore = sStore != null && sStore.equals("true");
-                boolean bIndex = sIndex != null && sIndex.equals("true");
-                boolean token = getLuceneConfig().isTokenizedField(name);
-                boolean isNumeric = getLuceneConfig().isNumericField(name);
-                
-                FieldType fieldType = new FieldType();
-                fieldType.setStored(bStore);
-                fieldType.setIndexed(bIndex);
-                fieldType.setTokenized(token);
+                boolean bStore = field.store;
+                boolean bIndex = field.index;
+                IndexFieldSettings.Settings settings = fieldSettings.get(name);
+                FieldType fieldType = settings.type(bStore, bIndex);
                     Field f;
-                    if (isNumeric) {
+                    if (settings.numeric != null) {
                         try {
-                            f = addNumericField(name, string, fieldType);
+                            f = addNumericField(name, string, fieldType, settings.numeric);
                         } catch (Exception e) {
                             String msg = "Invalid value. Field '" + name + "' is not added to the document. Error is: " + e.getMessage();
                             
-                            Field idxError = new Field(INDEXING_ERROR_FIELD, "1", storeNotTokenizedFieldType);
-                            Field idxMsg = new Field(INDEXING_ERROR_MSG, "GNIDX-BADNUMVALUE|" + name + "|" +  e.getMessage(), storeNotIndexedFieldType);
+                            Field idxError = new Field(INDEXING_ERROR_FIELD, "1", STORE_NOT_TOKENIZED_FIELD_TYPE);
+                            Field idxMsg = new Field(INDEXING_ERROR_MSG, "GNIDX-BADNUMVALUE|" + name + "|" +  e.getMessage(), STORE_NOT_TOKENIZED_FIELD_TYPE);
                             
                             doc.add(idxError);
                             doc.add(idxMsg);
@@ -1483,7 +1437,7 @@ public class SearchManager {
                     
                     // You cannot set an index-time boost on an unindexed field, or one that omits norms
                     if (bIndex && !f.fieldType().omitNorms()) {
-                        Float boost = getLuceneConfig().getFieldBoost(name);
+                        Float boost = settings.boost;
                         if (boost != null) {
                             if(Log.isDebugEnabled(Geonet.INDEX_ENGINE))
                                 Log.debug(Geonet.INDEX_ENGINE, "Boosting field: " + name + " with boost factor: " + boost + " x " + documentBoost);
@@ -1496,17 +1450,20 @@ public class SearchManager {
                     
                     // Add value to the taxonomy
                     // TODO : Add all facets whatever the types
-                    if(getLuceneConfig().getTaxonomy().get("hits").get(name) != null) {
+                    if(settings.facet) {
                         if(Log.isDebugEnabled(Geonet.INDEX_ENGINE)) {
                             Log.debug(Geonet.INDEX_ENGINE, "Add category path: " + name + " with " + string);
                         }
                         categories.add(new CategoryPath(name, string));
                     }
+                    if (settings.facetField != null) {
+                        doc.add(new StringField(settings.facetField, string, Field.Store.NO));
+                    }
             }
         }
         
         if(!hasLocaleField) {
-           doc.add(new Field(Geonet.LUCENE_LOCALE_KEY,Geonet.DEFAULT_LANGUAGE, storeNotTokenizedFieldType));
+           doc.add(new Field(Geonet.LUCENE_LOCALE_KEY,Geonet.DEFAULT_LANGUAGE, STORE_NOT_TOKENIZED_FIELD_TYPE));
         }
         
         return Pair.write(doc, categories);
@@ -1519,13 +1476,12 @@ public class SearchManager {
 	 * @param name	The field name
 	 * @param string	The value to be indexed. It is parsed to its numeric type. If exception occurs
 	 * field is not added to the index. 
-	 * @param fieldType
+	 * @param fieldType	The shared field type, its numeric type matches the configured type of the field
+	 * @param fieldConfig
 	 * @return
 	 * @throws Exception 
 	 */
-	private Field addNumericField(String name, String string, FieldType fieldType) throws Exception {
-		LuceneConfigNumericField fieldConfig = getLuceneConfig().getNumericField(name);
-		
+	private Field addNumericField(String name, String string, FieldType fieldType, LuceneConfigNumericField fieldConfig) throws Exception {
 		Field field;
 		// TODO : reuse the numeric field for better performance
         if(Log.isDebugEnabled(Geonet.INDEX_ENGINE))
@@ -1534,22 +1490,18 @@ public class SearchManager {
 			String paramType = fieldConfig.getType();
 			if ("double".equals(paramType)) {
 				double d = Double.valueOf(string);
-				fieldType.setNumericType(NumericType.DOUBLE);
 				field = new DoubleField(name, d, fieldType);
 			}
             else if ("float".equals(paramType)) {
 				float f = Float.valueOf(string);
-				fieldType.setNumericType(NumericType.FLOAT);
 				field = new FloatField(name, f, fieldType);
 			}
             else if ("long".equals(paramType)) {
 				long l = Long.valueOf(string);
-				fieldType.setNumericType(NumericType.LONG);
 				field = new LongField(name, l, fieldType);
 			}
             else {
 				int i = Integer.valueOf(string);
-				fieldType.setNumericType(NumericType.INT);
 				field = new IntField(name, i, fieldType);
 			}
 			return field;
@@ -1564,6 +1516,13 @@ public class SearchManager {
         return _spatial;
     }
 
+    /**
+     * @return the search results shared between users
+     */
+    public QueryResultCache getQueryResultCache() {
+        return _queryResultCache;
+    }
+
     /**
      * TODO javadoc.
      *
@@ -1594,6 +1553,7 @@ public class SearchManager {
         }
         private final Transaction                     _transaction;
         private final int                             _maxWritesInTransaction;
+        private final File                            _snapshot;
         private final Timer                           _timer;
         private final Parser                          _gmlParser;
         private final Lock                            _lock;
@@ -1609,10 +1569,12 @@ public class SearchManager {
 				 * autocommit which results in faster loading for some (all?) 
 				 * configurations and does not keep a long running transaction 
 				 * open. 
+         * @param snapshot file where the in-memory spatial index is saved
          * @throws Exception
          */
-        public Spatial(DataStore dataStore, int maxWritesInTransaction) throws Exception {
+        public Spatial(DataStore dataStore, int maxWritesInTransaction, File snapshot) throws Exception {
             _lock = new ReentrantLock();
+            _snapshot = snapshot;
             _datastore = dataStore;
 			if (maxWritesInTransaction > 1) {
             	_transaction = new DefaultTransaction("SpatialIndexWriter");
@@ -1647,7 +1609,7 @@ public class SearchManager {
         private boolean createWriter(DataStore datastore) throws IOException {
             boolean rebuildIndex;
             try {
-                _writer = new SpatialIndexWriter(datastore, _gmlParser,_transaction, _maxWritesInTransaction, _lock);
+                _writer = new SpatialIndexWriter(datastore, _gmlParser,_transaction, _maxWritesInTransaction, _lock, _snapshot);
 				rebuildIndex = _writer.getFeatureSource().getSchema() == null;
             }
             catch (Throwable e) {
@@ -1701,7 +1663,7 @@ public class SearchManager {
             _lock.lock();
             try {
             	Parser filterParser = getFilterParser(filterVersion);
-                Pair<FeatureSource<SimpleFeatureType, SimpleFeature>, SpatialIndex> accessor = new SpatialIndexAccessor();
+                Pair<FeatureSource<SimpleFeatureType, SimpleFeature>, GeometryIndex> accessor = new SpatialIndexAccessor();
                 return OgcGenericFilters.create(query, numHits, filterExpr, accessor, filterParser);
             }
             catch (Exception e) {
@@ -1782,7 +1744,7 @@ public class SearchManager {
          */
         private SpatialIndexWriter writerNoLocking() throws Exception {
             if (_writer == null) {
-                _writer = new SpatialIndexWriter(_datastore, _gmlParser, _transaction, _maxWritesInTransaction, _lock);
+                _writer = new SpatialIndexWriter(_datastore, _gmlParser, _transaction, _maxWritesInTransaction, _lock, _snapshot);
             }
             return _writer;
         }
@@ -1809,14 +1771,14 @@ public class SearchManager {
 
         private final class SpatialIndexAccessor
 				extends
-				Pair<FeatureSource<SimpleFeatureType, SimpleFeature>, SpatialIndex> {
+				Pair<FeatureSource<SimpleFeatureType, SimpleFeature>, GeometryIndex> {
 			@Override
 			public FeatureSource<SimpleFeatureType, SimpleFeature> one() {
 			    return _writer.getFeatureSource();
 			}
 
 			@Override
-			public SpatialIndex two() {
+			public GeometryIndex two() {
 			    try {
 			        return _writer.getIndex();
 			    } catch (IOException e) {
@@ -0,0 +1,201 @@
+//==============================================================================
+//===	Copyright (C) 2001-2007 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package org.fao.geonet.kernel.search;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TopDocs;
+
+/**
+ * The first hits of the last queries of a {@link LuceneSearcher} (so of a user session), kept as doc id and score
+ * arrays so that presenting the next pages of a result only reads the stored fields instead of running the query
+ * again.
+ * <p/>
+ * The doc ids are only valid for the version of the index readers they were collected on: the whole cache is dropped
+ * as soon as the searcher gets readers of another version.
+ */
+final class SearchResultCache {
+    /**
+     * Number of pages collected when a query is run for a page: the requested page and the next ones, so that they
+     * are in the cache.
+     */
+    static final int PAGES_TO_COLLECT = 5;
+    /**
+     * Number of queries kept, the least recently used is dropped first.
+     */
+    static final int MAX_QUERIES = 4;
+    /**
+     * Maximum number of hits kept for a query.
+     */
+    static final int MAX_HITS = 10000;
+
+    private long version = -1;
+    private final Map<Key, Hits> queries = new LinkedHashMap<Key, Hits>(MAX_QUERIES * 2, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Hits> eldest) {
+            return size() > MAX_QUERIES;
+        }
+    };
+
+    /**
+     * @param version version of the index readers the search is run on
+     * @return the hits from startHit to endHit or null if they are not in the cache
+     */
+    synchronized TopDocs get(long version, Query query, Filter filter, Sort sort, String language, int startHit, int endHit) {
+        if (version != this.version) {
+            queries.clear();
+            this.version = version;
+            return null;
+        }
+        Hits hits = queries.get(new Key(query, filter, sort, language));
+        if (hits == null || !hits.covers(endHit)) {
+            return null;
+        }
+        return hits.topDocs(startHit, endHit);
+    }
+
+    /**
+     * Caches the top hits of a query.
+     *
+     * @param version version of the index readers the search was run on
+     * @param topDocs the hits from the first one
+     */
+    synchronized void put(long version, Query query, Filter filter, Sort sort, String language, TopDocs topDocs) {
+        if (version != this.version) {
+            queries.clear();
+            this.version = version;
+        }
+        queries.put(new Key(query, filter, sort, language), new Hits(topDocs));
+    }
+
+    /**
+     * @return the number of hits to collect when the hits from startHit to endHit are requested
+     */
+    static int hitsToCollect(int startHit, int endHit) {
+        int pageSize = Math.max(0, endHit - startHit);
+        return Math.max(endHit, Math.min(startHit + pageSize * PAGES_TO_COLLECT, MAX_HITS));
+    }
+
+    /**
+     * @return the hits from startHit to endHit of topDocs
+     */
+    static TopDocs page(TopDocs topDocs, int startHit, int endHit) {
+        ScoreDoc[] scoreDocs = topDocs.scoreDocs;
+        int start = Math.min(startHit, scoreDocs.length);
+        int end = Math.min(endHit, scoreDocs.length);
+        ScoreDoc[] page = new ScoreDoc[Math.max(0, end - start)];
+        System.arraycopy(scoreDocs, start, page, 0, page.length);
+        return new TopDocs(topDocs.totalHits, page, topDocs.getMaxScore());
+    }
+
+    /**
+     * The top hits of a query, also kept by the {@link QueryResultCache}.
+     */
+    static final class Hits {
+        final int totalHits;
+        final float maxScore;
+        final int[] docs;
+        final float[] scores;
+
+        Hits(TopDocs topDocs) {
+            totalHits = topDocs.totalHits;
+            maxScore = topDocs.getMaxScore();
+            ScoreDoc[] scoreDocs = topDocs.scoreDocs;
+            int size = Math.min(scoreDocs.length, MAX_HITS);
+            docs = new int[size];
+            scores = new float[size];
+            for (int i = 0; i < size; i++) {
+                docs[i] = scoreDocs[i].doc;
+                scores[i] = scoreDocs[i].score;
+            }
+        }
+
+        /**
+         * @return true if the hits from the first one to endHit are kept
+         */
+        boolean covers(int endHit) {
+            return endHit <= docs.length || docs.length >= totalHits;
+        }
+
+        TopDocs topDocs(int startHit, int endHit) {
+            int start = Math.min(startHit, docs.length);
+            int end = Math.min(endHit, docs.length);
+            ScoreDoc[] scoreDocs = new ScoreDoc[Math.max(0, end - start)];
+            for (int i = 0; i < scoreDocs.length; i++) {
+                scoreDocs[i] = new ScoreDoc(docs[start + i], scores[start + i]);
+            }
+            return new TopDocs(totalHits, scoreDocs, maxScore);
+        }
+    }
+
+    /**
+     * Filters don't implement equals: the same filter instance is used by a searcher for all the pages of a result.
+     */
+    private static final class Key {
+        private final Query query;
+        private final Filter filter;
+        private final Sort sort;
+        private final String language;
+
+        Key(Query query, Filter filter, Sort sort, String language) {
+            this.query = query;
+            this.filter = filter;
+            this.sort = sort;
+            this.language = language;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = query == null ? 0 : query.hashCode();
+            result = 31 * result + (filter == null ? 0 : System.identityHashCode(filter));
+            result = 31 * result + (sort == null ? 0 : sort.hashCode());
+            result = 31 * result + (language == null ? 0 : language.hashCode());
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return filter == other.filter && equal(query, other.query) && equal(sort, other.sort)
+                   && equal(language, other.language);
+        }
+
+        private static boolean equal(Object a, Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+//==============================================================================
+//===	Copyright (C) 2001-2007 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package org.fao.geonet.kernel.search;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.StoredFieldVisitor;
+import org.apache.lucene.search.ScoreDoc;
+
+/**
+ * Loads the stored fields of a page of hits with a single visitor.
+ * <p/>
+ * The documents are read in doc id order, so that the stored fields files are read forward segment after segment,
+ * and returned in the order of the hits. A loader is not thread safe, use one per page.
+ */
+final class StoredFieldsLoader extends StoredFieldVisitor {
+    private final Set<String> fields;
+    private Document document;
+
+    /**
+     * @param fields the fields to load, all the stored fields if null
+     */
+    StoredFieldsLoader(Set<String> fields) {
+        this.fields = fields;
+    }
+
+    StoredFieldsLoader(String... fields) {
+        this(new HashSet<String>(Arrays.asList(fields)));
+    }
+
+    /**
+     * @return the documents of the hits from start to end, in the order of the hits
+     */
+    Document[] load(IndexReader reader, ScoreDoc[] hits, int start, int end) throws IOException {
+        int size = Math.max(0, Math.min(end, hits.length) - start);
+        // doc id in the high bits, position in the page in the low bits
+        long[] order = new long[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = ((long) hits[start + i].doc << 32) | i;
+        }
+        Arrays.sort(order);
+
+        Document[] documents = new Document[size];
+        for (long entry : order) {
+            document = new Document();
+            reader.document((int) (entry >>> 32), this);
+            documents[(int) entry] = document;
+        }
+        document = null;
+        return documents;
+    }
+
+    @Override
+    public Status needsField(FieldInfo fieldInfo) throws IOException {
+        return fields == null || fields.contains(fieldInfo.name) ? Status.YES : Status.NO;
+    }
+
+    @Override
+    public void binaryField(FieldInfo fieldInfo, byte[] value) throws IOException {
+        document.add(new StoredField(fieldInfo.name, value));
+    }
+
+    @Override
+    public void stringField(FieldInfo fieldInfo, String value) throws IOException {
+        document.add(new StoredField(fieldInfo.name, value));
+    }
+
+    @Override
+    public void intField(FieldInfo fieldInfo, int value) {
+        document.add(new StoredField(fieldInfo.name, value));
+    }
+
+    @Override
+    public void longField(FieldInfo fieldInfo, long value) {
+        document.add(new StoredField(fieldInfo.name, value));
+    }
+
+    @Override
+    public void floatField(FieldInfo fieldInfo, float value) {
+        document.add(new StoredField(fieldInfo.name, value));
+    }
+
+    @Override
+    public void doubleField(FieldInfo fieldInfo, double value) {
+        document.add(new StoredField(fieldInfo.name, value));
+    }
+}
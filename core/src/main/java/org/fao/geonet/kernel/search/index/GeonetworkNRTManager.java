@@ -24,13 +24,9 @@ class GeonetworkNRTManager implements Closeable {
     private NRTManager actualManager;
     String language;
     private SearcherLifetimeManager lifetimeManager = new SearcherLifetimeManager();
-    // taxonomyTracker is here so that we can commit it and refresh reader when 
-    // we refresh
-    private TaxonomyIndexTracker taxonomyTracker;
 
     public GeonetworkNRTManager(LuceneConfig luceneConfig, String language, TrackingIndexWriter writer, SearcherFactory searcherFactory,
-            boolean applyAllDeletes, TaxonomyIndexTracker taxonomyTracker) throws IOException {
-        this.taxonomyTracker = taxonomyTracker;
+            boolean applyAllDeletes) throws IOException {
         actualManager = new NRTManager(writer, searcherFactory, applyAllDeletes);
         this.language = language;
         if (luceneConfig.useNRTManagerReopenThread()) {
@@ -113,11 +109,27 @@ class GeonetworkNRTManager implements Closeable {
         
     }
 
+    /**
+     * Does not block: returns false if another thread is already refreshing.
+     * The taxonomy reader is refreshed when the tracker takes a new snapshot
+     * of the refreshed searchers.
+     */
     public boolean maybeRefresh() throws IOException {
-        taxonomyTracker.maybeRefresh();
         return actualManager.maybeRefresh();
     }
 
+    /**
+     * @return true if searcher is the latest searcher of the index
+     */
+    boolean isCurrent(IndexSearcher searcher) throws IOException {
+        IndexSearcher current = actualManager.acquire();
+        try {
+            return current == searcher;
+        } finally {
+            actualManager.release(current);
+        }
+    }
+
     public void release(IndexSearcher searcher) throws IOException {
         actualManager.release(searcher);
     }
@@ -11,6 +11,11 @@ import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import jeeves.utils.IO;
 import jeeves.utils.Log;
@@ -21,7 +26,6 @@ import org.apache.lucene.document.Document;
 import org.apache.lucene.facet.taxonomy.CategoryPath;
 import org.apache.lucene.index.ConcurrentMergeScheduler;
 import org.apache.lucene.index.CorruptIndexException;
-import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.search.NRTManager.TrackingIndexWriter;
@@ -38,13 +42,22 @@ import org.fao.geonet.kernel.search.index.GeonetworkNRTManager.AcquireResult;
 /**
  * Keeps track of the lucene indexes that currently exist so that we don't have
  * to keep polling filesystem
+ * <p/>
+ * Searches lease the readers of the current {@link ReaderSnapshot} without
+ * taking any lock. Documents are added straight to the writer of their
+ * language index, which is safe for concurrent use. The lifecycle lock is only
+ * taken exclusively by {@link #reset()} and {@link #close(boolean)}.
  * 
  * @author jeichar
  */
 public class LuceneIndexLanguageTracker {
-    private final Map<String, NRTCachingDirectory> dirs = new HashMap<String, NRTCachingDirectory>();
-    private final Map<String, TrackingIndexWriter> trackingWriters = new HashMap<String, TrackingIndexWriter>();
-    private final Map<String, GeonetworkNRTManager> searchManagers = new HashMap<String, GeonetworkNRTManager>();
+    private final Map<String, NRTCachingDirectory> dirs = new ConcurrentHashMap<String, NRTCachingDirectory>();
+    private final Map<String, TrackingIndexWriter> trackingWriters = new ConcurrentHashMap<String, TrackingIndexWriter>();
+    private final Map<String, GeonetworkNRTManager> searchManagers = new ConcurrentHashMap<String, GeonetworkNRTManager>();
+    private final ReadWriteLock lifecycleLock = new ReentrantReadWriteLock();
+    private final Lock snapshotLock = new ReentrantLock();
+    private final Object openLock = new Object();
+    private volatile ReaderSnapshot snapshot;
     private final Timer commitTimer;
     private final LuceneConfig luceneConfig;
     private final File indexContainingDir;
@@ -101,7 +114,7 @@ public class LuceneIndexLanguageTracker {
 			writer = new IndexWriter(cachedFSDir, conf);
 			trackingIndexWriter = new TrackingIndexWriter(writer);
 			nrtManager = new GeonetworkNRTManager(luceneConfig, language,
-					trackingIndexWriter, null, true, taxonomyIndexTracker);
+					trackingIndexWriter, null, true);
 		} catch (CorruptIndexException e) {
 			IOUtils.closeQuietly(nrtManager);
 			IOUtils.closeQuietly(writer);
@@ -122,8 +135,9 @@ public class LuceneIndexLanguageTracker {
             throw e;
 		}
         dirs.put(language, cachedFSDir);
-        trackingWriters.put(language, trackingIndexWriter);
         searchManagers.put(language, nrtManager);
+        // last: a language is open once it has a writer
+        trackingWriters.put(language, trackingIndexWriter);
     }
 
     private Set<File> listIndices(File luceneDir) {
@@ -146,93 +160,221 @@ public class LuceneIndexLanguageTracker {
         return locale;
     }
 
-    synchronized IndexAndTaxonomy acquire(final String preferedLang, final long versionToken) throws IOException {
-        long finalVersion = versionToken;
+    IndexAndTaxonomy acquire(final String preferedLang, final long versionToken) throws IOException {
+        if (!luceneConfig.useNRTManagerReopenThread()
+                || Boolean.parseBoolean(System.getProperty(LuceneConfig.USE_NRT_MANAGER_REOPEN_THREAD))) {
+            for (GeonetworkNRTManager manager : searchManagers.values()) {
+                manager.maybeRefresh();
+            }
+        }
+        while (true) {
+            ReaderSnapshot current = currentSnapshot();
+            if (versionToken != -1 && versionToken != current.version) {
+                return acquireVersion(preferedLang, versionToken);
+            }
+            IndexAndTaxonomy indexAndTaxonomy = current.lease(preferedLang);
+            if (indexAndTaxonomy != null) {
+                return indexAndTaxonomy;
+            }
+            // the snapshot has been replaced and its readers closed meanwhile,
+            // lease the new one
+            Thread.yield();
+        }
+    }
+
+    private boolean isCurrent(ReaderSnapshot current) throws IOException {
+        return current != null && current.size() == searchManagers.size() && current.isCurrent();
+    }
+
+    /**
+     * @return the snapshot of the latest searchers, or the previous snapshot
+     *         while another thread is taking the new one
+     */
+    private ReaderSnapshot currentSnapshot() throws IOException {
+        ReaderSnapshot current = snapshot;
+        if (isCurrent(current)) {
+            return current;
+        }
+        if (current == null) {
+            snapshotLock.lock();
+        } else if (!snapshotLock.tryLock()) {
+            return current;
+        }
+        try {
+            current = snapshot;
+            if (isCurrent(current)) {
+                return current;
+            }
+            ReaderSnapshot fresh;
+            lifecycleLock.readLock().lock();
+            try {
+                fresh = takeSnapshot();
+                snapshot = fresh;
+            } finally {
+                lifecycleLock.readLock().unlock();
+            }
+            if (current != null) {
+                current.close();
+            }
+            return fresh;
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    private ReaderSnapshot takeSnapshot() throws IOException {
         Map<AcquireResult, GeonetworkNRTManager> searchers = new HashMap<AcquireResult, GeonetworkNRTManager>(
                 (int) (searchManagers.size() * 1.5));
-        IndexReader[] readers = new IndexReader[searchManagers.size()];
-        int i = 1;
-        boolean tokenExpired = false;
         boolean lastVersionUpToDate = true;
-        for (GeonetworkNRTManager manager : searchManagers.values()) {
-            if (!luceneConfig.useNRTManagerReopenThread()
-                    || Boolean.parseBoolean(System.getProperty(LuceneConfig.USE_NRT_MANAGER_REOPEN_THREAD))) {
-                manager.maybeRefresh();
-            }
-            AcquireResult result = manager.acquire(versionToken, versionTracker);
-            lastVersionUpToDate = lastVersionUpToDate && result.lastVersionUpToDate;
-            tokenExpired = tokenExpired || result.newSearcher;
-
-            if ((preferedLang != null && preferedLang.equalsIgnoreCase(manager.language)) || i >= readers.length) {
-                readers[0] = result.searcher.getIndexReader();
-            } else {
-                readers[i] = result.searcher.getIndexReader();
-                i++;
+        try {
+            for (GeonetworkNRTManager manager : searchManagers.values()) {
+                AcquireResult result = manager.acquire(-1, versionTracker);
+                lastVersionUpToDate = lastVersionUpToDate && result.lastVersionUpToDate;
+                searchers.put(result, manager);
             }
-            searchers.put(result, manager);
+        } catch (IOException e) {
+            new ReaderSnapshot(-1, searchers, null).close();
+            throw e;
         }
 
-        if (tokenExpired) {
-            if (lastVersionUpToDate) {
-                finalVersion = versionTracker.lastVersion();
-            } else {
-                taxonomyIndexTracker.maybeRefresh();
-                finalVersion = versionTracker.register(searchers);
+        long version;
+        if (lastVersionUpToDate) {
+            version = versionTracker.lastVersion();
+        } else {
+            taxonomyIndexTracker.maybeRefresh();
+            version = versionTracker.register(searchers);
+        }
+        return new ReaderSnapshot(version, searchers, taxonomyIndexTracker.acquire());
+    }
+
+    /**
+     * Acquires the searchers of an older version, for example to show the next
+     * page of a search. If the version has expired the latest searchers are
+     * returned with a new version.
+     */
+    private IndexAndTaxonomy acquireVersion(final String preferedLang, final long versionToken) throws IOException {
+        lifecycleLock.readLock().lock();
+        try {
+            long finalVersion = versionToken;
+            Map<AcquireResult, GeonetworkNRTManager> searchers = new HashMap<AcquireResult, GeonetworkNRTManager>(
+                    (int) (searchManagers.size() * 1.5));
+            boolean tokenExpired = false;
+            boolean lastVersionUpToDate = true;
+            for (GeonetworkNRTManager manager : searchManagers.values()) {
+                AcquireResult result = manager.acquire(versionToken, versionTracker);
+                lastVersionUpToDate = lastVersionUpToDate && result.lastVersionUpToDate;
+                tokenExpired = tokenExpired || result.newSearcher;
+                searchers.put(result, manager);
             }
 
+            if (tokenExpired) {
+                if (lastVersionUpToDate) {
+                    finalVersion = versionTracker.lastVersion();
+                } else {
+                    taxonomyIndexTracker.maybeRefresh();
+                    finalVersion = versionTracker.register(searchers);
+                }
+
+            }
+            return new IndexAndTaxonomy(finalVersion, new GeonetworkMultiReader(ReaderSnapshot.readers(preferedLang,
+                    searchers), searchers), taxonomyIndexTracker.acquire());
+        } finally {
+            lifecycleLock.readLock().unlock();
         }
-        return new IndexAndTaxonomy(finalVersion, new GeonetworkMultiReader(readers, searchers),
-                taxonomyIndexTracker.acquire());
     }
 
-    synchronized void commit() throws CorruptIndexException, IOException {
-        // before a writer commits the IndexWriter, it must commit the
-        // TaxonomyWriter.
-        taxonomyIndexTracker.commit();
-        for (TrackingIndexWriter writer : trackingWriters.values()) {
-            writer.getIndexWriter().commit();
+    void commit() throws CorruptIndexException, IOException {
+        lifecycleLock.readLock().lock();
+        try {
+            // before a writer commits the IndexWriter, it must commit the
+            // TaxonomyWriter.
+            taxonomyIndexTracker.commit();
+            for (TrackingIndexWriter writer : trackingWriters.values()) {
+                writer.getIndexWriter().commit();
+            }
+        } finally {
+            lifecycleLock.readLock().unlock();
         }
     }
 
-    synchronized void withWriter(Function function) throws CorruptIndexException, IOException {
-        for (TrackingIndexWriter writer : trackingWriters.values()) {
-            function.apply(taxonomyIndexTracker.writer(), writer);
+    void withWriter(Function function) throws CorruptIndexException, IOException {
+        lifecycleLock.readLock().lock();
+        try {
+            for (TrackingIndexWriter writer : trackingWriters.values()) {
+                function.apply(taxonomyIndexTracker.writer(), writer);
+            }
+        } finally {
+            lifecycleLock.readLock().unlock();
         }
     }
 
-    synchronized void addDocument(String language, Document doc, List<CategoryPath> categories)
+    void addDocument(String language, Document doc, List<CategoryPath> categories)
             throws CorruptIndexException, LockObtainFailedException, IOException {
-        open(language);
-        // Add taxonomy first
-        if (categories.size() > 0) {
-            taxonomyIndexTracker.addDocument(doc, categories);
+        lifecycleLock.readLock().lock();
+        try {
+            open(language);
+            // Add taxonomy first
+            if (categories.size() > 0) {
+                taxonomyIndexTracker.addDocument(doc, categories);
+            }
+            trackingWriters.get(language).addDocument(doc);
+        } finally {
+            lifecycleLock.readLock().unlock();
         }
-        trackingWriters.get(language).addDocument(doc);
     }
 
-    synchronized void open(String language) throws CorruptIndexException, LockObtainFailedException, IOException {
+    void open(String language) throws CorruptIndexException, LockObtainFailedException, IOException {
         language = normalize(language);
-        if (!trackingWriters.containsKey(language)) {
-            File indexDir = new File(indexContainingDir, language);
-            open(indexDir);
+        if (trackingWriters.containsKey(language)) {
+            return;
+        }
+        lifecycleLock.readLock().lock();
+        try {
+            synchronized (openLock) {
+                if (!trackingWriters.containsKey(language)) {
+                    File indexDir = new File(indexContainingDir, language);
+                    open(indexDir);
+                }
+            }
+        } finally {
+            lifecycleLock.readLock().unlock();
         }
     }
 
     public synchronized void reset() throws Exception {
-        // reset taxonomy first
-        taxonomyIndexTracker.reset();
-        close(false);
-        FileUtils.deleteDirectory(indexContainingDir);
-        IO.mkdirs(indexContainingDir, "Lucene index container directory");
-        dirs.clear();
-        trackingWriters.clear();
-        searchManagers.clear();
-        init(indexContainingDir, luceneConfig);
+        lifecycleLock.writeLock().lock();
+        try {
+            // reset taxonomy first
+            taxonomyIndexTracker.reset();
+            closeIndexes(false);
+            FileUtils.deleteDirectory(indexContainingDir);
+            IO.mkdirs(indexContainingDir, "Lucene index container directory");
+            dirs.clear();
+            trackingWriters.clear();
+            searchManagers.clear();
+            init(indexContainingDir, luceneConfig);
+        } finally {
+            lifecycleLock.writeLock().unlock();
+        }
     }
 
     public synchronized void close(boolean closeTaxonomy) throws IOException {
+        lifecycleLock.writeLock().lock();
+        try {
+            closeIndexes(closeTaxonomy);
+        } finally {
+            lifecycleLock.writeLock().unlock();
+        }
+    }
+
+    private void closeIndexes(boolean closeTaxonomy) throws IOException {
         List<Throwable> errors = new ArrayList<Throwable>(5);
 
+        ReaderSnapshot current = snapshot;
+        snapshot = null;
+        if (current != null) {
+            current.close();
+        }
         
         if (closeTaxonomy) {
             // before a writer close's the IndexWriter, it must close() the
@@ -271,15 +413,26 @@ public class LuceneIndexLanguageTracker {
         }
     }
 
-    public synchronized void optimize() throws Exception {
-        for (TrackingIndexWriter writer : trackingWriters.values()) {
-            try {
-                writer.getIndexWriter().forceMergeDeletes(true);
-                writer.getIndexWriter().forceMerge(1, false);
-            } catch (OutOfMemoryError e) {
-                reset();
-                throw new RuntimeException(e);
+    public void optimize() throws Exception {
+        OutOfMemoryError outOfMemory = null;
+        lifecycleLock.readLock().lock();
+        try {
+            for (TrackingIndexWriter writer : trackingWriters.values()) {
+                try {
+                    writer.getIndexWriter().forceMergeDeletes(true);
+                    writer.getIndexWriter().forceMerge(1, false);
+                } catch (OutOfMemoryError e) {
+                    outOfMemory = e;
+                    break;
+                }
             }
+        } finally {
+            lifecycleLock.readLock().unlock();
+        }
+        // reset takes the lifecycle lock exclusively
+        if (outOfMemory != null) {
+            reset();
+            throw new RuntimeException(outOfMemory);
         }
     }
 
@@ -288,22 +441,32 @@ public class LuceneIndexLanguageTracker {
         @Override
         public void run() {
             Log.debug(Geonet.LUCENE, "Running Lucene committer timer");
-            for (TrackingIndexWriter writer : trackingWriters.values()) {
-                try {
-                    try {
-                        writer.getIndexWriter().commit();
-                    } catch (Throwable e) {
-                        Log.error(Geonet.LUCENE, "Error committing writer: " + writer, e);
-                    }
-                } catch (OutOfMemoryError e) {
+            OutOfMemoryError outOfMemory = null;
+            lifecycleLock.readLock().lock();
+            try {
+                for (TrackingIndexWriter writer : trackingWriters.values()) {
                     try {
+                        try {
+                            writer.getIndexWriter().commit();
+                        } catch (Throwable e) {
+                            Log.error(Geonet.LUCENE, "Error committing writer: " + writer, e);
+                        }
+                    } catch (OutOfMemoryError e) {
                         Log.error(Geonet.LUCENE, "OOM Error committing writer: " + writer, e);
-                        reset();
-                    } catch (Exception e1) {
-                        Log.error(Geonet.LUCENE, "Error resetting lucene indices", e);
+                        outOfMemory = e;
+                        break;
                     }
-                    throw new RuntimeException(e);
                 }
+            } finally {
+                lifecycleLock.readLock().unlock();
+            }
+            if (outOfMemory != null) {
+                try {
+                    reset();
+                } catch (Exception e1) {
+                    Log.error(Geonet.LUCENE, "Error resetting lucene indices", e1);
+                }
+                throw new RuntimeException(outOfMemory);
             }
         }
 
@@ -312,11 +475,14 @@ public class LuceneIndexLanguageTracker {
     private class PurgeExpiredSearchersTask extends TimerTask {
         @Override
         public void run() {
-            synchronized (LuceneIndexLanguageTracker.this) {
+            lifecycleLock.readLock().lock();
+            try {
                 Collection<GeonetworkNRTManager> values = searchManagers.values();
                 for (GeonetworkNRTManager geonetworkNRTManager : values) {
                     geonetworkNRTManager.purgeExpiredSearchers(versionTracker);
                 }
+            } finally {
+                lifecycleLock.readLock().unlock();
             }
             Log.info(Geonet.LUCENE, "Done running PurgeExpiredSearchersTask. " + versionTracker.size()
                     + " versions still cached.");
@@ -0,0 +1,122 @@
+package org.fao.geonet.kernel.search.index;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import jeeves.utils.Log;
+
+import org.apache.lucene.facet.taxonomy.TaxonomyReader;
+import org.apache.lucene.index.IndexReader;
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.kernel.search.IndexAndTaxonomy;
+import org.fao.geonet.kernel.search.index.GeonetworkNRTManager.AcquireResult;
+
+/**
+ * The searchers of all the language indexes at one version. The snapshot holds
+ * one reference on each index reader until it is replaced by a newer snapshot
+ * and each {@link #lease(String)} takes one more reference, so leasing the
+ * current snapshot only increments reference counts and never waits for the
+ * index writers.
+ *
+ * @see LuceneIndexLanguageTracker#acquire(String, long)
+ */
+final class ReaderSnapshot {
+    final long version;
+    private final Map<AcquireResult, GeonetworkNRTManager> searchers;
+    private final TaxonomyReader taxonomyReader;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    ReaderSnapshot(long version, Map<AcquireResult, GeonetworkNRTManager> searchers, TaxonomyReader taxonomyReader) {
+        this.version = version;
+        this.searchers = searchers;
+        this.taxonomyReader = taxonomyReader;
+    }
+
+    /**
+     * @return number of language indexes in the snapshot
+     */
+    int size() {
+        return searchers.size();
+    }
+
+    /**
+     * @return true if no index has been refreshed since the snapshot was taken
+     */
+    boolean isCurrent() throws IOException {
+        for (Map.Entry<AcquireResult, GeonetworkNRTManager> entry : searchers.entrySet()) {
+            if (!entry.getValue().isCurrent(entry.getKey().searcher)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Takes a reference on all the readers of the snapshot. They are released
+     * with {@link GeonetworkMultiReader#releaseToNRTManager()}.
+     *
+     * @return the readers or null if the snapshot has been closed and its
+     *         readers are already closed
+     */
+    IndexAndTaxonomy lease(String preferedLang) {
+        List<IndexReader> leased = new ArrayList<IndexReader>(searchers.size());
+        for (AcquireResult result : searchers.keySet()) {
+            IndexReader reader = result.searcher.getIndexReader();
+            if (!reader.tryIncRef()) {
+                for (IndexReader toRelease : leased) {
+                    try {
+                        toRelease.decRef();
+                    } catch (IOException e) {
+                        Log.error(Geonet.LUCENE, "Error releasing reader of closed snapshot " + version, e);
+                    }
+                }
+                return null;
+            }
+            leased.add(reader);
+        }
+        // the multi reader empties its map when it is released
+        Map<AcquireResult, GeonetworkNRTManager> leasedSearchers = new HashMap<AcquireResult, GeonetworkNRTManager>(searchers);
+        return new IndexAndTaxonomy(version, new GeonetworkMultiReader(readers(preferedLang, leasedSearchers),
+                leasedSearchers), taxonomyReader);
+    }
+
+    /**
+     * Releases the references of the snapshot, the readers are closed when the
+     * last lease is released.
+     */
+    void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        for (Map.Entry<AcquireResult, GeonetworkNRTManager> entry : searchers.entrySet()) {
+            try {
+                entry.getValue().release(entry.getKey().searcher);
+            } catch (IOException e) {
+                Log.error(Geonet.LUCENE, "Error releasing searcher of snapshot " + version, e);
+            }
+        }
+    }
+
+    /**
+     * @return the readers of the searchers, the reader of the prefered language
+     *         first
+     */
+    static IndexReader[] readers(String preferedLang, Map<AcquireResult, GeonetworkNRTManager> searchers) {
+        IndexReader[] readers = new IndexReader[searchers.size()];
+        int i = 1;
+        for (Map.Entry<AcquireResult, GeonetworkNRTManager> entry : searchers.entrySet()) {
+            IndexReader reader = entry.getKey().searcher.getIndexReader();
+            if ((preferedLang != null && preferedLang.equalsIgnoreCase(entry.getValue().language)) || i >= readers.length) {
+                readers[0] = reader;
+            } else {
+                readers[i] = reader;
+                i++;
+            }
+        }
+        return readers;
+    }
+}
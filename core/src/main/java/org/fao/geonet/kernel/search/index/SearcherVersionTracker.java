@@ -10,12 +10,16 @@ import org.fao.geonet.kernel.search.index.GeonetworkNRTManager.AcquireResult;
 
 import com.google.common.base.Predicate;
 
+/**
+ * Maps the version tokens given to the searches to the version of the searcher
+ * of each language index. Thread safe.
+ */
 public class SearcherVersionTracker {
 
     private final AtomicLong version = new AtomicLong(0);
     private final Map<Long, Map<String, Long>> mapping = new HashMap<Long, Map<String, Long>>();
     
-    public long get(String lang, long version) {
+    public synchronized long get(String lang, long version) {
         Map<String, Long> versions = mapping.get(version);
         
         if(versions == null) {
@@ -33,7 +37,7 @@ public class SearcherVersionTracker {
         return version.get();
     }
 
-    public long register(Map<AcquireResult, GeonetworkNRTManager> searchers) {
+    public synchronized long register(Map<AcquireResult, GeonetworkNRTManager> searchers) {
         long finalVersion = version.incrementAndGet();
         
         Map<String, Long> versions = mapping.get(finalVersion);
@@ -51,7 +55,7 @@ public class SearcherVersionTracker {
         return get(language, lastVersion());
     }
 
-    public void prune(String language, Predicate<Long> predicate) {
+    public synchronized void prune(String language, Predicate<Long> predicate) {
         for (Iterator<Entry<Long, Map<String, Long>>> iter = mapping.entrySet().iterator(); iter.hasNext(); ) {
             Entry<Long, Map<String, Long>> entry = iter.next();
             Long version = entry.getValue().get(language);
@@ -62,7 +66,7 @@ public class SearcherVersionTracker {
         
     }
 
-    public int size() {
+    public synchronized int size() {
         return mapping.size();
     }
 }
@@ -78,7 +78,7 @@ class TaxonomyIndexTracker {
     	}
     }
     
-    TaxonomyReader acquire() throws IOException {
+    synchronized TaxonomyReader acquire() throws IOException {
         if(taxonomyReader == null) {
             this.taxonomyReader = new DirectoryTaxonomyReader(taxonomyWriter);
         }
@@ -112,7 +112,7 @@ class TaxonomyIndexTracker {
         }
     }
 
-    void close(List<Throwable> errors) throws IOException {
+    synchronized void close(List<Throwable> errors) throws IOException {
         try {
             if(taxonomyReader != null)
                 taxonomyReader.close();
@@ -139,7 +139,7 @@ class TaxonomyIndexTracker {
     }
 
     
-    void reset() throws Exception {
+    synchronized void reset() throws Exception {
         List<Throwable> errors = new ArrayList<Throwable>(5);
         close(errors);
 
@@ -174,7 +174,7 @@ class TaxonomyIndexTracker {
         return taxonomyWriter;
     }
 
-    public void maybeRefresh() throws IOException {
+    public synchronized void maybeRefresh() throws IOException {
         // do nothing for now
         if (taxonomyReader != null) {
             TaxonomyReader newReader = TaxonomyReader.openIfChanged(taxonomyReader);
@@ -24,7 +24,6 @@
 package org.fao.geonet.kernel.search.spatial;
 
 import com.vividsolutions.jts.geom.Geometry;
-import com.vividsolutions.jts.index.SpatialIndex;
 import org.apache.lucene.search.Query;
 import org.geotools.data.FeatureSource;
 import org.opengis.feature.simple.SimpleFeature;
@@ -44,7 +43,7 @@ import java.io.IOException;
  */
 public class CrossesFilter extends SpatialFilter
 {
-    public CrossesFilter(Query query, int numHits, Geometry geom, Pair<FeatureSource<SimpleFeatureType, SimpleFeature>, SpatialIndex> sourceAccessor) throws IOException
+    public CrossesFilter(Query query, int numHits, Geometry geom, Pair<FeatureSource<SimpleFeatureType, SimpleFeature>, GeometryIndex> sourceAccessor) throws IOException
     {
         super(query, numHits, geom, sourceAccessor);
     }
@@ -24,11 +24,7 @@
 package org.fao.geonet.kernel.search.spatial;
 
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.Set;
 
-import org.apache.lucene.document.Document;
-import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.DocIdSet;
@@ -38,19 +34,18 @@ import org.apache.lucene.search.Scorer;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.OpenBitSet;
 import org.geotools.data.FeatureSource;
-import org.geotools.feature.FeatureCollection;
-import org.geotools.feature.FeatureIterator;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
-import org.opengis.feature.type.Name;
 import org.opengis.filter.FilterFactory2;
 import org.opengis.filter.expression.Literal;
 import org.opengis.filter.expression.PropertyName;
 import org.opengis.filter.spatial.SpatialOperator;
 
+import bak.pcj.set.IntOpenHashSet;
+import bak.pcj.set.IntSet;
+
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
-import com.vividsolutions.jts.index.SpatialIndex;
 
 /**
  * This filter filters out all documents that do not intersect the requested
@@ -61,16 +56,16 @@ import com.vividsolutions.jts.index.SpatialIndex;
 public class FullScanFilter extends SpatialFilter
 {
 
-    private Set<String>       _matches;
+    private IntSet            _matches;
 
     public FullScanFilter(Query query, int numHits, Geometry geom,
-            Pair<FeatureSource<SimpleFeatureType, SimpleFeature>, SpatialIndex> sourceAccessor) throws IOException
+            Pair<FeatureSource<SimpleFeatureType, SimpleFeature>, GeometryIndex> sourceAccessor) throws IOException
     {
         super(query, numHits, geom, sourceAccessor);
     }
 
     protected FullScanFilter(Query query, int numHits, Envelope bounds,
-            Pair<FeatureSource<SimpleFeatureType, SimpleFeature>, SpatialIndex> sourceAccessor) throws IOException
+            Pair<FeatureSource<SimpleFeatureType, SimpleFeature>, GeometryIndex> sourceAccessor) throws IOException
     {
         super(query, numHits, bounds, sourceAccessor);
     }
@@ -78,11 +73,11 @@ public class FullScanFilter extends SpatialFilter
     public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException {
         final OpenBitSet bits = new OpenBitSet(context.reader().maxDoc());
 
-        final Set<String> matches = loadMatches();
+        final IntSet matches = loadMatches();
 
         new IndexSearcher(context.reader()).search(_query, new Collector() {
             private int docBase;
-            private AtomicReader reader;
+            private int[] ids;
 
             // ignore scorer
             public void setScorer(Scorer scorer) {
@@ -94,21 +89,15 @@ public class FullScanFilter extends SpatialFilter
             }
 
             public final void collect(int doc) {
-                Document document;
-                try {
-                    document = reader.document(doc, _fieldsToLoad);
-                    if (matches.contains(document.get("_id"))) {
-                        bits.set(docBase + doc);
-                    }
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
+                if (matches.contains(ids[doc])) {
+                    bits.set(docBase + doc);
                 }
             }
 
             @Override
             public void setNextReader(AtomicReaderContext context) throws IOException {
                 this.docBase = context.docBase;
-                this.reader = context.reader();
+                this.ids = idColumn(context.reader());
             }
         });
         return bits;
@@ -122,26 +111,16 @@ public class FullScanFilter extends SpatialFilter
      *         this filter
      * @throws IOException
      */
-    protected synchronized Set<String> loadMatches() throws IOException
+    protected synchronized IntSet loadMatches() throws IOException
     {
         if (_matches == null) {
-
-            FeatureSource<SimpleFeatureType, SimpleFeature> _featureSource = sourceAccessor.one();
-            FeatureCollection<SimpleFeatureType, SimpleFeature> features = _featureSource 
-                    .getFeatures(createFilter(_featureSource));
-            FeatureIterator<SimpleFeature> iterator = features.features();
-
-            HashSet<String> matches = new HashSet<String>();
-            try {
-                final Name idColumn = SpatialIndexWriter.findIdColumn(_featureSource);
-                while (iterator.hasNext()) {
-                    SimpleFeature feature = iterator.next();
-                    matches
-                            .add((String) feature
-                                    .getAttribute(idColumn));
+            GeometryIndex geometries = getGeometryIndex();
+            IntSet matches = new IntOpenHashSet();
+            for (int slot = 0; slot < geometries.size(); slot++) {
+                int id = parseId(geometries.getId(slot));
+                if (id >= 0 && evaluate(geometries.getFeatureId(slot), geometries.getGeometry(slot))) {
+                    matches.add(id);
                 }
-            } finally {
-                iterator.close();
             }
             _matches = matches;
         }
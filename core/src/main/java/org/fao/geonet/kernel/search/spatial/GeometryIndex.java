@@ -0,0 +1,302 @@
+//==============================================================================
+//===	Copyright (C) 2001-2008 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package org.fao.geonet.kernel.search.spatial;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.filter.identity.FeatureIdImpl;
+import org.opengis.filter.identity.FeatureId;
+
+import bak.pcj.map.ObjectKeyIntMap;
+import bak.pcj.map.ObjectKeyIntOpenHashMap;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.index.ItemVisitor;
+import com.vividsolutions.jts.index.strtree.STRtree;
+import com.vividsolutions.jts.io.InStream;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKBReader;
+import com.vividsolutions.jts.io.WKBWriter;
+
+/**
+ * Read-only copy of the spatial index DataStore used on the search path.
+ * <p/>
+ * The envelopes are bulk loaded in a {@link STRtree} whose items are the same
+ * {@link Pair}s of FeatureId and id attribute as before, and the geometries are
+ * kept as WKB packed in a single byte array so that the spatial filters can be
+ * refined without querying the DataStore.
+ * <p/>
+ * The index can be written to a snapshot file next to the Lucene index and read
+ * back on startup instead of reading all the features of the DataStore. The
+ * snapshot keeps the state of the DataStore it was built from (see
+ * {@link #getSourceState()}), so that a snapshot of a DataStore modified since
+ * is not used.
+ *
+ * @see SpatialIndexWriter#getIndex()
+ */
+public final class GeometryIndex
+{
+    private static final int MAGIC   = 0x474e5349;
+    private static final int VERSION = 2;
+
+    private final STRtree          _tree;
+    private final FeatureId[]      _fids;
+    private final String[]         _ids;
+    private final double[]         _envelopes;
+    private final byte[]           _arena;
+    private final int[]            _offsets;
+    private final ObjectKeyIntMap  _slots;
+    private final String           _sourceState;
+
+    private GeometryIndex(FeatureId[] fids, String[] ids, double[] envelopes, byte[] arena, int[] offsets,
+            String sourceState)
+    {
+        _sourceState = sourceState;
+        _fids = fids;
+        _ids = ids;
+        _envelopes = envelopes;
+        _arena = arena;
+        _offsets = offsets;
+        _slots = new ObjectKeyIntOpenHashMap(Math.max(16, fids.length));
+        _tree = new STRtree();
+        for (int i = 0; i < fids.length; i++) {
+            // slots are stored + 1, 0 being the value returned for a missing key
+            _slots.put(fids[i].getID(), i + 1);
+            _tree.insert(getEnvelope(i), Pair.read(fids[i], (Object) ids[i]));
+        }
+        // bulk load now, STRtree builds itself on the first query without any synchronization
+        _tree.build();
+    }
+
+    /**
+     * @return number of geometries in the index
+     */
+    public int size()
+    {
+        return _fids.length;
+    }
+
+    /**
+     * @return the state of the DataStore the index was built from, null if
+     *         unknown
+     */
+    public String getSourceState()
+    {
+        return _sourceState;
+    }
+
+    public FeatureId getFeatureId(int slot)
+    {
+        return _fids[slot];
+    }
+
+    /**
+     * @return the id attribute (metadata id) of the feature
+     */
+    public String getId(int slot)
+    {
+        return _ids[slot];
+    }
+
+    /**
+     * @return the geometry of the feature or null if the feature is not in the index
+     */
+    public Geometry getGeometry(FeatureId fid)
+    {
+        int slot = _slots.get(fid.getID());
+        if (slot == 0) {
+            return null;
+        }
+        return getGeometry(slot - 1);
+    }
+
+    public Geometry getGeometry(int slot)
+    {
+        final int[] position = {_offsets[slot]};
+        InStream in = new InStream() {
+            public void read(byte[] buf) throws IOException
+            {
+                System.arraycopy(_arena, position[0], buf, 0, buf.length);
+                position[0] += buf.length;
+            }
+        };
+        try {
+            return new WKBReader().read(in);
+        } catch (IOException e) {
+            throw new IllegalStateException("Corrupted geometry of feature " + _fids[slot], e);
+        } catch (ParseException e) {
+            throw new IllegalStateException("Corrupted geometry of feature " + _fids[slot], e);
+        }
+    }
+
+    private Envelope getEnvelope(int slot)
+    {
+        int i = slot * 4;
+        return new Envelope(_envelopes[i], _envelopes[i + 1], _envelopes[i + 2], _envelopes[i + 3]);
+    }
+
+    /**
+     * @return the {@link Pair}s of FeatureId and id attribute of the features
+     *         whose envelope intersects the envelope
+     */
+    @SuppressWarnings("rawtypes")
+    public List query(Envelope searchEnv)
+    {
+        return _tree.query(searchEnv);
+    }
+
+    public void query(Envelope searchEnv, ItemVisitor visitor)
+    {
+        _tree.query(searchEnv, visitor);
+    }
+
+    /**
+     * Writes the index to a snapshot file. The file is written under a
+     * temporary name first so that a partially written snapshot is never read.
+     */
+    public void write(File file) throws IOException
+    {
+        File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeBoolean(_sourceState != null);
+            if (_sourceState != null) {
+                out.writeUTF(_sourceState);
+            }
+            out.writeInt(_fids.length);
+            out.writeInt(_arena.length);
+            for (int i = 0; i < _fids.length; i++) {
+                out.writeUTF(_fids[i].getID());
+                out.writeUTF(_ids[i]);
+                for (int j = 0; j < 4; j++) {
+                    out.writeDouble(_envelopes[i * 4 + j]);
+                }
+                out.writeInt(_offsets[i]);
+            }
+            out.write(_arena);
+        } finally {
+            out.close();
+        }
+        if (file.exists() && !file.delete()) {
+            tmp.delete();
+            throw new IOException("Unable to replace " + file);
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Unable to rename " + tmp + " to " + file);
+        }
+    }
+
+    /**
+     * Reads a snapshot written by {@link #write(File)}.
+     */
+    public static GeometryIndex read(File file) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file + " is not a spatial index snapshot or was written by another version");
+            }
+            String sourceState = in.readBoolean() ? in.readUTF() : null;
+            int size = in.readInt();
+            int arenaLength = in.readInt();
+            FeatureId[] fids = new FeatureId[size];
+            String[] ids = new String[size];
+            double[] envelopes = new double[size * 4];
+            int[] offsets = new int[size];
+            for (int i = 0; i < size; i++) {
+                fids[i] = new FeatureIdImpl(in.readUTF());
+                ids[i] = in.readUTF();
+                for (int j = 0; j < 4; j++) {
+                    envelopes[i * 4 + j] = in.readDouble();
+                }
+                offsets[i] = in.readInt();
+            }
+            byte[] arena = new byte[arenaLength];
+            in.readFully(arena);
+            return new GeometryIndex(fids, ids, envelopes, arena, offsets, sourceState);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Collects the features read from the DataStore.
+     */
+    public static final class Builder
+    {
+        private final List<FeatureId>       _fids      = new ArrayList<FeatureId>();
+        private final List<String>          _ids       = new ArrayList<String>();
+        private final List<Envelope>        _envelopes = new ArrayList<Envelope>();
+        private final List<Integer>         _offsets   = new ArrayList<Integer>();
+        private final ByteArrayOutputStream _arena     = new ByteArrayOutputStream();
+        private final WKBWriter             _writer    = new WKBWriter();
+
+        public Builder add(FeatureId fid, Object id, Geometry geometry)
+        {
+            _fids.add(fid);
+            _ids.add(String.valueOf(id));
+            _envelopes.add(geometry.getEnvelopeInternal());
+            _offsets.add(_arena.size());
+            byte[] wkb = _writer.write(geometry);
+            _arena.write(wkb, 0, wkb.length);
+            return this;
+        }
+
+        /**
+         * @param sourceState the state of the DataStore the features were read
+         *            from, null if unknown
+         */
+        public GeometryIndex build(String sourceState)
+        {
+            int size = _fids.size();
+            String[] ids = _ids.toArray(new String[size]);
+            double[] envelopes = new double[size * 4];
+            int[] offsets = new int[size];
+            for (int i = 0; i < size; i++) {
+                Envelope envelope = _envelopes.get(i);
+                envelopes[i * 4] = envelope.getMinX();
+                envelopes[i * 4 + 1] = envelope.getMaxX();
+                envelopes[i * 4 + 2] = envelope.getMinY();
+                envelopes[i * 4 + 3] = envelope.getMaxY();
+                offsets[i] = _offsets.get(i);
+            }
+            return new GeometryIndex(_fids.toArray(new FeatureId[size]), ids, envelopes, _arena.toByteArray(), offsets,
+                    sourceState);
+        }
+    }
+}
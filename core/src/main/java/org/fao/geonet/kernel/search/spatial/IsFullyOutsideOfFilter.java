@@ -23,7 +23,6 @@
 package org.fao.geonet.kernel.search.spatial;
 
 import com.vividsolutions.jts.geom.Geometry;
-import com.vividsolutions.jts.index.SpatialIndex;
 import org.apache.lucene.search.Query;
 import org.geotools.data.FeatureSource;
 import org.opengis.feature.simple.SimpleFeature;
@@ -31,6 +30,7 @@ import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.filter.FilterFactory2;
 import org.opengis.filter.expression.Literal;
 import org.opengis.filter.expression.PropertyName;
+import org.opengis.filter.identity.FeatureId;
 import org.opengis.filter.spatial.SpatialOperator;
 
 import java.io.IOException;
@@ -38,7 +38,7 @@ import java.io.IOException;
 
 public class IsFullyOutsideOfFilter  extends SpatialFilter
 {
-    public IsFullyOutsideOfFilter(Query query, int numHits, Geometry geom, Pair<FeatureSource<SimpleFeatureType, SimpleFeature>, SpatialIndex> sourceAccessor) throws IOException
+    public IsFullyOutsideOfFilter(Query query, int numHits, Geometry geom, Pair<FeatureSource<SimpleFeatureType, SimpleFeature>, GeometryIndex> sourceAccessor) throws IOException
     {
         super(query, numHits, geom, sourceAccessor);
     }
@@ -48,4 +48,11 @@ public class IsFullyOutsideOfFilter  extends SpatialFilter
     {
         return filterFactory.disjoint(geomPropertyName, geomExpression);
     }
+
+    @Override
+    protected boolean evaluate(FeatureId id, Geometry geometry)
+    {
+        return getPreparedGeometry().disjoint(geometry);
+    }
+
 }
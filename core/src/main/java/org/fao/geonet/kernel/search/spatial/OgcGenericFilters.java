@@ -3,7 +3,6 @@ package org.fao.geonet.kernel.search.spatial;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.MultiPolygon;
 import com.vividsolutions.jts.geom.Polygon;
-import com.vividsolutions.jts.index.SpatialIndex;
 import jeeves.utils.Log;
 import jeeves.utils.Xml;
 import org.apache.lucene.search.Query;
@@ -87,7 +86,7 @@ public class OgcGenericFilters
      * @throws Exception
      */
     public static SpatialFilter create(Query query, int numHits,
-            Element filterExpr, Pair<FeatureSource<SimpleFeatureType, SimpleFeature>, SpatialIndex> sourceAccessor, Parser parser) throws Exception
+            Element filterExpr, Pair<FeatureSource<SimpleFeatureType, SimpleFeature>, GeometryIndex> sourceAccessor, Parser parser) throws Exception
     {
         Name geometryColumn = sourceAccessor.one().getSchema().getGeometryDescriptor().getName();
 				// -- parse Filter and report any validation issues
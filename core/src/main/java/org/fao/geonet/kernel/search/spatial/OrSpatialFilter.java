@@ -13,9 +13,10 @@ import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory2;
 import org.opengis.filter.expression.Literal;
 import org.opengis.filter.expression.PropertyName;
+import org.opengis.filter.identity.FeatureId;
 
 import com.vividsolutions.jts.geom.Envelope;
-import com.vividsolutions.jts.index.SpatialIndex;
+import com.vividsolutions.jts.geom.Geometry;
 
 
 public class OrSpatialFilter extends SpatialFilter {
@@ -23,7 +24,7 @@ public class OrSpatialFilter extends SpatialFilter {
     private Collection<SpatialFilter> filters;
 
     public OrSpatialFilter(Query query, int numHits, Envelope bounds,
-            Pair<FeatureSource<SimpleFeatureType, SimpleFeature>, SpatialIndex> sourceAccessor, Collection<SpatialFilter> filters) throws IOException {
+            Pair<FeatureSource<SimpleFeatureType, SimpleFeature>, GeometryIndex> sourceAccessor, Collection<SpatialFilter> filters) throws IOException {
         super(query, numHits, bounds, sourceAccessor);
         this.filters = filters;
     }
@@ -39,6 +40,16 @@ public class OrSpatialFilter extends SpatialFilter {
 
     }
     
+    @Override
+    protected boolean evaluate(FeatureId id, Geometry geometry) {
+        for (SpatialFilter sfilter : filters) {
+            if (sfilter.evaluate(id, geometry)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public Filter createGeomFilter(FilterFactory2 filterFactory, PropertyName geomPropertyName, Literal geomExpression) {
         throw new UnsupportedOperationException();
@@ -24,7 +24,6 @@
 package org.fao.geonet.kernel.search.spatial;
 
 import com.vividsolutions.jts.geom.Geometry;
-import com.vividsolutions.jts.index.SpatialIndex;
 import org.apache.lucene.search.Query;
 import org.geotools.data.FeatureSource;
 import org.opengis.feature.simple.SimpleFeature;
@@ -32,6 +31,7 @@ import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.filter.FilterFactory2;
 import org.opengis.filter.expression.Literal;
 import org.opengis.filter.expression.PropertyName;
+import org.opengis.filter.identity.FeatureId;
 import org.opengis.filter.spatial.SpatialOperator;
 
 import java.io.IOException;
@@ -44,7 +44,7 @@ import java.io.IOException;
  */
 public class OverlapsFilter extends SpatialFilter
 {
-    public OverlapsFilter(Query query, int numHits, Geometry geom, Pair<FeatureSource<SimpleFeatureType, SimpleFeature>, SpatialIndex> sourceAccessor) throws IOException
+    public OverlapsFilter(Query query, int numHits, Geometry geom, Pair<FeatureSource<SimpleFeatureType, SimpleFeature>, GeometryIndex> sourceAccessor) throws IOException
     {
         super(query, numHits, geom, sourceAccessor);
     }
@@ -55,4 +55,11 @@ public class OverlapsFilter extends SpatialFilter
         return filterFactory.intersects(geomPropertyName, geomExpression);
     }
 
+    @Override
+    protected boolean evaluate(FeatureId id, Geometry geometry)
+    {
+        // same relation as the intersects filter created by createGeomFilter
+        return getPreparedGeometry().intersects(geometry);
+    }
+
 }
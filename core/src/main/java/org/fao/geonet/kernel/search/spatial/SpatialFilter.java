@@ -22,22 +22,22 @@
 
 package org.fao.geonet.kernel.search.spatial;
 
+import bak.pcj.map.IntKeyMap;
+import bak.pcj.map.IntKeyOpenHashMap;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.TopologyException;
-import com.vividsolutions.jts.index.SpatialIndex;
-import jeeves.JeevesJCS;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
 import jeeves.utils.Log;
-import org.apache.jcs.access.GroupCacheAccess;
-import org.apache.jcs.access.exception.CacheException;
-import org.apache.lucene.document.Document;
 import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.FieldCache;
 import org.apache.lucene.search.Filter;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
@@ -45,11 +45,10 @@ import org.apache.lucene.search.Scorer;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.OpenBitSet;
 import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.kernel.search.LuceneIndexField;
 import org.geotools.data.FeatureSource;
 import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.factory.GeoTools;
-import org.geotools.feature.FeatureCollection;
-import org.geotools.feature.FeatureIterator;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.geometry.jts.JTS;
@@ -57,64 +56,48 @@ import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.filter.FilterFactory2;
-import org.opengis.filter.Id;
 import org.opengis.filter.expression.Literal;
 import org.opengis.filter.expression.PropertyName;
 import org.opengis.filter.identity.FeatureId;
 
 import java.io.IOException;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
-import static org.fao.geonet.kernel.search.spatial.SpatialIndexWriter.SPATIAL_FILTER_JCS;
 import static org.fao.geonet.kernel.search.spatial.SpatialIndexWriter._SPATIAL_INDEX_TYPENAME;
 
 public abstract class SpatialFilter extends Filter
 {
-    private static final SimpleFeatureType FEATURE_TYPE;
-    static {
-        SimpleFeatureTypeBuilder builder = new SimpleFeatureTypeBuilder();
-        builder.add("the_geom", Geometry.class, DefaultGeographicCRS.WGS84);
-        builder.setDefaultGeometry("the_geom");
-        builder.setName(_SPATIAL_INDEX_TYPENAME);
-        FEATURE_TYPE = builder.buildFeatureType();
-    }
-
 	private static final Geometry WORLD_BOUNDS;
-	private static final int MAX_FIDS_PER_QUERY = 5000;
 	static {
 		GeometryFactory fac = new GeometryFactory();
 		WORLD_BOUNDS = fac.toGeometry(new Envelope(-180,180,-90,90));
 	}
-	protected Pair<FeatureSource<SimpleFeatureType, SimpleFeature>, SpatialIndex> sourceAccessor;
+	protected Pair<FeatureSource<SimpleFeatureType, SimpleFeature>, GeometryIndex> sourceAccessor;
     protected final Geometry      _geom;
 
     protected final FilterFactory2  _filterFactory;
     protected       Query                 _query;
     private org.opengis.filter.Filter _spatialFilter;
-    protected final Set<String> _fieldsToLoad;
-    private Map<String, FeatureId> _unrefinedMatches;
+    private IntKeyMap _unrefinedMatches;
+    private GeometryIndex _geometryIndex;
+    private PreparedGeometry _preparedGeometry;
+    private SimpleFeatureType _featureType;
     private boolean warned = false;
 	private int _numHits;
 	private int _hits = 0;
 
-    protected SpatialFilter(Query query, int numHits, Geometry geom, Pair<FeatureSource<SimpleFeatureType, SimpleFeature>, SpatialIndex> sourceAccessor) throws IOException
+    protected SpatialFilter(Query query, int numHits, Geometry geom, Pair<FeatureSource<SimpleFeatureType, SimpleFeature>, GeometryIndex> sourceAccessor) throws IOException
     {
         _query = query;
         _geom = geom;
         _numHits = numHits;
         this.sourceAccessor = sourceAccessor;
         _filterFactory = CommonFactoryFinder.getFilterFactory2(GeoTools.getDefaultHints());
-
-        _fieldsToLoad = Collections.singleton("_id");
     }
 
-    protected SpatialFilter(Query query, int numHits, Envelope bounds, Pair<FeatureSource<SimpleFeatureType, SimpleFeature>, SpatialIndex> sourceAccessor) throws IOException
+    protected SpatialFilter(Query query, int numHits, Envelope bounds, Pair<FeatureSource<SimpleFeatureType, SimpleFeature>, GeometryIndex> sourceAccessor) throws IOException
     {
         this(query,numHits,JTS.toGeometry(bounds),sourceAccessor);
     }
@@ -122,7 +105,7 @@ public abstract class SpatialFilter extends Filter
     public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException {
         final OpenBitSet bits = new OpenBitSet(context.reader().maxDoc());
 
-        final Map<String, FeatureId> unrefinedSpatialMatches = unrefinedSpatialMatches();
+        final IntKeyMap unrefinedSpatialMatches = unrefinedSpatialMatches();
         final Set<FeatureId> matches = new HashSet<FeatureId>();
         final Multimap<FeatureId,Integer> docIndexLookup = HashMultimap.create();
         
@@ -130,8 +113,7 @@ public abstract class SpatialFilter extends Filter
 
         new IndexSearcher(context.reader()).search(_query, new Collector() {
             private int docBase;
-            private Document document;
-            private AtomicReader reader;
+            private int[] ids;
 
             // ignore scorer
             public void setScorer(Scorer scorer) {
@@ -143,25 +125,18 @@ public abstract class SpatialFilter extends Filter
             }
 
             public void collect(int doc) {
-                doc = doc + docBase;
-                try {
-                    document = reader.document(doc, _fieldsToLoad);
-                    String key = document.get("_id");
-                    FeatureId featureId = unrefinedSpatialMatches.get(key);
-                    if (featureId != null && _hits < _numHits) {
-                        _hits++;
-                        matches.add(featureId);
-                        docIndexLookup.put(featureId, doc + docBase);
-                    }
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
+                FeatureId featureId = (FeatureId) unrefinedSpatialMatches.get(ids[doc]);
+                if (featureId != null && _hits < _numHits) {
+                    _hits++;
+                    matches.add(featureId);
+                    docIndexLookup.put(featureId, docBase + doc);
                 }
             }
 
             @Override
             public void setNextReader(AtomicReaderContext context) throws IOException {
                 this.docBase = context.docBase;
-                this.reader = context.reader();
+                this.ids = idColumn(context.reader());
             }
         });
         
@@ -172,65 +147,77 @@ public abstract class SpatialFilter extends Filter
         }
     }
 
-    private OpenBitSet applySpatialFilter(Set<FeatureId> matches, Multimap<FeatureId, Integer> docIndexLookup, OpenBitSet bits) throws IOException
+    private OpenBitSet applySpatialFilter(Set<FeatureId> matches, Multimap<FeatureId, Integer> docIndexLookup, OpenBitSet bits)
     {
-
-        JeevesJCS jcs = getJCSCache();
-        processCachedFeatures(jcs, matches, docIndexLookup, bits);
-
-        while (!matches.isEmpty()) {
-        	Id fidFilter;
-        	if(matches.size() > MAX_FIDS_PER_QUERY) {
-        		FeatureId[] subset = new FeatureId[MAX_FIDS_PER_QUERY];
-        		int i = 0;
-        		Iterator<FeatureId> iter = matches.iterator();
-        		while(iter.hasNext() && i < MAX_FIDS_PER_QUERY) {
-        			subset[i] = iter.next();
-        			iter.remove();
-							i++;
-        		}
-        		fidFilter = _filterFactory.id(subset);
-	        } else {
-	        	fidFilter = _filterFactory.id(matches);
-	        	matches = Collections.emptySet();
-	        }
-	         
-	        FeatureSource<SimpleFeatureType, SimpleFeature> _featureSource = sourceAccessor.one();
-	        String ftn = _featureSource.getSchema().getName().getLocalPart();
-	        String[] geomAtt = {_featureSource.getSchema().getGeometryDescriptor().getLocalName()};
-	        FeatureCollection<SimpleFeatureType, SimpleFeature> features = _featureSource
-	                .getFeatures(new org.geotools.data.Query(ftn, fidFilter,geomAtt));
-	        FeatureIterator<SimpleFeature> iterator = features.features();
-	
-	        
-	        try {
-	            while (iterator.hasNext()) {
-	                SimpleFeature feature = iterator.next();
-	                FeatureId featureId = feature.getIdentifier();
-	                jcs.put(featureId.getID(), feature.getDefaultGeometry());
-	                if( evaluateFeature(feature) ){
-	                  for(int doc:docIndexLookup.get(featureId)) {
-	                      bits.set(doc);
-	                  }
-	                }
-	            }
-	        } catch (CacheException e) {
-	            throw new Error(e);
-	        } finally {
-	            iterator.close();
-	        }
+        GeometryIndex geometries = getGeometryIndex();
+        for (FeatureId id : matches) {
+            Geometry geometry = geometries.getGeometry(id);
+            if (geometry != null && evaluate(id, geometry)) {
+                for (int doc : docIndexLookup.get(id)) {
+                    bits.set(doc);
+                }
+            }
         }
         return bits;
     }
 
-	static JeevesJCS getJCSCache() throws Error {
-	    JeevesJCS jcs;
+    /**
+     * Returns the metadata id of each document of the segment.
+     * <p/>
+     * The values are uninverted from the indexed _id terms once per segment and cached by the {@link FieldCache}, so
+     * the filters don't have to load the stored fields of every hit of the query.
+     *
+     * @param reader the segment reader
+     * @return the metadata id of each document of the segment
+     */
+    static int[] idColumn(AtomicReader reader) throws IOException {
+        return FieldCache.DEFAULT.getInts(reader, LuceneIndexField.ID, FieldCache.DEFAULT_INT_PARSER, false);
+    }
+
+    /**
+     * @param id the id attribute of a feature of the spatial index
+     * @return the metadata id or -1 if the attribute is not a number
+     */
+    static int parseId(Object id) {
+        if (id == null) {
+            return -1;
+        }
         try {
-            jcs = JeevesJCS.getInstance(SPATIAL_FILTER_JCS);
-        } catch (CacheException e) {
-            throw new Error(e);
+            return Integer.parseInt(id.toString().trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns true if the geometry of a feature of the spatial index matches the
+     * filter.
+     * <p/>
+     * Evaluates the GeoTools filter, subclasses can override it to test the
+     * relation on the {@link #getPreparedGeometry() prepared} query geometry
+     * instead.
+     */
+    protected boolean evaluate(FeatureId id, Geometry geometry)
+    {
+        SimpleFeature feature = SimpleFeatureBuilder.build(getFeatureType(), new Object[]{geometry}, id.getID());
+        return evaluateFeature(feature);
+    }
+
+    /**
+     * @return a feature type with only the geometry attribute of the spatial
+     *         index, named like in the DataStore so that the filter finds it
+     */
+    private synchronized SimpleFeatureType getFeatureType()
+    {
+        if (_featureType == null) {
+            String geomAttName = sourceAccessor.one().getSchema().getGeometryDescriptor().getLocalName();
+            SimpleFeatureTypeBuilder builder = new SimpleFeatureTypeBuilder();
+            builder.add(geomAttName, Geometry.class, DefaultGeographicCRS.WGS84);
+            builder.setDefaultGeometry(geomAttName);
+            builder.setName(_SPATIAL_INDEX_TYPENAME);
+            _featureType = builder.buildFeatureType();
         }
-	    return jcs;
+        return _featureType;
     }
 
     private boolean evaluateFeature(SimpleFeature feature)
@@ -248,21 +235,28 @@ public abstract class SpatialFilter extends Filter
         }
     }
 
-    private void processCachedFeatures(GroupCacheAccess jcs, Set<FeatureId> matches, Multimap<FeatureId, Integer> docIndexLookup, OpenBitSet bits)
+    /**
+     * @return the query geometry prepared for the repeated tests against the
+     *         geometries of the spatial index
+     */
+    protected synchronized PreparedGeometry getPreparedGeometry()
+    {
+        if (_preparedGeometry == null) {
+            _preparedGeometry = PreparedGeometryFactory.prepare(_geom);
+        }
+        return _preparedGeometry;
+    }
+
+    /**
+     * @return the geometries of the spatial index, the same for the whole
+     *         life of the filter
+     */
+    protected synchronized GeometryIndex getGeometryIndex()
     {
-        for(java.util.Iterator<FeatureId> iter=matches.iterator();iter.hasNext();){
-            FeatureId id = iter.next();
-          Geometry geom = (Geometry) jcs.get(id.getID());
-            if( geom!=null ){
-                iter.remove();
-                SimpleFeature feature = SimpleFeatureBuilder.build(FEATURE_TYPE, new Object[]{geom}, id.getID());
-                if( evaluateFeature(feature) ){
-                  for(int doc:docIndexLookup.get(id)) {
-                      bits.set(doc);
-                  }
-                }
-            }
+        if (_geometryIndex == null) {
+            _geometryIndex = sourceAccessor.two();
         }
+        return _geometryIndex;
     }
 
     private synchronized org.opengis.filter.Filter getFilter()
@@ -277,9 +271,9 @@ public abstract class SpatialFilter extends Filter
     /**
      * Returns all the FeatureId and ID attributes based on the query against the spatial index
      * 
-     * @return all the FeatureId and ID attributes based on the query against the spatial index
+     * @return the FeatureIds of the spatial index matches, keyed by the metadata id
      */
-    protected synchronized Map<String,FeatureId> unrefinedSpatialMatches(){
+    protected synchronized IntKeyMap unrefinedSpatialMatches(){
         if(_unrefinedMatches==null){
             Geometry geom = null;
 
@@ -298,12 +292,14 @@ public abstract class SpatialFilter extends Filter
                 geom = _geom;
             }
 
-            SpatialIndex spatialIndex = sourceAccessor.two();
             @SuppressWarnings("unchecked")
-            List<Pair<FeatureId,String>> fids = spatialIndex.query(geom.getEnvelopeInternal());
-            _unrefinedMatches = new HashMap<String,FeatureId>();
-            for (Pair<FeatureId, String> match : fids) {
-                _unrefinedMatches.put(match.two(), match.one());
+            List<Pair<FeatureId,Object>> fids = getGeometryIndex().query(geom.getEnvelopeInternal());
+            _unrefinedMatches = new IntKeyOpenHashMap(Math.max(16, fids.size()));
+            for (Pair<FeatureId, Object> match : fids) {
+                int id = parseId(match.two());
+                if (id >= 0) {
+                    _unrefinedMatches.put(id, match.one());
+                }
             }
         }
         return _unrefinedMatches;
@@ -40,13 +40,13 @@ import javax.xml.parsers.ParserConfigurationException;
 import jeeves.utils.Log;
 import jeeves.utils.Xml;
 
-import org.apache.jcs.access.exception.CacheException;
 import org.fao.geonet.constants.Geonet;
 import org.geotools.data.DataStore;
 import org.geotools.data.FeatureEvent;
 import org.geotools.data.FeatureListener;
 import org.geotools.data.FeatureSource;
 import org.geotools.data.FeatureStore;
+import org.geotools.data.Query;
 import org.geotools.data.Transaction;
 import org.geotools.data.memory.MemoryFeatureCollection;
 import org.geotools.factory.CommonFactoryFinder;
@@ -64,17 +64,15 @@ import org.opengis.feature.type.AttributeDescriptor;
 import org.opengis.feature.type.Name;
 import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory2;
-import org.opengis.filter.identity.FeatureId;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.referencing.operation.MathTransform;
 import org.xml.sax.SAXException;
 
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.MultiPolygon;
 import com.vividsolutions.jts.geom.Polygon;
-import com.vividsolutions.jts.index.SpatialIndex;
-import com.vividsolutions.jts.index.strtree.STRtree;
 
 /**
  * This class is responsible for extracting geographic information from metadata
@@ -88,7 +86,7 @@ public class SpatialIndexWriter implements FeatureListener
 
     static final String _IDS_ATTRIBUTE_NAME = "id";
     static final String _SPATIAL_INDEX_TYPENAME = "spatialindex";
-    static final String                                          SPATIAL_FILTER_JCS        = "SpatialFilterCache";
+    public static final String                                   SNAPSHOT_FILENAME         = "spatialindex.snapshot";
     public static final int                                      MAX_WRITES_IN_TRANSACTION = 1000;
 
     private final Parser                              _parser;
@@ -96,7 +94,8 @@ public class SpatialIndexWriter implements FeatureListener
     private  int                                 _maxWrites;
     private final Lock                                _lock;
     private FeatureStore<SimpleFeatureType, SimpleFeature> _featureStore;
-    private STRtree                                   _index;
+    private GeometryIndex                             _index;
+    private final File                                _snapshot;
     private static int                                _writes;
     private Map<String, String> errorMessage;
     public Map<String, String> getErrorMessage() {
@@ -116,11 +115,15 @@ public class SpatialIndexWriter implements FeatureListener
 			* @param maxWrites Maximum number of writes in a transaction. If set to
 			* 1 then AUTO_COMMIT is being used.
 			* @param lock
+			* @param snapshot file where the in-memory index is saved to be
+			* reloaded on startup or null to always read the features from the
+			* DataStore.
 			*/
     public SpatialIndexWriter(DataStore datastore, Parser parser,
-            Transaction transaction, int maxWrites, Lock lock) 
+            Transaction transaction, int maxWrites, Lock lock, File snapshot) 
 						throws Exception
     {
+        _snapshot = snapshot;
         // Note: The Configuration takes a long time to create so it is worth
         // re-using the same Configuration
         _lock = lock;
@@ -153,7 +156,7 @@ public class SpatialIndexWriter implements FeatureListener
     {
         _lock.lock();
         try {
-            _index = null;
+            invalidateIndex();
             errorMessage = new HashMap<String, String>();
             Geometry geometry = extractGeometriesFrom(
                     schemaDir, metadata, _parser, errorMessage);
@@ -193,7 +196,6 @@ public class SpatialIndexWriter implements FeatureListener
             _transaction.close();
             _index = null;
             _featureStore.setTransaction(Transaction.AUTO_COMMIT);
-            SpatialFilter.getJCSCache().clear();
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
@@ -215,14 +217,9 @@ public class SpatialIndexWriter implements FeatureListener
             Filter filter = factory.equals(
                     factory.property(_idColumn), factory.literal(id));
 
-            _index = null;
+            invalidateIndex();
 
             _featureStore.removeFeatures(filter);
-            try {
-                SpatialFilter.getJCSCache().clear();
-            } catch (Throwable e) {
-                e.printStackTrace();
-            }
             _writes++;
         } finally {
             _lock.unlock();
@@ -244,14 +241,9 @@ public class SpatialIndexWriter implements FeatureListener
                     factory.property(_idColumn), factory.literal(id)));
             }
             
-            _index = null;
+            invalidateIndex();
 
             _featureStore.removeFeatures(factory.or(filters));
-            try {
-                SpatialFilter.getJCSCache().clear();
-            } catch (Throwable e) {
-                e.printStackTrace();
-            }
             _writes++;
         } finally {
             _lock.unlock();
@@ -266,7 +258,6 @@ public class SpatialIndexWriter implements FeatureListener
                 _writes = 0;
                 _transaction.commit();
                 _index = null;
-                SpatialFilter.getJCSCache().clear();
             }
         } catch (Throwable e) {
             e.printStackTrace();
@@ -276,7 +267,12 @@ public class SpatialIndexWriter implements FeatureListener
 
     }
 
-    public SpatialIndex getIndex() throws IOException
+    /**
+     * Returns the in-memory index of the features, read from the snapshot
+     * file or from the DataStore if the DataStore was modified since the
+     * snapshot was written.
+     */
+    public GeometryIndex getIndex() throws IOException
     {
         _lock.lock();
         try {
@@ -299,7 +295,7 @@ public class SpatialIndexWriter implements FeatureListener
         _lock.lock();
         try {
             _featureStore.setTransaction(Transaction.AUTO_COMMIT);
-            _index=null;
+            invalidateIndex();
             _featureStore.removeFeatures(Filter.INCLUDE);
             _featureStore.setTransaction(_transaction);
         }finally{
@@ -408,28 +404,80 @@ public class SpatialIndexWriter implements FeatureListener
         }
     }
 
+    /**
+     * Drops the in-memory index and the snapshot, which no longer match the
+     * DataStore.
+     */
+    private void invalidateIndex()
+    {
+        _index = null;
+        if (_snapshot != null && _snapshot.exists() && !_snapshot.delete()) {
+            Log.error(Geonet.SPATIAL, "Unable to delete the spatial index snapshot " + _snapshot
+                    + ", it will be out of date on next startup");
+        }
+    }
+
     private void populateIndex() throws IOException
     {
-        try {
-            SpatialFilter.getJCSCache().clear();
-        } catch (CacheException e) {
-            e.printStackTrace();
+        String state = dataStoreState();
+        if (_snapshot != null && _snapshot.exists()) {
+            try {
+                GeometryIndex index = GeometryIndex.read(_snapshot);
+                if (state != null && state.equals(index.getSourceState())) {
+                    _index = index;
+                    Log.info(Geonet.SPATIAL, "Spatial index loaded from " + _snapshot + " (" + _index.size() + " geometries)");
+                    return;
+                }
+                Log.info(Geonet.SPATIAL, "The DataStore was modified since the spatial index snapshot " + _snapshot
+                        + " was written, reading the features from the DataStore");
+            } catch (IOException e) {
+                Log.warning(Geonet.SPATIAL, "Unable to read the spatial index snapshot " + _snapshot
+                        + ", reading the features from the DataStore. Error is: " + e.getMessage());
+            }
         }
-        _index = new STRtree();
+
+        GeometryIndex.Builder builder = new GeometryIndex.Builder();
         FeatureIterator<SimpleFeature> features = _featureStore.getFeatures().features();
         try {
             while (features.hasNext()) {
                 SimpleFeature feature = features.next();
-                Pair<FeatureId, Object> data = Pair.read(feature.getIdentifier(), feature.getAttribute(_idColumn));
                 Geometry defaultGeometry = (Geometry) feature.getDefaultGeometry();
                 if(defaultGeometry != null) {
-                    _index.insert(defaultGeometry.getEnvelopeInternal(), data);
+                    builder.add(feature.getIdentifier(), feature.getAttribute(_idColumn), defaultGeometry);
                 }
             }
 
         } finally {
             features.close();
         }
+        _index = builder.build(state);
+
+        // don't save the features of a transaction which is not committed yet
+        if (_snapshot != null && (_autocommit || _writes == 0)) {
+            try {
+                _index.write(_snapshot);
+            } catch (IOException e) {
+                Log.warning(Geonet.SPATIAL, "Unable to write the spatial index snapshot " + _snapshot + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return the number of features and their bounds, which change when the
+     *         DataStore is modified (also by another process), or null if the
+     *         DataStore can't count its features cheaply
+     */
+    private String dataStoreState() throws IOException
+    {
+        int count = _featureStore.getCount(Query.ALL);
+        if (count < 0) {
+            return null;
+        }
+        Envelope bounds = _featureStore.getBounds();
+        if (bounds == null || bounds.isNull()) {
+            return String.valueOf(count);
+        }
+        return count + " " + bounds.getMinX() + " " + bounds.getMaxX() + " " + bounds.getMinY() + " " + bounds.getMaxY();
     }
 
 	private FeatureStore<SimpleFeatureType, SimpleFeature> createFeatureStore(DataStore datastore) throws Exception {
@@ -483,30 +531,21 @@ public class SpatialIndexWriter implements FeatureListener
     }
 
     public void changed(FeatureEvent featureEvent) {
-        try {
-            switch (featureEvent.getType()) {
-            case ADDED:
-                break;
-            case CHANGED:
-                SpatialFilter.getJCSCache().clear();
-                break;
-            case REMOVED:
-                SpatialFilter.getJCSCache().clear();
-                break;
-            case COMMIT:
-                SpatialFilter.getJCSCache().clear();
-                break;
-            case ROLLBACK:
-                SpatialFilter.getJCSCache().clear();
-                break;
-            default:
-                SpatialFilter.getJCSCache().clear();
-                break;
+        switch (featureEvent.getType()) {
+        case ADDED:
+        case CHANGED:
+        case REMOVED:
+        case ROLLBACK:
+            _lock.lock();
+            try {
+                invalidateIndex();
+            } finally {
+                _lock.unlock();
             }
-        } catch (CacheException e) {
-            throw new RuntimeException(e);
+            break;
+        default:
+            break;
         }
-
     }
 
 }
@@ -0,0 +1,42 @@
+package org.fao.geonet.monitor.index;
+
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.MetricsRegistry;
+import jeeves.monitor.MetricsFactory;
+import jeeves.server.context.ServiceContext;
+import org.fao.geonet.GeonetContext;
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.kernel.DataManager;
+import org.fao.geonet.kernel.IndexingProgress;
+
+/**
+ * Abstract super class for all Gauges that report the progress of the batch reindexing.
+ */
+public abstract class AbstractIndexingProgressGauge<T> implements MetricsFactory<Gauge<T>> {
+    private final String name;
+
+    protected abstract T valueImpl(IndexingProgress progress);
+    protected abstract T defaultValue();
+
+    protected AbstractIndexingProgressGauge(String name) {
+        this.name = name;
+    }
+
+    public Gauge<T> create(MetricsRegistry metricsRegistry, final ServiceContext context) {
+        return metricsRegistry.newGauge(DataManager.class, name, new Gauge<T>() {
+            @Override
+            public T value() {
+                try {
+                    GeonetContext gc = (GeonetContext) context.getHandlerContext(Geonet.CONTEXT_NAME);
+                    IndexingProgress progress = gc.getBean(DataManager.class).getBatchIndexingProgress();
+                    if (progress == null) {
+                        return defaultValue();
+                    }
+                    return valueImpl(progress);
+                } catch (Exception e) {
+                    return defaultValue();
+                }
+            }
+        });
+    }
+}
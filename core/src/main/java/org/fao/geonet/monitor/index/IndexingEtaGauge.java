@@ -0,0 +1,22 @@
+package org.fao.geonet.monitor.index;
+
+import org.fao.geonet.kernel.IndexingProgress;
+
+/**
+ * Gauge that reports the estimated number of seconds until the batch reindexing is finished, -1 if not known yet.
+ */
+public class IndexingEtaGauge extends AbstractIndexingProgressGauge<Long> {
+    public IndexingEtaGauge() {
+        super("Batch_Indexing_Estimated_Seconds_Remaining");
+    }
+
+    @Override
+    protected Long valueImpl(IndexingProgress progress) {
+        return progress.getEstimatedSecondsRemaining();
+    }
+
+    @Override
+    protected Long defaultValue() {
+        return 0L;
+    }
+}
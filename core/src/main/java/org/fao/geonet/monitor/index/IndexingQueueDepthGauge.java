@@ -0,0 +1,22 @@
+package org.fao.geonet.monitor.index;
+
+import org.fao.geonet.kernel.IndexingProgress;
+
+/**
+ * Gauge that reports the number of fetched records waiting for an indexing thread during a batch reindexing.
+ */
+public class IndexingQueueDepthGauge extends AbstractIndexingProgressGauge<Integer> {
+    public IndexingQueueDepthGauge() {
+        super("Batch_Indexing_Queue_Depth");
+    }
+
+    @Override
+    protected Integer valueImpl(IndexingProgress progress) {
+        return progress.getQueueDepth();
+    }
+
+    @Override
+    protected Integer defaultValue() {
+        return 0;
+    }
+}
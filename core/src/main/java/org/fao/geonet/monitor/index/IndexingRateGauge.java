@@ -0,0 +1,22 @@
+package org.fao.geonet.monitor.index;
+
+import org.fao.geonet.kernel.IndexingProgress;
+
+/**
+ * Gauge that reports the number of records indexed per second by the last batch reindexing.
+ */
+public class IndexingRateGauge extends AbstractIndexingProgressGauge<Double> {
+    public IndexingRateGauge() {
+        super("Batch_Indexing_Records_Per_Second");
+    }
+
+    @Override
+    protected Double valueImpl(IndexingProgress progress) {
+        return progress.getRecordsPerSecond();
+    }
+
+    @Override
+    protected Double defaultValue() {
+        return 0d;
+    }
+}
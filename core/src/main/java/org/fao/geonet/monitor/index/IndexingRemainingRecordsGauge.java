@@ -0,0 +1,22 @@
+package org.fao.geonet.monitor.index;
+
+import org.fao.geonet.kernel.IndexingProgress;
+
+/**
+ * Gauge that reports the number of records the batch reindexing still has to index.
+ */
+public class IndexingRemainingRecordsGauge extends AbstractIndexingProgressGauge<Integer> {
+    public IndexingRemainingRecordsGauge() {
+        super("Batch_Indexing_Remaining_Records");
+    }
+
+    @Override
+    protected Integer valueImpl(IndexingProgress progress) {
+        return progress.getTotal() - progress.getIndexed();
+    }
+
+    @Override
+    protected Integer defaultValue() {
+        return 0;
+    }
+}
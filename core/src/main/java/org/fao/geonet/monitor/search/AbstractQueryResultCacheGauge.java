@@ -0,0 +1,37 @@
+package org.fao.geonet.monitor.search;
+
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.MetricsRegistry;
+import jeeves.monitor.MetricsFactory;
+import jeeves.server.context.ServiceContext;
+import org.fao.geonet.GeonetContext;
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.kernel.search.QueryResultCache;
+import org.fao.geonet.kernel.search.SearchManager;
+
+/**
+ * Abstract super class for all Gauges that report the usage of the search results shared between users.
+ */
+public abstract class AbstractQueryResultCacheGauge implements MetricsFactory<Gauge<Long>> {
+    private final String name;
+
+    protected abstract long valueImpl(QueryResultCache cache);
+
+    protected AbstractQueryResultCacheGauge(String name) {
+        this.name = name;
+    }
+
+    public Gauge<Long> create(MetricsRegistry metricsRegistry, final ServiceContext context) {
+        return metricsRegistry.newGauge(SearchManager.class, name, new Gauge<Long>() {
+            @Override
+            public Long value() {
+                try {
+                    GeonetContext gc = (GeonetContext) context.getHandlerContext(Geonet.CONTEXT_NAME);
+                    return valueImpl(gc.getBean(SearchManager.class).getQueryResultCache());
+                } catch (Exception e) {
+                    return -1L;
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,17 @@
+package org.fao.geonet.monitor.search;
+
+import org.fao.geonet.kernel.search.QueryResultCache;
+
+/**
+ * Gauge that reports the number of results evicted from the shared result cache to stay under its size.
+ */
+public class QueryResultCacheEvictionsGauge extends AbstractQueryResultCacheGauge {
+    public QueryResultCacheEvictionsGauge() {
+        super("Query_Result_Cache_Evictions");
+    }
+
+    @Override
+    protected long valueImpl(QueryResultCache cache) {
+        return cache.getEvictions();
+    }
+}
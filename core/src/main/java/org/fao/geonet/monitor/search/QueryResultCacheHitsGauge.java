@@ -0,0 +1,17 @@
+package org.fao.geonet.monitor.search;
+
+import org.fao.geonet.kernel.search.QueryResultCache;
+
+/**
+ * Gauge that reports the number of searches served from the shared result cache.
+ */
+public class QueryResultCacheHitsGauge extends AbstractQueryResultCacheGauge {
+    public QueryResultCacheHitsGauge() {
+        super("Query_Result_Cache_Hits");
+    }
+
+    @Override
+    protected long valueImpl(QueryResultCache cache) {
+        return cache.getHits();
+    }
+}
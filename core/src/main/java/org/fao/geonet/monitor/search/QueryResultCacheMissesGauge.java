@@ -0,0 +1,17 @@
+package org.fao.geonet.monitor.search;
+
+import org.fao.geonet.kernel.search.QueryResultCache;
+
+/**
+ * Gauge that reports the number of searches not found in the shared result cache.
+ */
+public class QueryResultCacheMissesGauge extends AbstractQueryResultCacheGauge {
+    public QueryResultCacheMissesGauge() {
+        super("Query_Result_Cache_Misses");
+    }
+
+    @Override
+    protected long valueImpl(QueryResultCache cache) {
+        return cache.getMisses();
+    }
+}
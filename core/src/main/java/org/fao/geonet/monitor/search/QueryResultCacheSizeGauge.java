@@ -0,0 +1,17 @@
+package org.fao.geonet.monitor.search;
+
+import org.fao.geonet.kernel.search.QueryResultCache;
+
+/**
+ * Gauge that reports the estimated memory used by the shared result cache.
+ */
+public class QueryResultCacheSizeGauge extends AbstractQueryResultCacheGauge {
+    public QueryResultCacheSizeGauge() {
+        super("Query_Result_Cache_Size_In_Bytes");
+    }
+
+    @Override
+    protected long valueImpl(QueryResultCache cache) {
+        return cache.getSizeInBytes();
+    }
+}
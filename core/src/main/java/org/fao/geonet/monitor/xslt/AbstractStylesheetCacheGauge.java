@@ -0,0 +1,30 @@
+package org.fao.geonet.monitor.xslt;
+
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.MetricsRegistry;
+import de.fzi.dbs.xml.transform.CachingTransformerFactory;
+import jeeves.monitor.MetricsFactory;
+import jeeves.server.context.ServiceContext;
+
+/**
+ * Abstract super class for all Gauges that report the usage of the compiled stylesheets cached by the
+ * {@link CachingTransformerFactory}.
+ */
+public abstract class AbstractStylesheetCacheGauge implements MetricsFactory<Gauge<Long>> {
+    private final String name;
+
+    protected abstract long valueImpl();
+
+    protected AbstractStylesheetCacheGauge(String name) {
+        this.name = name;
+    }
+
+    public Gauge<Long> create(MetricsRegistry metricsRegistry, ServiceContext context) {
+        return metricsRegistry.newGauge(CachingTransformerFactory.class, name, new Gauge<Long>() {
+            @Override
+            public Long value() {
+                return valueImpl();
+            }
+        });
+    }
+}
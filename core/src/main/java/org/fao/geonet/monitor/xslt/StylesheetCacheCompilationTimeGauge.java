@@ -0,0 +1,17 @@
+package org.fao.geonet.monitor.xslt;
+
+import de.fzi.dbs.xml.transform.CachingTransformerFactory;
+
+/**
+ * Gauge that reports the time spent compiling stylesheets (in ms).
+ */
+public class StylesheetCacheCompilationTimeGauge extends AbstractStylesheetCacheGauge {
+    public StylesheetCacheCompilationTimeGauge() {
+        super("Stylesheet_Cache_Compilation_Time_In_Millis");
+    }
+
+    @Override
+    protected long valueImpl() {
+        return CachingTransformerFactory.getCompilationTime();
+    }
+}
@@ -0,0 +1,17 @@
+package org.fao.geonet.monitor.xslt;
+
+import de.fzi.dbs.xml.transform.CachingTransformerFactory;
+
+/**
+ * Gauge that reports the number of stylesheets compiled.
+ */
+public class StylesheetCacheCompilationsGauge extends AbstractStylesheetCacheGauge {
+    public StylesheetCacheCompilationsGauge() {
+        super("Stylesheet_Cache_Compilations");
+    }
+
+    @Override
+    protected long valueImpl() {
+        return CachingTransformerFactory.getCompilations();
+    }
+}
@@ -0,0 +1,17 @@
+package org.fao.geonet.monitor.xslt;
+
+import de.fzi.dbs.xml.transform.CachingTransformerFactory;
+
+/**
+ * Gauge that reports the number of transformers created from cached stylesheets.
+ */
+public class StylesheetCacheHitsGauge extends AbstractStylesheetCacheGauge {
+    public StylesheetCacheHitsGauge() {
+        super("Stylesheet_Cache_Hits");
+    }
+
+    @Override
+    protected long valueImpl() {
+        return CachingTransformerFactory.getHits();
+    }
+}
@@ -0,0 +1,17 @@
+package org.fao.geonet.monitor.xslt;
+
+import de.fzi.dbs.xml.transform.CachingTransformerFactory;
+
+/**
+ * Gauge that reports the number of cached stylesheets.
+ */
+public class StylesheetCacheSizeGauge extends AbstractStylesheetCacheGauge {
+    public StylesheetCacheSizeGauge() {
+        super("Stylesheet_Cache_Size");
+    }
+
+    @Override
+    protected long valueImpl() {
+        return CachingTransformerFactory.getSize();
+    }
+}
@@ -0,0 +1,112 @@
+package org.fao.geonet.kernel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import jeeves.resources.dbms.Dbms;
+import jeeves.utils.Xml;
+
+import org.apache.commons.io.FileUtils;
+import org.fao.geonet.kernel.XmlSerializerTest.DummyXmlSerializer;
+import org.fao.geonet.kernel.setting.SettingManager;
+import org.jdom.Element;
+import org.jdom.output.Format;
+import org.jdom.output.XMLOutputter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Writes records through the serializer and checks that the binary files hold the tree parsed from the xml stored in
+ * the Metadata table, which the serializer indents.
+ */
+public class BinaryMetadataStoreTest {
+    private static final String XML = "<gmd:MD_Metadata xmlns:gmd=\"http://www.isotc211.org/2005/gmd\""
+            + " xmlns:gco=\"http://www.isotc211.org/2005/gco\"><gmd:fileIdentifier><gco:CharacterString>abc"
+            + "</gco:CharacterString></gmd:fileIdentifier><gmd:abstract><gco:CharacterString>  two  spaces  "
+            + "</gco:CharacterString></gmd:abstract></gmd:MD_Metadata>";
+
+    private File directory;
+    private BinaryMetadataStore store;
+    private XmlSerializer serializer;
+    private Dbms dbms;
+    private final List<String> stored = new ArrayList<String>();
+
+    @Before
+    public void createStore() throws Exception {
+        directory = File.createTempFile("binary-metadata", "test");
+        directory.delete();
+        store = new BinaryMetadataStore(directory);
+        serializer = new DummyXmlSerializer(mock(SettingManager.class));
+        serializer.setBinaryMetadataStore(store);
+
+        // keeps the xml written to the Metadata table
+        dbms = mock(Dbms.class);
+        doAnswer(new Answer<Integer>() {
+            public Integer answer(InvocationOnMock invocation) {
+                for (Object argument : invocation.getArguments()) {
+                    if (argument instanceof String && ((String) argument).startsWith("<")) {
+                        stored.add((String) argument);
+                    }
+                }
+                return 1;
+            }
+        }).when(dbms).execute(anyString(), anyVararg());
+    }
+
+    @After
+    public void deleteStore() {
+        FileUtils.deleteQuietly(directory);
+    }
+
+    @Test
+    public void testInsertWritesTheStoredTree() throws Exception {
+        String changeDate = "2013-01-01T00:00:00";
+        serializer.insertDb(dbms, "iso19139", Xml.loadString(XML, false), 1, "source", "abc", changeDate, changeDate,
+                "n", "gmd:MD_Metadata", null, 1, null, "");
+
+        assertReadsStoredTree("1", changeDate);
+    }
+
+    @Test
+    public void testUpdateWritesTheStoredTree() throws Exception {
+        String changeDate = "2013-01-02T00:00:00";
+        serializer.updateDb(dbms, "2", Xml.loadString(XML, false), changeDate, "gmd:MD_Metadata", true, null);
+
+        assertReadsStoredTree("2", changeDate);
+    }
+
+    @Test
+    public void testMinorUpdateDeletesTheFile() throws Exception {
+        String changeDate = "2013-01-03T00:00:00";
+        serializer.updateDb(dbms, "3", Xml.loadString(XML, false), changeDate, "gmd:MD_Metadata", true, null);
+        String data = stored.get(0);
+        assertNotNull(store.read("3", changeDate, data));
+
+        serializer.updateDb(dbms, "3", Xml.loadString(XML, false), null, "gmd:MD_Metadata", false, null);
+
+        assertNull(store.read("3", changeDate, data));
+    }
+
+    private void assertReadsStoredTree(String id, String changeDate) throws Exception {
+        assertEquals(1, stored.size());
+        String data = stored.get(0);
+
+        Element read = store.read(id, changeDate, data);
+
+        assertNotNull(read);
+        XMLOutputter raw = new XMLOutputter(Format.getRawFormat());
+        assertEquals(raw.outputString(Xml.loadString(data, false)), raw.outputString(read));
+    }
+}
@@ -0,0 +1,37 @@
+package org.fao.geonet.kernel;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import jeeves.utils.Xml;
+
+import org.jdom.Element;
+import org.junit.Test;
+
+public class CompactXmlTest {
+    private static final String XML = "<gmd:MD_Metadata xmlns:gmd=\"http://www.isotc211.org/2005/gmd\""
+            + " xmlns:gco=\"http://www.isotc211.org/2005/gco\" xmlns:xlink=\"http://www.w3.org/1999/xlink\">\n"
+            + "  <gmd:fileIdentifier><gco:CharacterString>abc</gco:CharacterString></gmd:fileIdentifier>\n"
+            + "  <!-- a comment -->\n"
+            + "  <gmd:contact xlink:href=\"local://xml.user.get?id=1\" gco:nilReason=\"missing\"/>\n"
+            + "  <gmd:abstract><gco:CharacterString><![CDATA[a < b]]> &amp; été</gco:CharacterString>"
+            + "</gmd:abstract>\n"
+            + "  <gmd:language xmlns:gmd=\"http://www.isotc211.org/2005/gmd\"><gco:CharacterString>eng"
+            + "</gco:CharacterString></gmd:language>\n"
+            + "</gmd:MD_Metadata>";
+
+    @Test
+    public void testReadsTheTreeWritten() throws Exception {
+        Element metadata = Xml.loadString(XML, false);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CompactXml.write(metadata, new DataOutputStream(bytes));
+        Element read = CompactXml.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(Xml.getString(metadata), Xml.getString(read));
+    }
+}
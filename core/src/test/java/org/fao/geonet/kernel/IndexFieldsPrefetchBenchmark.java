@@ -0,0 +1,142 @@
+package org.fao.geonet.kernel;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import jeeves.resources.dbms.Dbms;
+
+import org.h2.jdbcx.JdbcDataSource;
+
+/**
+ * Timing harness for {@link IndexFieldsPrefetch}: loads the index fields rows of the same records in blocks of
+ * {@link IndexFieldsPrefetch#BLOCK_SIZE} and one record at a time, which runs the same six queries per record as
+ * {@link DataManager#indexMetadata(Dbms, String)}. The records are in an in-memory H2 database, so the round trips
+ * saved are much cheaper than with a database on the network. It is not a unit test (the timings depend on the
+ * machine), run it with the test classpath of the module:
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes:&lt;dependencies&gt; org.fao.geonet.kernel.IndexFieldsPrefetchBenchmark [records]
+ * </pre>
+ *
+ * The default is 20000 records.
+ */
+public class IndexFieldsPrefetchBenchmark {
+    public static void main(String[] args) throws Exception {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:prefetch;DB_CLOSE_DELAY=-1");
+        Dbms dbms = new Dbms(dataSource, dataSource.getURL());
+        dbms.connect(null, null);
+        try {
+            List<String> ids = createRecords(dbms.getConnection(), records);
+
+            // warm up both paths before measuring
+            run(dbms, ids.subList(0, ids.size() / 10), true);
+            run(dbms, ids.subList(0, ids.size() / 10), false);
+
+            long blocks = run(dbms, ids, true);
+            long single = run(dbms, ids, false);
+
+            System.out.println(records + " records");
+            System.out.println("  blocks of " + IndexFieldsPrefetch.BLOCK_SIZE + " : " + perSecond(records, blocks)
+                    + " records/s");
+            System.out.println("  one by one    : " + perSecond(records, single) + " records/s");
+        } finally {
+            dbms.disconnect();
+        }
+    }
+
+    /**
+     * @return the time spent loading the rows, in ns
+     */
+    private static long run(Dbms dbms, List<String> ids, boolean blocks) throws Exception {
+        long start = System.nanoTime();
+        if (blocks) {
+            for (int i = 0; i < ids.size(); i += IndexFieldsPrefetch.BLOCK_SIZE) {
+                IndexFieldsPrefetch.load(dbms, ids.subList(i, Math.min(i + IndexFieldsPrefetch.BLOCK_SIZE, ids.size())));
+            }
+        } else {
+            for (String id : ids) {
+                IndexFieldsPrefetch.load(dbms, Collections.singletonList(id));
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long perSecond(int records, long nanos) {
+        return records * 1000000000L / Math.max(1, nanos);
+    }
+
+    private static List<String> createRecords(Connection conn, int records) throws Exception {
+        Statement statement = conn.createStatement();
+        try {
+            statement.execute("CREATE TABLE Users (id int PRIMARY KEY, username varchar(32), surname varchar(32), "
+                    + "name varchar(32), profile varchar(32))");
+            statement.execute("CREATE TABLE Groups (id int PRIMARY KEY, name varchar(32))");
+            statement.execute("CREATE TABLE Categories (id int PRIMARY KEY, name varchar(32))");
+            statement.execute("CREATE TABLE Metadata (id int PRIMARY KEY, schemaId varchar(32), "
+                    + "createDate varchar(30), changeDate varchar(30), source varchar(250), isTemplate char(1), "
+                    + "root varchar(255), title varchar(255), uuid varchar(250), isHarvested char(1), owner int, "
+                    + "groupOwner int, popularity int, rating int, displayOrder int)");
+            statement.execute("CREATE TABLE OperationAllowed (groupId int, metadataId int, operationId int, "
+                    + "PRIMARY KEY (groupId, metadataId, operationId))");
+            statement.execute("CREATE TABLE MetadataCateg (metadataId int, categoryId int, "
+                    + "PRIMARY KEY (metadataId, categoryId))");
+            statement.execute("CREATE TABLE MetadataStatus (metadataId int, statusId int, userId int, "
+                    + "changeDate varchar(30), changeMessage varchar(2048), "
+                    + "PRIMARY KEY (metadataId, statusId, userId, changeDate))");
+            statement.execute("CREATE TABLE Validation (metadataId int, valType varchar(40), status int, "
+                    + "PRIMARY KEY (metadataId, valType))");
+            statement.execute("INSERT INTO Users VALUES (1, 'admin', 'admin', 'admin', 'Administrator')");
+            statement.execute("INSERT INTO Groups VALUES (1, 'all')");
+            statement.execute("INSERT INTO Groups VALUES (2, 'sample')");
+            statement.execute("INSERT INTO Categories VALUES (1, 'datasets')");
+        } finally {
+            statement.close();
+        }
+
+        List<String> ids = new ArrayList<String>(records);
+        PreparedStatement metadata = conn.prepareStatement("INSERT INTO Metadata VALUES "
+                + "(?, 'iso19139', '2013-01-01T00:00:00', '2013-01-01T00:00:00', 'source', 'n', 'gmd:MD_Metadata', "
+                + "NULL, ?, 'n', 1, 2, 0, 0, 0)");
+        PreparedStatement operation = conn.prepareStatement("INSERT INTO OperationAllowed VALUES (?, ?, ?)");
+        PreparedStatement category = conn.prepareStatement("INSERT INTO MetadataCateg VALUES (?, 1)");
+        PreparedStatement status = conn.prepareStatement("INSERT INTO MetadataStatus VALUES "
+                + "(?, 1, 1, '2013-01-01T00:00:00', '')");
+        PreparedStatement validation = conn.prepareStatement("INSERT INTO Validation VALUES (?, 'xsd', 1)");
+        try {
+            for (int id = 1; id <= records; id++) {
+                metadata.setInt(1, id);
+                metadata.setString(2, "uuid-" + id);
+                metadata.execute();
+                for (int groupId = 1; groupId <= 2; groupId++) {
+                    for (int operationId = 0; operationId <= 1; operationId++) {
+                        operation.setInt(1, groupId);
+                        operation.setInt(2, id);
+                        operation.setInt(3, operationId);
+                        operation.execute();
+                    }
+                }
+                category.setInt(1, id);
+                category.execute();
+                status.setInt(1, id);
+                status.execute();
+                validation.setInt(1, id);
+                validation.execute();
+                ids.add(String.valueOf(id));
+            }
+        } finally {
+            metadata.close();
+            operation.close();
+            category.close();
+            status.close();
+            validation.close();
+        }
+        return ids;
+    }
+}
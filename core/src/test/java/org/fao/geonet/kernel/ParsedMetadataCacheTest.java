@@ -0,0 +1,62 @@
+package org.fao.geonet.kernel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+import jeeves.utils.Xml;
+
+import org.jdom.Element;
+import org.junit.Test;
+
+public class ParsedMetadataCacheTest {
+    private static final String XML = "<gmd:MD_Metadata xmlns:gmd=\"http://www.isotc211.org/2005/gmd\">"
+            + "<gmd:fileIdentifier>abc</gmd:fileIdentifier></gmd:MD_Metadata>";
+    private static final String CHANGE_DATE = "2013-01-10T10:00:00";
+
+    @Test
+    public void testReturnsCopiesOfTheParsedRecord() throws Exception {
+        ParsedMetadataCache cache = new ParsedMetadataCache(1024 * 1024);
+        assertNull(cache.get("1", CHANGE_DATE, XML));
+
+        Element metadata = Xml.loadString(XML, false);
+        cache.put("1", CHANGE_DATE, XML, metadata);
+        metadata.removeContent();
+
+        Element cached = cache.get("1", CHANGE_DATE, XML);
+        assertNotNull(cached);
+        assertEquals(Xml.getString(Xml.loadString(XML, false)), Xml.getString(cached));
+        assertNotSame(cached, cache.get("1", CHANGE_DATE, XML));
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testIgnoresOtherVersions() throws Exception {
+        ParsedMetadataCache cache = new ParsedMetadataCache(1024 * 1024);
+        cache.put("1", CHANGE_DATE, XML, Xml.loadString(XML, false));
+
+        assertNull(cache.get("1", "2013-01-11T10:00:00", XML));
+        assertNull(cache.get("1", CHANGE_DATE, XML.replace("abc", "abd")));
+
+        cache.metadataUpdated("1");
+        assertNull(cache.get("1", CHANGE_DATE, XML));
+        assertEquals(0, cache.getSizeInBytes());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws Exception {
+        // room for two records
+        ParsedMetadataCache cache = new ParsedMetadataCache(2 * (200 + 8 * XML.length()));
+        Element metadata = Xml.loadString(XML, false);
+        cache.put("1", CHANGE_DATE, XML, metadata);
+        cache.put("2", CHANGE_DATE, XML, metadata);
+        cache.get("1", CHANGE_DATE, XML);
+        cache.put("3", CHANGE_DATE, XML, metadata);
+
+        assertNotNull(cache.get("1", CHANGE_DATE, XML));
+        assertNull(cache.get("2", CHANGE_DATE, XML));
+        assertNotNull(cache.get("3", CHANGE_DATE, XML));
+    }
+}
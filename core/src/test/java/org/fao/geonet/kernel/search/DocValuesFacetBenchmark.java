@@ -0,0 +1,83 @@
+package org.fao.geonet.kernel.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.facet.search.FacetsCollector;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.MultiCollector;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.fao.geonet.kernel.search.LuceneConfig.Facet;
+
+/**
+ * Timing harness for the facet engines: runs the same searches with the summary facets counted by the taxonomy
+ * index and by {@link DocValuesFacetCollector}, on the index of {@link DocValuesFacetCollectorTest}. It is not a unit
+ * test (the timings depend on the machine), run it with the test classpath of the module:
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes:&lt;dependencies&gt; org.fao.geonet.kernel.search.DocValuesFacetBenchmark [searches]
+ * </pre>
+ *
+ * The default is 200 searches.
+ */
+public class DocValuesFacetBenchmark {
+    public static void main(String[] args) throws Exception {
+        int searches = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        List<Query> queries = new ArrayList<Query>();
+        queries.add(new MatchAllDocsQuery());
+        for (String type : DocValuesFacetCollectorTest.TYPES) {
+            queries.add(new TermQuery(new Term("type", type)));
+        }
+
+        DocValuesFacetCollectorTest index = new DocValuesFacetCollectorTest();
+        index.createIndex();
+        try {
+            IndexSearcher searcher = new IndexSearcher(index.reader);
+
+            // warm up both engines (and the uninverted fields) before measuring
+            run(index, searcher, queries, searches / 10, true);
+            run(index, searcher, queries, searches / 10, false);
+
+            long taxonomy = run(index, searcher, queries, searches, true);
+            long docValues = run(index, searcher, queries, searches, false);
+
+            System.out.println(searches + " searches, " + index.reader.maxDoc() + " documents in "
+                    + index.reader.leaves().size() + " segments");
+            System.out.println("  taxonomy   : " + taxonomy / searches / 1000 + " us/search");
+            System.out.println("  doc values : " + docValues / searches / 1000 + " us/search");
+        } finally {
+            index.closeIndex();
+        }
+    }
+
+    /**
+     * @return the time spent searching, in ns
+     */
+    private static long run(DocValuesFacetCollectorTest index, IndexSearcher searcher, List<Query> queries,
+            int searches, boolean taxonomy) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < searches; i++) {
+            Query query = queries.get(i % queries.size());
+            if (taxonomy) {
+                FacetsCollector facets = new FacetsCollector(DocValuesFacetCollectorTest.searchParams(
+                        Facet.DEFAULT_MAX_KEYS, DocValuesFacetCollectorTest.FACETS), index.reader,
+                        index.taxonomyReader);
+                searcher.search(query, MultiCollector.wrap(TopScoreDocCollector.create(10, true), facets));
+                facets.getFacetResults();
+            } else {
+                DocValuesFacetCollector facets = new DocValuesFacetCollector(
+                        Arrays.asList(DocValuesFacetCollectorTest.FACETS));
+                searcher.search(query, MultiCollector.wrap(TopScoreDocCollector.create(10, true), facets));
+                for (String facet : DocValuesFacetCollectorTest.FACETS) {
+                    facets.getFacetValues(facet, Facet.DEFAULT_MAX_KEYS);
+                }
+            }
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,198 @@
+package org.fao.geonet.kernel.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.facet.index.FacetFields;
+import org.apache.lucene.facet.search.FacetsCollector;
+import org.apache.lucene.facet.search.params.CountFacetRequest;
+import org.apache.lucene.facet.search.params.FacetRequest;
+import org.apache.lucene.facet.search.params.FacetSearchParams;
+import org.apache.lucene.facet.search.results.FacetResult;
+import org.apache.lucene.facet.search.results.FacetResultNode;
+import org.apache.lucene.facet.taxonomy.CategoryPath;
+import org.apache.lucene.facet.taxonomy.TaxonomyReader;
+import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyReader;
+import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyWriter;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.kernel.search.LuceneConfig.Facet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compares the facet counts of the doc values engine with the taxonomy engine.
+ */
+public class DocValuesFacetCollectorTest {
+    static final String[] FACETS = {"keyword", "type", "createDateYear"};
+    static final String[] TYPES = {"dataset", "series", "service", "nonGeographicDataset"};
+    private static final int DOCS = 20000;
+    private static final int DOCS_PER_SEGMENT = 2500;
+    private static final int KEYWORDS = 500;
+
+    private Directory indexDirectory;
+    private Directory taxonomyDirectory;
+    DirectoryReader reader;
+    TaxonomyReader taxonomyReader;
+
+    @Before
+    public void createIndex() throws Exception {
+        indexDirectory = new RAMDirectory();
+        taxonomyDirectory = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(indexDirectory,
+                new IndexWriterConfig(Geonet.LUCENE_VERSION, new KeywordAnalyzer()));
+        DirectoryTaxonomyWriter taxonomyWriter = new DirectoryTaxonomyWriter(taxonomyDirectory);
+        FacetFields facetFields = new FacetFields(taxonomyWriter);
+
+        Random random = new Random(42);
+        for (int i = 0; i < DOCS; i++) {
+            Document doc = new Document();
+            List<CategoryPath> categories = new ArrayList<CategoryPath>();
+            add(doc, categories, "type", TYPES[random.nextInt(TYPES.length)]);
+            add(doc, categories, "createDateYear", String.valueOf(1990 + random.nextInt(25)));
+            int keywords = random.nextInt(6);
+            for (int k = 0; k < keywords; k++) {
+                // a few frequent keywords and a long tail
+                int keyword = (int) (KEYWORDS * Math.pow(random.nextDouble(), 3));
+                add(doc, categories, "keyword", "keyword " + keyword);
+            }
+            if (!categories.isEmpty()) {
+                facetFields.addFields(doc, categories);
+            }
+            writer.addDocument(doc);
+            if (i % DOCS_PER_SEGMENT == DOCS_PER_SEGMENT - 1) {
+                writer.commit();
+                taxonomyWriter.commit();
+            }
+        }
+        // deleted documents must not be counted
+        writer.deleteDocuments(new Term("type", "series"));
+        writer.close();
+        taxonomyWriter.close();
+
+        reader = DirectoryReader.open(indexDirectory);
+        taxonomyReader = new DirectoryTaxonomyReader(taxonomyDirectory);
+        assertTrue(reader.leaves().size() > 1);
+    }
+
+    private static void add(Document doc, List<CategoryPath> categories, String name, String value) {
+        doc.add(new StringField(name, value, Field.Store.YES));
+        doc.add(new StringField(Facet.FIELD_PREFIX + name, value, Field.Store.NO));
+        categories.add(new CategoryPath(name, value));
+    }
+
+    @After
+    public void closeIndex() throws Exception {
+        reader.close();
+        taxonomyReader.close();
+        indexDirectory.close();
+        taxonomyDirectory.close();
+    }
+
+    @Test
+    public void testSameCountsAsTaxonomy() throws Exception {
+        assertSameCountsAsTaxonomy();
+    }
+
+    @Test
+    public void testSameCountsAsTaxonomyInOneSegment() throws Exception {
+        IndexWriter writer = new IndexWriter(indexDirectory,
+                new IndexWriterConfig(Geonet.LUCENE_VERSION, new KeywordAnalyzer()));
+        writer.forceMerge(1);
+        writer.close();
+        reader.close();
+        reader = DirectoryReader.open(indexDirectory);
+        assertEquals(1, reader.leaves().size());
+
+        assertSameCountsAsTaxonomy();
+    }
+
+    private void assertSameCountsAsTaxonomy() throws Exception {
+        List<Query> queries = new ArrayList<Query>();
+        queries.add(new MatchAllDocsQuery());
+        for (String type : TYPES) {
+            queries.add(new TermQuery(new Term("type", type)));
+        }
+        queries.add(new TermQuery(new Term("keyword", "keyword 0")));
+        queries.add(new TermQuery(new Term("keyword", "no such keyword")));
+
+        for (Query query : queries) {
+            for (String facet : FACETS) {
+                Map<String, Integer> expected = taxonomyCounts(query, facet, Facet.MAX_SUMMARY_KEY);
+                Map<String, Integer> actual = docValuesCounts(query, facet, Facet.MAX_SUMMARY_KEY);
+                assertEquals(query + " " + facet, expected, actual);
+            }
+        }
+
+        // only the most frequent values are returned
+        Map<String, Double> top = docValuesValues(new MatchAllDocsQuery(), "keyword", 10);
+        assertEquals(10, top.size());
+        Map<String, Integer> all = docValuesCounts(new MatchAllDocsQuery(), "keyword", Facet.MAX_SUMMARY_KEY);
+        List<Integer> counts = new ArrayList<Integer>(all.values());
+        Collections.sort(counts, Collections.reverseOrder());
+        double previous = Double.MAX_VALUE;
+        int i = 0;
+        for (Double count : top.values()) {
+            assertTrue(count <= previous);
+            assertEquals(counts.get(i++).intValue(), count.intValue());
+            previous = count;
+        }
+    }
+
+    static FacetSearchParams searchParams(int max, String... facets) {
+        List<FacetRequest> requests = new ArrayList<FacetRequest>();
+        for (String facet : facets) {
+            requests.add(new CountFacetRequest(new CategoryPath(facet), max));
+        }
+        return new FacetSearchParams(requests);
+    }
+
+    private Map<String, Integer> taxonomyCounts(Query query, String facet, int max) throws IOException {
+        FacetsCollector collector = new FacetsCollector(searchParams(max, facet), reader, taxonomyReader);
+        new IndexSearcher(reader).search(query, collector);
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (FacetResult result : collector.getFacetResults()) {
+            for (FacetResultNode node : result.getFacetResultNode().getSubResults()) {
+                counts.put(node.getLabel().components[node.getLabel().length - 1], (int) node.getValue());
+            }
+        }
+        return counts;
+    }
+
+    private Map<String, Double> docValuesValues(Query query, String facet, int max) throws IOException {
+        DocValuesFacetCollector collector = new DocValuesFacetCollector(Arrays.asList(FACETS));
+        new IndexSearcher(reader).search(query, collector);
+        return collector.getFacetValues(facet, max);
+    }
+
+    private Map<String, Integer> docValuesCounts(Query query, String facet, int max) throws IOException {
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (Map.Entry<String, Double> entry : docValuesValues(query, facet, max).entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().intValue());
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,103 @@
+package org.fao.geonet.kernel.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.fao.geonet.constants.Geonet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the indexed ids are walked in numeric order, once each, with their change date.
+ */
+public class IndexedChangeDatesTest {
+    private static final int DOCS = 5000;
+    private static final int DOCS_PER_SEGMENT = 700;
+
+    private Directory directory;
+    private DirectoryReader reader;
+    private final Map<Integer, String> expected = new TreeMap<Integer, String>();
+    private boolean released;
+
+    @Before
+    public void createIndex() throws Exception {
+        directory = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(directory,
+                new IndexWriterConfig(Geonet.LUCENE_VERSION, new KeywordAnalyzer()));
+
+        Random random = new Random(42);
+        for (int i = 0; i < DOCS; i++) {
+            // ids of 1 to 7 digits
+            int id = 1 + random.nextInt((int) Math.pow(10, 1 + random.nextInt(7)) - 1);
+            String changeDate = "2013-01-" + (10 + random.nextInt(20)) + "t10:00:" + (10 + random.nextInt(50));
+            writer.updateDocument(new Term(LuceneIndexField.ID, String.valueOf(id)), doc(String.valueOf(id), changeDate));
+            expected.put(id, changeDate);
+            if (random.nextInt(10) == 0) {
+                writer.deleteDocuments(new Term(LuceneIndexField.ID, String.valueOf(id)));
+                expected.remove(id);
+            }
+            if (i % DOCS_PER_SEGMENT == 0) {
+                writer.commit();
+            }
+        }
+        // not metadata ids
+        writer.addDocument(doc("0", "2013-01-01t10:00:00"));
+        writer.addDocument(doc("012", "2013-01-01t10:00:00"));
+        writer.addDocument(doc("12a", "2013-01-01t10:00:00"));
+        writer.addDocument(doc("99999999999", "2013-01-01t10:00:00"));
+        writer.close();
+
+        reader = DirectoryReader.open(directory);
+    }
+
+    @After
+    public void closeIndex() throws IOException {
+        reader.close();
+        directory.close();
+    }
+
+    @Test
+    public void testWalksIdsInNumericOrder() throws IOException {
+        IndexedChangeDates docs = new IndexedChangeDates(reader, new Closeable() {
+            public void close() {
+                released = true;
+            }
+        });
+        try {
+            for (Map.Entry<Integer, String> entry : expected.entrySet()) {
+                assertTrue("missing " + entry.getKey(), docs.next());
+                assertEquals(entry.getKey().intValue(), docs.id());
+                assertEquals(entry.getValue(), docs.changeDate());
+            }
+            assertFalse(docs.next());
+        } finally {
+            docs.close();
+        }
+        assertTrue(released);
+    }
+
+    private static Document doc(String id, String changeDate) {
+        Document doc = new Document();
+        doc.add(new StringField(LuceneIndexField.ID, id, Field.Store.YES));
+        doc.add(new StringField("_changeDate", changeDate, Field.Store.YES));
+        return doc;
+    }
+}
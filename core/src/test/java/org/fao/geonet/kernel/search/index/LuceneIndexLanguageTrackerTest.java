@@ -0,0 +1,166 @@
+package org.fao.geonet.kernel.search.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.facet.taxonomy.CategoryPath;
+import org.fao.geonet.kernel.search.IndexAndTaxonomy;
+import org.fao.geonet.kernel.search.LuceneConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs searches while documents are added to several language indexes.
+ */
+public class LuceneIndexLanguageTrackerTest {
+    private static final String[] LANGUAGES = {"eng", "fre", "ger"};
+    private static final int WRITERS = 4;
+    private static final int SEARCHERS = 8;
+    private static final int DOCS_PER_WRITER = 300;
+
+    private File directory;
+    private LuceneIndexLanguageTracker tracker;
+
+    @Before
+    public void createTracker() throws Exception {
+        directory = File.createTempFile("lucene-tracker", "test");
+        directory.delete();
+        LuceneConfig config = new LuceneConfig("src/test/resources/", null, "WEB-INF/config-lucene.xml");
+        tracker = new LuceneIndexLanguageTracker(new File(directory, "index"), new File(directory, "taxonomy"), config);
+    }
+
+    @After
+    public void closeTracker() throws Exception {
+        tracker.close(true);
+        FileUtils.deleteQuietly(directory);
+    }
+
+    @Test
+    public void testSearchWhileIndexing() throws Exception {
+        final Queue<Throwable> errors = new ConcurrentLinkedQueue<Throwable>();
+        final AtomicBoolean indexing = new AtomicBoolean(true);
+        final AtomicInteger searches = new AtomicInteger();
+        final CountDownLatch writersDone = new CountDownLatch(WRITERS);
+        final CountDownLatch searchersDone = new CountDownLatch(SEARCHERS);
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int w = 0; w < WRITERS; w++) {
+            final int writer = w;
+            threads.add(new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < DOCS_PER_WRITER; i++) {
+                            Document doc = new Document();
+                            doc.add(new StringField("_id", writer + "-" + i, Field.Store.YES));
+                            tracker.addDocument(LANGUAGES[i % LANGUAGES.length], doc, Collections.<CategoryPath>emptyList());
+                            if (i % 50 == 0) {
+                                tracker.commit();
+                            }
+                        }
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    } finally {
+                        writersDone.countDown();
+                    }
+                }
+            });
+        }
+        for (int s = 0; s < SEARCHERS; s++) {
+            threads.add(new Thread() {
+                public void run() {
+                    try {
+                        int lastNumDocs = 0;
+                        while (indexing.get()) {
+                            IndexAndTaxonomy latest = tracker.acquire("eng", -1);
+                            try {
+                                int numDocs = latest.indexReader.numDocs();
+                                assertTrue("Searched an older version: " + numDocs + " < " + lastNumDocs, numDocs >= lastNumDocs);
+                                lastNumDocs = numDocs;
+
+                                // the next page of a search must see the same documents, unless
+                                // the version expired because a language index has been created since
+                                IndexAndTaxonomy sameVersion = tracker.acquire("eng", latest.version);
+                                try {
+                                    if (sameVersion.version == latest.version) {
+                                        assertEquals(numDocs, sameVersion.indexReader.numDocs());
+                                    }
+                                } finally {
+                                    sameVersion.indexReader.releaseToNRTManager();
+                                }
+                            } finally {
+                                latest.indexReader.releaseToNRTManager();
+                            }
+                            searches.incrementAndGet();
+                        }
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    } finally {
+                        searchersDone.countDown();
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        assertTrue("Indexing did not finish", writersDone.await(2, TimeUnit.MINUTES));
+        indexing.set(false);
+        assertTrue("Searches did not finish", searchersDone.await(1, TimeUnit.MINUTES));
+        if (!errors.isEmpty()) {
+            throw new AssertionError(errors.peek());
+        }
+        assertTrue(searches.get() > 0);
+
+        tracker.commit();
+        // refresh on acquire instead of waiting for the reopen threads
+        System.setProperty(LuceneConfig.USE_NRT_MANAGER_REOPEN_THREAD, "true");
+        try {
+            IndexAndTaxonomy all = tracker.acquire(null, -1);
+            try {
+                assertEquals(WRITERS * DOCS_PER_WRITER, all.indexReader.numDocs());
+                assertEquals(LANGUAGES.length, all.indexReader.numSubReaders());
+
+                Document doc = new Document();
+                doc.add(new StringField("_id", "last", Field.Store.YES));
+                tracker.addDocument("eng", doc, Collections.<CategoryPath>emptyList());
+
+                IndexAndTaxonomy latest = tracker.acquire(null, -1);
+                try {
+                    assertTrue(latest.version != all.version);
+                    assertEquals(WRITERS * DOCS_PER_WRITER + 1, latest.indexReader.numDocs());
+                } finally {
+                    latest.indexReader.releaseToNRTManager();
+                }
+
+                IndexAndTaxonomy previous = tracker.acquire(null, all.version);
+                try {
+                    assertEquals(all.version, previous.version);
+                    assertEquals(WRITERS * DOCS_PER_WRITER, previous.indexReader.numDocs());
+                } finally {
+                    previous.indexReader.releaseToNRTManager();
+                }
+            } finally {
+                all.indexReader.releaseToNRTManager();
+            }
+        } finally {
+            System.clearProperty(LuceneConfig.USE_NRT_MANAGER_REOPEN_THREAD);
+        }
+    }
+}
@@ -40,12 +40,15 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.DocumentStoredFieldVisitor;
 import org.apache.lucene.index.FieldInfos;
-import org.apache.lucene.index.SlowCompositeReaderWrapper;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.CachingWrapperFilter;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
 import org.fao.geonet.GeonetContext;
 import org.fao.geonet.constants.Geonet;
@@ -59,6 +62,8 @@ import org.fao.geonet.kernel.csw.services.AbstractOperation;
 import org.fao.geonet.kernel.csw.services.getrecords.CatalogSearcher;
 import org.fao.geonet.kernel.search.IndexAndTaxonomy;
 import org.fao.geonet.kernel.search.LuceneConfig;
+import org.fao.geonet.kernel.search.LuceneConfig.Facet;
+import org.fao.geonet.kernel.search.LuceneConfig.FacetConfig;
 import org.fao.geonet.kernel.search.LuceneSearcher;
 import org.fao.geonet.kernel.search.LuceneUtils;
 import org.fao.geonet.kernel.search.SearchManager;
@@ -224,18 +229,6 @@ public class GetDomain extends AbstractOperation implements CatalogService
                     query = groupsQuery;
                 }
 
-				List<Pair<String, Boolean>> sortFields = Collections.singletonList(Pair.read(Geonet.SearchResult.SortBy.RELEVANCE, true));
-                Sort   sort = LuceneSearcher.makeSort(sortFields, context.getLanguage(), false);
-				CachingWrapperFilter filter = null;
-
-				Pair<TopDocs,Element> searchResults = LuceneSearcher.doSearchAndMakeSummary( 
-						maxRecords, 0, maxRecords, context.getLanguage(), 
-						null, reader, 
-						query, filter, sort, null, false, false,
-						false, false	// Scoring is useless for GetDomain operation
-				);
-				TopDocs hits = searchResults.one();
-			
 				try {
 					// Get mapped lucene field in CSW configuration
 					String indexField = CatalogConfiguration.getFieldMapping().get(
@@ -244,8 +237,7 @@ public class GetDomain extends AbstractOperation implements CatalogService
 						property = indexField;
 	
 					// check if params asked is in the index using getFieldNames ?
-					@SuppressWarnings("resource")
-                    FieldInfos fi = new SlowCompositeReaderWrapper(reader).getFieldInfos();
+					FieldInfos fi = MultiFields.getMergedFieldInfos(reader);
 					if (fi.fieldInfo(property) == null)
 						continue;
 					
@@ -259,42 +251,25 @@ public class GetDomain extends AbstractOperation implements CatalogService
 					else	
 						listOfValues = new Element("ListOfValues", Csw.NAMESPACE_CSW);
 
-					Set<String> fields = new HashSet<String>();
-					fields.add(property);
-					fields.add("_isTemplate");
-					
-	
 					// parse each document in the index
-					String[] fieldValues;
 					SortedSet<String> sortedValues = new TreeSet<String>();
-					ObjectKeyIntOpenHashMap duplicateValues = new ObjectKeyIntOpenHashMap();
-					for (int j = 0; j < hits.scoreDocs.length; j++) {
-					    DocumentStoredFieldVisitor selector = new DocumentStoredFieldVisitor(fields);
-						reader.document(hits.scoreDocs[j].doc, selector);
-						Document doc = selector.getDocument();
-
-						// Skip templates and subTemplates
-						String[] isTemplate = doc.getValues("_isTemplate");
-						if (isTemplate[0] != null && !isTemplate[0].equals("n"))
-							continue;
-						
-						// Get doc values for specified property
-						fieldValues = doc.getValues(property);
-						if (fieldValues == null)
-							continue;
-						
-						addtoSortedSet(sortedValues, fieldValues, duplicateValues);
+					TreeSet<SummaryComparator.SummaryElement> sortedValuesFrequency;
+
+					String countedField = getCountedField(property, luceneConfig);
+					if (countedField != null) {
+						// count the values of all the matching records (but templates and subtemplates)
+						BooleanQuery recordsQuery = new BooleanQuery();
+						recordsQuery.add(query, BooleanClause.Occur.MUST);
+						recordsQuery.add(new TermQuery(new Term("_isTemplate", "n")), BooleanClause.Occur.MUST);
+
+						Map<String, Double> counts = LuceneSearcher.countFieldValues(reader, recordsQuery, countedField);
+						sortedValues.addAll(counts.keySet());
+						sortedValuesFrequency = toSummaryElements(counts, context.getLanguage());
+					} else {
+						sortedValuesFrequency = readStoredValues(reader, query, property, maxRecords, sortedValues,
+								context.getLanguage());
 					}
-					
-					SummaryComparator valuesComparator = new SummaryComparator(SortOption.FREQUENCY, Type.STRING, context.getLanguage(), null);
-					TreeSet<SummaryComparator.SummaryElement> sortedValuesFrequency = new TreeSet<SummaryComparator.SummaryElement>(valuesComparator);
-                    ObjectKeyIntMapIterator entries = duplicateValues.entries();
-                    
-                    while(entries.hasNext()) {
-                        entries.next();
-                        sortedValuesFrequency.add(new SummaryComparator.SummaryElement(entries));
-                    }
-					
+
 					if (freq)
 						return createValuesByFrequency(sortedValuesFrequency);
 					else
@@ -392,6 +367,105 @@ public class GetDomain extends AbstractOperation implements CatalogService
 
 	//---------------------------------------------------------------------------
 	
+	/**
+	 * Returns the field whose indexed terms are the values of the property: the field itself if it is not tokenized
+	 * (nor numeric), or the field the values are copied to for the doc values facet engine. Null if the values can
+	 * only be read from the stored fields.
+	 *
+	 * @param property the lucene field of the property
+	 * @param luceneConfig
+	 * @return
+	 */
+	private static String getCountedField(String property, LuceneConfig luceneConfig) {
+		if (!luceneConfig.isTokenizedField(property) && luceneConfig.getNumericField(property) == null)
+			return property;
+		Map<String, FacetConfig> hits = luceneConfig.getTaxonomy().get("hits");
+		if (luceneConfig.getFacetEngine() == Facet.Engine.DOC_VALUES && hits != null && hits.get(property) != null)
+			return Facet.FIELD_PREFIX + property;
+		return null;
+	}
+
+	//---------------------------------------------------------------------------
+
+	/**
+	 * @param counts the number of records of each value, by count descending
+	 * @param language the language of the request, used to compare the values
+	 * @return
+	 */
+	private static TreeSet<SummaryComparator.SummaryElement> toSummaryElements(Map<String, Double> counts,
+			String language) {
+		ObjectKeyIntOpenHashMap values = new ObjectKeyIntOpenHashMap(counts.size());
+		for (Map.Entry<String, Double> count : counts.entrySet()) {
+			values.put(count.getKey(), count.getValue().intValue());
+		}
+		return toSummaryElements(values, language);
+	}
+
+	//---------------------------------------------------------------------------
+
+	private static TreeSet<SummaryComparator.SummaryElement> toSummaryElements(ObjectKeyIntOpenHashMap values,
+			String language) {
+		SummaryComparator valuesComparator = new SummaryComparator(SortOption.FREQUENCY, Type.STRING, language, null);
+		TreeSet<SummaryComparator.SummaryElement> sortedValuesFrequency = new TreeSet<SummaryComparator.SummaryElement>(valuesComparator);
+		ObjectKeyIntMapIterator entries = values.entries();
+
+		while(entries.hasNext()) {
+			entries.next();
+			sortedValuesFrequency.add(new SummaryComparator.SummaryElement(entries));
+		}
+		return sortedValuesFrequency;
+	}
+
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Reads the values of the property in the stored fields of the first maxRecords records matching the query.
+	 *
+	 * @param sortedValues filled with the values
+	 * @return the values by frequency
+	 */
+	private static TreeSet<SummaryComparator.SummaryElement> readStoredValues(IndexReader reader, Query query,
+			String property, int maxRecords, SortedSet<String> sortedValues, String language) throws Exception {
+		List<Pair<String, Boolean>> sortFields = Collections.singletonList(Pair.read(Geonet.SearchResult.SortBy.RELEVANCE, true));
+		Sort   sort = LuceneSearcher.makeSort(sortFields, language, false);
+		CachingWrapperFilter filter = null;
+
+		Pair<TopDocs,Element> searchResults = LuceneSearcher.doSearchAndMakeSummary( 
+				maxRecords, 0, maxRecords, language, 
+				null, reader, 
+				query, filter, sort, null, false, false,
+				false, false	// Scoring is useless for GetDomain operation
+		);
+		TopDocs hits = searchResults.one();
+
+		Set<String> fields = new HashSet<String>();
+		fields.add(property);
+		fields.add("_isTemplate");
+
+		String[] fieldValues;
+		ObjectKeyIntOpenHashMap duplicateValues = new ObjectKeyIntOpenHashMap();
+		for (int j = 0; j < hits.scoreDocs.length; j++) {
+		    DocumentStoredFieldVisitor selector = new DocumentStoredFieldVisitor(fields);
+			reader.document(hits.scoreDocs[j].doc, selector);
+			Document doc = selector.getDocument();
+
+			// Skip templates and subTemplates
+			String[] isTemplate = doc.getValues("_isTemplate");
+			if (isTemplate[0] != null && !isTemplate[0].equals("n"))
+				continue;
+			
+			// Get doc values for specified property
+			fieldValues = doc.getValues(property);
+			if (fieldValues == null)
+				continue;
+			
+			addtoSortedSet(sortedValues, fieldValues, duplicateValues);
+		}
+		return toSummaryElements(duplicateValues, language);
+	}
+
+	//---------------------------------------------------------------------------
+
 	/**
 	 * @param sortedValues
 	 * @param fieldValues
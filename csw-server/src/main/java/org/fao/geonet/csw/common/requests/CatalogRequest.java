@@ -24,8 +24,10 @@
 package org.fao.geonet.csw.common.requests;
 
 import jeeves.server.context.ServiceContext;
+import jeeves.utils.HttpConnectionPool;
 import jeeves.utils.Log;
 import jeeves.utils.Util;
+import jeeves.utils.XmlElementReader;
 
 import org.apache.commons.httpclient.Cookie;
 import org.apache.commons.httpclient.Credentials;
@@ -235,6 +237,28 @@ public abstract class CatalogRequest
 		return response;
 	}
 
+	//---------------------------------------------------------------------------
+	/** Sends the request like execute() but hands each element of the response
+	  * matching the path (e.g. csw:SearchResults/*) to the handler as soon as it is
+	  * parsed, so that the records of a large response are never held as a whole.
+	  * Returns the response without the matching elements.
+	  */
+
+    public Element execute(String path, List<Namespace> namespaces, XmlElementReader.Handler handler) throws Exception
+	{
+		HttpMethodBase httpMethod = setupHttpMethod();
+
+		Element response = doExecute(httpMethod, path, namespaces, handler);
+
+		if (useSOAP)
+			response = soapUnembed(response);
+
+		//--- raises an exception if the case
+		CatalogException.unmarshal(response);
+
+		return response;
+	}
+
     public boolean login(String username, String password) throws Exception
 
     {
@@ -472,7 +496,7 @@ public abstract class CatalogRequest
 				System.out.println("  Status code: " + httpMethod.getStatusCode());
 				return null;
 			} else {
-				return Xml.loadStream(httpMethod.getResponseBodyAsStream());
+				return Xml.loadStream(HttpConnectionPool.getResponseBodyAsStream(httpMethod));
 			}
 		}
 		finally
@@ -489,6 +513,38 @@ public abstract class CatalogRequest
 
 	//---------------------------------------------------------------------------
 
+	private Element doExecute(HttpMethodBase httpMethod, String path, List<Namespace> namespaces,
+									  XmlElementReader.Handler handler) throws Exception
+	{
+		client.getHostConfiguration().setHost(host, port, protocol);
+
+		try
+		{
+			client.executeMethod(httpMethod);
+
+			// If server return HTTP Error 500 Server error
+			// when retrieving the data return null
+			if (httpMethod.getStatusCode() == 500) {
+				Log.warning(Geonet.HARVESTER, "  Status code: " + httpMethod.getStatusCode());
+				return null;
+			} else {
+				return XmlElementReader.read(HttpConnectionPool.getResponseBodyAsStream(httpMethod), path, namespaces, handler);
+			}
+		}
+		finally
+		{
+			httpMethod.releaseConnection();
+			try {
+			setupSentData(httpMethod);
+			setupReceivedData(httpMethod, null);
+			} catch (Throwable e) {
+			    Log.warning(Geonet.HARVESTER, "Exception was raised during cleanup of a CSW request : "+ Util.getStackTrace(e));
+			}
+		}
+	}
+
+	//---------------------------------------------------------------------------
+
 	private HttpMethodBase setupHttpMethod() throws UnsupportedEncodingException
 	{
 		HttpMethodBase httpMethod;
@@ -539,6 +595,8 @@ public abstract class CatalogRequest
 			httpMethod.setDoAuthentication(true);
 		}
 
+		HttpConnectionPool.acceptCompression(httpMethod);
+
 		return httpMethod;
 	}
 
@@ -644,7 +702,7 @@ public abstract class CatalogRequest
 
     protected String serverVersion = Csw.CSW_VERSION;  // Sets default value
 
-	private HttpClient client = new HttpClient();
+	private HttpClient client = new HttpClient(HttpConnectionPool.getConnectionManager());
 
     private ArrayList<NameValuePair> alGetParams;
     private ArrayList<NameValuePair> alSetupGetParams;
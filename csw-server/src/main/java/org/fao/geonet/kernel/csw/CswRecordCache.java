@@ -0,0 +1,353 @@
+//=============================================================================
+//===	Copyright (C) 2001-2007 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package org.fao.geonet.kernel.csw;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jeeves.utils.Log;
+import jeeves.utils.Xml;
+
+import org.apache.commons.io.FileUtils;
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.csw.common.ElementSetName;
+import org.fao.geonet.csw.common.OutputSchema;
+import org.fao.geonet.kernel.MetadataChangeListener;
+import org.fao.geonet.util.Sha1Encoder;
+import org.jdom.Element;
+import org.jdom.output.Format;
+import org.jdom.output.XMLOutputter;
+
+/**
+ * Records of the CSW responses as returned by the ElementSetName and ElementNames stylesheets, so that the pages of
+ * brief and summary records asked again and again by the portals are not transformed each time.
+ * <p/>
+ * The entries are keyed on the metadata id, change date and xml (its length and hash), the output schema, the element
+ * set, the element names and the language of the request, and on whether the withheld elements are hidden for the
+ * user. Keying on the xml keeps a record read before an update is committed from being served afterwards, even when
+ * the change date is not updated. They are kept serialized, the least recently used entries are evicted first when
+ * the estimated memory is over the budget. If a directory is configured, the evicted entries are moved there until
+ * the disk budget is reached. The entries of a metadata are removed when it is updated or deleted.
+ * <p/>
+ * The hit, miss and eviction counts are exported by the org.fao.geonet.monitor.csw gauges.
+ */
+public class CswRecordCache implements MetadataChangeListener {
+    private static final long ENTRY_OVERHEAD = 200;
+    private static final Format FORMAT = Format.getRawFormat().setEncoding("UTF-8");
+
+    private final long maxBytes;
+    private final long maxDiskBytes;
+    private final File directory;
+
+    private final Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+    private final Map<String, Long> diskEntries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+    private final Map<String, Set<String>> keysById = new HashMap<String, Set<String>>();
+    private long bytes;
+    private long diskBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxBytes estimated memory used by the entries above which entries are evicted, 0 to disable the cache
+     * @param directory where the entries evicted from memory are written, null to drop them
+     * @param maxDiskBytes size of the files above which the entries written to the directory are deleted
+     */
+    public CswRecordCache(long maxBytes, File directory, long maxDiskBytes) {
+        this.maxBytes = maxBytes;
+        this.directory = maxDiskBytes > 0 ? directory : null;
+        this.maxDiskBytes = maxDiskBytes;
+        if (this.directory != null) {
+            // the files left by a previous run may have missed some updates
+            try {
+                FileUtils.deleteDirectory(this.directory);
+            } catch (IOException e) {
+                Log.error(Geonet.CSW_SEARCH, "Can't clear the CSW record cache directory " + directory + ": " + e.getMessage());
+            }
+            this.directory.mkdirs();
+        }
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * @return the key of a record or null if the cache is disabled
+     */
+    public String key(String id, String changeDate, String xml, OutputSchema outputSchema, ElementSetName elementSetName,
+                      Set<String> elementNames, String typeName, String strategy, String language,
+                      boolean hidingWithheldElements) {
+        if (!isEnabled()) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder(id).append('|').append(changeDate);
+        key.append('|').append(xml.length()).append('|').append(xml.hashCode());
+        key.append('|').append(outputSchema).append('|').append(elementSetName);
+        if (elementNames != null) {
+            key.append('|').append(new TreeSet<String>(elementNames)).append('|').append(typeName)
+                    .append('|').append(strategy);
+        }
+        key.append('|').append(language).append('|').append(hidingWithheldElements);
+        return key.toString();
+    }
+
+    /**
+     * @return a copy of the record or null if it is not in the cache
+     */
+    public Element get(String key) {
+        String id = id(key);
+        byte[] record;
+        File file = null;
+        synchronized (this) {
+            record = entries.get(key);
+            if (record == null && diskEntries.containsKey(key)) {
+                file = file(id, key);
+            }
+        }
+        if (record == null && file != null) {
+            try {
+                record = FileUtils.readFileToByteArray(file);
+            } catch (IOException e) {
+                // deleted by an update in the meantime
+                record = null;
+            }
+        }
+        if (record == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        try {
+            Element element = Xml.loadStream(new ByteArrayInputStream(record));
+            hits.incrementAndGet();
+            return element;
+        } catch (Exception e) {
+            Log.error(Geonet.CSW_SEARCH, "Can't read cached CSW record of metadata " + id + ": " + e.getMessage());
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * @param record the record, not kept
+     */
+    public void put(String key, Element record) {
+        if (key == null) {
+            return;
+        }
+        String id = id(key);
+        byte[] serialized;
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new XMLOutputter(FORMAT).output(record, out);
+            serialized = out.toByteArray();
+        } catch (IOException e) {
+            return;
+        }
+        if (ENTRY_OVERHEAD + serialized.length > maxBytes) {
+            return;
+        }
+        List<Map.Entry<String, byte[]>> evicted = new ArrayList<Map.Entry<String, byte[]>>();
+        synchronized (this) {
+            byte[] previous = entries.put(key, serialized);
+            if (previous != null) {
+                bytes -= ENTRY_OVERHEAD + previous.length;
+            }
+            bytes += ENTRY_OVERHEAD + serialized.length;
+            keys(id).add(key);
+            for (Iterator<Map.Entry<String, byte[]>> iterator = entries.entrySet().iterator(); bytes > maxBytes && iterator.hasNext();) {
+                Map.Entry<String, byte[]> eldest = iterator.next();
+                iterator.remove();
+                bytes -= ENTRY_OVERHEAD + eldest.getValue().length;
+                evictions.incrementAndGet();
+                if (directory != null) {
+                    evicted.add(eldest);
+                } else {
+                    removeKey(eldest.getKey());
+                }
+            }
+        }
+        // the evicted entries are not found until they are on disk
+        for (Map.Entry<String, byte[]> entry : evicted) {
+            writeToDisk(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public synchronized void metadataUpdated(String id) {
+        remove(id);
+    }
+
+    public synchronized void metadataDeleted(String id) {
+        remove(id);
+    }
+
+    /**
+     * Removes all the entries.
+     */
+    public synchronized void clear() {
+        for (String id : new ArrayList<String>(keysById.keySet())) {
+            remove(id);
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return estimated memory used by the entries
+     */
+    public synchronized long getSizeInBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return size of the files of the entries moved to disk
+     */
+    public synchronized long getDiskSizeInBytes() {
+        return diskBytes;
+    }
+
+    private void remove(String id) {
+        Set<String> keys = keysById.remove(id);
+        if (keys == null) {
+            return;
+        }
+        for (String key : keys) {
+            byte[] record = entries.remove(key);
+            if (record != null) {
+                bytes -= ENTRY_OVERHEAD + record.length;
+            }
+            Long size = diskEntries.remove(key);
+            if (size != null) {
+                diskBytes -= size;
+            }
+        }
+        if (directory != null) {
+            FileUtils.deleteQuietly(new File(directory, id));
+        }
+    }
+
+    /**
+     * Writes an entry evicted from memory, outside of the lock. The file is written under a temporary name and renamed,
+     * so that it is never read partly written.
+     */
+    private void writeToDisk(String key, byte[] record) {
+        String id = id(key);
+        File file = file(id, key);
+        File tmp = null;
+        boolean written = false;
+        try {
+            file.getParentFile().mkdirs();
+            tmp = File.createTempFile("record", ".tmp", file.getParentFile());
+            FileUtils.writeByteArrayToFile(tmp, record);
+            file.delete();
+            written = tmp.renameTo(file);
+        } catch (IOException e) {
+            Log.error(Geonet.CSW_SEARCH, "Can't write cached CSW record of metadata " + id + ": " + e.getMessage());
+        } finally {
+            if (!written && tmp != null) {
+                FileUtils.deleteQuietly(tmp);
+            }
+        }
+        synchronized (this) {
+            Set<String> keys = keysById.get(id);
+            if (keys == null || !keys.contains(key)) {
+                // the metadata was updated in the meantime
+                FileUtils.deleteQuietly(file);
+                return;
+            }
+            if (!written) {
+                Long previous = diskEntries.remove(key);
+                if (previous != null) {
+                    diskBytes -= previous;
+                }
+                if (!entries.containsKey(key)) {
+                    removeKey(key);
+                }
+                return;
+            }
+            Long previous = diskEntries.put(key, (long) record.length);
+            if (previous != null) {
+                diskBytes -= previous;
+            }
+            diskBytes += record.length;
+            for (Iterator<Map.Entry<String, Long>> iterator = diskEntries.entrySet().iterator(); diskBytes > maxDiskBytes && iterator.hasNext();) {
+                Map.Entry<String, Long> eldest = iterator.next();
+                iterator.remove();
+                diskBytes -= eldest.getValue();
+                FileUtils.deleteQuietly(file(id(eldest.getKey()), eldest.getKey()));
+                if (!entries.containsKey(eldest.getKey())) {
+                    removeKey(eldest.getKey());
+                }
+            }
+        }
+    }
+
+    private Set<String> keys(String id) {
+        Set<String> keys = keysById.get(id);
+        if (keys == null) {
+            keys = new HashSet<String>();
+            keysById.put(id, keys);
+        }
+        return keys;
+    }
+
+    private void removeKey(String key) {
+        String id = id(key);
+        Set<String> keys = keysById.get(id);
+        if (keys != null && keys.remove(key) && keys.isEmpty()) {
+            keysById.remove(id);
+        }
+    }
+
+    private File file(String id, String key) {
+        return new File(new File(directory, id), Sha1Encoder.encodeString(key) + ".xml");
+    }
+
+    private static String id(String key) {
+        return key.substring(0, key.indexOf('|'));
+    }
+}
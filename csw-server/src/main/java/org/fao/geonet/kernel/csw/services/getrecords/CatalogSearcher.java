@@ -532,8 +532,8 @@ public class CatalogSearcher implements MetadataRecordSelector {
 
 		Pair<TopDocs,Element> searchResults = LuceneSearcher.doSearchAndMakeSummary(numHits, startPosition - 1,
                 maxRecords, _lang, luceneConfig.getTaxonomy().get(resultType.toString()), reader, _query, wrapSpatialFilter(),
-                _sort, taxonomyReader, buildSummary, luceneConfig.isTrackDocScores(), luceneConfig.isTrackMaxScore(),
-                luceneConfig.isDocsScoredInOrder()
+                _sort, taxonomyReader, luceneConfig.getFacetEngine(), buildSummary, luceneConfig.isTrackDocScores(),
+                luceneConfig.isTrackMaxScore(), luceneConfig.isDocsScoredInOrder()
 		);
 		TopDocs hits = searchResults.one();
 		Element summary = searchResults.two();
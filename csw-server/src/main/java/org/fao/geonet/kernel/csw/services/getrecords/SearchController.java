@@ -23,6 +23,7 @@
 
 package org.fao.geonet.kernel.csw.services.getrecords;
 
+import jeeves.resources.dbms.Dbms;
 import jeeves.server.context.ServiceContext;
 import jeeves.utils.Log;
 import jeeves.utils.Util;
@@ -41,6 +42,8 @@ import org.fao.geonet.csw.common.exceptions.InvalidParameterValueEx;
 import org.fao.geonet.csw.common.exceptions.NoApplicableCodeEx;
 import org.fao.geonet.kernel.DataManager;
 import org.fao.geonet.kernel.SchemaManager;
+import org.fao.geonet.kernel.XmlSerializer;
+import org.fao.geonet.kernel.csw.CswRecordCache;
 import org.fao.geonet.kernel.schema.MetadataSchema;
 import org.fao.geonet.kernel.search.spatial.Pair;
 import org.geotools.gml2.GMLConfiguration;
@@ -206,10 +209,31 @@ public class SearchController {
           outSchema, Set<String> elemNames, String typeName, ResultType resultType, String strategy) throws CatalogException {
 
 	try	{
-		//--- get metadata from DB
 		GeonetContext gc = (GeonetContext) context.getHandlerContext(Geonet.CONTEXT_NAME);
+		DataManager dataManager = gc.getBean(DataManager.class);
+
+		//--- look for the record in the cache, the info added to the records
+		//--- with summary depends on the user so they are not cached
+		CswRecordCache cache = gc.getBean(CswRecordCache.class);
+		String cacheKey = null;
+		if (cache.isEnabled() && resultType != ResultType.RESULTS_WITH_SUMMARY) {
+			Dbms dbms = (Dbms) context.getResourceManager().open(Geonet.Res.MAIN_DB);
+			Element stored = dataManager.getMetadataChangeDateAndData(dbms, id);
+			if (stored == null) {
+				return null;
+			}
+			boolean hidingWithheld = gc.getBean(XmlSerializer.class).isHidingWithheldElements(id);
+			cacheKey = cache.key(id, stored.getChildText("changedate"), stored.getChildText("data"), outSchema,
+					setName, elemNames, typeName, strategy, context.getLanguage(), hidingWithheld);
+			Element cached = cache.get(cacheKey);
+			if (cached != null) {
+				return cached;
+			}
+		}
+
+		//--- get metadata from DB
         boolean forEditing = false, withValidationErrors = false, keepXlinkAttributes = false;
-        Element res = gc.getBean(DataManager.class).getMetadata(context, id, forEditing, withValidationErrors, keepXlinkAttributes);
+        Element res = dataManager.getMetadata(context, id, forEditing, withValidationErrors, keepXlinkAttributes);
 		SchemaManager scm = gc.getBean(SchemaManager.class);
 		if (res==null) {
             return null;
@@ -245,6 +269,7 @@ public class SearchController {
         res = applyElementNames(context, elemNames, typeName, scm, schema, res, resultType, info, strategy);
 
         if(res != null) {
+            cache.put(cacheKey, res);
             if(Log.isDebugEnabled(Geonet.CSW_SEARCH))
                 Log.debug(Geonet.CSW_SEARCH, "SearchController returns\n" + Xml.getString(res));
         }
@@ -0,0 +1,36 @@
+package org.fao.geonet.monitor.csw;
+
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.MetricsRegistry;
+import jeeves.monitor.MetricsFactory;
+import jeeves.server.context.ServiceContext;
+import org.fao.geonet.GeonetContext;
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.kernel.csw.CswRecordCache;
+
+/**
+ * Abstract super class for all Gauges that report the usage of the cache of CSW records.
+ */
+public abstract class AbstractCswRecordCacheGauge implements MetricsFactory<Gauge<Long>> {
+    private final String name;
+
+    protected abstract long valueImpl(CswRecordCache cache);
+
+    protected AbstractCswRecordCacheGauge(String name) {
+        this.name = name;
+    }
+
+    public Gauge<Long> create(MetricsRegistry metricsRegistry, final ServiceContext context) {
+        return metricsRegistry.newGauge(CswRecordCache.class, name, new Gauge<Long>() {
+            @Override
+            public Long value() {
+                try {
+                    GeonetContext gc = (GeonetContext) context.getHandlerContext(Geonet.CONTEXT_NAME);
+                    return valueImpl(gc.getBean(CswRecordCache.class));
+                } catch (Exception e) {
+                    return -1L;
+                }
+            }
+        });
+    }
+}
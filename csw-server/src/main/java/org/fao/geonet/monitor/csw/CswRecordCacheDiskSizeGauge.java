@@ -0,0 +1,17 @@
+package org.fao.geonet.monitor.csw;
+
+import org.fao.geonet.kernel.csw.CswRecordCache;
+
+/**
+ * Gauge that reports the size of the cached CSW records written to disk, in bytes.
+ */
+public class CswRecordCacheDiskSizeGauge extends AbstractCswRecordCacheGauge {
+    public CswRecordCacheDiskSizeGauge() {
+        super("CSW_Record_Cache_Disk_Size_In_Bytes");
+    }
+
+    @Override
+    protected long valueImpl(CswRecordCache cache) {
+        return cache.getDiskSizeInBytes();
+    }
+}
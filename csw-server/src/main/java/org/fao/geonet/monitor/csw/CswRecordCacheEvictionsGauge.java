@@ -0,0 +1,17 @@
+package org.fao.geonet.monitor.csw;
+
+import org.fao.geonet.kernel.csw.CswRecordCache;
+
+/**
+ * Gauge that reports the number of CSW records evicted from the memory of the cache.
+ */
+public class CswRecordCacheEvictionsGauge extends AbstractCswRecordCacheGauge {
+    public CswRecordCacheEvictionsGauge() {
+        super("CSW_Record_Cache_Evictions");
+    }
+
+    @Override
+    protected long valueImpl(CswRecordCache cache) {
+        return cache.getEvictions();
+    }
+}
@@ -0,0 +1,17 @@
+package org.fao.geonet.monitor.csw;
+
+import org.fao.geonet.kernel.csw.CswRecordCache;
+
+/**
+ * Gauge that reports the number of CSW records served from the cache.
+ */
+public class CswRecordCacheHitsGauge extends AbstractCswRecordCacheGauge {
+    public CswRecordCacheHitsGauge() {
+        super("CSW_Record_Cache_Hits");
+    }
+
+    @Override
+    protected long valueImpl(CswRecordCache cache) {
+        return cache.getHits();
+    }
+}
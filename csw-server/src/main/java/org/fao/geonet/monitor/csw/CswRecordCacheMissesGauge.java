@@ -0,0 +1,17 @@
+package org.fao.geonet.monitor.csw;
+
+import org.fao.geonet.kernel.csw.CswRecordCache;
+
+/**
+ * Gauge that reports the number of CSW records not found in the cache.
+ */
+public class CswRecordCacheMissesGauge extends AbstractCswRecordCacheGauge {
+    public CswRecordCacheMissesGauge() {
+        super("CSW_Record_Cache_Misses");
+    }
+
+    @Override
+    protected long valueImpl(CswRecordCache cache) {
+        return cache.getMisses();
+    }
+}
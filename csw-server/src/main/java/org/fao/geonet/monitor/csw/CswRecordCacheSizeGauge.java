@@ -0,0 +1,17 @@
+package org.fao.geonet.monitor.csw;
+
+import org.fao.geonet.kernel.csw.CswRecordCache;
+
+/**
+ * Gauge that reports the estimated memory used by the cached CSW records, in bytes.
+ */
+public class CswRecordCacheSizeGauge extends AbstractCswRecordCacheGauge {
+    public CswRecordCacheSizeGauge() {
+        super("CSW_Record_Cache_Size_In_Bytes");
+    }
+
+    @Override
+    protected long valueImpl(CswRecordCache cache) {
+        return cache.getSizeInBytes();
+    }
+}
@@ -0,0 +1,162 @@
+//=============================================================================
+//===	Copyright (C) 2001-2007 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package org.fao.geonet.kernel.harvest.harvester;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+//=============================================================================
+
+/** Compares the records found on a remote node with the metadata harvested
+  * before from this node (the uuid -> change date index of an UUIDMapper).
+  * Both sides are looked up by uuid in hash maps, so the records are sorted
+  * into the records to add, update or leave unchanged and the local metadata
+  * to remove in one pass over each side.
+  *
+  * The records to add are the records not harvested before from this node:
+  * a record with the same uuid may still exist, harvested from another node
+  * or created locally.
+  */
+
+public abstract class Reconciliation<R>
+{
+	//--------------------------------------------------------------------------
+	//---
+	//--- Constructor
+	//---
+	//--------------------------------------------------------------------------
+
+	public Reconciliation(UUIDMapper localUuids)
+	{
+		this.localUuids = localUuids;
+	}
+
+	//--------------------------------------------------------------------------
+	//---
+	//--- API methods
+	//---
+	//--------------------------------------------------------------------------
+
+	/** Sorts the remote records, a record found twice is only kept once */
+
+	public Reconciliation<R> reconcile(Iterable<? extends R> records)
+	{
+		Set<String> remoteUuids = new HashSet<String>();
+
+		for (R record : records)
+		{
+			String uuid = getUuid(record);
+
+			if (!remoteUuids.add(uuid))
+				continue;
+
+			if (localUuids.getID(uuid) == null)
+				added.add(record);
+			else if (isMoreRecentThan(record, localUuids.getChangeDate(uuid)))
+				updated.add(record);
+			else
+				unchanged.add(record);
+		}
+
+		for (String uuid : localUuids.getUUIDs())
+			if (!remoteUuids.contains(uuid))
+				removedIds.add(localUuids.getID(uuid));
+
+		return this;
+	}
+
+	//--------------------------------------------------------------------------
+
+	/** The records not harvested before from the remote node */
+
+	public List<R> getAdded() { return added; }
+
+	//--------------------------------------------------------------------------
+
+	/** The harvested records changed on the remote node */
+
+	public List<R> getUpdated() { return updated; }
+
+	//--------------------------------------------------------------------------
+
+	public List<R> getUnchanged() { return unchanged; }
+
+	//--------------------------------------------------------------------------
+
+	/** The local ids of the harvested metadata no more on the remote node */
+
+	public List<String> getRemovedIds() { return removedIds; }
+
+	//--------------------------------------------------------------------------
+
+	/** Returns the local id of a record harvested before, null otherwise */
+
+	public String getLocalId(R record) { return localUuids.getID(getUuid(record)); }
+
+	//--------------------------------------------------------------------------
+
+	/** Reconciles records using the change date of RecordInfo */
+
+	public static Reconciliation<RecordInfo> reconcile(UUIDMapper localUuids, Iterable<RecordInfo> records)
+	{
+		return new Reconciliation<RecordInfo>(localUuids)
+		{
+			protected String getUuid(RecordInfo record) { return record.uuid; }
+
+			protected boolean isMoreRecentThan(RecordInfo record, String localChangeDate)
+			{
+				return record.isMoreRecentThan(localChangeDate);
+			}
+		}.reconcile(records);
+	}
+
+	//--------------------------------------------------------------------------
+	//---
+	//--- Abstract methods
+	//---
+	//--------------------------------------------------------------------------
+
+	protected abstract String getUuid(R record);
+
+	/** Returns true if the remote record must replace the harvested one */
+
+	protected abstract boolean isMoreRecentThan(R record, String localChangeDate);
+
+	//--------------------------------------------------------------------------
+	//---
+	//--- Variables
+	//---
+	//--------------------------------------------------------------------------
+
+	private final UUIDMapper localUuids;
+
+	private final List<R>      added      = new ArrayList<R>();
+	private final List<R>      updated    = new ArrayList<R>();
+	private final List<R>      unchanged  = new ArrayList<R>();
+	private final List<String> removedIds = new ArrayList<String>();
+}
+
+//=============================================================================
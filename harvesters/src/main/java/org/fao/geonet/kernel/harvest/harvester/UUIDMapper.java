@@ -24,10 +24,9 @@
 package org.fao.geonet.kernel.harvest.harvester;
 
 import jeeves.resources.dbms.Dbms;
-import org.jdom.Element;
 
+import java.sql.SQLException;
 import java.util.HashMap;
-import java.util.List;
 
 //=============================================================================
 
@@ -51,19 +50,19 @@ public class UUIDMapper
 	{
 		String query = "SELECT id, uuid, changeDate, isTemplate FROM Metadata WHERE harvestUuid=?";
 
-		@SuppressWarnings("unchecked")
-        List<Element> idsList = dbms.select(query, harvestUuid).getChildren();
+		dbms.selectRows(query, new Dbms.RowHandler()
+		{
+			public boolean handle(Dbms.Row record) throws SQLException
+			{
+				String uuid = record.getString(2);
 
-        for (Element record : idsList) {
-            String id = record.getChildText("id");
-            String uuid = record.getChildText("uuid");
-            String date = record.getChildText("changedate");
-            String isTemplate = record.getChildText("istemplate");
+				hmUuidDate    .put(uuid, record.getString(3));
+				hmUuidId      .put(uuid, record.getString(1));
+				hmUuidTemplate.put(uuid, record.getString(4));
 
-            hmUuidDate.put(uuid, date);
-            hmUuidId.put(uuid, id);
-            hmUuidTemplate.put(uuid, isTemplate);
-        }
+				return true;
+			}
+		}, harvestUuid);
 	}
 
 	//--------------------------------------------------------------------------
@@ -46,7 +46,9 @@ import org.jdom.Element;
 import java.io.File;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 //import com.esri.sde.sdk.GeoToolsDummyAPI;
@@ -159,7 +161,7 @@ public class ArcSDEHarvester extends AbstractHarvester<HarvestResult> {
 		CategoryMapper localCateg = new CategoryMapper(dbms);
 		GroupMapper localGroups = new GroupMapper(dbms);
 		dbms.commit();		
-		List<String> idsForHarvestingResult = new ArrayList<String>();
+		Set<String> idsForHarvestingResult = new HashSet<String>();
 		//-----------------------------------------------------------------------
 		//--- insert/update metadata		
 		for(String metadata : metadataList) {
@@ -216,13 +218,15 @@ public class ArcSDEHarvester extends AbstractHarvester<HarvestResult> {
 		// not in this harvesting result
 		//	
 		List<Element> existingMetadata = dataMan.getMetadataByHarvestingSource(dbms, params.uuid);
+		List<String> removedIds = new ArrayList<String>();
 		for(Element existingId : existingMetadata) {
 			String ex$ = existingId.getChildText("id");
 			if(!idsForHarvestingResult.contains(ex$)) {
-				dataMan.deleteMetadataGroup(context, dbms, ex$);
-				result.locallyRemoved++;
+				removedIds.add(ex$);
 			}
 		}			
+		dataMan.deleteBatchMetadataGroup(context, dbms, removedIds);
+		result.locallyRemoved += removedIds.size();
 	}
 
 	private void updateMetadata(Element xml, String id, Dbms dbms, GroupMapper localGroups, CategoryMapper localCateg) throws Exception {
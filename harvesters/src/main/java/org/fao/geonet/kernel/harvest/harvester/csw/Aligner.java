@@ -23,10 +23,13 @@
 
 package org.fao.geonet.kernel.harvest.harvester.csw;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import jeeves.exceptions.OperationAbortedEx;
 import jeeves.interfaces.Logger;
@@ -48,6 +51,7 @@ import org.fao.geonet.kernel.harvest.harvester.GroupMapper;
 import org.fao.geonet.kernel.harvest.harvester.HarvestError;
 import org.fao.geonet.kernel.harvest.harvester.HarvestResult;
 import org.fao.geonet.kernel.harvest.harvester.RecordInfo;
+import org.fao.geonet.kernel.harvest.harvester.Reconciliation;
 import org.fao.geonet.kernel.harvest.harvester.UUIDMapper;
 import org.fao.geonet.kernel.search.LuceneSearcher;
 import org.jdom.Element;
@@ -74,100 +78,178 @@ public class Aligner extends BaseAligner
 		dataMan = gc.getBean(DataManager.class);
 		result  = new HarvestResult();
 
-		//--- setup get-record-by-id request
+		//--- check that a get-record-by-id request can be set up,
+		//--- each fetching thread uses its own request
 
-		request = new GetRecordByIdRequest(sc);
-		request.setElementSetName(ElementSetName.FULL);
+		oper = server.getOperation(CswServer.GET_RECORD_BY_ID);
+		newRequest();
+	}
 
-		CswOperation oper = server.getOperation(CswServer.GET_RECORD_BY_ID);
+	//--------------------------------------------------------------------------
+	//---
+	//--- Alignment method
+	//---
+	//--------------------------------------------------------------------------
 
-		// Use the preferred HTTP method and check one exist.
-		if (oper.getGetUrl() != null && Harvester.PREFERRED_HTTP_METHOD.equals("GET")) {
-			request.setUrl(oper.getGetUrl());
-			request.setMethod(CatalogRequest.Method.GET);
-		} else if (oper.getPostUrl() != null && Harvester.PREFERRED_HTTP_METHOD.equals("POST")) {
-			request.setUrl(oper.getPostUrl());
-			request.setMethod(CatalogRequest.Method.POST);
-		} else {
-			if (oper.getGetUrl() != null) {
-				request.setUrl(oper.getGetUrl());
-				request.setMethod(CatalogRequest.Method.GET);
-			} else if (oper.getPostUrl() != null) {
-				request.setUrl(oper.getPostUrl());
-				request.setMethod(CatalogRequest.Method.POST);
-			} else {
-				throw new OperationAbortedEx("No GET or POST DCP available in this service.");
-			}
-		}
+	/**
+	 * Aligns the local node with the records found by the searches: the records
+	 * to add or update are fetched by a pool of {@link CswParams#fetchThreads}
+	 * threads with GetRecordById requests while this thread stores and indexes
+	 * the records already fetched.
+	 */
+	public HarvestResult align(Set<RecordInfo> records, List<HarvestError> errors) throws Exception
+	{
+		begin();
 
-		if(oper.getPreferredOutputSchema() != null) {
-			request.setOutputSchema(oper.getPreferredOutputSchema());
+		Reconciliation<RecordInfo> reconciliation = Reconciliation.reconcile(localUuids, records);
+
+		removeOld(reconciliation.getRemovedIds());
+
+		for (RecordInfo ri : reconciliation.getUnchanged())
+		{
+            if(log.isDebugEnabled())
+                log.debug("  - Metadata XML not changed for uuid:"+ ri.uuid);
+			result.unchangedMetadata++;
+			result.totalMetadata++;
+			result.originalMetadata++;
 		}
 
-        if(oper.getPreferredServerVersion() != null) {
-			request.setServerVersion(oper.getPreferredServerVersion());
+		//-----------------------------------------------------------------------
+		//--- insert/update new metadata
+
+		List<RecordInfo> changed = new ArrayList<RecordInfo>(reconciliation.getAdded());
+		changed.addAll(reconciliation.getUpdated());
+
+		FetchPool<RecordFetch> pool = new FetchPool<RecordFetch>(params.name, params.fetchThreads,
+				params.fetchThreads * PENDING_RECORDS_PER_THREAD);
+		try
+		{
+			Iterator<RecordInfo> toAlign = changed.iterator();
+
+			while (toAlign.hasNext() || pool.hasPending())
+			{
+				//--- keep the fetching threads busy
+
+				while (toAlign.hasNext() && !pool.isFull())
+				{
+					RecordInfo ri = toAlign.next();
+					try
+					{
+						String id = reconciliation.getLocalId(ri);
+
+						if (id != null || !isManagedElsewhere(ri))
+						{
+							pool.submit(new RecordFetch(ri, id));
+							continue;
+						}
+						result.totalMetadata++;
+					}
+					catch(Throwable t)
+					{
+						recordFailed(ri, t, errors);
+					}
+					result.originalMetadata++;
+				}
+
+				//--- store the next fetched record
+
+				if (pool.hasPending())
+				{
+					RecordFetch fetch;
+					try
+					{
+						fetch = pool.take();
+					}
+					catch(FetchPool.FailedRequestException e)
+					{
+						// an error thrown by the fetch, counted like a record that can't be stored
+						recordFailed(((RecordFetch) e.getRequest()).ri, e.getCause(), errors);
+						result.originalMetadata++;
+						continue;
+					}
+					try
+					{
+						store(fetch);
+						result.totalMetadata++;
+					}
+					catch(Throwable t)
+					{
+						recordFailed(fetch.ri, t, errors);
+					}
+					finally
+					{
+						result.originalMetadata++;
+					}
+				}
+			}
+		}
+		finally
+		{
+			pool.shutdown();
 		}
 
-		if (params.useAccount) {
-			request.setCredentials(params.username, params.password);
-		}	
-		
+		log.info("End of alignment for : "+ params.name);
+
+		return result;
 	}
 
-	//--------------------------------------------------------------------------
-	//---
-	//--- Alignment method
-	//---
 	//--------------------------------------------------------------------------
 
-	public HarvestResult align(Set<RecordInfo> records, List<HarvestError> errors) throws Exception
+	/**
+	 * Retrieves all local categories and groups and the harvested uuids for
+	 * the harvesting node. Must be called before aligning the records got
+	 * by the searches with {@link #align(RecordInfo, Element, List)}.
+	 */
+	public void begin() throws Exception
 	{
 		log.info("Start of alignment for : "+ params.name);
 
-		//-----------------------------------------------------------------------
-		//--- retrieve all local categories and groups
-		//--- retrieve harvested uuids for given harvesting node
-
 		localCateg = new CategoryMapper(dbms);
 		localGroups= new GroupMapper(dbms);
 		localUuids = new UUIDMapper(dbms, params.uuid);
 		dbms.commit();
+	}
 
-		//-----------------------------------------------------------------------
-		//--- remove old metadata
+	//--------------------------------------------------------------------------
 
-		for (String uuid : localUuids.getUUIDs())
-			if (!exists(records, uuid))
-			{
-				String id = localUuids.getID(uuid);
+	/**
+	 * Adds or updates a full record got by a search, when the searches get the
+	 * full records ({@link CswParams#fullRecordsInSearch}).
+	 */
+	public void align(RecordInfo ri, Element md, List<HarvestError> errors)
+	{
+		try
+		{
+			String id = localUuids.getID(ri.uuid);
 
-                if(log.isDebugEnabled())
-                    log.debug("  - Removing old metadata with local id:"+ id);
-				dataMan.deleteMetadata(context, dbms, id);
-				dbms.commit();
-				result.locallyRemoved++;
+			if (needsRecord(ri, id))
+			{
+				RecordFetch fetch = new RecordFetch(ri, id);
+				fetch.check(md);
+				store(fetch);
 			}
-
-		//-----------------------------------------------------------------------
-		//--- insert/update new metadata
-
-		for(RecordInfo ri : records)
+			result.totalMetadata++;
+		}
+		catch(Throwable t)
+		{
+			recordFailed(ri, t, errors);
+		}
+		finally
 		{
-		    try{
-    
-    			String id = dataMan.getMetadataId(dbms, ri.uuid);
-    
-    			if (id == null)	addMetadata(ri);
-    			else				updateMetadata(ri, id);
-                result.totalMetadata++;
-		    }catch(Throwable t) {
-		        errors.add(new HarvestError(t, log));
-                log.error("Unable to process record from csw (" + this.params.name + ")");
-                log.error("   Record failed: " + ri.uuid); 
-		    } finally {
-		        result.originalMetadata++;
-		    }
+			result.originalMetadata++;
 		}
+	}
+
+	//--------------------------------------------------------------------------
+
+	/**
+	 * Ends the alignment of the full records got by the searches.
+	 *
+	 * @param records all the records found by the searches
+	 */
+	public HarvestResult end(Set<RecordInfo> records) throws Exception
+	{
+		removeOld(Reconciliation.reconcile(localUuids, records).getRemovedIds());
 
 		log.info("End of alignment for : "+ params.name);
 
@@ -176,28 +258,122 @@ public class Aligner extends BaseAligner
 
 	//--------------------------------------------------------------------------
 	//---
-	//--- Private methods : addMetadata
+	//--- Private methods
 	//---
 	//--------------------------------------------------------------------------
 
-	private void addMetadata(RecordInfo ri) throws Exception
+	/**
+	 * Removes the harvested metadata not found by the searches.
+	 */
+	private void removeOld(List<String> ids) throws Exception
 	{
-		Element md = retrieveMetadata(ri.uuid);
-
-		if (md == null)
+		if (ids.isEmpty())
 			return;
 
-		String schema = dataMan.autodetectSchema(md, null);
+        if(log.isDebugEnabled())
+            log.debug("  - Removing old metadata with local ids:"+ ids);
+		dataMan.deleteBatchMetadata(context, dbms, ids);
+		dbms.commit();
+		result.locallyRemoved += ids.size();
+	}
 
-		if (schema == null)
-		{
-            if(log.isDebugEnabled())
-                log.debug("  - Metadata skipped due to unknown schema. uuid:"+ ri.uuid);
-			result.unknownSchema++;
+	//--------------------------------------------------------------------------
 
-			return;
+	/**
+	 * @param id local id of the record, null if it was not harvested before
+	 * @return true if the remote record must be added or updated
+	 */
+	private boolean needsRecord(RecordInfo ri, String id) throws Exception
+	{
+		if (id == null)
+			return !isManagedElsewhere(ri);
+
+		if (!ri.isMoreRecentThan(localUuids.getChangeDate(ri.uuid))) {
+            if(log.isDebugEnabled()) {
+                log.debug("  - Metadata XML not changed for uuid:"+ ri.uuid);
+            }
+			result.unchangedMetadata++;
+			return false;
+		}
+        if(log.isDebugEnabled()) {
+            log.debug("  - Updating local metadata for uuid:"+ ri.uuid);
+        }
+		return true;
+	}
+
+	//--------------------------------------------------------------------------
+
+	/**
+	 * @return true if a record not harvested before from this node exists
+	 *         locally, harvested from another node or created locally
+	 */
+	private boolean isManagedElsewhere(RecordInfo ri) throws Exception
+	{
+		if (dataMan.getMetadataId(dbms, ri.uuid) == null)
+			return false;
+
+        if(log.isDebugEnabled()) {
+            log.debug("  - Skipped metadata managed by another harvesting node. uuid:"+ ri.uuid +", name:"+ params.name);
+        }
+		return true;
+	}
+
+	//--------------------------------------------------------------------------
+
+	private void recordFailed(RecordInfo ri, Throwable t, List<HarvestError> errors)
+	{
+        errors.add(new HarvestError(t, log));
+        log.error("Unable to process record from csw (" + this.params.name + ")");
+        log.error("   Record failed: " + ri.uuid);
+	}
+
+	//--------------------------------------------------------------------------
+
+	/**
+	 * Stores a fetched record in the database and the index, this is the only
+	 * step using the Dbms.
+	 */
+	private void store(RecordFetch fetch) throws Exception
+	{
+		if (fetch.error != null)
+			throw fetch.error;
+
+		switch (fetch.skipped)
+		{
+			case REMOVED:
+				return;
+			case UNRETRIEVABLE:
+				result.unretrievable++;
+				return;
+			case INVALID:
+				result.doesNotValidate++;
+				return;
+			case DUPLICATE:
+				result.duplicatedResource++;
+				return;
+			case UNKNOWN_SCHEMA:
+	            if(log.isDebugEnabled())
+	                log.debug("  - Metadata skipped due to unknown schema. uuid:"+ fetch.ri.uuid);
+				result.unknownSchema++;
+				return;
+			default:
+				break;
 		}
 
+		if (fetch.id == null)
+			addMetadata(fetch.ri, fetch.md, fetch.schema);
+		else
+			updateMetadata(fetch.ri, fetch.id, fetch.md);
+	}
+
+	//--------------------------------------------------------------------------
+	//---
+	//--- Private methods : addMetadata
+	//---
+	//--------------------------------------------------------------------------
+
+	private void addMetadata(RecordInfo ri, Element md, String schema) throws Exception
+	{
         if(log.isDebugEnabled())
             log.debug("  - Adding metadata with remote uuid:"+ ri.uuid + " schema:" + schema);
 
@@ -228,135 +404,214 @@ public class Aligner extends BaseAligner
 	//---
 	//--------------------------------------------------------------------------
 
-	private void updateMetadata(RecordInfo ri, String id) throws Exception
+	private void updateMetadata(RecordInfo ri, String id, Element md) throws Exception
 	{
-		String date = localUuids.getChangeDate(ri.uuid);
+        //
+        // update metadata
+        //
+        boolean validate = false;
+        boolean ufo = false;
+        boolean index = false;
+        String language = context.getLanguage();
+		dataMan.updateMetadata(context, dbms, id, md, validate, ufo, index, language, ri.changeDate, false);
 
-		if (date == null) {
-            if(log.isDebugEnabled()) {
-                log.debug("  - Skipped metadata managed by another harvesting node. uuid:"+ ri.uuid +", name:"+ params.name);
-            }
-		} else {
-			if (!ri.isMoreRecentThan(date)) {
-                if(log.isDebugEnabled()) {
-                    log.debug("  - Metadata XML not changed for uuid:"+ ri.uuid);
-                }
-				result.unchangedMetadata++;
-			} else {
-                if(log.isDebugEnabled()) {
-                    log.debug("  - Updating local metadata for uuid:"+ ri.uuid);
-                }
-				Element md = retrieveMetadata(ri.uuid);
+		dbms.execute("DELETE FROM OperationAllowed WHERE metadataId=?", Integer.parseInt(id));
+        addPrivileges(id, params.getPrivileges(), localGroups, dataMan, context, dbms, log);
 
-				if (md == null) {
-					return;
-				}
-				
-                //
-                // update metadata
-                //
-                boolean validate = false;
-                boolean ufo = false;
-                boolean index = false;
-                String language = context.getLanguage();
-				dataMan.updateMetadata(context, dbms, id, md, validate, ufo, index, language, ri.changeDate, false);
-
-				dbms.execute("DELETE FROM OperationAllowed WHERE metadataId=?", Integer.parseInt(id));
-                addPrivileges(id, params.getPrivileges(), localGroups, dataMan, context, dbms, log);
-
-				dbms.execute("DELETE FROM MetadataCateg WHERE metadataId=?", Integer.parseInt(id));
-                addCategories(id, params.getCategories(), localCateg, dataMan, dbms, context, log, null);
-
-				dbms.commit();
-				dataMan.indexMetadata(dbms, id);
-				result.updatedMetadata++;
-			}
-		}
+		dbms.execute("DELETE FROM MetadataCateg WHERE metadataId=?", Integer.parseInt(id));
+        addCategories(id, params.getCategories(), localCateg, dataMan, dbms, context, log, null);
+
+		dbms.commit();
+		dataMan.indexMetadata(dbms, id);
+		result.updatedMetadata++;
 	}
 
 	//--------------------------------------------------------------------------
 	//---
-	//--- Private methods
+	//--- Private methods : fetching
 	//---
 	//--------------------------------------------------------------------------
 
-    /**
-     *  Returns true if the uuid is present in the remote node.
-     * 
-     * @param records
-     * @param uuid
-     * @return
-     */
-	private boolean exists(Set<RecordInfo> records, String uuid)
+	/**
+	 * Creates a get-record-by-id request using the preferred HTTP method.
+	 */
+	private GetRecordByIdRequest newRequest() throws OperationAbortedEx
 	{
-		for(RecordInfo ri : records)
-			if (uuid.equals(ri.uuid))
-				return true;
+		GetRecordByIdRequest request = new GetRecordByIdRequest(context);
+		request.setElementSetName(ElementSetName.FULL);
+
+		// Use the preferred HTTP method and check one exist.
+		if (oper.getGetUrl() != null && Harvester.PREFERRED_HTTP_METHOD.equals("GET")) {
+			request.setUrl(oper.getGetUrl());
+			request.setMethod(CatalogRequest.Method.GET);
+		} else if (oper.getPostUrl() != null && Harvester.PREFERRED_HTTP_METHOD.equals("POST")) {
+			request.setUrl(oper.getPostUrl());
+			request.setMethod(CatalogRequest.Method.POST);
+		} else {
+			if (oper.getGetUrl() != null) {
+				request.setUrl(oper.getGetUrl());
+				request.setMethod(CatalogRequest.Method.GET);
+			} else if (oper.getPostUrl() != null) {
+				request.setUrl(oper.getPostUrl());
+				request.setMethod(CatalogRequest.Method.POST);
+			} else {
+				throw new OperationAbortedEx("No GET or POST DCP available in this service.");
+			}
+		}
+
+		if(oper.getPreferredOutputSchema() != null) {
+			request.setOutputSchema(oper.getPreferredOutputSchema());
+		}
+
+        if(oper.getPreferredServerVersion() != null) {
+			request.setServerVersion(oper.getPreferredServerVersion());
+		}
+
+		if (params.useAccount) {
+			request.setCredentials(params.username, params.password);
+		}
+		return request;
+	}
+
+	//--------------------------------------------------------------------------
 
-		return false;
+	/**
+	 * @return the get-record-by-id request of the current fetching thread
+	 */
+	private GetRecordByIdRequest getRequest() throws OperationAbortedEx
+	{
+		GetRecordByIdRequest request = requests.get();
+		if (request == null) {
+			request = newRequest();
+			requests.set(request);
+		}
+		return request;
 	}
 
 	//--------------------------------------------------------------------------
 
 	/**
-	 * Does CSW GetRecordById request. If validation is requested and the metadata
-     * does not validate, null is returned.
-     *
-     * @param uuid uuid of metadata to request
-     * @return metadata the metadata
+	 * Why a fetched record is not stored.
 	 */
-	private Element retrieveMetadata(String uuid)
+	private enum Skip { NONE, REMOVED, UNRETRIEVABLE, INVALID, DUPLICATE, UNKNOWN_SCHEMA }
+
+	/**
+	 * Fetches a record and checks it in a fetching thread. The result
+	 * counters are only updated by the aligning thread, in
+	 * {@link Aligner#store(RecordFetch)}.
+	 */
+	private final class RecordFetch implements Callable<RecordFetch>
 	{
-		request.clearIds();
-		request.addId(uuid);
+		final RecordInfo ri;
+		final String id;
+		Element md;
+		String schema;
+		Skip skipped = Skip.NONE;
+		Exception error;
+
+		/**
+		 * @param id local id of the record, null to add it
+		 */
+		RecordFetch(RecordInfo ri, String id)
+		{
+			this.ri = ri;
+			this.id = id;
+		}
 
-		try
+		public RecordFetch call()
 		{
-            if(log.isDebugEnabled())
-                log.debug("Getting record from : "+ request.getHost() +" (uuid:"+ uuid +")");
-			Element response = request.execute();
-            if(log.isDebugEnabled())
-                log.debug("Record got:\n"+Xml.getString(response));
+			context.setAsThreadLocal();
+			try
+			{
+				Element record = retrieveMetadata(ri.uuid);
+				if (record != null)
+					check(record);
+			}
+			catch(Exception e)
+			{
+				error = e;
+			}
+			return this;
+		}
 
-			@SuppressWarnings("unchecked")
-            List<Element> list = response.getChildren();
+		/**
+		 * Does CSW GetRecordById request.
+		 *
+		 * @return the record or null if it can't be retrieved
+		 */
+		private Element retrieveMetadata(String uuid) throws OperationAbortedEx
+		{
+			GetRecordByIdRequest request = getRequest();
+			request.clearIds();
+			request.addId(uuid);
 
-			//--- maybe the metadata has been removed
+			try
+			{
+	            if(log.isDebugEnabled())
+	                log.debug("Getting record from : "+ request.getHost() +" (uuid:"+ uuid +")");
+				Element response = request.execute();
+	            if(log.isDebugEnabled())
+	                log.debug("Record got:\n"+Xml.getString(response));
 
-			if (list.size() == 0)
-				return null;
+				@SuppressWarnings("unchecked")
+	            List<Element> list = response.getChildren();
 
-			response = list.get(0);
-			response = (Element) response.detach();
+				//--- maybe the metadata has been removed
+
+				if (list.size() == 0) {
+					skipped = Skip.REMOVED;
+					return null;
+				}
+
+				response = list.get(0);
+				return (Element) response.detach();
+			}
+			catch(Exception e)
+			{
+				log.warning("Raised exception while getting record : "+ e);
+				e.printStackTrace();
+				skipped = Skip.UNRETRIEVABLE;
+
+				//--- we don't raise any exception here. Just try to go on
+				return null;
+			}
+		}
 
+		/**
+		 * Validates the record if requested, checks the duplicates if
+		 * requested and detects the schema of a record to add.
+		 */
+		void check(Element record)
+		{
             // validate it here if requested
             if (params.validate) {
-                if(!dataMan.validate(response))  {
-                    log.info("Ignoring invalid metadata with uuid " + uuid);
-                    result.doesNotValidate++;
-                    return null;
+                if(!dataMan.validate(record))  {
+                    log.info("Ignoring invalid metadata with uuid " + ri.uuid);
+                    skipped = Skip.INVALID;
+                    return;
                 }
             }
-            
+
             if(params.rejectDuplicateResource) {
-                if (foundDuplicateForResource(uuid, response)) {
-                    return null;
+                if (foundDuplicateForResource(ri.uuid, record)) {
+                    skipped = Skip.DUPLICATE;
+                    return;
                 }
             }
-            
-            return response;
-		}
-		catch(Exception e)
-		{
-			log.warning("Raised exception while getting record : "+ e);
-			e.printStackTrace();
-			result.unretrievable++;
 
-			//--- we don't raise any exception here. Just try to go on
-			return null;
+            if (id == null) {
+                schema = dataMan.autodetectSchema(record, null);
+                if (schema == null) {
+                    skipped = Skip.UNKNOWN_SCHEMA;
+                    return;
+                }
+            }
+            md = record;
 		}
 	}
 
+	//--------------------------------------------------------------------------
+
     /**
      * Check for metadata in the catalog having the same resource identifier as the
      * harvested record.
@@ -407,8 +662,6 @@ public class Aligner extends BaseAligner
                             if (!indexRecordUuid.equals(uuid)) {
                                 log.debug("      - UUID " + indexRecordUuid + " in index does not match harvested record UUID " + uuid);
                                 log.warning("      - Duplicates found. Skipping record with UUID " + uuid + " and resource identifier " + identifier);
-                                
-                                result.duplicatedResource ++;
                                 return true;
                             }
                         }
@@ -428,6 +681,12 @@ public class Aligner extends BaseAligner
 	//---
 	//--------------------------------------------------------------------------
 
+	/**
+	 * Number of fetched records waiting to be stored per fetching thread above
+	 * which no more records are fetched.
+	 */
+	private static final int PENDING_RECORDS_PER_THREAD = 25;
+
 	private Logger         log;
 	private ServiceContext context;
 	private Dbms           dbms;
@@ -437,5 +696,6 @@ public class Aligner extends BaseAligner
 	private GroupMapper    localGroups;
 	private UUIDMapper     localUuids;
 	private HarvestResult  result;
-	private GetRecordByIdRequest request;
+	private CswOperation   oper;
+	private final ThreadLocal<GetRecordByIdRequest> requests = new ThreadLocal<GetRecordByIdRequest>();
 }
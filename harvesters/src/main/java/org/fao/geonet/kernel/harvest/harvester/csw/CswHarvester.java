@@ -163,6 +163,8 @@ public class CswHarvester extends AbstractHarvester<HarvestResult> {
         settingMan.add(dbms, "id:"+siteId, "rejectDuplicateResource", params.rejectDuplicateResource);
         settingMan.add(dbms, "id:"+siteId, "queryScope", params.queryScope);
         settingMan.add(dbms, "id:"+siteId, "hopCount",     params.hopCount);
+        settingMan.add(dbms, "id:"+siteId, "fetchThreads", params.fetchThreads);
+        settingMan.add(dbms, "id:"+siteId, "fullRecordsInSearch", params.fullRecordsInSearch);
 		
 		//--- store dynamic search nodes
 		String  searchID = settingMan.add(dbms, path, "search", "");	
@@ -65,6 +65,8 @@ public class CswParams extends AbstractParams {
         rejectDuplicateResource = Util.getParam(site, "rejectDuplicateResource",  false);
         queryScope = Util.getParam(site, "queryScope", "off");
         hopCount = Util.getParam(site, "hopCount", 2);
+        fetchThreads = Math.max(1, Util.getParam(site, "fetchThreads", DEFAULT_FETCH_THREADS));
+        fullRecordsInSearch = Util.getParam(site, "fullRecordsInSearch", false);
         
         try {
             capabUrl = URLDecoder.decode(capabUrl, Jeeves.ENCODING);
@@ -115,6 +117,8 @@ public class CswParams extends AbstractParams {
         }
         queryScope = Util.getParam(site, "queryScope", queryScope);
         hopCount = Util.getParam(site, "hopCount", hopCount);
+        fetchThreads = Math.max(1, Util.getParam(site, "fetchThreads", fetchThreads));
+        fullRecordsInSearch = Util.getParam(site, "fullRecordsInSearch", fullRecordsInSearch);
 
 		icon     = Util.getParam(site, "icon",            icon);
 
@@ -170,6 +174,8 @@ public class CswParams extends AbstractParams {
 		copy.rejectDuplicateResource = rejectDuplicateResource;
 	 	copy.queryScope = queryScope;
 	 	copy.hopCount = hopCount;
+	 	copy.fetchThreads = fetchThreads;
+	 	copy.fullRecordsInSearch = fullRecordsInSearch;
 
 		for (Search s : alSearches)
 			copy.alSearches.add(s.copy());
@@ -214,6 +220,17 @@ public class CswParams extends AbstractParams {
     public boolean rejectDuplicateResource;
     public String queryScope;
     public Integer hopCount;
+    /**
+     * Maximum number of requests run at the same time on the remote catalog.
+     */
+    public int fetchThreads;
+    /**
+     * True to get the full records in the GetRecords responses instead of one
+     * GetRecordById request per record.
+     */
+    public boolean fullRecordsInSearch;
+
+    private static final int DEFAULT_FETCH_THREADS = 4;
 
 	private List<Search> alSearches = new ArrayList<Search>();	
 	public List<Element> eltSearches = new ArrayList<Element>();
@@ -0,0 +1,182 @@
+//=============================================================================
+//===	Copyright (C) 2001-2007 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package org.fao.geonet.kernel.harvest.harvester.csw;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//=============================================================================
+
+/**
+ * Runs the requests to the remote catalog of a harvester (the network stage) in a
+ * pool of threads while the harvesting thread stores and indexes the records
+ * already fetched (the database stage, which must stay on the thread owning the
+ * Dbms).
+ *
+ * The harvesting thread submits requests while fewer than maxPending results are
+ * waiting to be taken and takes the results in the order they complete, so the
+ * fetching threads never wait for the database stage unless it is that many
+ * records late. A pool is used by the harvesting thread only.
+ */
+final class FetchPool<T>
+{
+	//--------------------------------------------------------------------------
+	//---
+	//--- Constructor
+	//---
+	//--------------------------------------------------------------------------
+
+	/**
+	 * @param name       name of the harvester, used to name the threads
+	 * @param threads    maximum number of requests run at the same time
+	 * @param maxPending maximum number of requests submitted and not taken
+	 */
+	FetchPool(final String name, int threads, int maxPending)
+	{
+		this.maxPending = Math.max(maxPending, threads);
+		executor = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "harvester-fetch-" + name + "-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		completion = new ExecutorCompletionService<T>(executor);
+	}
+
+	//--------------------------------------------------------------------------
+	//---
+	//--- API methods
+	//---
+	//--------------------------------------------------------------------------
+
+	/**
+	 * @return true if no request can be submitted before a result is taken
+	 */
+	boolean isFull()
+	{
+		return pending >= maxPending;
+	}
+
+	//--------------------------------------------------------------------------
+
+	boolean hasPending()
+	{
+		return pending > 0;
+	}
+
+	//--------------------------------------------------------------------------
+
+	void submit(Callable<T> request)
+	{
+		requests.put(completion.submit(request), request);
+		pending++;
+	}
+
+	//--------------------------------------------------------------------------
+
+	/**
+	 * Waits for the next completed request.
+	 *
+	 * @throws FailedRequestException if the request raised an exception or an error, the request is taken anyway
+	 */
+	T take() throws InterruptedException, FailedRequestException
+	{
+		Future<T> result = completion.take();
+		pending--;
+		Callable<T> request = requests.remove(result);
+
+		try
+		{
+			return result.get();
+		}
+		catch (ExecutionException e)
+		{
+			throw new FailedRequestException(request, e.getCause());
+		}
+	}
+
+	//--------------------------------------------------------------------------
+
+	/**
+	 * Stops the threads, the requests not started yet are dropped.
+	 */
+	void shutdown()
+	{
+		executor.shutdownNow();
+	}
+
+	//--------------------------------------------------------------------------
+	//---
+	//--- Variables
+	//---
+	//--------------------------------------------------------------------------
+
+	private final ExecutorService executor;
+	private final CompletionService<T> completion;
+	private final int maxPending;
+	private final Map<Future<T>, Callable<T>> requests = new HashMap<Future<T>, Callable<T>>();
+	private int pending;
+
+	//--------------------------------------------------------------------------
+	//---
+	//--- Exceptions
+	//---
+	//--------------------------------------------------------------------------
+
+	/**
+	 * A request that raised an exception or an error, so that the caller can
+	 * tell which record failed.
+	 */
+	static final class FailedRequestException extends ExecutionException
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final transient Callable<?> request;
+
+		FailedRequestException(Callable<?> request, Throwable cause)
+		{
+			super(cause);
+			this.request = request;
+		}
+
+		Callable<?> getRequest()
+		{
+			return request;
+		}
+	}
+}
+
+//=============================================================================
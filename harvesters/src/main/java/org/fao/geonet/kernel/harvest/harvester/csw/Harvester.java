@@ -25,11 +25,14 @@ package org.fao.geonet.kernel.harvest.harvester.csw;
 
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import jeeves.exceptions.BadParameterEx;
 import jeeves.exceptions.BadXmlResponseEx;
@@ -38,6 +41,7 @@ import jeeves.interfaces.Logger;
 import jeeves.resources.dbms.Dbms;
 import jeeves.server.context.ServiceContext;
 import jeeves.utils.Xml;
+import jeeves.utils.XmlElementReader;
 import jeeves.utils.XmlRequest;
 
 import org.fao.geonet.GeonetContext;
@@ -59,6 +63,7 @@ import org.fao.geonet.kernel.harvest.harvester.IHarvester;
 import org.fao.geonet.kernel.harvest.harvester.RecordInfo;
 import org.fao.geonet.lib.Lib;
 import org.jdom.Element;
+import org.jdom.Namespace;
 
 //=============================================================================
 
@@ -91,6 +96,17 @@ class Harvester implements IHarvester<HarvestResult>
 
 		CswServer server = retrieveCapabilities(log);
 
+		Aligner aligner = new Aligner(log, context, dbms, server, params);
+
+		//--- when the searches get the full records, they are aligned
+		//--- as soon as they are found
+
+		Aligner fullAligner = null;
+		if (params.fullRecordsInSearch) {
+			aligner.begin();
+			fullAligner = aligner;
+		}
+
 		//--- perform all searches
 		
 		Set<RecordInfo> records = new HashSet<RecordInfo>();
@@ -108,7 +124,7 @@ class Harvester implements IHarvester<HarvestResult>
 		}
 			
         try {
-            records.addAll(search(server, s));
+            records.addAll(search(server, s, records, fullAligner));
         } catch (Exception t) {
             log.error("Unknown error trying to harvest");
             log.error(t.getMessage());
@@ -123,7 +139,7 @@ class Harvester implements IHarvester<HarvestResult>
 		if (params.isSearchEmpty()) {
 		    try {
 		        log.debug("Doing an empty search");
-		        records.addAll(search(server, Search.createEmptySearch()));
+		        records.addAll(search(server, Search.createEmptySearch(), records, fullAligner));
             } catch(Exception t) {
                 log.error("Unknown error trying to harvest");
                 log.error(t.getMessage());
@@ -140,7 +156,8 @@ class Harvester implements IHarvester<HarvestResult>
 
 		//--- align local node
 
-		Aligner aligner = new Aligner(log, context, dbms, server, params);
+		if (fullAligner != null)
+			return fullAligner.end(records);
 
 		return aligner.align(records, errors);
 	}
@@ -219,31 +236,25 @@ class Harvester implements IHarvester<HarvestResult>
 	//---------------------------------------------------------------------------
 
 	/**
-	 * Does CSW GetRecordsRequest.
+	 * Does CSW GetRecordsRequest. The pages after the first one are requested
+	 * by {@link CswParams#fetchThreads} threads. The records of a page are
+	 * parsed one at a time from the response (see {@link Page}).
+	 *
+	 * @param harvested the records found by the previous searches
+	 * @param aligner the aligner of the full records found, null if the search
+	 *                only gets the summary of the records
 	 */
-	private Set<RecordInfo> search(CswServer server, Search s) throws Exception
+	private Set<RecordInfo> search(CswServer server, Search s, Set<RecordInfo> harvested, Aligner aligner) throws Exception
 	{
 		int start =  1;
 		
-		GetRecordsRequest request = new GetRecordsRequest(context);
-
-		request.setResultType(ResultType.RESULTS);
-		//request.setOutputSchema(OutputSchema.OGC_CORE);	// Use default value
-		request.setElementSetName(ElementSetName.SUMMARY);
-		request.setMaxRecords(GETRECORDS_NUMBER_OF_RESULTS_PER_PAGE +"");
-        request.setDistribSearch(params.queryScope.equalsIgnoreCase("true"));
-        request.setHopCount(params.hopCount + "");
-
 		CswOperation oper = server.getOperation(CswServer.GET_RECORDS);
 
         // Use the preferred HTTP method and check one exist.
 
-        configRequest(request, oper, server, s, PREFERRED_HTTP_METHOD);
+        String method = PREFERRED_HTTP_METHOD;
+		GetRecordsRequest request = newSearchRequest(server, oper, s, method);
 
-        if (params.useAccount) {
-            log.debug("Logging into server (" + params.username + ")");
-            request.setCredentials(params.username, params.password);
-        }
         // Simple fallback mechanism. Try search with PREFERRED_HTTP_METHOD method, if fails change it
         try {
             log.info("Re-trying the search with another HTTP method.");
@@ -256,72 +267,208 @@ class Harvester implements IHarvester<HarvestResult>
             }
             errors.add(new HarvestError(ex, log));
 
-            configRequest(request, oper, server, s, PREFERRED_HTTP_METHOD.equals("GET")?"POST":"GET");
+            method = PREFERRED_HTTP_METHOD.equals("GET")?"POST":"GET";
+            request = newSearchRequest(server, oper, s, method);
         }
 
 		Set<RecordInfo> records = new HashSet<RecordInfo>();
 
-		while (true)
+		request.setStartPosition(start +"");
+		Page page = doSearch(request, start, GETRECORDS_NUMBER_OF_RESULTS_PER_PAGE);
+		Element results = getSearchResults(page.response);
+		addRecords(page, records, harvested, aligner);
+
+		//--- check to see if we have to perform other searches
+
+		int recCount = getRecordCount(results);
+
+        if(log.isDebugEnabled())
+            log.debug("Records declared in response : "+ recCount);
+
+		start += GETRECORDS_NUMBER_OF_RESULTS_PER_PAGE;
+
+		FetchPool<Page> pool = new FetchPool<Page>(params.name, params.fetchThreads, params.fetchThreads * 2);
+		try
 		{
-			request.setStartPosition(start +"");
-			Element response = doSearch(request, start, GETRECORDS_NUMBER_OF_RESULTS_PER_PAGE);
-            if(log.isDebugEnabled())
-                log.debug("Number of child elements in response: " + response.getChildren().size());
-
-			Element results  = response.getChild("SearchResults", Csw.NAMESPACE_CSW);
-			// heikki: some providers forget to update their CSW namespace to the CSW 2.0.2 specification
-			if(results == null) {
-				// in that case, try to accommodate them anyway:
-				results = response.getChild("SearchResults", Csw.NAMESPACE_CSW_OLD);
-				if (results == null) {
-					throw new OperationAbortedEx("Missing 'SearchResults'", response);
+			while (start <= recCount || pool.hasPending())
+			{
+				while (start <= recCount && !pool.isFull())
+				{
+					pool.submit(new PageSearch(newSearchRequest(server, oper, s, method), start));
+					start += GETRECORDS_NUMBER_OF_RESULTS_PER_PAGE;
+				}
+
+				//--- the pages are processed in the order they are received
+
+				try
+				{
+					page = pool.take();
 				}
-				else {
-					log.warning("Received GetRecords response with incorrect namespace: " + Csw.NAMESPACE_CSW_OLD);
+				catch(ExecutionException e)
+				{
+					if (e.getCause() instanceof Exception)
+						throw (Exception) e.getCause();
+					throw e;
 				}
+				getSearchResults(page.response);
+				addRecords(page, records, harvested, aligner);
 			}
+		}
+		finally
+		{
+			pool.shutdown();
+		}
 
-			@SuppressWarnings("unchecked")
-            List<Element> list = results.getChildren();
-			int counter = 0;
+		log.info("Records added to result list : "+ records.size());
+
+		return records;
+	}
 
-			log.debug("Extracting all elements in the csw harvesting response");
-			for (Element record :list) {
-                try {
-    				RecordInfo recInfo= getRecordInfo((Element)record.clone());
+	//---------------------------------------------------------------------------
 
-    				if (recInfo != null)
-    					records.add(recInfo);
+	/**
+	 * Creates a GetRecords request for the search, without start position.
+	 *
+	 * @param method the preferred HTTP method
+	 */
+	private GetRecordsRequest newSearchRequest(CswServer server, CswOperation oper, Search s, String method) throws Exception
+	{
+		GetRecordsRequest request = new GetRecordsRequest(context);
 
-    				counter++;
+		request.setResultType(ResultType.RESULTS);
+		//request.setOutputSchema(OutputSchema.OGC_CORE);	// Use default value
+		request.setElementSetName(params.fullRecordsInSearch ? ElementSetName.FULL : ElementSetName.SUMMARY);
+		request.setMaxRecords(GETRECORDS_NUMBER_OF_RESULTS_PER_PAGE +"");
+        request.setDistribSearch(params.queryScope.equalsIgnoreCase("true"));
+        request.setHopCount(params.hopCount + "");
 
-                } catch (Exception ex) {
-                    errors.add(new HarvestError(ex, log));
-                    log.error("Unable to process record from csw (" + this.params.name + ")");
-                    log.error("   Record failed: " + counter); 
-                    log.debug("   Record: " +  ((Element)record).getName()); 
-                }
+        configRequest(request, oper, server, s, method);
 
-            }
+        if (params.useAccount) {
+            log.debug("Logging into server (" + params.username + ")");
+            request.setCredentials(params.username, params.password);
+        }
+		return request;
+	}
 
-			//--- check to see if we have to perform other searches
+	//---------------------------------------------------------------------------
 
-			int recCount = getRecordCount(results);
+	/**
+	 * Requests a page of the records found by a search in a fetching thread.
+	 */
+	private final class PageSearch implements Callable<Page>
+	{
+		private final GetRecordsRequest request;
+		private final int start;
 
-            if(log.isDebugEnabled()) {
-                log.debug("Records declared in response : "+ recCount);
-			    log.debug("Records found in response    : "+ counter);
-            }
+		PageSearch(GetRecordsRequest request, int start)
+		{
+			this.request = request;
+			this.start   = start;
+			request.setStartPosition(start +"");
+		}
+
+		public Page call() throws Exception
+		{
+			return doSearch(request, start, GETRECORDS_NUMBER_OF_RESULTS_PER_PAGE);
+		}
+	}
+
+	//---------------------------------------------------------------------------
+
+	/**
+	 * A page of search results. The records are handed to the page one at a time
+	 * while the response is parsed (by the thread running the request) and only
+	 * their RecordInfo is kept, with the record itself if the search gets the
+	 * full records (to be aligned). The response keeps the other elements, e.g.
+	 * the SearchResults element and its attributes.
+	 */
+	private final class Page implements XmlElementReader.Handler
+	{
+		private final boolean keepRecords;
 
-			if (start+GETRECORDS_NUMBER_OF_RESULTS_PER_PAGE > recCount)
-				break;
+		Element response;
+		int count;
+		final List<RecordInfo> infos   = new ArrayList<RecordInfo>();
+		final List<Element>    records = new ArrayList<Element>();
 
-			start += GETRECORDS_NUMBER_OF_RESULTS_PER_PAGE;
+		Page(boolean keepRecords)
+		{
+			this.keepRecords = keepRecords;
 		}
 
-		log.info("Records added to result list : "+ records.size());
+		public void handleElement(Element record)
+		{
+			count++;
 
-		return records;
+			try
+			{
+				RecordInfo recInfo = getRecordInfo(record);
+
+				if (recInfo != null)
+				{
+					infos.add(recInfo);
+
+					if (keepRecords)
+						records.add(record);
+				}
+			}
+			catch (Exception ex)
+			{
+				errors.add(new HarvestError(ex, log));
+				log.error("Unable to process record from csw (" + params.name + ")");
+				log.error("   Record failed: " + count);
+				log.debug("   Record: " + record.getName());
+			}
+		}
+	}
+
+	//---------------------------------------------------------------------------
+
+	private Element getSearchResults(Element response) throws OperationAbortedEx
+	{
+        if(log.isDebugEnabled())
+            log.debug("Number of child elements in response: " + response.getChildren().size());
+
+		Element results  = response.getChild("SearchResults", Csw.NAMESPACE_CSW);
+		// heikki: some providers forget to update their CSW namespace to the CSW 2.0.2 specification
+		if(results == null) {
+			// in that case, try to accommodate them anyway:
+			results = response.getChild("SearchResults", Csw.NAMESPACE_CSW_OLD);
+			if (results == null) {
+				throw new OperationAbortedEx("Missing 'SearchResults'", response);
+			}
+			else {
+				log.warning("Received GetRecords response with incorrect namespace: " + Csw.NAMESPACE_CSW_OLD);
+			}
+		}
+		return results;
+	}
+
+	//---------------------------------------------------------------------------
+
+	/**
+	 * Adds the records of a page of search results. The full records not found
+	 * by the previous searches are aligned.
+	 */
+	private void addRecords(Page page, Set<RecordInfo> records, Set<RecordInfo> harvested, Aligner aligner)
+	{
+		for (int i = 0; i < page.infos.size(); i++) {
+			RecordInfo recInfo = page.infos.get(i);
+
+			try {
+				if (records.add(recInfo) && aligner != null && harvested.add(recInfo))
+					aligner.align(recInfo, page.records.get(i), errors);
+
+			} catch (Exception ex) {
+				errors.add(new HarvestError(ex, log));
+				log.error("Unable to process record from csw (" + this.params.name + ")");
+				log.error("   Record failed: " + recInfo.uuid);
+			}
+		}
+
+        if(log.isDebugEnabled())
+		    log.debug("Records found in response    : "+ page.count);
 	}
 
     //---------------------------------------------------------------------------
@@ -533,18 +680,19 @@ class Harvester implements IHarvester<HarvestResult>
 	}
 	//---------------------------------------------------------------------------
 
-	private Element doSearch(CatalogRequest request, int start, int max) throws Exception
+	private Page doSearch(CatalogRequest request, int start, int max) throws Exception
 	{
 		try
 		{
 			log.info("Searching on : "+ params.name +" ("+ start +".."+ (start + max) +")");
-			Element response = request.execute();
+			Page page = new Page(params.fullRecordsInSearch);
+			page.response = request.execute(SEARCH_RESULTS_RECORDS, Collections.<Namespace>emptyList(), page);
             if(log.isDebugEnabled()) {
                 log.debug("Sent request "+request.getSentData());
-                log.debug("Search results:\n"+Xml.getString(response));
+                log.debug("Search results (without the records):\n"+Xml.getString(page.response));
             }
 
-			return response;
+			return page;
 		}
 		catch(Exception e)
 		{
@@ -622,6 +770,8 @@ class Harvester implements IHarvester<HarvestResult>
 	// FIXME : Currently switch from POST to GET for testing mainly.
 	public static final String PREFERRED_HTTP_METHOD = CatalogRequest.Method.GET.toString();
 	private static int GETRECORDS_NUMBER_OF_RESULTS_PER_PAGE = 20;
+	// the records of the SearchResults element, in the CSW 2.0.2 or older namespace
+	private static final String SEARCH_RESULTS_RECORDS = "*:SearchResults/*";
 	private static String CONSTRAINT_LANGUAGE_VERSION = "1.1.0";
 	
 	//FIXME version should be parametrized
@@ -634,7 +784,7 @@ class Harvester implements IHarvester<HarvestResult>
 	/**
 	 * Contains a list of accumulated errors during the executing of this harvest.
 	 */
-	private List<HarvestError> errors = new LinkedList<HarvestError>();
+	private List<HarvestError> errors = Collections.synchronizedList(new LinkedList<HarvestError>());
 }
 
 //=============================================================================
@@ -38,10 +38,12 @@ import org.fao.geonet.kernel.harvest.harvester.GroupMapper;
 import org.fao.geonet.kernel.harvest.harvester.HarvestError;
 import org.fao.geonet.kernel.harvest.harvester.HarvestResult;
 import org.fao.geonet.kernel.harvest.harvester.RecordInfo;
+import org.fao.geonet.kernel.harvest.harvester.Reconciliation;
 import org.fao.geonet.kernel.harvest.harvester.UUIDMapper;
 import org.jdom.Element;
 
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
@@ -89,30 +91,45 @@ public class Aligner extends BaseAligner
 		localUuids = new UUIDMapper(dbms, params.uuid);
 		dbms.commit();
 
+		Reconciliation<RecordInfo> reconciliation = Reconciliation.reconcile(localUuids, records);
+
 		//-----------------------------------------------------------------------
 		//--- remove old metadata
 
-		for (String uuid : localUuids.getUUIDs()) {
-			if (!exists(records, uuid)) {
-				String id = localUuids.getID(uuid);
+		List<String> removedIds = reconciliation.getRemovedIds();
+
+		if (!removedIds.isEmpty()) {
+			if(log.isDebugEnabled())
+				log.debug("  - Removing old metadata with local ids:"+ removedIds);
+			dataMan.deleteBatchMetadata(context, dbms, removedIds);
+			dbms.commit();
+			result.locallyRemoved += removedIds.size();
+		}
 
-				if(log.isDebugEnabled())
-					log.debug("  - Removing old metadata with local id:"+ id);
-				dataMan.deleteMetadata(context, dbms, id);
-				dbms.commit();
-				result.locallyRemoved++;
+		for (RecordInfo ri : reconciliation.getUnchanged()) {
+			if (log.isDebugEnabled()) {
+				log.debug("  - Metadata XML not changed for uuid:"+ ri.uuid);
 			}
+			result.unchangedMetadata++;
+			result.totalMetadata++;
 		}
 
 		//-----------------------------------------------------------------------
 		//--- insert/update new metadata
 
-		for (RecordInfo ri : records) {
+		List<RecordInfo> changed = new ArrayList<RecordInfo>(reconciliation.getAdded());
+		changed.addAll(reconciliation.getUpdated());
+
+		for (RecordInfo ri : changed) {
 		    try {
-    			String id = dataMan.getMetadataId(dbms, ri.uuid);
+    			String id = reconciliation.getLocalId(ri);
     
-    			if (id == null)	addMetadata(ri);
-    			else				updateMetadata(ri, id);
+    			if (id != null)
+    				updateMetadata(ri, id);
+    			else if (dataMan.getMetadataId(dbms, ri.uuid) == null)
+    				addMetadata(ri);
+    			else if (log.isDebugEnabled())
+    				log.debug("  - Skipped metadata managed by another harvesting node. uuid:"+ ri.uuid +", name:"+ params.name);
                 result.totalMetadata++;
                 
 		    }catch (Throwable t) {
@@ -180,49 +197,31 @@ public class Aligner extends BaseAligner
 
 	private void updateMetadata(RecordInfo ri, String id) throws Exception
 	{
-		String date = localUuids.getChangeDate(ri.uuid);
-
-		if (date == null) {
-			if (log.isDebugEnabled()) {
-				log.debug("  - Skipped metadata managed by another harvesting node. uuid:"+ ri.uuid +", name:"+ params.name);
-			}
-		} else {
-			if (log.isDebugEnabled()) {
-				log.debug("  - Comparing date "+date+" with harvested date "+ri.changeDate+" Comparison: "+ri.isMoreRecentThan(date));
-			}
-			if (!ri.isMoreRecentThan(date)) {
- 				if (log.isDebugEnabled()) {
-					log.debug("  - Metadata XML not changed for uuid:"+ ri.uuid);
-				}
-				result.unchangedMetadata++;
-			} else {
-				if (log.isDebugEnabled()) {
-					log.debug("  - Updating local metadata for uuid:"+ ri.uuid);
-				}
-				Element md = retrieveMetadata(ri.uuid);
-
-				if (md == null) return;
-				
-				//
-				// update metadata
-				//
-				boolean validate = false;
-				boolean ufo = false;
-				boolean index = false;
-				String language = context.getLanguage();
-				dataMan.updateMetadata(context, dbms, id, md, validate, ufo, index, language, ri.changeDate, false);
-
-				dbms.execute("DELETE FROM OperationAllowed WHERE metadataId=?", Integer.parseInt(id));
-                addPrivileges(id, params.getPrivileges(), localGroups, dataMan, context, dbms, log);
-
-				dbms.execute("DELETE FROM MetadataCateg WHERE metadataId=?", Integer.parseInt(id));
-                addCategories(id, params.getCategories(), localCateg, dataMan, dbms, context, log, null);
-
-				dbms.commit();
-				dataMan.indexMetadata(dbms, id);
-				result.updatedMetadata++;
-			}
+		if (log.isDebugEnabled()) {
+			log.debug("  - Updating local metadata for uuid:"+ ri.uuid);
 		}
+		Element md = retrieveMetadata(ri.uuid);
+
+		if (md == null) return;
+
+		//
+		// update metadata
+		//
+		boolean validate = false;
+		boolean ufo = false;
+		boolean index = false;
+		String language = context.getLanguage();
+		dataMan.updateMetadata(context, dbms, id, md, validate, ufo, index, language, ri.changeDate, false);
+
+		dbms.execute("DELETE FROM OperationAllowed WHERE metadataId=?", Integer.parseInt(id));
+        addPrivileges(id, params.getPrivileges(), localGroups, dataMan, context, dbms, log);
+
+		dbms.execute("DELETE FROM MetadataCateg WHERE metadataId=?", Integer.parseInt(id));
+        addCategories(id, params.getCategories(), localCateg, dataMan, dbms, context, log, null);
+
+		dbms.commit();
+		dataMan.indexMetadata(dbms, id);
+		result.updatedMetadata++;
 	}
 
 	//--------------------------------------------------------------------------
@@ -231,24 +230,6 @@ public class Aligner extends BaseAligner
 	//---
 	//--------------------------------------------------------------------------
 
-    /**
-     *  Returns true if the uuid is present in the remote node.
-     * 
-     * @param records
-     * @param uuid
-     * @return
-     */
-	private boolean exists(Set<RecordInfo> records, String uuid)
-	{
-		for(RecordInfo ri : records) {
-			if (uuid.equals(ri.uuid)) return true;
-		}
-
-		return false;
-	}
-
-	//--------------------------------------------------------------------------
-
 	/**
 	 * Does REST document request. If validation is requested and the metadata
    * does not validate, null is returned. If transformation is requested then
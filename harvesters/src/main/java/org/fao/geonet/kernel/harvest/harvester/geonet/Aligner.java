@@ -41,6 +41,7 @@ import org.fao.geonet.kernel.harvest.harvester.GroupMapper;
 import org.fao.geonet.kernel.harvest.harvester.HarvestError;
 import org.fao.geonet.kernel.harvest.harvester.HarvestResult;
 import org.fao.geonet.kernel.harvest.harvester.RecordInfo;
+import org.fao.geonet.kernel.harvest.harvester.Reconciliation;
 import org.fao.geonet.kernel.harvest.harvester.UUIDMapper;
 import org.fao.geonet.kernel.mef.IMEFVisitor;
 import org.fao.geonet.kernel.mef.Importer;
@@ -134,22 +135,25 @@ public class Aligner extends BaseAligner
 
 		parseXSLFilter();
 		
+		Reconciliation<RecordInfo> reconciliation = Reconciliation.reconcile(localUuids, records);
+
 		//-----------------------------------------------------------------------
 		//--- remove old metadata
 
-		for (String uuid : localUuids.getUUIDs())
-			if (!exists(records, uuid))
-			{
-				String id = localUuids.getID(uuid);
+		List<String> removedIds = reconciliation.getRemovedIds();
 
-                if(log.isDebugEnabled()) log.debug("  - Removing old metadata with id:"+ id);
-				dataMan.deleteMetadata(context, dbms, id);
-				dbms.commit();
-				result.locallyRemoved++;
-			}
+		if (!removedIds.isEmpty())
+		{
+            if(log.isDebugEnabled()) log.debug("  - Removing old metadata with ids:"+ removedIds);
+			dataMan.deleteBatchMetadata(context, dbms, removedIds);
+			dbms.commit();
+			result.locallyRemoved += removedIds.size();
+		}
 
 		//-----------------------------------------------------------------------
 		//--- insert/update new metadata
+		//--- the unchanged metadata are also updated: their privileges,
+		//--- categories and files come with the MEF file
 
 		for(RecordInfo ri : records)
 		{
@@ -164,7 +168,10 @@ public class Aligner extends BaseAligner
 			}
 			else
 			{
-				String id = dataMan.getMetadataId(dbms, ri.uuid);
+				String id = reconciliation.getLocalId(ri);
+
+				if (id == null)
+					id = dataMan.getMetadataId(dbms, ri.uuid);
 
 				// look up value of localrating/enable
 				GeonetContext  gc = (GeonetContext) context.getHandlerContext(Geonet.CONTEXT_NAME);
@@ -763,19 +770,6 @@ public class Aligner extends BaseAligner
 	//---
 	//--------------------------------------------------------------------------
 
-	/** Return true if the uuid is present in the remote node */
-
-	private boolean exists(Set<RecordInfo> records, String uuid)
-	{
-		for(RecordInfo ri : records)
-			if (uuid.equals(ri.uuid))
-				return true;
-
-		return false;
-	}
-
-	//--------------------------------------------------------------------------
-
 	private File retrieveMEF(String uuid) throws IOException
 	{
 		request.clearParams();
@@ -32,6 +32,7 @@ import org.fao.geonet.constants.Geonet;
 import org.fao.geonet.kernel.DataManager;
 import org.fao.geonet.kernel.harvest.harvester.CategoryMapper;
 import org.fao.geonet.kernel.harvest.harvester.HarvestResult;
+import org.fao.geonet.kernel.harvest.harvester.Reconciliation;
 import org.fao.geonet.kernel.harvest.harvester.UUIDMapper;
 import org.fao.geonet.util.ISODate;
 import org.jdom.Element;
@@ -81,19 +82,31 @@ public class Aligner
 
 		localUuids = new UUIDMapper(dbms, siteId);
 
+		Reconciliation<Element> reconciliation = new Reconciliation<Element>(localUuids)
+		{
+			protected String getUuid(Element md)
+			{
+				return md.getChild("info", Edit.NAMESPACE).getChildText("uuid");
+			}
+
+			protected boolean isMoreRecentThan(Element md, String localChangeDate)
+			{
+				return updateCondition(localChangeDate, md.getChild("info", Edit.NAMESPACE).getChildText("changeDate"));
+			}
+		}.reconcile(mdList);
+
 		//-----------------------------------------------------------------------
 		//--- remove old metadata
 
-		for (String uuid : localUuids.getUUIDs())
-			if (!exists(mdList, uuid))
-			{
-				String id = localUuids.getID(uuid);
+		List<String> removedIds = reconciliation.getRemovedIds();
 
-                if(log.isDebugEnabled()) log.debug("  - Removing old metadata with id="+ id);
-				dataMan.deleteMetadata(context, dbms, id);
-				dbms.commit();
-				this.result.locallyRemoved++;
-			}
+		if (!removedIds.isEmpty())
+		{
+            if(log.isDebugEnabled()) log.debug("  - Removing old metadata with ids="+ removedIds);
+			dataMan.deleteBatchMetadata(context, dbms, removedIds);
+			dbms.commit();
+			this.result.locallyRemoved += removedIds.size();
+		}
 
 		//-----------------------------------------------------------------------
 		//--- insert/update new metadata
@@ -115,7 +128,11 @@ public class Aligner
                 this.result.schemaSkipped++;
             }
             else {
-                String id = dataMan.getMetadataId(dbms, remoteUuid);
+                String id = reconciliation.getLocalId(aMdList);
+
+                if (id == null) {
+                    id = dataMan.getMetadataId(dbms, remoteUuid);
+                }
 
                 if (id == null) {
                     id = addMetadata(info);
@@ -382,23 +399,6 @@ public class Aligner
 	}
 
 	//--------------------------------------------------------------------------
-	/** Return true if the sourceId is present in the remote site */
-
-	private boolean exists(List<Element> mdList, String uuid)
-	{
-        for (Element aMdList : mdList) {
-            Element elInfo = aMdList.getChild("info", Edit.NAMESPACE);
-
-            if (uuid.equals(elInfo.getChildText("uuid"))) {
-                return true;
-            }
-        }
-
-		return false;
-	}
-
-	//--------------------------------------------------------------------------
-
 	private boolean updateCondition(String localDate, String remoteDate)
 	{
 		ISODate local = new ISODate(localDate);
@@ -27,7 +27,9 @@ import java.sql.SQLException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 import jeeves.exceptions.BadInputEx;
@@ -126,7 +128,7 @@ public class LocalFilesystemHarvester extends AbstractHarvester<HarvestResult> {
 		CategoryMapper localCateg = new CategoryMapper(dbms);
 		GroupMapper localGroups = new GroupMapper(dbms);
 		dbms.commit();		
-		List<String> idsForHarvestingResult = new ArrayList<String>();
+		Set<String> idsForHarvestingResult = new HashSet<String>();
 		//-----------------------------------------------------------------------
 		//--- insert/update new metadata
 
@@ -230,14 +232,16 @@ public class LocalFilesystemHarvester extends AbstractHarvester<HarvestResult> {
 			// not in this harvesting result
 			//
 			List<Element> existingMetadata = dataMan.getMetadataByHarvestingSource(dbms, params.uuid);
+			List<String> removedIds = new ArrayList<String>();
 			for(Element existingId : existingMetadata) {
 				String ex$ = existingId.getChildText("id");
 				if(!idsForHarvestingResult.contains(ex$)) {
 				    log.debug("  Removing: " + ex$);
-					dataMan.deleteMetadata(context, dbms, ex$);
-					result.locallyRemoved++;
+					removedIds.add(ex$);
 				}
 			}			
+			dataMan.deleteBatchMetadata(context, dbms, removedIds);
+			result.locallyRemoved += removedIds.size();
 		}
 		log.debug("End of alignment for : "+ params.name);
 		return result;
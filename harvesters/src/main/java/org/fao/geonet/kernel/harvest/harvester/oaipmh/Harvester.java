@@ -23,7 +23,6 @@
 
 package org.fao.geonet.kernel.harvest.harvester.oaipmh;
 
-import jeeves.exceptions.OperationAbortedEx;
 import jeeves.interfaces.Logger;
 import jeeves.resources.dbms.Dbms;
 import jeeves.server.context.ServiceContext;
@@ -49,7 +48,6 @@ import org.fao.oaipmh.requests.ListIdentifiersRequest;
 import org.fao.oaipmh.requests.Transport;
 import org.fao.oaipmh.responses.GetRecordResponse;
 import org.fao.oaipmh.responses.Header;
-import org.fao.oaipmh.responses.ListIdentifiersResponse;
 import org.fao.oaipmh.util.ISODate;
 import org.jdom.Element;
 import org.jdom.JDOMException;
@@ -57,9 +55,13 @@ import org.jdom.JDOMException;
 import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 //=============================================================================
@@ -92,16 +94,19 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 	//---
 	//---------------------------------------------------------------------------
 
-	public HarvestResult harvest(Logger log) throws Exception 
+	/**
+	 * Lists the searches in a pool of {@link OaiPmhParams#searchThreads} threads
+	 * and aligns each header as soon as it is listed. When the harvester is
+	 * incremental, a search only lists the records changed since its checkpoint
+	 * and the deleted records it lists are removed. Otherwise, the harvested
+	 * metadata not listed by any search are removed at the end.
+	 */
+	public HarvestResult harvest(Logger log) throws Exception
 	{
 	    this.log = log;
-	    
-		ListIdentifiersRequest req = new ListIdentifiersRequest();
-		req.setSchemaPath(new File(context.getAppPath() + Geonet.SchemaPath.OAI_PMH));
 
-		Transport t = req.getTransport();
 		try {
-			t.setUrl(new URL(params.url));
+			url = new URL(params.url);
         } catch (MalformedURLException e1) {
             HarvestError harvestError = new HarvestError(e1, log);
             harvestError.setDescription(harvestError.getDescription() + " " + params.url);
@@ -109,71 +114,129 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
             throw new AbortExecutionException(e1);
         }
 
-		if (params.useAccount)
-			t.setCredentials(params.username, params.password);
+		List<Search> searches = new ArrayList<Search>();
 
-		//--- set the proxy info if necessary
-		Lib.net.setupProxy(context, t);
+		if (params.isSearchEmpty())
+		{
+			log.debug("Doing an empty search");
+			searches.add(params.getEmptySearch());
+		}
+		else
+		{
+			for (Search s : params.getSearches())
+				searches.add(s);
+		}
+
+		//-----------------------------------------------------------------------
+		//--- retrieve all local categories and groups
+		//--- retrieve harvested uuids for given harvesting node
+
+		localCateg = new CategoryMapper(dbms);
+		localGroups= new GroupMapper(dbms);
+		localUuids = new UUIDMapper(dbms, params.uuid);
+		dbms.commit();
+
+		log.info("Start of alignment for : "+ params.name);
 
 		//--- perform all searches
 
-		Set<RecordInfo> records = new HashSet<RecordInfo>();
-
-        for (Search s : params.getSearches()) {
-            try {
-                records.addAll(search(req, s));
-            } catch (Exception e) {
-                log.error("Unknown error trying to harvest");
-                log.error(e.getMessage());
-                e.printStackTrace();
-                errors.add(new HarvestError(e, log));
-            } catch (Throwable e) {
-                log.fatal("Something unknown and terrible happened while harvesting");
-                log.fatal(e.getMessage());
-                e.printStackTrace();
-                errors.add(new HarvestError(e, log));
-            }
-        }
+		Transport t = newTransport();
+		Listing listing = new Listing(params.name, Math.min(params.searchThreads, searches.size()),
+												params.searchThreads * QUEUED_HEADERS_PER_THREAD);
+		try
+		{
+			for (Search s : searches)
+			{
+				ListIdentifiersRequest req = newRequest(s);
 
-        if (params.isSearchEmpty()) {
-            try {
-                log.debug("Doing an empty search");
-                records.addAll(search(req, Search.createEmptySearch()));
-            } catch(Exception e) {
-                log.error("Unknown error trying to harvest");
-                log.error(e.getMessage());
-                e.printStackTrace();
-                errors.add(new HarvestError(e, log));
-            } catch(Throwable e) {
-                log.fatal("Something unknown and terrible happened while harvesting");
-                log.fatal(e.getMessage());
-                e.printStackTrace();
-                errors.add(new HarvestError(e, log));
-            }
-        }
+				if (req != null)
+				{
+					states.put(s, new SearchState(params.incremental && s.checkpoint.length() != 0));
+					listing.start(s, req);
+				}
+			}
+
+			while (listing.isRunning())
+			{
+				Listing.Item item = listing.take();
+				SearchState state = states.get(item.search);
+
+				if (item.header != null)
+					align(t, item.search, state, item.header);
+				else
+					endSearch(item.search, state, item.error);
+			}
+		}
+		finally
+		{
+			listing.shutdown();
+		}
+
+		log.info("Total records processed in all searches :"+ seenIds.size());
 
-		log.info("Total records processed in all searches :"+ records.size());
+		//--- remove old metadata
+
+		if (!params.incremental)
+			removeNotListed();
 
-		//--- align local node
+		removeMetadata();
 
-		if (records.size() != 0)
-			align(t, records);
+		log.info("End of alignment for : "+ params.name);
 
 		return result;
 	}
 
+	//---------------------------------------------------------------------------
+	/** The new checkpoint of the searches completed during the last harvest,
+	  * to be saved once the harvested metadata are committed
+	  */
+
+	public Map<Search, String> getCheckpoints() { return checkpoints; }
+
 	//---------------------------------------------------------------------------
 	//---
 	//--- Private methods
 	//---
 	//---------------------------------------------------------------------------
 
-	private Set<RecordInfo> search(ListIdentifiersRequest req, Search s) throws OperationAbortedEx
+	private Transport newTransport()
+	{
+		Transport t = new Transport();
+		t.setUrl(url);
+
+		if (params.useAccount)
+			t.setCredentials(params.username, params.password);
+
+		//--- set the proxy info if necessary
+		Lib.net.setupProxy(context, t);
+
+		return t;
+	}
+
+	//---------------------------------------------------------------------------
+	/** Each search needs its own request (and transport) because the searches
+	  * are listed at the same time. Returns null if there is nothing to list.
+	  */
+
+	private ListIdentifiersRequest newRequest(Search s)
 	{
+		ListIdentifiersRequest req = new ListIdentifiersRequest();
+		req.setSchemaPath(new File(context.getAppPath() + Geonet.SchemaPath.OAI_PMH));
+		req.setTransport(newTransport());
+
 		//--- setup search parameters
 
-		if (s.from.length() != 0)	req.setFrom(new ISODate(s.from));
-			else							req.setFrom(null);
+		ISODate from = (s.from.length() != 0) ? new ISODate(s.from) : null;
+
+		if (params.incremental && s.checkpoint.length() != 0)
+		{
+			ISODate checkpoint = new ISODate(s.checkpoint);
+
+			if (from == null || checkpoint.sub(from) > 0)
+				from = checkpoint;
+		}
+
+		req.setFrom(from);
 
 		if (s.until.length() != 0)	req.setUntil(new ISODate(s.until));
 			else 							req.setUntil(null);
@@ -183,99 +246,138 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 
 		req.setMetadataPrefix(s.prefix);
 
-		//--- execute request and loop on response
-
-		Set<RecordInfo> records = new HashSet<RecordInfo>();
-
-		log.info("Searching on : "+ params.name);
-
-		try
+		if (from != null && req.getUntil() != null && from.sub(req.getUntil()) > 0)
 		{
-			ListIdentifiersResponse response = req.execute();
+			log.info("Nothing to harvest after the checkpoint "+ s.checkpoint +" for set : "+ s.set);
+			return null;
+		}
 
-			while (response.hasNext())
-			{
-				Header h = response.next();
+		log.info("Searching on : "+ params.name +(s.set.length() != 0 ? " set "+ s.set : "")
+					+(from != null ? " from "+ from : ""));
 
-				if (!h.isDeleted())
-					records.add(new RecordInfo(h, s.prefix));
-			}
+		return req;
+	}
 
-			log.info("Records added to result list : "+ records.size());
+	//---------------------------------------------------------------------------
 
-			return records;
-		}
-		catch(NoRecordsMatchException e)
+	private void endSearch(Search s, SearchState state, Throwable e)
+	{
+		if (e instanceof NoRecordsMatchException)
 		{
-			log.warning("No records were matched: " + e.getMessage());
-			this.errors.add(new HarvestError(e, log));
-			return records;
+			if (state.fromCheckpoint)
+				log.info("No records changed since the checkpoint "+ s.checkpoint +" for set : "+ s.set);
+			else
+			{
+				log.warning("No records were matched: " + e.getMessage());
+				errors.add(new HarvestError(e, log));
+			}
 		}
-
-		catch(Exception e)
+		else if (e instanceof Exception)
 		{
 			log.warning("Raised exception when searching : "+ e);
 			log.warning(Util.getStackTrace(e));
-            this.errors.add(new HarvestError(e, log));
-			throw new OperationAbortedEx("Raised exception when searching", e);
+			errors.add(new HarvestError(e, log));
+			searchFailed = true;
+			return;
+		}
+		else if (e != null)
+		{
+			log.fatal("Something unknown and terrible happened while harvesting");
+			log.fatal(e.getMessage());
+			errors.add(new HarvestError(e, log));
+			searchFailed = true;
+			return;
 		}
+
+		log.info("Records listed by the search : "+ state.count);
+
+		String checkpoint = state.getCheckpoint();
+
+		if (checkpoint != null)
+			checkpoints.put(s, checkpoint);
 	}
 
 	//---------------------------------------------------------------------------
 
-	private void align(Transport t, Set<RecordInfo> records) throws Exception
+	private void align(Transport t, Search s, SearchState state, Header h) throws Exception
 	{
-		log.info("Start of alignment for : "+ params.name);
+		String id = h.getIdentifier();
 
-		//-----------------------------------------------------------------------
-		//--- retrieve all local categories and groups
-		//--- retrieve harvested uuids for given harvesting node
+		state.count++;
+		state.listed(h.getDateStamp());
 
-		localCateg = new CategoryMapper(dbms);
-		localGroups= new GroupMapper(dbms);
-		localUuids = new UUIDMapper(dbms, params.uuid);
-		dbms.commit();
+		if (h.isDeleted())
+		{
+			//--- without incremental harvest, a metadata is removed when no
+			//--- search lists it
 
-		//-----------------------------------------------------------------------
-		//--- remove old metadata
+			String localId = localUuids.getID(id);
 
-		for (String uuid : localUuids.getUUIDs())
-			if (!exists(records, uuid))
-			{
-				String id = localUuids.getID(uuid);
+			if (params.incremental && localId != null && !seenIds.contains(id))
+				removedIds.put(id, localId);
 
-                if(log.isDebugEnabled()) log.debug("  - Removing old metadata with local id:"+ id);
-				dataMan.deleteMetadataGroup(context, dbms, id);
-				dbms.commit();
-				result.locallyRemoved++;
-			}
+			return;
+		}
 
-		//-----------------------------------------------------------------------
-		//--- insert/update new metadata
+		//--- a record can be in the sets of several searches
 
-		for(RecordInfo ri : records)
-		{
-			result.totalMetadata++;
+		if (!seenIds.add(id))
+			return;
 
-			String id = localUuids.getID(ri.id);
+		removedIds.remove(id);
 
-			if (id == null)	addMetadata(t, ri);
-			else				updateMetadata(t, ri, id);
+		RecordInfo ri = new RecordInfo(h, s.prefix);
+		String localId = localUuids.getID(id);
+		int unretrievable = result.unretrievable;
+
+		result.totalMetadata++;
+
+		if (localId == null)
+			addMetadata(t, ri);
+
+		else if (ri.isMoreRecentThan(localUuids.getChangeDate(id)))
+			updateMetadata(t, ri, localId);
+
+		else
+		{
+            if(log.isDebugEnabled()) log.debug("  - Metadata XML not changed for remote id : "+ ri.id);
+			result.unchangedMetadata++;
 		}
 
-		log.info("End of alignment for : "+ params.name);
+		//--- the checkpoint must not pass a record that could not be retrieved,
+		//--- so that the next harvest tries it again
+
+		if (result.unretrievable != unretrievable)
+			state.failed(h.getDateStamp());
 	}
 
-	//--------------------------------------------------------------------------
-	/** Return true if the uuid is present in the remote records */
+	//---------------------------------------------------------------------------
+
+	private void removeNotListed()
+	{
+		//--- when a search failed, its records may still exist on the remote node
+
+		if (searchFailed || seenIds.isEmpty())
+			return;
 
-	private boolean exists(Set<RecordInfo> records, String uuid)
+		for (String uuid : localUuids.getUUIDs())
+			if (!seenIds.contains(uuid))
+				removedIds.put(uuid, localUuids.getID(uuid));
+	}
+
+	//---------------------------------------------------------------------------
+
+	private void removeMetadata() throws Exception
 	{
-		for(RecordInfo ri : records)
-			if (uuid.equals(ri.id))
-				return true;
+		if (removedIds.isEmpty())
+			return;
 
-		return false;
+		List<String> ids = new ArrayList<String>(removedIds.values());
+
+        if(log.isDebugEnabled()) log.debug("  - Removing old metadata with local ids:"+ ids);
+		dataMan.deleteBatchMetadataGroup(context, dbms, ids);
+		dbms.commit();
+		result.locallyRemoved += ids.size();
 	}
 
 	//--------------------------------------------------------------------------
@@ -438,44 +540,34 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 
 	private void updateMetadata(Transport t, RecordInfo ri, String id) throws Exception
 	{
-		String date = localUuids.getChangeDate(ri.id);
+        if(log.isDebugEnabled()) log.debug("  - Updating local metadata for remote id : "+ ri.id);
 
-		if (!ri.isMoreRecentThan(date))
-		{
-            if(log.isDebugEnabled()) log.debug("  - Metadata XML not changed for remote id : "+ ri.id);
-			result.unchangedMetadata++;
-		}
-		else
-		{
-            if(log.isDebugEnabled()) log.debug("  - Updating local metadata for remote id : "+ ri.id);
-
-			Element md = retrieveMetadata(t, ri);
+		Element md = retrieveMetadata(t, ri);
 
-			if (md == null)
-				return;
+		if (md == null)
+			return;
 
-            //
-            // update metadata
-            //
-            boolean validate = false;
-            boolean ufo = false;
-            boolean index = false;
-            String language = context.getLanguage();
-            dataMan.updateMetadata(context, dbms, id, md, validate, ufo, index, language, ri.changeDate.toString(), false);
+        //
+        // update metadata
+        //
+        boolean validate = false;
+        boolean ufo = false;
+        boolean index = false;
+        String language = context.getLanguage();
+        dataMan.updateMetadata(context, dbms, id, md, validate, ufo, index, language, ri.changeDate.toString(), false);
 
-			//--- the administrator could change privileges and categories using the
-			//--- web interface so we have to re-set both
+		//--- the administrator could change privileges and categories using the
+		//--- web interface so we have to re-set both
 
-			dbms.execute("DELETE FROM OperationAllowed WHERE metadataId=?", Integer.parseInt(id));
-            addPrivileges(id, params.getPrivileges(), localGroups, dataMan, context, dbms, log);
+		dbms.execute("DELETE FROM OperationAllowed WHERE metadataId=?", Integer.parseInt(id));
+        addPrivileges(id, params.getPrivileges(), localGroups, dataMan, context, dbms, log);
 
-			dbms.execute("DELETE FROM MetadataCateg WHERE metadataId=?", Integer.parseInt(id));
-            addCategories(id, params.getCategories(), localCateg, dataMan, dbms, context, log, null);
+		dbms.execute("DELETE FROM MetadataCateg WHERE metadataId=?", Integer.parseInt(id));
+        addCategories(id, params.getCategories(), localCateg, dataMan, dbms, context, log, null);
 
-			dbms.commit();
-			dataMan.indexMetadata(dbms, id);
-			result.updatedMetadata++;
-		}
+		dbms.commit();
+		dataMan.indexMetadata(dbms, id);
+		result.updatedMetadata++;
 	}
 
 
@@ -483,6 +575,60 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
         return errors;
     }
 
+	//---------------------------------------------------------------------------
+	//---
+	//--- SearchState
+	//---
+	//---------------------------------------------------------------------------
+
+	/** Datestamps of the records listed by a search, used to compute its new
+	  * checkpoint: the most recent datestamp listed, or the oldest datestamp
+	  * of a record that could not be retrieved if there is one.
+	  */
+
+	private static final class SearchState
+	{
+		SearchState(boolean fromCheckpoint)
+		{
+			this.fromCheckpoint = fromCheckpoint;
+		}
+
+		void listed(ISODate date)
+		{
+			if (latest == null || date.sub(latest) > 0)
+				latest = date;
+		}
+
+		void failed(ISODate date)
+		{
+			if (oldestFailed == null || date.sub(oldestFailed) < 0)
+				oldestFailed = date;
+		}
+
+		/** Returns the checkpoint in the granularity of the remote node, null
+		  * if no record was listed
+		  */
+
+		String getCheckpoint()
+		{
+			ISODate date = latest;
+
+			if (date == null)
+				return null;
+
+			if (oldestFailed != null && oldestFailed.sub(date) < 0)
+				date = oldestFailed;
+
+			return date.isShort ? date.getDate() : date.toString() +"Z";
+		}
+
+		final boolean fromCheckpoint;
+
+		int     count;
+		ISODate latest;
+		ISODate oldestFailed;
+	}
+
 	//---------------------------------------------------------------------------
 	//---
 	//--- Variables
@@ -497,6 +643,17 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 	private CategoryMapper localCateg;
 	private GroupMapper    localGroups;
 	private UUIDMapper     localUuids;
+	private URL            url;
+	private boolean        searchFailed;
+
+	private final Map<Search, SearchState> states      = new HashMap<Search, SearchState>();
+	private final Map<Search, String>      checkpoints = new LinkedHashMap<Search, String>();
+	private final Set<String>              seenIds     = new HashSet<String>();
+
+	/** Local ids of the metadata to remove, by remote id */
+	private final Map<String, String>      removedIds  = new LinkedHashMap<String, String>();
+
+	private static final int QUEUED_HEADERS_PER_THREAD = 1000;
     /**
      * Contains a list of accumulated errors during the executing of this harvest.
      */
@@ -0,0 +1,202 @@
+//=============================================================================
+//===	Copyright (C) 2001-2007 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package org.fao.geonet.kernel.harvest.harvester.oaipmh;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.fao.oaipmh.requests.ListIdentifiersRequest;
+import org.fao.oaipmh.responses.Header;
+import org.fao.oaipmh.responses.ListIdentifiersResponse;
+
+//=============================================================================
+
+/**
+ * Lists the headers of the searches of an OAI-PMH harvester in a pool of
+ * threads (one ListIdentifiers request and its resumption tokens per search)
+ * while the harvesting thread aligns the headers already listed.
+ *
+ * The headers are handed to the harvesting thread through a bounded queue, so
+ * a listing thread requests the next page of its search while the previous one
+ * is aligned and only waits when the harvesting thread is a whole queue late.
+ * The end of each search is signalled by an item without header. A listing is
+ * used by the harvesting thread only.
+ */
+final class Listing
+{
+	//--------------------------------------------------------------------------
+	//---
+	//--- Constructor
+	//---
+	//--------------------------------------------------------------------------
+
+	/**
+	 * @param name     name of the harvester, used to name the threads
+	 * @param threads  maximum number of searches listed at the same time
+	 * @param capacity maximum number of headers listed and not taken
+	 */
+	Listing(final String name, int threads, int capacity)
+	{
+		queue    = new ArrayBlockingQueue<Item>(Math.max(1, capacity));
+		executor = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "harvester-list-" + name + "-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	//--------------------------------------------------------------------------
+	//---
+	//--- API methods
+	//---
+	//--------------------------------------------------------------------------
+
+	/**
+	 * Lists the headers of a search once a thread is free. The request must not
+	 * be shared with another search.
+	 */
+	void start(final Search search, final ListIdentifiersRequest request)
+	{
+		running++;
+		executor.execute(new Runnable() {
+			public void run() {
+				try {
+					list(search, request);
+				}
+				catch (InterruptedException e) {
+					//--- the listing has been shut down
+				}
+			}
+		});
+	}
+
+	//--------------------------------------------------------------------------
+
+	/**
+	 * @return true until the end of all the searches started has been taken
+	 */
+	boolean isRunning()
+	{
+		return running > 0;
+	}
+
+	//--------------------------------------------------------------------------
+
+	/**
+	 * Waits for the next header listed or for the end of a search.
+	 */
+	Item take() throws InterruptedException
+	{
+		Item item = queue.take();
+
+		if (item.header == null)
+			running--;
+
+		return item;
+	}
+
+	//--------------------------------------------------------------------------
+
+	/**
+	 * Stops the threads, the searches not started yet are dropped.
+	 */
+	void shutdown()
+	{
+		executor.shutdownNow();
+		queue.clear();
+	}
+
+	//--------------------------------------------------------------------------
+	//---
+	//--- Private methods
+	//---
+	//--------------------------------------------------------------------------
+
+	private void list(Search search, ListIdentifiersRequest request) throws InterruptedException
+	{
+		try
+		{
+			ListIdentifiersResponse response = request.execute();
+
+			while (response.hasNext())
+				queue.put(new Item(search, response.next(), null));
+		}
+		catch (InterruptedException e)
+		{
+			throw e;
+		}
+		catch (Throwable e)
+		{
+			queue.put(new Item(search, null, e));
+			return;
+		}
+
+		queue.put(new Item(search, null, null));
+	}
+
+	//--------------------------------------------------------------------------
+	//---
+	//--- Item
+	//---
+	//--------------------------------------------------------------------------
+
+	/**
+	 * A header listed by a search or, if the header is null, the end of the
+	 * search with the error that stopped it (null if all the headers were
+	 * listed).
+	 */
+	static final class Item
+	{
+		Item(Search search, Header header, Throwable error)
+		{
+			this.search = search;
+			this.header = header;
+			this.error  = error;
+		}
+
+		final Search    search;
+		final Header    header;
+		final Throwable error;
+	}
+
+	//--------------------------------------------------------------------------
+	//---
+	//--- Variables
+	//---
+	//--------------------------------------------------------------------------
+
+	private final ExecutorService     executor;
+	private final BlockingQueue<Item> queue;
+	private int running;
+}
+
+//=============================================================================
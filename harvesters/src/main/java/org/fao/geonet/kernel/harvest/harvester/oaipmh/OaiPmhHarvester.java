@@ -39,6 +39,7 @@ import org.jdom.Element;
 
 import java.io.File;
 import java.sql.SQLException;
+import java.util.Map;
 import java.util.UUID;
 
 //=============================================================================
@@ -143,7 +144,10 @@ public class OaiPmhHarvester extends AbstractHarvester<HarvestResult>
 		settingMan.add(dbms, "id:"+siteId, "url",  params.url);
 		settingMan.add(dbms, "id:"+siteId, "icon", params.icon);
 
-		settingMan.add(dbms, "id:"+optionsId, "validate", params.validate);
+		settingMan.add(dbms, "id:"+optionsId, "validate",      params.validate);
+		settingMan.add(dbms, "id:"+optionsId, "incremental",   params.incremental);
+		settingMan.add(dbms, "id:"+optionsId, "searchThreads", params.searchThreads);
+		settingMan.add(dbms, "id:"+optionsId, "checkpoint",    params.getEmptySearch().checkpoint);
 
 		//--- store search nodes
 
@@ -156,6 +160,9 @@ public class OaiPmhHarvester extends AbstractHarvester<HarvestResult>
 			settingMan.add(dbms, "id:"+searchID, "set",        s.set);
 			settingMan.add(dbms, "id:"+searchID, "prefix",     s.prefix);
 			settingMan.add(dbms, "id:"+searchID, "stylesheet", s.stylesheet);
+			settingMan.add(dbms, "id:"+searchID, "checkpoint", s.checkpoint);
+
+			s.settingId = searchID;
 		}
 	}
 
@@ -168,8 +175,39 @@ public class OaiPmhHarvester extends AbstractHarvester<HarvestResult>
 	protected void doHarvest(Logger log, ResourceManager rm) throws Exception
 	{
 		Dbms dbms = (Dbms) rm.open(Geonet.Res.MAIN_DB);
-		h = new Harvester(log, context, dbms, params);
-        result = h.harvest(log);
+		Harvester harvester = new Harvester(log, context, dbms, params);
+		h = harvester;
+        result = harvester.harvest(log);
+
+		//--- the checkpoints are saved once the records up to them are stored
+
+		for (Map.Entry<Search, String> entry : harvester.getCheckpoints().entrySet())
+			storeCheckpoint(dbms, entry.getKey(), entry.getValue());
+	}
+
+	//---------------------------------------------------------------------------
+
+	private void storeCheckpoint(Dbms dbms, Search s, String checkpoint) throws SQLException
+	{
+		s.checkpoint = checkpoint;
+
+		//--- the checkpoint of the empty search is stored in the options
+
+		String parent;
+
+		if (s.settingId != null)
+			parent = "id:"+ s.settingId;
+		else if (s == params.getEmptySearch())
+			parent = "harvesting/id:"+ getID() +"/options";
+		else
+			return;
+
+		//--- nodes stored before the checkpoints were introduced have none
+
+		if (settingMan.get(parent +"/checkpoint", 0) == null)
+			settingMan.add(dbms, parent, "checkpoint", checkpoint);
+		else
+			settingMan.setValue(dbms, parent +"/checkpoint", checkpoint);
 	}
 
 	//---------------------------------------------------------------------------
@@ -64,7 +64,12 @@ public class OaiPmhParams extends AbstractParams
 		url      = Util.getParam(site, "url",  "");
 		icon     = Util.getParam(site, "icon", "");
 
-		validate = Util.getParam(options, "validate", false);
+		validate      = Util.getParam(options, "validate", false);
+		incremental   = Util.getParam(options, "incremental", false);
+		searchThreads = Math.max(1, Util.getParam(options, "searchThreads", DEFAULT_SEARCH_THREADS));
+
+		emptySearch = Search.createEmptySearch();
+		emptySearch.checkpoint = Util.getParam(options, "checkpoint", "");
 
 		addSearches(searches);
 	}
@@ -86,7 +91,13 @@ public class OaiPmhParams extends AbstractParams
 		url      = Util.getParam(site,  "url",  url);
 		icon     = Util.getParam(site,  "icon", icon);
 
-		validate = Util.getParam(options, "validate", validate);
+		validate      = Util.getParam(options, "validate", validate);
+		incremental   = Util.getParam(options, "incremental", incremental);
+		searchThreads = Math.max(1, Util.getParam(options, "searchThreads", searchThreads));
+
+		//--- the checkpoints are dropped with the searches they belong to
+
+		emptySearch = Search.createEmptySearch();
 
 		//--- if some search queries are given, we drop the previous ones and
 		//--- set these new ones
@@ -107,6 +118,13 @@ public class OaiPmhParams extends AbstractParams
 
 	public boolean isSearchEmpty() { return alSearches.isEmpty(); }
 
+	//---------------------------------------------------------------------------
+	/** The search run when no search is given, its checkpoint is stored in
+	  * the options
+	  */
+
+	public Search getEmptySearch() { return emptySearch; }
+
 	//---------------------------------------------------------------------------
 
 	public OaiPmhParams copy()
@@ -117,7 +135,11 @@ public class OaiPmhParams extends AbstractParams
 		copy.url  = url;
 		copy.icon = icon;
 
-		copy.validate = validate;
+		copy.validate      = validate;
+		copy.incremental   = incremental;
+		copy.searchThreads = searchThreads;
+
+		copy.emptySearch = emptySearch.copy();
 
 		for (Search s : alSearches)
 			copy.alSearches.add(s.copy());
@@ -155,7 +177,16 @@ public class OaiPmhParams extends AbstractParams
 	public String url;
 	public String icon;
 
+	/** Only lists the records changed since the checkpoint of each search */
+	public boolean incremental;
+
+	/** Number of searches listed at the same time */
+	public int searchThreads;
+
+	private Search            emptySearch;
 	private ArrayList<Search> alSearches = new ArrayList<Search>();
+
+	private static final int DEFAULT_SEARCH_THREADS = 2;
 }
 
 //=============================================================================
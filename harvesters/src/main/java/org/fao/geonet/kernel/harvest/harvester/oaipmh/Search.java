@@ -50,6 +50,8 @@ class Search
 		set        = Util.getParam(search, "set",        "");
 		prefix     = Util.getParam(search, "prefix",     "oai_dc");
 		stylesheet = Util.getParam(search, "stylesheet", "");
+		checkpoint = Util.getParam(search, "checkpoint", "");
+		settingId  = search.getAttributeValue("id");
 
 		//--- check from parameter
 
@@ -107,6 +109,8 @@ class Search
 		s.set        = set;
 		s.prefix     = prefix;
 		s.stylesheet = stylesheet;
+		s.checkpoint = checkpoint;
+		s.settingId  = settingId;
 
 		return s;
 	}
@@ -122,6 +126,7 @@ class Search
 		s.set        = "";
 		s.prefix     = "oai_dc";
 		s.stylesheet = "";
+		s.checkpoint = "";
 
 		return s;
 	}
@@ -137,6 +142,14 @@ class Search
 	public String set;
 	public String prefix;
 	public String stylesheet;
+
+	/** Datestamp of the most recent record harvested by this search, sent as
+	  * the 'from' parameter by the incremental harvests (empty if none yet)
+	  */
+	public String checkpoint;
+
+	/** Id of the search node in the settings, null for the empty search */
+	public String settingId;
 }
 
 //=============================================================================
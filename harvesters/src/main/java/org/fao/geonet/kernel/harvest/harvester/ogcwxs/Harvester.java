@@ -219,6 +219,7 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 
 		//-----------------------------------------------------------------------
 		//--- remove old metadata
+		List<String> removedIds = new ArrayList<String>();
 		for (String uuid : localUuids.getUUIDs())
 		{
 			String id = localUuids.getID (uuid);
@@ -228,14 +229,15 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 			// Remove thumbnails
 			unsetThumbnail (id);
 			
-			// Remove metadata
-			dataMan.deleteMetadata (context, dbms, id);
-			
-			result.locallyRemoved ++;
+			removedIds.add (id);
 		}
 		
-		if (result.locallyRemoved > 0)
+		// Remove metadata
+		if (!removedIds.isEmpty ()) {
+			dataMan.deleteBatchMetadata (context, dbms, removedIds);
+			result.locallyRemoved += removedIds.size ();
 			dbms.commit ();
+		}
 		
         // Convert from GetCapabilities to ISO19119
         addMetadata (xml);
@@ -259,22 +259,29 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult>
 	    harvestCatalog(xml);
 	        
 		//--- Remove previously harvested metadata for uris that no longer exist on the remote site
+		List<RecordInfo> removedRecords = new ArrayList<RecordInfo>();
+		List<String> removedIds = new ArrayList<String>();
 		for (String localUri : localUris.getUris()) {
 			if (!harvestUris.contains(localUri)) {
 				for (RecordInfo record: localUris.getRecords(localUri)) {
                     if(log.isDebugEnabled()) log.debug ("  - Removing deleted metadata with id: " + record.id);
-					dataMan.deleteMetadata (context, dbms, record.id);
-		
-					if (record.isTemplate.equals("s")) {
-						//--- Uncache xlinks if a subtemplate
-						Processor.uncacheXLinkUri(metadataGetService+"?uuid=" + record.uuid);
-						result.subtemplatesRemoved++;
-					} else {
-						result.locallyRemoved++;
-					}
+					removedRecords.add(record);
+					removedIds.add(record.id);
 				}
 			}
 		}
+
+		dataMan.deleteBatchMetadata (context, dbms, removedIds);
+
+		for (RecordInfo record : removedRecords) {
+			if (record.isTemplate.equals("s")) {
+				//--- Uncache xlinks if a subtemplate
+				Processor.uncacheXLinkUri(metadataGetService+"?uuid=" + record.uuid);
+				result.subtemplatesRemoved++;
+			} else {
+				result.locallyRemoved++;
+			}
+		}
 		
 		dbms.commit();
 		
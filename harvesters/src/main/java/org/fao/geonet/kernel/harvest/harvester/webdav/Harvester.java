@@ -45,8 +45,11 @@ import org.jdom.Element;
 import org.jdom.JDOMException;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 //=============================================================================
@@ -116,16 +119,24 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult> {
 		dbms.commit();
 		//-----------------------------------------------------------------------
 		//--- remove old metadata
+		Set<String> remoteUris = new HashSet<String>();
+		for (RemoteFile rf : files) {
+			remoteUris.add(rf.getPath());
+		}
+		List<String> removedIds = new ArrayList<String>();
 		for (String uri : localUris.getUris()) {
-			if (!exists(files, uri)) {
+			if (!remoteUris.contains(uri)) {
 				// only one metadata record created per uri by this harvester 
 				String id = localUris.getRecords(uri).get(0).id;
                 if(log.isDebugEnabled()) log.debug("  - Removing old metadata with local id:"+ id);
-				dataMan.deleteMetadataGroup(context, dbms, id);
-				dbms.commit();
-				result.locallyRemoved++;
+				removedIds.add(id);
 			}
 		}
+		if (!removedIds.isEmpty()) {
+			dataMan.deleteBatchMetadataGroup(context, dbms, removedIds);
+			dbms.commit();
+			result.locallyRemoved += removedIds.size();
+		}
 		//-----------------------------------------------------------------------
 		//--- insert/update new metadata
 
@@ -143,17 +154,6 @@ class Harvester extends BaseAligner implements IHarvester<HarvestResult> {
 		log.info("End of alignment for : "+ params.name);
 	}
 
-	//--------------------------------------------------------------------------
-	/** Returns true if the uri is present in the remote folder */
-	private boolean exists(List<RemoteFile> files, String uri) {
-		for(RemoteFile rf : files) {
-			if (uri.equals(rf.getPath())) {
-				return true;
-			}
-		}
-		return false;
-	}
-
 	//--------------------------------------------------------------------------
 	//---
 	//--- Private methods : addMetadata
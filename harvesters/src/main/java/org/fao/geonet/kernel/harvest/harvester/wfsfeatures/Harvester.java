@@ -330,6 +330,9 @@ class Harvester implements IHarvester<HarvestResult>
 	public void deleteOrphanedMetadata(Set<String> updatedMetadata) throws Exception {
         if(log.isDebugEnabled()) log.debug("  - Removing orphaned metadata records and fragments after update");
 		
+		List<String> removedIds = new ArrayList<String>();
+		int subtemplatesRemoved = 0;
+
 		for (String uuid : localUuids.getUUIDs()) {
 		    try {
     			String isTemplate = localUuids.getTemplate(uuid);
@@ -338,13 +341,10 @@ class Harvester implements IHarvester<HarvestResult>
     			}
     
     			if (!updatedMetadata.contains(uuid)) {	
-    				String id = localUuids.getID(uuid);
-    				dataMan.deleteMetadata(context, dbms, id);
+    				removedIds.add(localUuids.getID(uuid));
     			
     				if (isTemplate.equals("s")) {
-    					result.subtemplatesRemoved ++;
-    				} else {
-    					result.locallyRemoved ++;
+    					subtemplatesRemoved ++;
     				}
     			}
 		    } catch(CacheException e) {
@@ -355,6 +355,15 @@ class Harvester implements IHarvester<HarvestResult>
                 this.errors.add(error);
             }
 		}
+
+		try {
+		    dataMan.deleteBatchMetadata(context, dbms, removedIds);
+		    result.subtemplatesRemoved += subtemplatesRemoved;
+		    result.locallyRemoved += removedIds.size() - subtemplatesRemoved;
+		} catch (Exception e) {
+            HarvestError error = new HarvestError(e, log);
+            this.errors.add(error);
+        }
 		
 		if (result.subtemplatesRemoved + result.locallyRemoved > 0)  {
 			try {
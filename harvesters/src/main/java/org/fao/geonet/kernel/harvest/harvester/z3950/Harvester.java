@@ -50,6 +50,7 @@ import org.jdom.DocType;
 import org.jdom.Document;
 import org.jdom.Element;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -103,15 +104,18 @@ class Harvester extends BaseAligner implements IHarvester<Z3950ServerResults> {
 		localUuids = new UUIDMapper(dbms, params.uuid);
 
 		// --- remove old metadata
+		List<String> removedIds = new ArrayList<String>();
 		for (String uuid : localUuids.getUUIDs()) {
 			String id = localUuids.getID(uuid);
             if(this.log.isDebugEnabled()) log.debug("  - Removing old metadata before update with id: " + id);
-			dataMan.deleteMetadataGroup(context, dbms, id);
-			serverResults.locallyRemoved++;
+			removedIds.add(id);
 		}
 
-		if (serverResults.locallyRemoved > 0)
+		if (!removedIds.isEmpty()) {
+			dataMan.deleteBatchMetadataGroup(context, dbms, removedIds);
+			serverResults.locallyRemoved += removedIds.size();
 			dbms.commit();
+		}
 
 		// --- Search remote node
 		MetaSearcher s = searchMan.newSearcher(SearchManager.Z3950, Geonet.File.SEARCH_Z3950_CLIENT);
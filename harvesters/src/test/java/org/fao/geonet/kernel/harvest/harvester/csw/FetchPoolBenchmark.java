@@ -0,0 +1,39 @@
+package org.fao.geonet.kernel.harvest.harvester.csw;
+
+/**
+ * Prints the number of records fetched per second from the stub CSW server of {@link FetchPoolTest} with one fetching
+ * thread and with several ones. It is not a unit test (the timings depend on the machine), run it with the test
+ * classpath of the module:
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes:&lt;dependencies&gt; org.fao.geonet.kernel.harvest.harvester.csw.FetchPoolBenchmark
+ * </pre>
+ */
+public class FetchPoolBenchmark {
+    public static void main(String[] args) throws Exception {
+        FetchPoolTest stub = new FetchPoolTest();
+        stub.startServer();
+        try {
+            // warm up the connections and the parser
+            stub.fetch(FetchPoolTest.THREADS, FetchPoolTest.THREADS);
+
+            long start = System.nanoTime();
+            stub.fetch(1, 1);
+            long sequential = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            stub.fetch(FetchPoolTest.THREADS, FetchPoolTest.THREADS * 2);
+            long parallel = System.nanoTime() - start;
+
+            System.out.println(FetchPoolTest.RECORDS + " records fetched with " + FetchPoolTest.LATENCY_MS
+                    + " ms latency: 1 thread " + recordsPerSecond(sequential) + " records/s, "
+                    + FetchPoolTest.THREADS + " threads " + recordsPerSecond(parallel) + " records/s");
+        } finally {
+            stub.stopServer();
+        }
+    }
+
+    private static long recordsPerSecond(long nanos) {
+        return FetchPoolTest.RECORDS * 1000000000L / nanos;
+    }
+}
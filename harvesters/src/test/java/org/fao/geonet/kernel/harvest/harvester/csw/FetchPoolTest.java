@@ -0,0 +1,156 @@
+package org.fao.geonet.kernel.harvest.harvester.csw;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.fao.geonet.csw.common.ElementSetName;
+import org.fao.geonet.csw.common.requests.CatalogRequest;
+import org.fao.geonet.csw.common.requests.GetRecordByIdRequest;
+import org.jdom.Element;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Fetches records with GetRecordById requests from a local stub CSW server answering with some latency, with one
+ * fetching thread and with several ones. The server counts the requests it is answering at the same time. The number
+ * of records fetched per second is measured by {@link FetchPoolBenchmark}.
+ */
+public class FetchPoolTest {
+    static final int RECORDS = 80;
+    static final int LATENCY_MS = 25;
+    static final int THREADS = 4;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private URL url;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/csw", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                String query = exchange.getRequestURI().getQuery();
+                String uuid = query.replaceAll(".*(?i:id)=([^&]*).*", "$1");
+                int current = inFlight.incrementAndGet();
+                for (int max = maxInFlight.get(); current > max; max = maxInFlight.get()) {
+                    if (maxInFlight.compareAndSet(max, current)) {
+                        break;
+                    }
+                }
+                try {
+                    Thread.sleep(LATENCY_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+                byte[] body = ("<csw:GetRecordByIdResponse xmlns:csw=\"http://www.opengis.net/cat/csw/2.0.2\">"
+                               + "<record><uuid>" + uuid + "</uuid></record>"
+                               + "</csw:GetRecordByIdResponse>").getBytes("UTF-8");
+                exchange.getResponseHeaders().add("Content-Type", "application/xml");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+        url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/csw");
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testFetchAllRecordsInParallel() throws Exception {
+        List<String> uuids = fetch(THREADS, THREADS * 2);
+        assertEquals(RECORDS, uuids.size());
+        assertEquals(RECORDS, new HashSet<String>(uuids).size());
+        for (int i = 0; i < RECORDS; i++) {
+            assertTrue(uuids.contains("record-" + i));
+        }
+        assertTrue("requests were not run at the same time: " + maxInFlight.get(), maxInFlight.get() > 1);
+        assertTrue(maxInFlight.get() <= THREADS);
+    }
+
+    @Test
+    public void testFetchInOrderWithOneThread() throws Exception {
+        List<String> uuids = fetch(1, 3);
+        assertEquals(expected(), uuids);
+        assertEquals(1, maxInFlight.get());
+    }
+
+    private static List<String> expected() {
+        List<String> uuids = new ArrayList<String>();
+        for (int i = 0; i < RECORDS; i++) {
+            uuids.add("record-" + i);
+        }
+        return uuids;
+    }
+
+    /**
+     * Fetches the records the way the aligner does: at most maxPending requests are submitted before a record is
+     * taken.
+     */
+    List<String> fetch(int threads, int maxPending) throws Exception {
+        List<String> uuids = new ArrayList<String>();
+        FetchPool<Element> pool = new FetchPool<Element>("test", threads, maxPending);
+        try {
+            int next = 0;
+            while (next < RECORDS || pool.hasPending()) {
+                while (next < RECORDS && !pool.isFull()) {
+                    pool.submit(new Fetch("record-" + next++));
+                }
+                if (pool.hasPending()) {
+                    Element record = pool.take();
+                    uuids.add(record.getChildText("uuid"));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return uuids;
+    }
+
+    private final class Fetch implements Callable<Element> {
+        private final String uuid;
+
+        Fetch(String uuid) {
+            this.uuid = uuid;
+        }
+
+        public Element call() throws Exception {
+            GetRecordByIdRequest request = new GetRecordByIdRequest();
+            request.setUrl(url);
+            request.setMethod(CatalogRequest.Method.GET);
+            request.setElementSetName(ElementSetName.FULL);
+            request.addId(uuid);
+            Element response = request.execute();
+            return (Element) ((Element) response.getChildren().get(0)).detach();
+        }
+    }
+}
@@ -69,6 +69,10 @@ public class ConfigFile
 			public static final String DEBUG      = "debug";
 			public static final String UPLOAD_DIR = "uploadDir";
 			public static final String MAX_UPLOAD_SIZE = "maxUploadSize";
+			public static final String HTTP_MAX_CONNECTIONS          = "httpMaxConnections";
+			public static final String HTTP_MAX_CONNECTIONS_PER_HOST = "httpMaxConnectionsPerHost";
+			public static final String HTTP_CONNECTION_TIMEOUT       = "httpConnectionTimeout";
+			public static final String HTTP_IDLE_TIMEOUT             = "httpIdleTimeout";
 		}
 	}
 
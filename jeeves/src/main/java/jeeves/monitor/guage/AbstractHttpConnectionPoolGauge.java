@@ -0,0 +1,31 @@
+package jeeves.monitor.guage;
+
+import jeeves.monitor.MetricsFactory;
+import jeeves.server.context.ServiceContext;
+import jeeves.utils.HttpConnectionPool;
+
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.MetricsRegistry;
+
+/**
+ * Abstract super class for all Gauges that report the usage of the pool of http connections to remote servers.
+ */
+public abstract class AbstractHttpConnectionPoolGauge implements MetricsFactory<Gauge<Integer>> {
+    private final String name;
+
+    protected abstract int valueImpl();
+
+    protected AbstractHttpConnectionPoolGauge(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public Gauge<Integer> create(MetricsRegistry metricsRegistry, ServiceContext context) {
+        return metricsRegistry.newGauge(HttpConnectionPool.class, name, new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                return valueImpl();
+            }
+        });
+    }
+}
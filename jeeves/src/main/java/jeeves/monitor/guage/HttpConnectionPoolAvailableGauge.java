@@ -0,0 +1,17 @@
+package jeeves.monitor.guage;
+
+import jeeves.utils.HttpConnectionPool;
+
+/**
+ * Gauge that reports the number of open http connections waiting in the pool for a request.
+ */
+public class HttpConnectionPoolAvailableGauge extends AbstractHttpConnectionPoolGauge {
+    public HttpConnectionPoolAvailableGauge() {
+        super("Http_Connections_Available");
+    }
+
+    @Override
+    protected int valueImpl() {
+        return HttpConnectionPool.getAvailable();
+    }
+}
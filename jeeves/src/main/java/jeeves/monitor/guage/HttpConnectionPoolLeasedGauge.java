@@ -0,0 +1,17 @@
+package jeeves.monitor.guage;
+
+import jeeves.utils.HttpConnectionPool;
+
+/**
+ * Gauge that reports the number of http connections used by a request.
+ */
+public class HttpConnectionPoolLeasedGauge extends AbstractHttpConnectionPoolGauge {
+    public HttpConnectionPoolLeasedGauge() {
+        super("Http_Connections_Leased");
+    }
+
+    @Override
+    protected int valueImpl() {
+        return HttpConnectionPool.getLeased();
+    }
+}
@@ -0,0 +1,17 @@
+package jeeves.monitor.guage;
+
+import jeeves.utils.HttpConnectionPool;
+
+/**
+ * Gauge that reports the number of requests waiting for an http connection.
+ */
+public class HttpConnectionPoolPendingGauge extends AbstractHttpConnectionPoolGauge {
+    public HttpConnectionPoolPendingGauge() {
+        super("Http_Connections_Pending");
+    }
+
+    @Override
+    protected int valueImpl() {
+        return HttpConnectionPool.getPending();
+    }
+}
@@ -59,6 +59,7 @@ public abstract class AbstractDbmsPool implements ResourceProvider {
 	private Set<ResourceListener> hsListeners = Collections.synchronizedSet(new HashSet<ResourceListener>());
 	private DataSource dataSource;
 	private DataStore  dataStore;
+	private int        fetchSize = Dbms.DEFAULT_FETCH_SIZE;
 	
 	// --------------------------------------------------------------------------
 	// ---
@@ -127,6 +128,23 @@ public abstract class AbstractDbmsPool implements ResourceProvider {
 
 	// --------------------------------------------------------------------------
 
+	/**
+	 * Sets the number of rows read at a time by the connections of the pool
+	 * from the optional fetchSize param of the jeeves config.
+	 */
+	protected void setFetchSize(Element config) throws NumberFormatException {
+		String size = config.getChildText(Jeeves.Res.Pool.FETCH_SIZE);
+		if (size != null) {
+			try {
+				fetchSize = Integer.valueOf(size.trim());
+			} catch (NumberFormatException nfe) {
+				throw new IllegalArgumentException(Jeeves.Res.Pool.FETCH_SIZE+" has non-integer value "+size);
+			}
+		}
+	}
+
+	// --------------------------------------------------------------------------
+
 	public String getName() {
 		return name;
 	}
@@ -138,6 +156,7 @@ public abstract class AbstractDbmsPool implements ResourceProvider {
 
 	public synchronized Object open() throws Exception {
 		Dbms dbms = new Dbms(dataSource, url);
+		dbms.setFetchSize(fetchSize);
 		String nullStr = null;
 		dbms.connect(nullStr, nullStr);
 		return dbms;
@@ -68,6 +68,7 @@ public class ApacheDBCPool extends AbstractDbmsPool {
 	public void init(String name, Element config) throws Exception {
 
 		parseJeevesDBConfig(config);
+		setFetchSize(config);
 
 		setDataSource((DataSource)basicDataSource);
 		setDataStore(createDataStore());
@@ -42,7 +42,6 @@ import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Vector;
 
 //=============================================================================
 
@@ -54,11 +53,13 @@ public class Dbms
 	public static final String DEFAULT_DATE_FORMAT      = "dd-MM-yyyy";
 	public static final String DEFAULT_TIME_FORMAT      = "HH:mm:ss";
 	public static final String DEFAULT_TIMESTAMP_FORMAT = "yyyy-MM-dd'T'HH:mm:ss";
+	public static final int    DEFAULT_FETCH_SIZE       = 1000;
 
 	private DataSource dataSource;
 	private String url;
 	private Connection conn;
 	private long       lastConnTime;
+	private int        fetchSize = DEFAULT_FETCH_SIZE;
 
 	//--------------------------------------------------------------------------
 	//---
@@ -122,6 +123,14 @@ public class Dbms
 
 	public String getURL() { return url; }
 
+	//--------------------------------------------------------------------------
+	/** Number of rows read from the DBMS at a time by selectRows (0 leaves the
+	  * choice to the jdbc driver)
+	  */
+
+	public int  getFetchSize()              { return fetchSize; }
+	public void setFetchSize(int fetchSize) { this.fetchSize = Math.max(0, fetchSize); }
+
 	//--------------------------------------------------------------------------
 
 	public boolean isClosed()
@@ -240,6 +249,82 @@ public class Dbms
 		}
 	}
 
+	//--------------------------------------------------------------------------
+	/** Reads the rows of a query one at a time instead of building the whole
+	  * response in memory, see selectRows(String, int, RowHandler, Object...)
+	  */
+
+	public int selectRows(String query, RowHandler handler, Object... args) throws SQLException
+	{
+		return selectRows(query, fetchSize, handler, args);
+	}
+
+	//--------------------------------------------------------------------------
+	/** Reads the rows of a query one at a time and gives them to the handler
+	  * until there are no more rows or the handler returns false. The driver
+	  * reads 'fetchSize' rows at a time from the DBMS (if the connection is not
+	  * in auto commit mode for postgres) so large tables can be scanned without
+	  * keeping them in memory. Returns the number of rows given to the handler.
+	  */
+
+	public int selectRows(String query, int fetchSize, RowHandler handler, Object... args) throws SQLException
+	{
+		if(Log.isDebugEnabled(Log.Dbms.SELECT)) {
+			Log.debug(Log.Dbms.SELECT, "Query: "+ query);
+			Log.debug(Log.Dbms.SELECT, "Connection: "+ conn.hashCode());
+			if (args != null)
+				Log.debug(Log.Dbms.SELECT, "Args  : "+ getArgs(args));
+		}
+
+		PreparedStatement stmt = null;
+		ResultSet resultSet = null;
+
+		try
+		{
+			stmt = conn.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			stmt.setFetchSize(Math.max(0, fetchSize));
+
+			if (args != null) {
+				for (int i = 0; i < args.length; i++) {
+					setObject(stmt, i, args[i]);
+				}
+			}
+			long start = System.currentTimeMillis();
+			resultSet = stmt.executeQuery();
+			resultSet.setFetchDirection(ResultSet.FETCH_FORWARD);
+
+			Row row = new Row(resultSet);
+			int rows = 0;
+
+			while (resultSet.next())
+			{
+				rows++;
+
+				if (!handler.handle(row))
+					break;
+			}
+
+			float time = System.currentTimeMillis() - start;
+
+			if(Log.isDebugEnabled(Log.Dbms.SELECT))
+				Log.debug(Log.Dbms.SELECT, "Read "+ rows +" records in "+time/1000+" secs");
+
+			return rows;
+		}
+		finally
+		{
+			try {
+				if (resultSet != null) {
+					resultSet.close();
+				}
+			} finally {
+				if(stmt != null) {
+					stmt.close();
+				}
+			}
+		}
+	}
+
 	//--------------------------------------------------------------------------
 	//---
 	//--- Execute methods
@@ -304,37 +389,15 @@ public class Dbms
 
 	private Element buildResponse(ResultSet rs, Map<String, String> formats) throws SQLException
 	{
-		ResultSetMetaData md = rs.getMetaData();
-
-		int colNum = md.getColumnCount();
-
-		//--- retrieve name and type of fields
-
-		Vector<String> vHeaders = new Vector<String>();
-		Vector<Integer> vTypes   = new Vector<Integer>();
-
-		for (int i = 0; i < colNum; i++)
-		{
-			vHeaders.add(md.getColumnLabel(i + 1).toLowerCase());
-			vTypes.add(Integer.valueOf(md.getColumnType(i + 1)));
-		}
+		Row row = new Row(rs);
 
 		//--- build the jdom tree
 
 		Element root = new Element(Jeeves.Elem.RESPONSE);
 
 		while (rs.next())
-		{
-			Element record = new Element(Jeeves.Elem.RECORD);
+			root.addContent(row.toRecord(formats));
 
-			for(int i = 0; i < colNum; i++)
-			{
-				String name = vHeaders.get(i).toString();
-				int    type = ((Integer)vTypes.get(i)).intValue();
-				record.addContent(buildElement(rs, i, name, type, formats));
-			}
-			root.addContent(record);
-		}
 		return root;
 	}
 
@@ -483,6 +546,94 @@ public class Dbms
 		return sb.toString();
 	}
 	
+	//--------------------------------------------------------------------------
+	//---
+	//--- Row
+	//---
+	//--------------------------------------------------------------------------
+
+	/** Receives the rows read by selectRows */
+
+	public interface RowHandler
+	{
+		/** Called for each row, returns false to stop reading the rows. The row
+		  * is only valid during the call.
+		  */
+
+		public boolean handle(Row row) throws SQLException;
+	}
+
+	//--------------------------------------------------------------------------
+	/** The current row of a result set. Columns are numbered from 1 as in jdbc
+	  * and can be read by label as well (case insensitive).
+	  */
+
+	public final class Row
+	{
+		private final ResultSet rs;
+		private final String[]  names;
+		private final int[]     types;
+
+		//-----------------------------------------------------------------------
+
+		private Row(ResultSet rs) throws SQLException
+		{
+			ResultSetMetaData md = rs.getMetaData();
+
+			this.rs = rs;
+			names   = new String[md.getColumnCount()];
+			types   = new int   [md.getColumnCount()];
+
+			//--- retrieve name and type of fields
+
+			for (int i = 0; i < names.length; i++)
+			{
+				names[i] = md.getColumnLabel(i + 1).toLowerCase();
+				types[i] = md.getColumnType(i + 1);
+			}
+		}
+
+		//-----------------------------------------------------------------------
+
+		public int    getColumnCount()      { return names.length; }
+		public String getColumnName(int col) { return names[col -1]; }
+
+		//-----------------------------------------------------------------------
+
+		public String  getString(int col)    throws SQLException { return rs.getString(col); }
+		public String  getString(String col) throws SQLException { return rs.getString(col); }
+
+		/** Returns 0 if the column is null, see wasNull */
+
+		public int     getInt(int col)       throws SQLException { return rs.getInt(col); }
+		public int     getInt(String col)    throws SQLException { return rs.getInt(col); }
+		public long    getLong(int col)      throws SQLException { return rs.getLong(col); }
+		public long    getLong(String col)   throws SQLException { return rs.getLong(col); }
+		public double  getDouble(int col)    throws SQLException { return rs.getDouble(col); }
+		public double  getDouble(String col) throws SQLException { return rs.getDouble(col); }
+
+		public Timestamp getTimestamp(int col)    throws SQLException { return rs.getTimestamp(col); }
+		public Timestamp getTimestamp(String col) throws SQLException { return rs.getTimestamp(col); }
+
+		/** True if the last column read was null */
+
+		public boolean wasNull() throws SQLException { return rs.wasNull(); }
+
+		//-----------------------------------------------------------------------
+		/** Builds the record element that select returns for this row */
+
+		public Element toRecord(Map<String, String> formats) throws SQLException
+		{
+			Element record = new Element(Jeeves.Elem.RECORD);
+
+			for(int i = 0; i < names.length; i++)
+				record.addContent(buildElement(rs, i, names[i], types[i], formats));
+
+			return record;
+		}
+	}
+
+	//--------------------------------------------------------------------------
 	/**
 	 * In case DBMS connection was not closed
 	 * due to some error, close connection on 
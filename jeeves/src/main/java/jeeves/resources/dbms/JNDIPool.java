@@ -92,6 +92,7 @@ public class JNDIPool extends AbstractDbmsPool {
 			}
 
 			iMaxOpen = getPreparedStatementCacheSize(config);
+			setFetchSize(config);
 			if (iMaxOpen != -1) {
 				params.put(JDBCDataStoreFactory.MAX_OPEN_PREPARED_STATEMENTS.key, iMaxOpen+"");
 			}
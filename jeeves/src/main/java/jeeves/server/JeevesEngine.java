@@ -60,6 +60,7 @@ import jeeves.server.resources.ProviderManager;
 import jeeves.server.resources.ResourceManager;
 import jeeves.server.sources.ServiceRequest;
 import jeeves.server.sources.http.JeevesServlet;
+import jeeves.utils.HttpConnectionPool;
 import jeeves.utils.Log;
 import jeeves.utils.SerialFactory;
 import jeeves.utils.TransformerFactoryFactory;
@@ -412,6 +413,20 @@ public class JeevesEngine
 
 		serviceMan.setUploadDir(uploadDir);
 		serviceMan.setMaxUploadSize(maxUploadSize);
+
+		//--- pool of the http connections to remote servers (harvesting, xlinks)
+
+		int maxConnections        = Util.getParam(general, ConfigFile.General.Child.HTTP_MAX_CONNECTIONS,
+															  HttpConnectionPool.DEFAULT_MAX_CONNECTIONS);
+		int maxConnectionsPerHost = Util.getParam(general, ConfigFile.General.Child.HTTP_MAX_CONNECTIONS_PER_HOST,
+															  HttpConnectionPool.DEFAULT_MAX_CONNECTIONS_PER_HOST);
+		int connectionTimeout     = Util.getParam(general, ConfigFile.General.Child.HTTP_CONNECTION_TIMEOUT,
+															  HttpConnectionPool.DEFAULT_CONNECTION_TIMEOUT);
+		int idleTimeout           = Util.getParam(general, ConfigFile.General.Child.HTTP_IDLE_TIMEOUT,
+															  HttpConnectionPool.DEFAULT_IDLE_TIMEOUT);
+
+		HttpConnectionPool.configure(maxConnections, maxConnectionsPerHost, connectionTimeout, idleTimeout);
+		info("HTTP connections pool : "+ maxConnections +" connections, "+ maxConnectionsPerHost +" per host");
 	}
 
 	//---------------------------------------------------------------------------
@@ -722,6 +737,9 @@ public class JeevesEngine
 			info("Stopping resources...");
 			stopResources();
 
+			info("Closing HTTP connections...");
+			HttpConnectionPool.shutdown();
+
 			info("=== System stopped ========================================");
 		}
 		catch (Exception e)
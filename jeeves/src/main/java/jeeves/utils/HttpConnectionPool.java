@@ -0,0 +1,349 @@
+//=============================================================================
+//===	Copyright (C) 2001-2005 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This library is free software; you can redistribute it and/or
+//===	modify it under the terms of the GNU Lesser General Public
+//===	License as published by the Free Software Foundation; either
+//===	version 2.1 of the License, or (at your option) any later version.
+//===
+//===	This library is distributed in the hope that it will be useful,
+//===	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//===	Lesser General Public License for more details.
+//===
+//===	You should have received a copy of the GNU Lesser General Public
+//===	License along with this library; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: GeoNetwork@fao.org
+//==============================================================================
+
+package jeeves.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.httpclient.ConnectTimeoutException;
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpConnection;
+import org.apache.commons.httpclient.HttpConnectionManager;
+import org.apache.commons.httpclient.HttpMethodBase;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.params.HttpConnectionParams;
+import org.apache.commons.httpclient.protocol.Protocol;
+import org.apache.commons.httpclient.protocol.ProtocolSocketFactory;
+import org.apache.commons.httpclient.protocol.SecureProtocolSocketFactory;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
+
+//=============================================================================
+
+/** Pool of keep-alive http connections shared by all the HttpClient instances
+  * of XmlRequest (and of the other http requests sent to remote catalogues), so
+  * that the requests sent one after the other to the same host reuse the same
+  * connections instead of opening a new one (with a new TCP and TLS handshake)
+  * for each request.
+  *
+  * The connections are pooled by host (and proxy), the connections idle for
+  * longer than the idle timeout are closed by a background thread. The cookies
+  * and credentials are still kept by each HttpClient.
+  */
+
+public final class HttpConnectionPool
+{
+	public static final int  DEFAULT_MAX_CONNECTIONS          = 40;
+	public static final int  DEFAULT_MAX_CONNECTIONS_PER_HOST = 8;
+	public static final int  DEFAULT_CONNECTION_TIMEOUT       = 30;
+	public static final int  DEFAULT_IDLE_TIMEOUT             = 60;
+
+	//---------------------------------------------------------------------------
+
+	private HttpConnectionPool() {}
+
+	//---------------------------------------------------------------------------
+	//---
+	//--- API methods
+	//---
+	//---------------------------------------------------------------------------
+
+	/** The connection manager to give to the HttpClient instances */
+
+	public static HttpConnectionManager getConnectionManager()
+	{
+		return manager;
+	}
+
+	//---------------------------------------------------------------------------
+	/** Sets the size of the pool and its timeouts (the timeouts are in seconds).
+	  * Called at startup with the values of the 'general' element of config.xml.
+	  */
+
+	public static synchronized void configure(int maxConnections, int maxConnectionsPerHost,
+														 int connectionTimeout, int idleTimeout)
+	{
+		HttpConnectionManagerParams params = manager.getParams();
+		params.setMaxTotalConnections(maxConnections);
+		params.setDefaultMaxConnectionsPerHost(maxConnectionsPerHost);
+		params.setConnectionTimeout(connectionTimeout * 1000);
+		params.setStaleCheckingEnabled(true);
+
+		if (idleThread != null)
+			idleThread.shutdown();
+
+		idleThread = new IdleConnectionTimeoutThread();
+		idleThread.setName("http-idle-connections");
+		idleThread.setDaemon(true);
+		idleThread.setConnectionTimeout(idleTimeout * 1000L);
+		idleThread.setTimeoutInterval(Math.max(1000L, idleTimeout * 500L));
+		idleThread.addConnectionManager(manager);
+		idleThread.start();
+	}
+
+	//---------------------------------------------------------------------------
+	/** Closes all the connections, called when the application is stopped */
+
+	public static synchronized void shutdown()
+	{
+		if (idleThread != null)
+			idleThread.shutdown();
+
+		idleThread = null;
+		manager.shutdown();
+	}
+
+	//---------------------------------------------------------------------------
+	/** Returns the protocol to give to a HostConfiguration so that its connections
+	  * are opened with their own connect timeout (in milliseconds) instead of the
+	  * one of the pool, which httpclient only lets set for the whole manager. The
+	  * protocol is part of the key of the pooled connections, so these are kept
+	  * apart from the connections opened with the default timeout.
+	  */
+
+	public static synchronized Protocol getProtocol(String scheme, int connectionTimeout)
+	{
+		String key = scheme +":"+ connectionTimeout;
+		Protocol protocol = protocols.get(key);
+
+		if (protocol == null)
+		{
+			Protocol base = Protocol.getProtocol(scheme);
+			ProtocolSocketFactory factory = base.getSocketFactory();
+
+			factory = (factory instanceof SecureProtocolSocketFactory)
+							? new TimedSecureSocketFactory((SecureProtocolSocketFactory) factory, connectionTimeout)
+							: new TimedSocketFactory(factory, connectionTimeout);
+
+			protocol = new Protocol(base.getScheme(), factory, base.getDefaultPort());
+			protocols.put(key, protocol);
+		}
+
+		return protocol;
+	}
+
+	//---------------------------------------------------------------------------
+	/** Number of connections used by a request */
+
+	public static int getLeased()
+	{
+		return manager.leased.get();
+	}
+
+	//---------------------------------------------------------------------------
+	/** Number of open connections waiting in the pool for a request */
+
+	public static int getAvailable()
+	{
+		return Math.max(0, manager.getConnectionsInPool() - manager.leased.get());
+	}
+
+	//---------------------------------------------------------------------------
+	/** Number of requests waiting for a connection */
+
+	public static int getPending()
+	{
+		return manager.pending.get();
+	}
+
+	//---------------------------------------------------------------------------
+	/** Asks the server to compress the response, see getResponseBodyAsStream */
+
+	public static void acceptCompression(HttpMethodBase httpMethod)
+	{
+		httpMethod.setRequestHeader("Accept-Encoding", "gzip, deflate");
+	}
+
+	//---------------------------------------------------------------------------
+	/** Returns the body of the response, uncompressed if the server compressed it
+	  * or null if there is no body.
+	  */
+
+	public static InputStream getResponseBodyAsStream(HttpMethodBase httpMethod) throws IOException
+	{
+		InputStream in = httpMethod.getResponseBodyAsStream();
+
+		if (in == null)
+			return null;
+
+		Header encoding = httpMethod.getResponseHeader("Content-Encoding");
+
+		if (encoding != null)
+		{
+			String value = encoding.getValue().trim();
+
+			if (value.equalsIgnoreCase("gzip") || value.equalsIgnoreCase("x-gzip"))
+				return new GZIPInputStream(in);
+
+			if (value.equalsIgnoreCase("deflate"))
+				return new InflaterInputStream(in);
+		}
+
+		return in;
+	}
+
+	//---------------------------------------------------------------------------
+	//---
+	//--- Connection manager
+	//---
+	//---------------------------------------------------------------------------
+
+	/** Counts the connections leased and the requests waiting for a connection
+	  * (getConnectionsInUse counts the connections in the pool as well).
+	  */
+
+	private static final class CountingConnectionManager extends MultiThreadedHttpConnectionManager
+	{
+		final AtomicInteger leased  = new AtomicInteger();
+		final AtomicInteger pending = new AtomicInteger();
+
+		public HttpConnection getConnectionWithTimeout(HostConfiguration hostConfiguration, long timeout)
+			throws ConnectionPoolTimeoutException
+		{
+			pending.incrementAndGet();
+
+			try
+			{
+				HttpConnection connection = super.getConnectionWithTimeout(hostConfiguration, timeout);
+				leased.incrementAndGet();
+
+				return connection;
+			}
+			finally
+			{
+				pending.decrementAndGet();
+			}
+		}
+
+		public void releaseConnection(HttpConnection connection)
+		{
+			super.releaseConnection(connection);
+			leased.decrementAndGet();
+		}
+	}
+
+	//---------------------------------------------------------------------------
+	//---
+	//--- Socket factories
+	//---
+	//---------------------------------------------------------------------------
+
+	/** Opens the sockets of a protocol with a given connect timeout */
+
+	private static class TimedSocketFactory implements ProtocolSocketFactory
+	{
+		TimedSocketFactory(ProtocolSocketFactory factory, int connectionTimeout)
+		{
+			this.factory           = factory;
+			this.connectionTimeout = connectionTimeout;
+		}
+
+		public Socket createSocket(String host, int port) throws IOException, UnknownHostException
+		{
+			return factory.createSocket(host, port);
+		}
+
+		public Socket createSocket(String host, int port, InetAddress localAddress, int localPort)
+			throws IOException, UnknownHostException
+		{
+			return factory.createSocket(host, port, localAddress, localPort);
+		}
+
+		public Socket createSocket(String host, int port, InetAddress localAddress, int localPort,
+											HttpConnectionParams params)
+			throws IOException, UnknownHostException, ConnectTimeoutException
+		{
+			HttpConnectionParams timed = new HttpConnectionParams();
+			timed.setDefaults(params);
+			timed.setConnectionTimeout(connectionTimeout);
+
+			return factory.createSocket(host, port, localAddress, localPort, timed);
+		}
+
+		public boolean equals(Object o)
+		{
+			if (o == null || o.getClass() != getClass())
+				return false;
+
+			TimedSocketFactory f = (TimedSocketFactory) o;
+
+			return factory.equals(f.factory) && connectionTimeout == f.connectionTimeout;
+		}
+
+		public int hashCode()
+		{
+			return factory.hashCode() * 31 + connectionTimeout;
+		}
+
+		final ProtocolSocketFactory factory;
+		final int connectionTimeout;
+	}
+
+	//---------------------------------------------------------------------------
+
+	private static final class TimedSecureSocketFactory extends TimedSocketFactory
+																		 implements SecureProtocolSocketFactory
+	{
+		TimedSecureSocketFactory(SecureProtocolSocketFactory factory, int connectionTimeout)
+		{
+			super(factory, connectionTimeout);
+		}
+
+		public Socket createSocket(Socket socket, String host, int port, boolean autoClose)
+			throws IOException, UnknownHostException
+		{
+			return ((SecureProtocolSocketFactory) factory).createSocket(socket, host, port, autoClose);
+		}
+	}
+
+	//---------------------------------------------------------------------------
+	//---
+	//--- Variables
+	//---
+	//---------------------------------------------------------------------------
+
+	private static final Map<String, Protocol> protocols = new HashMap<String, Protocol>();
+
+	private static final CountingConnectionManager manager = new CountingConnectionManager();
+
+	private static IdleConnectionTimeoutThread idleThread;
+
+	static
+	{
+		configure(DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS_PER_HOST,
+					 DEFAULT_CONNECTION_TIMEOUT, DEFAULT_IDLE_TIMEOUT);
+	}
+}
+
+//=============================================================================
@@ -60,6 +60,7 @@ public final class Log
 	public static final String DBMSPOOL = JEEVES + ".dbmspool";
 	public static final String XLINK_PROCESSOR = JEEVES + ".xlinkprocessor";
 	public static final String XML_RESOLVER = JEEVES + ".xmlresolver";
+	public static final String XML_REQUEST = JEEVES + ".xmlrequest";
 	public static final String TRANSFORMER_FACTORY = JEEVES
 			+ ".transformerFactory";
 
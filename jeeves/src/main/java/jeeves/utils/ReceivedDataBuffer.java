@@ -0,0 +1,93 @@
+//=============================================================================
+//===	Copyright (C) 2001-2005 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This library is free software; you can redistribute it and/or
+//===	modify it under the terms of the GNU Lesser General Public
+//===	License as published by the Free Software Foundation; either
+//===	version 2.1 of the License, or (at your option) any later version.
+//===
+//===	This library is distributed in the hope that it will be useful,
+//===	but WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//===	Lesser General Public License for more details.
+//===
+//===	You should have received a copy of the GNU Lesser General Public
+//===	License along with this library; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: GeoNetwork@fao.org
+//==============================================================================
+
+package jeeves.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+
+//=============================================================================
+
+/** Copy of the first bytes of a response body, kept for debugging while the
+  * body is parsed from the connection. The bytes past the limit are counted
+  * but not kept, so a large response never gets buffered as a whole.
+  */
+
+public final class ReceivedDataBuffer extends ByteArrayOutputStream
+{
+	/** Bytes of a response body kept at most */
+	public static final int MAX_SIZE = 64 * 1024;
+
+	//---------------------------------------------------------------------------
+
+	public ReceivedDataBuffer()
+	{
+		super(1024);
+	}
+
+	//---------------------------------------------------------------------------
+	//---
+	//--- API methods
+	//---
+	//---------------------------------------------------------------------------
+
+	public synchronized void write(int b)
+	{
+		if (count < MAX_SIZE)
+			super.write(b);
+
+		total++;
+	}
+
+	//---------------------------------------------------------------------------
+
+	public synchronized void write(byte[] b, int off, int len)
+	{
+		int kept = Math.max(0, Math.min(len, MAX_SIZE - count));
+
+		if (kept > 0)
+			super.write(b, off, kept);
+
+		total += len;
+	}
+
+	//---------------------------------------------------------------------------
+	/** Returns the bytes kept as text, followed by a note if the body was longer */
+
+	public synchronized String toString(String charsetName) throws UnsupportedEncodingException
+	{
+		String text = super.toString(charsetName);
+
+		return (total > count) ? text +"\n... ("+ (total - count) +" more bytes not kept)" : text;
+	}
+
+	//---------------------------------------------------------------------------
+	//---
+	//--- Variables
+	//---
+	//---------------------------------------------------------------------------
+
+	private long total;
+}
+
+//=============================================================================
@@ -64,10 +64,12 @@ public class TransformerFactoryFactory {
     		debug("TransformerFactoryFactory is null. Initializing ...");
     		init(null);
     	}
-        debug("TransformerFactoryFactory: "
-        		    + factory.getClass().getName() 
-        			+ " produces transformer implementation " 
-        			+ factory.newTransformer().getClass().getName());
+        if (Log.isDebugEnabled(Log.TRANSFORMER_FACTORY)) {
+            debug("TransformerFactoryFactory: "
+            		    + factory.getClass().getName() 
+            			+ " produces transformer implementation " 
+            			+ factory.newTransformer().getClass().getName());
+        }
         return factory;
     }
 
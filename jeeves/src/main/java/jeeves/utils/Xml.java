@@ -27,6 +27,7 @@ import jeeves.constants.Jeeves;
 import jeeves.exceptions.XSDValidationErrorEx;
 import net.sf.saxon.Configuration;
 import net.sf.saxon.FeatureKeys;
+import net.sf.saxon.TransformerFactoryImpl;
 import net.sf.json.JSON;
 import net.sf.json.xml.XMLSerializer;
 
@@ -57,6 +58,7 @@ import javax.xml.XMLConstants;
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.URIResolver;
@@ -91,9 +93,19 @@ import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CharsetEncoder;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 //=============================================================================
 
@@ -105,6 +117,18 @@ public final class Xml
 
 	public static final Namespace xsiNS = Namespace.getNamespace("xsi", XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI);
 
+	private static final ConcurrentMap<String, CompiledSchema> compiledSchemas = new ConcurrentHashMap<String, CompiledSchema>();
+	/** Maximum number of sets of schemaLocation hints whose schema is kept */
+	private static final int MAX_HINTS_SCHEMAS = 32;
+	private static final Map<String, Schema> hintsSchemas = new LinkedHashMap<String, Schema>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(Map.Entry<String, Schema> eldest) {
+			return size() > MAX_HINTS_SCHEMAS;
+		}
+	};
+	private static volatile TransformerFactory configuredTransformerFactory;
+
    //--------------------------------------------------------------------------
 
     /**
@@ -125,6 +149,55 @@ public final class Xml
         return builder;
     }
 
+    /**
+     * Non validating builders. A builder keeps its underlying parser (reuseParser is the default), so neither the
+     * builder nor the parser are created and configured again for each document.
+     */
+    private static final BuilderPool builders = new BuilderPool(false);
+
+    /**
+     * Non validating builders that do not load the external DTDs, for {@link #loadStream}.
+     */
+    private static final BuilderPool streamBuilders = new BuilderPool(true);
+
+    /**
+     * Idle builders shared by the threads. The pool is bounded and held by this class only (not by the threads as a
+     * thread local would be), so the builders of the request threads of the container do not keep the webapp loaded
+     * once it is stopped.
+     */
+    private static final class BuilderPool {
+        private static final int SIZE = 2 * Runtime.getRuntime().availableProcessors();
+
+        private final BlockingQueue<SAXBuilder> idle = new ArrayBlockingQueue<SAXBuilder>(SIZE);
+        private final boolean skipExternalDtd;
+
+        BuilderPool(boolean skipExternalDtd) {
+            this.skipExternalDtd = skipExternalDtd;
+        }
+
+        /**
+         * @return an idle builder, or a new one if there is none
+         */
+        SAXBuilder acquire() {
+            SAXBuilder builder = idle.poll();
+            if (builder == null) {
+                builder = getSAXBuilderWithoutXMLResolver(false);
+                if (skipExternalDtd) {
+                    builder.setFeature("http://apache.org/xml/features/validation/schema",false);
+                    builder.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd",false);
+                }
+            }
+            return builder;
+        }
+
+        /**
+         * Gives back a builder once its document is built, it is dropped if the pool is full.
+         */
+        void release(SAXBuilder builder) {
+            idle.offer(builder);
+        }
+    }
+
 	//--------------------------------------------------------------------------
 
     /**
@@ -133,6 +206,7 @@ public final class Xml
 	public static void resetResolver() {
 		Resolver resolver = ResolverWrapper.getInstance();
 		resolver.reset();
+		clearSchemaCache();
 	}
 
 	//--------------------------------------------------------------------------
@@ -219,8 +293,6 @@ public final class Xml
      */
 	public static Element loadFile(File file) throws IOException, JDOMException
 	{
-		SAXBuilder builder = getSAXBuilderWithoutXMLResolver(false); //new SAXBuilder();
-
 		String convert = System.getProperty("jeeves.filecharsetdetectandconvert");
 
 		// detect charset and convert if required
@@ -230,8 +302,13 @@ public final class Xml
 
 		// no charset detection and conversion allowed
 		} else { 
-			Document   jdoc    = builder.build(file);
-			return (Element) jdoc.getRootElement().detach();
+			SAXBuilder builder = builders.acquire();
+			try {
+				Document jdoc = builder.build(file);
+				return (Element) jdoc.getRootElement().detach();
+			} finally {
+				builders.release(builder);
+			}
 		}
 
 	}
@@ -338,10 +415,21 @@ public final class Xml
 												throws IOException, JDOMException
 	{
 		//SAXBuilder builder = new SAXBuilder(validate);
-		SAXBuilder builder = getSAXBuilderWithoutXMLResolver(validate); // oasis catalogs are used
-		Document   jdoc    = builder.build(new StringReader(data));
+		if (validate) {
+			SAXBuilder builder = getSAXBuilderWithoutXMLResolver(true); // oasis catalogs are used
+			Document   jdoc    = builder.build(new StringReader(data));
 
-		return (Element) jdoc.getRootElement().detach();
+			return (Element) jdoc.getRootElement().detach();
+		}
+
+		SAXBuilder builder = builders.acquire();
+		try {
+			Document jdoc = builder.build(new StringReader(data));
+
+			return (Element) jdoc.getRootElement().detach();
+		} finally {
+			builders.release(builder);
+		}
 	}
 
 	//--------------------------------------------------------------------------
@@ -356,12 +444,14 @@ public final class Xml
      */
 	public static Element loadStream(InputStream input) throws IOException, JDOMException
 	{
-		SAXBuilder builder = getSAXBuilderWithoutXMLResolver(false); //new SAXBuilder();
-		builder.setFeature("http://apache.org/xml/features/validation/schema",false);
-		builder.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd",false);
-		Document   jdoc    = builder.build(input);
+		SAXBuilder builder = streamBuilders.acquire();
+		try {
+			Document jdoc = builder.build(input);
 
-		return (Element) jdoc.getRootElement().detach();
+			return (Element) jdoc.getRootElement().detach();
+		} finally {
+			streamBuilders.release(builder);
+		}
 	}
 
 	//--------------------------------------------------------------------------
@@ -517,15 +607,93 @@ public final class Xml
      */
 	public static void transform(Element xml, String styleSheetPath, Result result, Map<String,String> params) throws Exception
 	{
-		File styleSheet = new File(styleSheetPath);
 		Source srcXml   = new JDOMSource(new Document((Element)xml.detach()));
+		transform(srcXml, styleSheetPath, result, params);
+	}
+
+	//--------------------------------------------------------------------------
+
+    /**
+     * Builds a read only copy of an xml tree, that can be transformed by several threads at the same time with
+     * {@link #transform(Source, String, Map)}. The copy is built in the native tree of the transformer so the xml is
+     * not converted again for each transformation.
+     *
+     * @param xml
+     * @return the copy or null if the transformer factory is not Saxon
+     * @throws Exception
+     */
+	public static Source buildSharedTree(Element xml) throws Exception
+	{
+		TransformerFactory transFact = transformerFactory();
+		if (!(transFact instanceof TransformerFactoryImpl)) {
+			return null;
+		}
+		Source srcXml = new JDOMSource(new Document((Element)xml.detach()));
+		return ((TransformerFactoryImpl) transFact).getConfiguration().buildDocument(srcXml);
+	}
+
+	//--------------------------------------------------------------------------
+
+    /**
+     * Transforms an xml source into a tree using a stylesheet on disk and pass parameters.
+     *
+     * @param srcXml
+     * @param styleSheetPath
+     * @param params
+     * @return
+     * @throws Exception
+     */
+	public static Element transform(Source srcXml, String styleSheetPath, Map<String,String> params) throws Exception
+	{
+		JDOMResult resXml = new JDOMResult();
+		transform(srcXml, styleSheetPath, resXml, params);
+		return (Element)resXml.getDocument().getRootElement().detach();
+	}
+
+	//--------------------------------------------------------------------------
+
+    /**
+     * Transforms an xml source putting the result to a stream with optional parameters.
+     *
+     * @param srcXml
+     * @param styleSheetPath
+     * @param result
+     * @param params
+     * @throws Exception
+     */
+	public static void transform(Source srcXml, String styleSheetPath, Result result, Map<String,String> params) throws Exception
+	{
+		File styleSheet = new File(styleSheetPath);
 		Source srcSheet = new StreamSource(styleSheet);
 
+		Transformer t = transformerFactory().newTransformer(srcSheet);
+		if (params != null) {
+			for (Map.Entry<String,String> param : params.entrySet()) {
+				t.setParameter(param.getKey(),param.getValue());
+			}
+		}
+		t.transform(srcXml, result);
+	}
+
+	//--------------------------------------------------------------------------
+
+    /**
+     * Returns the transformer factory, setting its resolver and attributes the first time it is used rather than on
+     * each transformation (the factory is shared by all the threads).
+     *
+     * @return
+     * @throws TransformerConfigurationException
+     */
+	private static TransformerFactory transformerFactory() throws TransformerConfigurationException
+	{
+		TransformerFactory transFact = TransformerFactoryFactory.getTransformerFactory();
+		if (transFact == configuredTransformerFactory) {
+			return transFact;
+		}
+		transFact.setURIResolver(new JeevesURIResolver());
 		// Dear old saxon likes to yell loudly about each and every XSLT 1.0
 		// stylesheet so switch it off but trap any exceptions because this
 		// code is run on transformers other than saxon 
-		TransformerFactory transFact = TransformerFactoryFactory.getTransformerFactory();
-		transFact.setURIResolver(new JeevesURIResolver());
 		try {
 			transFact.setAttribute(FeatureKeys.VERSION_WARNING,false);
 			transFact.setAttribute(FeatureKeys.LINE_NUMBERING,true);
@@ -536,15 +704,46 @@ public final class Xml
 		} catch (IllegalArgumentException e) {
 		    Log.warning(Log.ENGINE, "WARNING: transformerfactory doesnt like saxon attributes!");
 			//e.printStackTrace();
-		} finally {
-			Transformer t = transFact.newTransformer(srcSheet);
-			if (params != null) {
-				for (Map.Entry<String,String> param : params.entrySet()) {
-					t.setParameter(param.getKey(),param.getValue());
-				}
+		}
+		configuredTransformerFactory = transFact;
+		return transFact;
+	}
+
+	//--------------------------------------------------------------------------
+
+    /**
+     * Compiles stylesheets in background threads so that the first transformations with them do not have to wait for
+     * the compilation. This is only useful with a caching transformer factory. Stylesheets that can not be compiled
+     * are skipped.
+     *
+     * @param styleSheets
+     */
+	public static void precompileStylesheets(final List<File> styleSheets)
+	{
+		int threads = Math.min(Runtime.getRuntime().availableProcessors(), Math.max(1, styleSheets.size()));
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "xslt-precompile");
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
 			}
-			t.transform(srcXml, result);
+		});
+		Log.info(Log.ENGINE, "Precompiling " + styleSheets.size() + " stylesheets with " + threads + " threads");
+		for (final File styleSheet : styleSheets) {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						transformerFactory().newTransformer(new StreamSource(styleSheet));
+					} catch (Exception e) {
+						if (Log.isDebugEnabled(Log.ENGINE))
+							Log.debug(Log.ENGINE, "Can't precompile " + styleSheet + ": " + e.getMessage());
+					}
+				}
+			});
 		}
+		// the threads end once all the stylesheets are compiled
+		executor.shutdown();
 	}
 
 	//--------------------------------------------------------------------------
@@ -591,31 +790,20 @@ public final class Xml
    Fop fop = fopFactory.newFop(MimeConstants.MIME_PDF, out);
 
    // Step 4: Setup JAXP using identity transformer
-   TransformerFactory factory = TransformerFactoryFactory.getTransformerFactory();
-	 factory.setURIResolver(new JeevesURIResolver());
+   TransformerFactory factory = transformerFactory();
    Source xslt = new StreamSource(new File(styleSheetPath));
-		try {
-			factory.setAttribute(FeatureKeys.VERSION_WARNING,false);
-			factory.setAttribute(FeatureKeys.LINE_NUMBERING,true);
-			factory.setAttribute(FeatureKeys.RECOVERY_POLICY,Configuration.RECOVER_SILENTLY);
-		} catch (IllegalArgumentException e) {
-		    Log.warning(Log.ENGINE, "WARNING: transformerfactory doesnt like saxon attributes!");
-			//e.printStackTrace();
-		} finally {
-   		Transformer transformer = factory.newTransformer(xslt);
+   Transformer transformer = factory.newTransformer(xslt);
 
-   		// Step 5: Setup input and output for XSLT transformation
-   		// Setup input stream
-			Source src = new JDOMSource(new Document((Element)xml.detach()));
-   
-   		// Resulting SAX events (the generated FO) must be piped through to
-   		// FOP
-   		Result res = new SAXResult(fop.getDefaultHandler());
+   // Step 5: Setup input and output for XSLT transformation
+   // Setup input stream
+   Source src = new JDOMSource(new Document((Element)xml.detach()));
 
-   		// Step 6: Start XSLT transformation and FOP processing
-      transformer.transform(src, res);
-		}
+   // Resulting SAX events (the generated FO) must be piped through to
+   // FOP
+   Result res = new SAXResult(fop.getDefaultHandler());
 
+   // Step 6: Start XSLT transformation and FOP processing
+   transformer.transform(src, res);
    }
    finally {
        // Clean-up
@@ -1032,7 +1220,7 @@ public final class Xml
      * @param doc
      * @throws Exception
      */
-	public synchronized static void validate(Document doc) throws Exception {
+	public static void validate(Document doc) throws Exception {
 		if (doc.getDocType() != null) { // assume DTD validation
 			SAXBuilder builder = getSAXBuilder(true);	
 			builder.build(new StringReader(getString(doc))); 
@@ -1058,8 +1246,8 @@ public final class Xml
      * @param xml
      * @throws Exception
      */
-	public synchronized static void validate(Element xml) throws Exception {
-		Schema schema = factory().newSchema();
+	public static void validate(Element xml) throws Exception {
+		Schema schema = hintsSchema(xml);
 		ErrorHandler eh = new ErrorHandler();
 		validateRealGuts(schema, xml, eh);
 		if (eh.errors()) {
@@ -1095,7 +1283,7 @@ public final class Xml
     public static Element validateInfo(Element xml) throws Exception
 	{
 		ErrorHandler eh = new ErrorHandler();
-		Schema schema = factory().newSchema();
+		Schema schema = hintsSchema(xml);
 		validateRealGuts(schema, xml, eh);
 		if (eh.errors()) {
 			return eh.getXPaths();
@@ -1116,7 +1304,7 @@ public final class Xml
      */
 	public static Element validateInfo(Element xml, ErrorHandler eh) throws Exception
 	{
-		Schema schema = factory().newSchema();
+		Schema schema = hintsSchema(xml);
 		validateRealGuts(schema, xml, eh);
 		if (eh.errors()) {
 			return eh.getXPaths();
@@ -1178,13 +1366,147 @@ public final class Xml
      * @throws Exception
      */
 	private static void validateGuts(String schemaPath, Element xml, ErrorHandler eh) throws Exception {
-		StreamSource schemaFile = new StreamSource(new File(schemaPath));
-		Schema schema = factory().newSchema(schemaFile);
+		Schema schema = compiledSchema(schemaPath);
 		validateRealGuts(schema, xml, eh);
 	}
 
 	//---------------------------------------------------------------------------
 
+    /**
+     * Returns the schema compiled from an .xsd file, compiling it only the first time or when the file has been
+     * modified since. The modification time of the given file is checked at most every few seconds, and not for the
+     * files it includes or imports: the cache is cleared by {@link #clearSchemaCache()} (called when the resolver
+     * catalogs are reset, e.g. when the schema manager adds or updates a schema).
+     *
+     * @param schemaPath
+     * @return
+     * @throws SAXException
+     */
+	private static Schema compiledSchema(String schemaPath) throws SAXException {
+		File schemaFile = new File(schemaPath).getAbsoluteFile();
+		String key = schemaFile.getPath();
+		CompiledSchema compiled = compiledSchemas.get(key);
+		if (compiled == null) {
+			CompiledSchema fresh = new CompiledSchema(schemaFile);
+			compiled = compiledSchemas.putIfAbsent(key, fresh);
+			if (compiled == null) {
+				compiled = fresh;
+			}
+		} else if (compiled.isModified()) {
+			CompiledSchema fresh = new CompiledSchema(schemaFile);
+			compiled = compiledSchemas.replace(key, compiled, fresh) ? fresh : compiledSchemas.get(key);
+			if (compiled == null) {
+				// cleared in the meantime
+				compiled = fresh;
+			}
+		}
+		return compiled.get();
+	}
+
+	//---------------------------------------------------------------------------
+
+    /**
+     * Returns the schema used to validate a document with respect to its schemaLocation hints. The grammars loaded
+     * from the hints are kept by the schema (as long as memory allows) so they are not loaded and parsed again for
+     * each document. The schema caches the grammars by namespace, so one schema is kept for each set of hints: a
+     * document pointing a namespace to another location gets its own schema.
+     *
+     * @param xml
+     * @return
+     * @throws SAXException
+     */
+	private static Schema hintsSchema(Element xml) throws SAXException {
+		String key = hintsKey(xml);
+		synchronized (hintsSchemas) {
+			Schema schema = hintsSchemas.get(key);
+			if (schema == null) {
+				schema = factory().newSchema();
+				hintsSchemas.put(key, schema);
+			}
+			return schema;
+		}
+	}
+
+	//---------------------------------------------------------------------------
+
+    /**
+     * Returns the schemaLocation and noNamespaceSchemaLocation hints of a document, whatever their order.
+     *
+     * @param xml
+     * @return
+     */
+	private static String hintsKey(Element xml) {
+		SortedSet<String> hints = new TreeSet<String>();
+		String schemaLocation = xml.getAttributeValue("schemaLocation", xsiNS);
+		if (schemaLocation != null) {
+			String[] tokens = schemaLocation.trim().split("\\s+");
+			for (int i = 0; i + 1 < tokens.length; i += 2) {
+				hints.add(tokens[i] + " " + tokens[i + 1]);
+			}
+		}
+		String noNamespaceSchemaLocation = xml.getAttributeValue("noNamespaceSchemaLocation", xsiNS);
+		if (noNamespaceSchemaLocation != null) {
+			hints.add(" " + noNamespaceSchemaLocation.trim());
+		}
+		return hints.toString();
+	}
+
+	//---------------------------------------------------------------------------
+
+    /**
+     * Drops the compiled schemas, so that the next validations read the xml schemas again.
+     */
+	public static void clearSchemaCache() {
+		compiledSchemas.clear();
+		synchronized (hintsSchemas) {
+			hintsSchemas.clear();
+		}
+	}
+
+	//---------------------------------------------------------------------------
+
+	/**
+	 * An xml schema compiled once by the first thread that needs it. {@link Schema} objects are immutable and thread
+	 * safe, each validation creates its own {@link ValidatorHandler}.
+	 */
+	private static final class CompiledSchema {
+		/** Minimum time between two checks of the modification time of the file, in ms. */
+		private static final long CHECK_INTERVAL = 5000;
+
+		private final File file;
+		private final long lastModified;
+		private volatile long nextCheck;
+		private Schema schema;
+
+		CompiledSchema(File file) {
+			this.file = file;
+			this.lastModified = file.lastModified();
+			this.nextCheck = System.currentTimeMillis() + CHECK_INTERVAL;
+		}
+
+		/**
+		 * Checks the file at most once every {@link #CHECK_INTERVAL} ms, a validation in between uses the schema as
+		 * it is.
+		 */
+		boolean isModified() {
+			long now = System.currentTimeMillis();
+			if (now < nextCheck) {
+				return false;
+			}
+			nextCheck = now + CHECK_INTERVAL;
+			return file.lastModified() != lastModified;
+		}
+
+		synchronized Schema get() throws SAXException {
+			if (schema == null) {
+				schema = factory().newSchema(new StreamSource(file));
+			}
+			return schema;
+		}
+	}
+
+	//---------------------------------------------------------------------------
+
     /**
      * Called by all validation methods to do the real guts of the validation job.
      * @param schema
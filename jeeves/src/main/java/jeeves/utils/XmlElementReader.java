@@ -69,7 +69,7 @@ public class XmlElementReader implements Iterator<Element> {
     // Constructor
     //  
     // @param source		XML document as an input stream
-    // @param path 			simple path expression for matching element paths (e.g gml:featureMembers/*) (not an XPath!) 
+    // @param path 			simple path expression for matching element paths (e.g gml:featureMembers/* or *:featureMembers/*) (not an XPath!) 
 	// @param namespaces	namespace prefixes used in path
     //
 
@@ -82,6 +82,49 @@ public class XmlElementReader implements Iterator<Element> {
 		findNext();
 	}
 
+	//---------------------------------------------------------------------------
+
+	private XmlElementReader(XMLEventReader reader, MatchExpression matchExpression) {
+		this.reader = reader;
+		this.matchExpression = matchExpression;
+		this.elementNameStack = new Stack<QName>();
+	}
+
+	//---------------------------------------------------------------------------
+	/**
+	 * Receives the elements read from a document stream by {@link XmlElementReader#read}
+	 */
+
+	public interface Handler {
+		void handleElement(Element element) throws Exception;
+	}
+
+	//---------------------------------------------------------------------------
+	/**
+	 * Read a whole document from a stream (e.g. an http response), handing each element
+	 * matching the path expression to the handler as soon as its end tag is read. Only
+	 * one matching element at a time is held in memory: the matching elements are not
+	 * added to the returned document, which keeps the other elements, their attributes
+	 * and text (e.g. the csw:SearchResults element and its attributes or an OAI
+	 * resumptionToken). Whitespace only text outside of the matching elements is dropped.
+	 *
+	 * @param source		XML document as an input stream
+	 * @param path 			simple path expression for matching element paths (not an XPath!)
+	 * @param namespaces	namespace prefixes used in path
+	 * @param handler		receives the matching elements, its exceptions are rethrown
+	 * @return the root element of the document without the matching elements
+	 */
+
+	public static Element read(InputStream source, String path, List<org.jdom.Namespace> namespaces, Handler handler) throws Exception {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+
+		XmlElementReader reader = new XmlElementReader(factory.createXMLEventReader(source), new MatchExpression(path, namespaces));
+
+		return reader.readDocument(handler);
+	}
+
 	//---------------------------------------------------------------------------
 	/**
 	 * Check if there are any more elements of the required type to be read from the stream
@@ -139,6 +182,67 @@ public class XmlElementReader implements Iterator<Element> {
 		}
     }
 
+	//---------------------------------------------------------------------------
+	/**
+	 * Read all the events of the stream, building the elements not matching the match
+	 * expression and handing the matching ones to the handler
+	 */
+
+	private Element readDocument(Handler handler) throws Exception {
+		Element root = null;
+		Stack<Element> parents = new Stack<Element>();
+
+		try {
+			while (reader.hasNext()) {
+				currentEvent = reader.nextEvent();
+
+				switch (currentEvent.getEventType()) {
+					case XMLStreamConstants.START_ELEMENT:
+						elementNameStack.push(currentEvent.asStartElement().getName());
+
+						if (matchExpression.matches(elementNameStack.toArray(new QName[0]))) {
+							elementNameStack.pop();
+							handler.handleElement(readElement());
+						} else {
+							Element element = createElement(currentEvent);
+
+							if (parents.isEmpty()) {
+								root = element;
+							} else {
+								parents.peek().addContent(element);
+							}
+
+							parents.push(element);
+						}
+						break;
+
+					case XMLStreamConstants.END_ELEMENT:
+						elementNameStack.pop();
+						parents.pop();
+						break;
+
+					case XMLStreamConstants.CDATA:
+					case XMLStreamConstants.CHARACTERS:
+						if (!parents.isEmpty() && !currentEvent.asCharacters().isWhiteSpace()) {
+							parents.peek().addContent(new Text(currentEvent.asCharacters().getData()));
+						}
+						break;
+
+					default:
+						break;
+				}
+			}
+		} catch (NoSuchElementException e) {
+			// readElement reads through the Iterator interface of the event reader,
+			// which reports the parse errors this way
+			throw new XMLStreamException(e.getMessage());
+		} finally {
+			reader.close();
+		}
+
+		return root;
+	}
+
 	//---------------------------------------------------------------------------
     /**
      * Read an element from the stream processing all events for the element
@@ -364,6 +468,8 @@ public class XmlElementReader implements Iterator<Element> {
 		public static NameTest newTest(String nameTest, List<org.jdom.Namespace> namespaces) {
 	        if (nameTest.equals("*")) {
 	        	return new WildcardTest();
+	        } else if (nameTest.startsWith("*:")) {
+	        	return new LocalNameTest(nameTest.substring(2));
 	        } else {
 	        	return new EqualityTest(nameTest, namespaces);
 	        }
@@ -380,6 +486,20 @@ public class XmlElementReader implements Iterator<Element> {
 		public boolean matches(QName name) {return true;}
 	}
 	 
+	/**
+	 * Local name test (*:name) - local name must match, in any namespace
+	 */
+	
+	private static class LocalNameTest extends NameTest {
+		private String localName;
+		
+		public LocalNameTest(String localName) {
+			this.localName = localName;
+		}
+		
+		public boolean matches(QName name) {return localName.equals(name.getLocalPart());}
+	}
+	 
 	/**
 	 * Equality test - local name and namespace if any must match 
 	 */
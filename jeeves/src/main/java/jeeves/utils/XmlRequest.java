@@ -46,12 +46,14 @@ import org.apache.commons.httpclient.methods.multipart.Part;
 import org.apache.commons.httpclient.methods.multipart.StringPart;
 import org.apache.commons.httpclient.protocol.Protocol;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.TeeInputStream;
 import org.jdom.Document;
 import org.jdom.Element;
 import org.jdom.JDOMException;
 import org.jdom.Namespace;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -62,6 +64,8 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.xml.stream.XMLStreamException;
+
 //=============================================================================
 
 public class XmlRequest
@@ -126,8 +130,25 @@ public class XmlRequest
 	public String getAddress()      { return address;      }
 	public Method getMethod()       { return method;       }
 	public String getSentData()     { return sentData;     }
+
+	/** Returns the status and headers of the last response, followed by the
+	  * first bytes of its body if they were kept (see setKeepReceivedData).
+	  */
 	public String getReceivedData() { return receivedData; }
 
+	//---------------------------------------------------------------------------
+	/** Keeps a copy of the first bytes (ReceivedDataBuffer.MAX_SIZE) of the body
+	  * of the responses for getReceivedData and for the message of
+	  * BadXmlResponseEx, for debugging. They are also kept when the debug level
+	  * of Log.XML_REQUEST is enabled. Otherwise the responses are parsed straight
+	  * from the connection and their body is not retained.
+	  */
+
+	public void setKeepReceivedData(boolean yesno)
+	{
+		keepReceivedData = yesno;
+	}
+
 	//---------------------------------------------------------------------------
 
 	public void setHost(String host)
@@ -181,6 +202,26 @@ public class XmlRequest
 		useProxy = yesno;
 	}
 
+	//---------------------------------------------------------------------------
+	/** Time allowed to open a connection to the host, in milliseconds. By default
+	  * the connect timeout of HttpConnectionPool is used.
+	  */
+
+	public void setConnectTimeout(int millis)
+	{
+		connectTimeout = millis;
+	}
+
+	//---------------------------------------------------------------------------
+	/** Time allowed to wait for data from the host, in milliseconds. By default
+	  * there is no read timeout.
+	  */
+
+	public void setReadTimeout(int millis)
+	{
+		readTimeout = millis;
+	}
+
 	//---------------------------------------------------------------------------
 
 	public void setProxyHost(String host)
@@ -263,6 +304,29 @@ public class XmlRequest
 		return response;
 	}
 
+	//---------------------------------------------------------------------------
+	/** Sends a request like execute() but hands each element of the response
+	  * matching the path to the handler as soon as it is parsed, so that large
+	  * responses (e.g. a page of csw:Record elements) are never held as a whole.
+	  * Returns the response without the matching elements.
+	  *
+	  * @param path       simple path expression (e.g. csw:SearchResults/*), see XmlElementReader
+	  * @param namespaces namespace prefixes used in path
+	  * @param handler    receives the matching elements, its exceptions are rethrown
+	  */
+
+	public Element execute(String path, List<Namespace> namespaces, XmlElementReader.Handler handler) throws Exception
+	{
+		HttpMethodBase httpMethod = setupHttpMethod();
+
+		Element response = doExecute(httpMethod, path, namespaces, handler);
+
+		if (useSOAP)
+			response = soapUnembed(response);
+
+		return response;
+	}
+
 	//---------------------------------------------------------------------------
 	/** Sends a request (using GET or POST) and save the content to a file. This
 	  * method does not store received data.
@@ -327,35 +391,42 @@ public class XmlRequest
 
 	private Element doExecute(HttpMethodBase httpMethod) throws IOException, BadXmlResponseEx
 	{
-		config.setHost(host, port, Protocol.getProtocol(protocol));
+		ByteArrayOutputStream data = keepsReceivedData() ? new ReceivedDataBuffer() : null;
 
-		if (useProxy)
-			config.setProxy(proxyHost, proxyPort);
+		try
+		{
+			return Xml.loadStream(getResponseStream(httpMethod, data));
+		}
 
-		byte[] data = null;
+		catch(JDOMException e)
+		{
+			throw new BadXmlResponseEx(data != null ? data.toString("UTF8") : e.getMessage());
+		}
+
+		finally
+		{
+			httpMethod.releaseConnection();
+
+			sentData     = getSentData(httpMethod);
+			receivedData = getReceivedData(httpMethod, data);
+		}
+	}
+
+	//---------------------------------------------------------------------------
+
+	private Element doExecute(HttpMethodBase httpMethod, String path, List<Namespace> namespaces,
+									  XmlElementReader.Handler handler) throws Exception
+	{
+		ByteArrayOutputStream data = keepsReceivedData() ? new ReceivedDataBuffer() : null;
 
 		try
 		{
-			client.executeMethod(httpMethod);
-			data = httpMethod.getResponseBody();
-
-			// HttpClient is unable to automatically handle redirects of entity
-			// enclosing methods such as POST and PUT.
-			// Get the location header and run the request against it.
-			String redirectLocation;
-			Header locationHeader = httpMethod.getResponseHeader("location");
-			if (locationHeader != null) {
-			    redirectLocation = locationHeader.getValue();
-			    httpMethod.setPath(redirectLocation);
-			    client.executeMethod(httpMethod);
-			    data = httpMethod.getResponseBody();
-			}
-			return Xml.loadStream(new ByteArrayInputStream(data));
+			return XmlElementReader.read(getResponseStream(httpMethod, data), path, namespaces, handler);
 		}
 
-		catch(JDOMException e)
+		catch(XMLStreamException e)
 		{
-			throw new BadXmlResponseEx(new String(data, "UTF8"));
+			throw new BadXmlResponseEx(data != null ? data.toString("UTF8") : e.getMessage());
 		}
 
 		finally
@@ -367,11 +438,45 @@ public class XmlRequest
 		}
 	}
 
+	//---------------------------------------------------------------------------
+	/** Executes the request and returns the body of the response as it is read
+	  * from the connection, copying it to data if not null.
+	  */
+
+	private InputStream getResponseStream(HttpMethodBase httpMethod, OutputStream data) throws IOException
+	{
+		config.setHost(host, port, getProtocol());
+
+		if (useProxy)
+			config.setProxy(proxyHost, proxyPort);
+
+		client.executeMethod(httpMethod);
+
+		// HttpClient is unable to automatically handle redirects of entity
+		// enclosing methods such as POST and PUT.
+		// Get the location header and run the request against it.
+		String redirectLocation;
+		Header locationHeader = httpMethod.getResponseHeader("location");
+		if (locationHeader != null) {
+		    httpMethod.getResponseBody();
+		    redirectLocation = locationHeader.getValue();
+		    httpMethod.setPath(redirectLocation);
+		    client.executeMethod(httpMethod);
+		}
+
+		InputStream in = HttpConnectionPool.getResponseBodyAsStream(httpMethod);
+
+		if (in == null)
+			in = new ByteArrayInputStream(new byte[0]);
+
+		return (data == null) ? in : new TeeInputStream(in, data);
+	}
+
 	//---------------------------------------------------------------------------
 
 	private File doExecuteLarge(HttpMethodBase httpMethod, File outFile) throws IOException
 	{
-		config.setHost(host, port, Protocol.getProtocol(protocol));
+		config.setHost(host, port, getProtocol());
 
 		if (useProxy)
 			config.setProxy(proxyHost, proxyPort);
@@ -383,7 +488,7 @@ public class XmlRequest
 		{
 			client.executeMethod(httpMethod);
 
-			is = httpMethod.getResponseBodyAsStream();
+			is = HttpConnectionPool.getResponseBodyAsStream(httpMethod);
 			os = new FileOutputStream(outFile);
 			
 			BinaryFile.copy(is, os);
@@ -441,6 +546,10 @@ public class XmlRequest
 
 		httpMethod.setPath(address);
 		httpMethod.setDoAuthentication(useAuthent());
+		HttpConnectionPool.acceptCompression(httpMethod);
+
+		if (readTimeout > 0)
+			httpMethod.getParams().setSoTimeout(readTimeout);
 
 		return httpMethod;
 	}
@@ -472,7 +581,7 @@ public class XmlRequest
 
 	//---------------------------------------------------------------------------
 
-	private String getReceivedData(HttpMethodBase httpMethod, byte[] response)
+	private String getReceivedData(HttpMethodBase httpMethod, ByteArrayOutputStream response)
 	{
 		StringBuilder receivedData = new StringBuilder();
 
@@ -490,7 +599,7 @@ public class XmlRequest
 			receivedData.append("\r\n");
 
 			if (response != null) {
-				receivedData.append(new String(response, "UTF8"));
+				receivedData.append(response.toString("UTF8"));
 			}
 		}
 		catch (Exception e)
@@ -533,6 +642,21 @@ public class XmlRequest
 		return list.get(0);
 	}
 
+	//---------------------------------------------------------------------------
+
+	private Protocol getProtocol()
+	{
+		return (connectTimeout > 0) ? HttpConnectionPool.getProtocol(protocol, connectTimeout)
+											 : Protocol.getProtocol(protocol);
+	}
+
+	//---------------------------------------------------------------------------
+
+	private boolean keepsReceivedData()
+	{
+		return keepReceivedData || Log.isDebugEnabled(Log.XML_REQUEST);
+	}
+
 	//---------------------------------------------------------------------------
 	
 	private boolean useAuthent() {
@@ -558,8 +682,10 @@ public class XmlRequest
 	private String  proxyHost;
 	private int     proxyPort;
 	private boolean proxyAuthent;
+	private int     connectTimeout;
+	private int     readTimeout;
 
-	private HttpClient client = new HttpClient();
+	private HttpClient client = new HttpClient(HttpConnectionPool.getConnectionManager());
 	private HttpState  state  = new HttpState();
 	private Cookie     cookie = new Cookie();
 
@@ -571,6 +697,7 @@ public class XmlRequest
 
 	private String sentData;
 	private String receivedData;
+	private boolean keepReceivedData;
 	private String postData;
 }
 
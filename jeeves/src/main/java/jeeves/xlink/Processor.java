@@ -1,9 +1,7 @@
 package jeeves.xlink;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.net.URL;
-import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -17,6 +15,7 @@ import jeeves.server.local.LocalServiceRequest;
 import jeeves.server.sources.ServiceRequest.InputMethod;
 import jeeves.utils.Log;
 import jeeves.utils.Xml;
+import jeeves.utils.XmlRequest;
 
 import org.apache.jcs.access.exception.CacheException;
 import org.jdom.Attribute;
@@ -42,6 +41,13 @@ public final class Processor {
 
 	private static final long ELAPSE_TIME = 30000;
 
+	/**
+    * Time allowed to connect to the host of a remote XLink and to wait for its data, in milliseconds.
+    */
+	private static final int CONNECT_TIMEOUT = 1000;
+
+	private static final int READ_TIMEOUT = 10000;
+
 	/**
     * Action to specify to remove all children off elements having an XLink.
     */
@@ -182,18 +188,22 @@ public final class Processor {
 					remoteFragment = srvContext.execute(request);
 				} else {
 					URL url = new URL(uri.replaceAll("&amp;", "&"));
-					
-					URLConnection conn = url.openConnection();
-					conn.setConnectTimeout(1000);
-				
-					BufferedInputStream in = new BufferedInputStream(conn.getInputStream());
-					try {
-						remoteFragment = Xml.loadStream(in);
-	                    if(Log.isDebugEnabled(Log.XLINK_PROCESSOR))
-	                        Log.debug(Log.XLINK_PROCESSOR,"Read:\n"+Xml.getString(remoteFragment));
-					} finally {
-						in.close();
+
+					// uses the pooled keep-alive connections of XmlRequest
+					XmlRequest req = new XmlRequest(url);
+					req.setConnectTimeout(CONNECT_TIMEOUT);
+					req.setReadTimeout(READ_TIMEOUT);
+					String proxyHost = System.getProperty("http.proxyHost");
+					String proxyPort = System.getProperty("http.proxyPort");
+					if (proxyHost != null && proxyHost.length() > 0 && proxyPort != null && proxyPort.length() > 0) {
+						req.setUseProxy(true);
+						req.setProxyHost(proxyHost);
+						req.setProxyPort(Integer.parseInt(proxyPort));
 					}
+
+					remoteFragment = req.execute();
+                    if(Log.isDebugEnabled(Log.XLINK_PROCESSOR))
+                        Log.debug(Log.XLINK_PROCESSOR,"Read:\n"+Xml.getString(remoteFragment));
 				}
 			} catch (Exception e) {	// MalformedURLException, IOException
 				synchronized(Processor.class) {
@@ -0,0 +1,96 @@
+package jeeves.utils;
+
+import java.io.StringReader;
+
+import javax.xml.XMLConstants;
+
+import org.jdom.input.SAXBuilder;
+
+/**
+ * Timing harness for the builder pool of {@link Xml}: parses the same record with {@link Xml#loadString(String,
+ * boolean)}, which reuses the pooled builders and their parser, and with a new builder for each document, as Xml did
+ * before. It is not a unit test (the timings depend on the machine), run it with the test classpath of the module:
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes:&lt;dependencies&gt; jeeves.utils.XmlParseBenchmark [documents] [threads]
+ * </pre>
+ *
+ * The defaults are 20000 documents and one thread per processor.
+ */
+public class XmlParseBenchmark {
+    private static final int ELEMENTS = 200;
+
+    public static void main(String[] args) throws Exception {
+        int documents = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        String xml = record();
+
+        // warm up both paths before measuring
+        run(documents / 10, threads, xml, true);
+        run(documents / 10, threads, xml, false);
+
+        long pooled = run(documents, threads, xml, true);
+        long fresh = run(documents, threads, xml, false);
+
+        System.out.println(documents + " documents of " + xml.length() + " chars, " + threads + " threads");
+        System.out.println("  pooled builders   : " + perSecond(documents, pooled) + " documents/s");
+        System.out.println("  builder per parse : " + perSecond(documents, fresh) + " documents/s");
+    }
+
+    /**
+     * @return the time spent parsing, in ns
+     */
+    private static long run(final int documents, int threads, final String xml, final boolean pooled)
+            throws Exception {
+        Thread[] workers = new Thread[threads];
+        final Exception[] error = new Exception[1];
+        for (int i = 0; i < threads; i++) {
+            final int count = documents / threads + (i < documents % threads ? 1 : 0);
+            workers[i] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < count; j++) {
+                            if (pooled) {
+                                Xml.loadString(xml, false);
+                            } else {
+                                SAXBuilder builder = new SAXBuilder(false);
+                                builder.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+                                builder.build(new StringReader(xml));
+                            }
+                        }
+                    } catch (Exception e) {
+                        synchronized (error) {
+                            error[0] = e;
+                        }
+                    }
+                }
+            });
+        }
+        long start = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        if (error[0] != null) {
+            throw error[0];
+        }
+        return elapsed;
+    }
+
+    private static long perSecond(int documents, long nanos) {
+        return documents * 1000000000L / Math.max(1, nanos);
+    }
+
+    private static String record() {
+        StringBuilder xml = new StringBuilder("<gmd:MD_Metadata xmlns:gmd=\"http://www.isotc211.org/2005/gmd\""
+                + " xmlns:gco=\"http://www.isotc211.org/2005/gco\">\n");
+        for (int i = 0; i < ELEMENTS; i++) {
+            xml.append("  <gmd:keyword><gco:CharacterString>keyword ").append(i)
+                    .append("</gco:CharacterString></gmd:keyword>\n");
+        }
+        return xml.append("</gmd:MD_Metadata>").toString();
+    }
+}
@@ -24,12 +24,17 @@
 package org.fao.oaipmh.requests;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URL;
 import java.util.ArrayList;
 
 import jeeves.constants.Jeeves;
+import jeeves.utils.HttpConnectionPool;
+import jeeves.utils.Log;
+import jeeves.utils.ReceivedDataBuffer;
 
 import org.apache.commons.httpclient.Cookie;
 import org.apache.commons.httpclient.Credentials;
@@ -45,6 +50,7 @@ import org.apache.commons.httpclient.cookie.CookiePolicy;
 import org.apache.commons.httpclient.methods.GetMethod;
 import org.apache.commons.httpclient.methods.PostMethod;
 import org.apache.commons.httpclient.protocol.Protocol;
+import org.apache.commons.io.input.TeeInputStream;
 import org.fao.oaipmh.util.Xml;
 import org.jdom.Element;
 import org.jdom.JDOMException;
@@ -99,8 +105,25 @@ public class Transport
 	public String getAddress()      { return address;      }
 	public Method getMethod()       { return method;       }
 	public String getSentData()     { return sentData;     }
+
+	/** Returns the status and headers of the last response, followed by the
+	  * first bytes of its body if they were kept (see setKeepReceivedData).
+	  */
 	public String getReceivedData() { return receivedData; }
 
+	//---------------------------------------------------------------------------
+	/** Keeps a copy of the first bytes (ReceivedDataBuffer.MAX_SIZE) of the body
+	  * of the responses for getReceivedData, for debugging. They are also kept
+	  * when the debug level of Log.XML_REQUEST is enabled. Otherwise the
+	  * responses are parsed straight from the connection and their body is not
+	  * retained.
+	  */
+
+	public void setKeepReceivedData(boolean yesno)
+	{
+		keepReceivedData = yesno;
+	}
+
 	//---------------------------------------------------------------------------
 
 	public void setHost(String host)
@@ -240,6 +263,7 @@ public class Transport
 
 		httpMethod.setPath(address);
 		httpMethod.setDoAuthentication(useAuthent());
+		HttpConnectionPool.acceptCompression(httpMethod);
 
 		return httpMethod;
 	}
@@ -253,19 +277,31 @@ public class Transport
 		if (useProxy)
 			config.setProxy(proxyHost, proxyPort);
 
-		byte[] data = null;
+		ByteArrayOutputStream data = (keepReceivedData || Log.isDebugEnabled(Log.XML_REQUEST))
+										? new ReceivedDataBuffer() : null;
 
 		try
 		{
 			client.executeMethod(httpMethod);
-			data = httpMethod.getResponseBody();
 
-			Element response = Xml.loadStream(new ByteArrayInputStream(data));
+			InputStream in = HttpConnectionPool.getResponseBodyAsStream(httpMethod);
+
+			if (in == null)
+				in = new ByteArrayInputStream(new byte[0]);
 
-			setupSentData(httpMethod);
-			setupReceivedData(httpMethod, data);
+			if (data != null)
+				in = new TeeInputStream(in, data);
 
-			return response;
+			try
+			{
+				return Xml.loadStream(in);
+			}
+			finally
+			{
+				// also kept when the response can't be parsed, to diagnose it
+				setupSentData(httpMethod);
+				setupReceivedData(httpMethod, data);
+			}
 		}
 		finally
 		{
@@ -292,7 +328,7 @@ public class Transport
 
 	//---------------------------------------------------------------------------
 
-	private void setupReceivedData(HttpMethodBase httpMethod, byte[] response)
+	private void setupReceivedData(HttpMethodBase httpMethod, ByteArrayOutputStream response)
 	{
 		receivedData = httpMethod.getStatusText() +"\r\r";
 
@@ -304,7 +340,7 @@ public class Transport
 		try
 		{
 			if (response != null)
-				receivedData += new String(response, Jeeves.ENCODING);
+				receivedData += response.toString(Jeeves.ENCODING);
 		}
 		catch (UnsupportedEncodingException e) {
 		    throw new RuntimeException(e);
@@ -334,7 +370,7 @@ public class Transport
 	private int     proxyPort;
 	private boolean proxyAuthent;
 
-	private HttpClient client = new HttpClient();
+	private HttpClient client = new HttpClient(HttpConnectionPool.getConnectionManager());
 	private HttpState  state  = new HttpState();
 	private Cookie     cookie = new Cookie();
 
@@ -346,6 +382,7 @@ public class Transport
 
 	private String sentData;
 	private String receivedData;
+	private boolean keepReceivedData;
 }
 
 //=============================================================================
@@ -23,32 +23,33 @@
 
 package org.fao.oaipmh.responses;
 
-import java.math.BigInteger;
-import java.security.SecureRandom;
-
-import org.fao.oaipmh.util.SearchResult;
-import org.fao.oaipmh.util.ISODate;
 import org.fao.oaipmh.OaiPmh;
 import org.fao.oaipmh.exceptions.BadResumptionTokenException;
 import org.fao.oaipmh.requests.TokenListRequest;
+import org.fao.oaipmh.util.ISODate;
 import org.jdom.Element;
 
 //=============================================================================
 
+/** Resumption token holding all the state of a list request: the arguments of
+  * the request and the position of the last record returned, given as its
+  * change date and id. The next page is the records following this position in
+  * the (change date, id) order, so the server keeps nothing between the pages
+  * and the token never expires.
+  */
 
 public class GeonetworkResumptionToken extends ResumptionToken
 {
-	
 	private Integer listSize;
 	private Integer cursor;
-	private Integer pos;
+	private int pos;
 	private String set ="";
 	private String from="";
 	private String until="";
 	private String prefix="";
+	private String changeDate="";
+	private String id="";
 	private Boolean isReset = false;
-	private String randomid;
-	private SearchResult res;
 	public static final String SEPARATOR = "/-/";
 	
 
@@ -64,7 +65,8 @@ public class GeonetworkResumptionToken extends ResumptionToken
 
 	/**
 	 * Default constructor.
-	 * Builds a GeonetworkResumptionToken.
+	 * Builds a GeonetworkResumptionToken positioned before the first record
+	 * if the request has no resumption token.
 	 * @param req
 	 * @throws BadResumptionTokenException
 	 */
@@ -75,16 +77,12 @@ public class GeonetworkResumptionToken extends ResumptionToken
 		if (strToken==null) {
 
 			if (req.getFrom()!= null)
-				from   = req.getFrom().toString();
+				from   = toString(req.getFrom());
 			if (req.getUntil()!= null)
-				until  = req.getUntil().toString();
+				until  = toString(req.getUntil());
 			if (req.getSet()!= null)
 				set    = req.getSet();
 			prefix = req.getMetadataPrefix();
-
-
-			randomid = generateRandomString();
-
 		}
 		else {
 
@@ -92,28 +90,6 @@ public class GeonetworkResumptionToken extends ResumptionToken
 		}
 	}
 
-	/**
-	 * Default constructor.
-	 * Builds a GeonetworkResumptionToken.
-	 * @param req
-	 * @param res
-	 * @throws BadResumptionTokenException
-	 */
-	public GeonetworkResumptionToken(TokenListRequest req, SearchResult res) throws BadResumptionTokenException {
-		this(req);
-		this.res=res;
-	}
-
-	public static String buildKey(TokenListRequest req)  throws BadResumptionTokenException {
-		GeonetworkResumptionToken temp = new GeonetworkResumptionToken(req);
-		return temp.getKey();
-	}
-
-	public static int getPos(TokenListRequest req) throws BadResumptionTokenException {
-		GeonetworkResumptionToken temp = new GeonetworkResumptionToken(req);
-		return temp.getPos();
-	}
-
 	//---------------------------------------------------------------------------
 	//---
 	//--- API methods
@@ -123,46 +99,45 @@ public class GeonetworkResumptionToken extends ResumptionToken
 	public String getToken() {
 		if (isReset)
 			return ""; // we are at the last chunk
-		return getKey() + SEPARATOR + pos;
+		return set + SEPARATOR + prefix + SEPARATOR + from + SEPARATOR + until
+				+ SEPARATOR + changeDate + SEPARATOR + id + SEPARATOR + pos;
 	}
 
 	public boolean isTokenEmpty() {
 		return isReset;
 	}
 
+	/** Number of records listed before the next page */
+
 	public int getPos() {
 		return pos;
 	}
 
-	public String getKey() {
-		return set + SEPARATOR + prefix + SEPARATOR + from + SEPARATOR + until
-				+ SEPARATOR + randomid;
-	}
+	public String getSet()    { return set;    }
+	public String getPrefix() { return prefix; }
+	public String getFrom()   { return from;   }
+	public String getUntil()  { return until;  }
 
-	public SearchResult getRes() {
-		return res;
-	}
+	/** Change date of the last record returned, empty before the first page */
 
-	public void setRes(SearchResult res) {
-		this.res = res;
-	}
+	public String getChangeDate() { return changeDate; }
 
-	public void setPos(int pos) {
-		this.pos = pos;
-	}
+	/** Id of the last record returned, empty before the first page */
 
+	public String getId() { return id; }
 
 	public void reset() {
-		isReset=true;
+		cursor  = pos;
+		isReset = true;
 	}
 	
-	public void setupToken(int newpos) {
-		if (newpos < res.getIds().size()) // update token so that it refers to the next chunk
-			setPos(newpos);
-		else 
-		{
-			reset(); 	// reset token to indicate last chunk
-		}
+	/** Moves the token after the last record of a page */
+
+	public void setupToken(String lastChangeDate, String lastId, int newpos) {
+		cursor     = pos;
+		changeDate = lastChangeDate;
+		id         = lastId;
+		pos        = newpos;
 	}
 	
 	public Element toXml()
@@ -171,9 +146,6 @@ public class GeonetworkResumptionToken extends ResumptionToken
 
 		root.setText(getToken());
 
-		if (getExpirDate() != null)
-			root.setAttribute("expirationDate", getExpirDate().toString());
-
 		if (listSize != null)
 			root.setAttribute("completeListSize", listSize.toString());
 
@@ -209,36 +181,37 @@ public class GeonetworkResumptionToken extends ResumptionToken
         	throw new RuntimeException(e);
         }
 
-		String expDt = rt.getAttributeValue("expirationDate");
 		String listSz= rt.getAttributeValue("completeListSize");
 		String curs  = rt.getAttributeValue("cursor");
 
-		setExpirDate((expDt  == null) ? null : new ISODate(expDt));
 		listSize  = (listSz == null) ? null : Integer.valueOf(listSz);
 		cursor    = (curs   == null) ? null : Integer.valueOf(curs);
 	}
 
 	private void parseToken(String strToken) throws BadResumptionTokenException {
 
-		String[] temp = strToken.split(SEPARATOR);
+		String[] temp = strToken.split(SEPARATOR, -1);
 
-		if (temp.length != 6)
+		if (temp.length != 7)
 			throw new BadResumptionTokenException("unknown resumptionToken format: "+strToken);
 
 		set = temp[0];
 		prefix = temp[1];
 		from =  temp[2] ;
 		until = temp[3] ;
-		randomid = temp[4];
+		changeDate = temp[4];
+		id = temp[5];
 
-		pos = Integer.parseInt( temp[5] );
+		try {
+			pos = Integer.parseInt( temp[6] );
+		} catch (NumberFormatException e) {
+			throw new BadResumptionTokenException("unknown resumptionToken format: "+strToken);
+		}
 	}
-	  private SecureRandom random = new SecureRandom();
-
-    public String generateRandomString() {
-        return new BigInteger(130, random).toString(36);
-    }
 
+	private static String toString(ISODate date) {
+		return date.isShort ? date.getDate() : date.toString();
+	}
 }
 
 //=============================================================================
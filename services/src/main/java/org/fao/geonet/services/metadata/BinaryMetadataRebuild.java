@@ -0,0 +1,85 @@
+//=============================================================================
+//===	Copyright (C) 2001-2007 Food and Agriculture Organization of the
+//===	United Nations (FAO-UN), United Nations World Food Programme (WFP)
+//===	and United Nations Environment Programme (UNEP)
+//===
+//===	This program is free software; you can redistribute it and/or modify
+//===	it under the terms of the GNU General Public License as published by
+//===	the Free Software Foundation; either version 2 of the License, or (at
+//===	your option) any later version.
+//===
+//===	This program is distributed in the hope that it will be useful, but
+//===	WITHOUT ANY WARRANTY; without even the implied warranty of
+//===	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+//===	General Public License for more details.
+//===
+//===	You should have received a copy of the GNU General Public License
+//===	along with this program; if not, write to the Free Software
+//===	Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301, USA
+//===
+//===	Contact: Jeroen Ticheler - FAO - Viale delle Terme di Caracalla 2,
+//===	Rome - Italy. email: geonetwork@osgeo.org
+//==============================================================================
+
+package org.fao.geonet.services.metadata;
+
+import jeeves.constants.Jeeves;
+import jeeves.interfaces.Service;
+import jeeves.resources.dbms.Dbms;
+import jeeves.server.ServiceConfig;
+import jeeves.server.context.ServiceContext;
+import jeeves.utils.Log;
+import org.fao.geonet.GeonetContext;
+import org.fao.geonet.constants.Geonet;
+import org.fao.geonet.kernel.BinaryMetadataStore;
+import org.jdom.Element;
+import org.springframework.beans.factory.NoSuchBeanDefinitionException;
+
+//=============================================================================
+
+/** Writes again the compact binary form of all the metadata records
+  */
+
+public class BinaryMetadataRebuild implements Service
+{
+	//--------------------------------------------------------------------------
+	//---
+	//--- Init
+	//---
+	//--------------------------------------------------------------------------
+
+	public void init(String appPath, ServiceConfig config) throws Exception {}
+
+	//--------------------------------------------------------------------------
+	//---
+	//--- Service
+	//---
+	//--------------------------------------------------------------------------
+
+	public Element exec(Element params, ServiceContext context) throws Exception
+	{
+		GeonetContext gc = (GeonetContext) context.getHandlerContext(Geonet.CONTEXT_NAME);
+
+		Element elResp = new Element(Jeeves.Elem.RESPONSE);
+		BinaryMetadataStore store;
+		try {
+			store = gc.getBean(BinaryMetadataStore.class);
+		} catch (NoSuchBeanDefinitionException e) {
+			// binaryMetadataStore is not enabled in config.xml
+			Log.debug(Geonet.DATA_MANAGER, "No binary metadata store found - binaryMetadataStore is not enabled");
+			elResp.addContent(new Element("status").setText("false"));
+			return elResp;
+		}
+
+		Dbms dbms = (Dbms) context.getResourceManager().open(Geonet.Res.MAIN_DB);
+		int count = store.rebuild(dbms);
+
+		elResp.addContent(new Element("status").setText("true"));
+		elResp.addContent(new Element("count").setText(Integer.toString(count)));
+
+		return elResp;
+	}
+}
+
+//=============================================================================
+
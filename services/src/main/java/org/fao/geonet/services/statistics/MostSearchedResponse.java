@@ -5,7 +5,8 @@ import jeeves.resources.dbms.Dbms;
 import org.jdom.Element;
 
 import java.sql.SQLException;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * @author heikki doeleman
@@ -21,19 +22,19 @@ public class MostSearchedResponse {
      * @throws java.sql.SQLException
      */
     public Element createResponse(int maxHits, Dbms dbms, String query) throws SQLException {
-        Element response = null;
         if (maxHits < 1) {
-            response = dbms.select(query);
-        } else {
-            @SuppressWarnings("unchecked")
-            List<Element> resultSet = dbms.select(query).getChildren();
-            int max = maxHits < resultSet.size() ? maxHits : resultSet.size() ;
-            response = new Element(Jeeves.Elem.RESPONSE);
-            for (int i = 0; i < max; i++) {
-                Element el = (Element)resultSet.get(i);
-                response.addContent((Element)el.clone());
-            }
+            return dbms.select(query);
         }
+        // only the first rows are read
+        final Element response = new Element(Jeeves.Elem.RESPONSE);
+        final int max = maxHits;
+        final Map<String, String> formats = new HashMap<String, String>();
+        dbms.selectRows(query, max, new Dbms.RowHandler() {
+            public boolean handle(Dbms.Row row) throws SQLException {
+                response.addContent(row.toRecord(formats));
+                return response.getContentSize() < max;
+            }
+        });
         //System.out.println("response: " + Xml.getString(response));
         return response;
 
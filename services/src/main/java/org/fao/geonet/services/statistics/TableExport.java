@@ -104,6 +104,8 @@ public class TableExport extends NotInReadOnlyModeService {
         BufferedWriter out = null;
         try {
             stmt = con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            // without a fetch size some drivers (eg. postgres) still read the whole table
+            stmt.setFetchSize(dbms.getFetchSize());
             rs = stmt.executeQuery(query);
             fileOutputStream = new FileOutputStream(tableDumpFile);
             out = new BufferedWriter(new OutputStreamWriter(fileOutputStream, Jeeves.ENCODING));
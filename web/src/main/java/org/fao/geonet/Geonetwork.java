@@ -31,8 +31,10 @@ import java.net.URI;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -57,18 +59,24 @@ import jeeves.utils.Xml;
 import jeeves.utils.XmlResolver;
 import jeeves.xlink.Processor;
 
+import de.fzi.dbs.xml.transform.CachingTransformerFactory;
+
 import org.fao.geonet.constants.Geonet;
 import org.fao.geonet.csw.common.Csw;
 import org.fao.geonet.kernel.AccessManager;
+import org.fao.geonet.kernel.BinaryMetadataStore;
 import org.fao.geonet.kernel.DataManager;
 import org.fao.geonet.kernel.DataManagerParameter;
+import org.fao.geonet.kernel.ParsedMetadataCache;
 import org.fao.geonet.kernel.SchemaManager;
+import org.fao.geonet.kernel.SchematronExecutionService;
 import org.fao.geonet.kernel.SvnManager;
 import org.fao.geonet.kernel.ThesaurusManager;
 import org.fao.geonet.kernel.XmlSerializer;
 import org.fao.geonet.kernel.XmlSerializerDb;
 import org.fao.geonet.kernel.XmlSerializerSvn;
 import org.fao.geonet.kernel.csw.CatalogConfiguration;
+import org.fao.geonet.kernel.csw.CswRecordCache;
 import org.fao.geonet.kernel.csw.CswHarvesterResponseExecutionService;
 import org.fao.geonet.kernel.harvest.HarvestManager;
 import org.fao.geonet.kernel.metadata.StatusActions;
@@ -290,6 +298,7 @@ public class Geonetwork implements ApplicationHandler {
 		logger.info("			- Schema plugins directory: "+schemaPluginsDir);
 		logger.info("			- Schema Catalog File     : "+schemaCatalogueFile);
 		SchemaManager schemaMan = SchemaManager.getInstance(path, Resources.locateResourcesDir(context), schemaCatalogueFile, schemaPluginsDir, context.getLanguage(), handlerConfig.getMandatoryValue(Geonet.Config.PREFERRED_SCHEMA), createOrUpdateSchemaCatalog);
+		Xml.precompileStylesheets(getSchemaStylesheets(schemaMan));
 
 		//------------------------------------------------------------------------
 		//--- initialize search and editing
@@ -327,6 +336,14 @@ public class Geonetwork implements ApplicationHandler {
 			logger.error ("Invalid config parameter: maximum number of writes to spatial index in a transaction (maxWritesInTransaction), Using "+maxWritesInTransaction+" instead.");
 			nfe.printStackTrace();
 		}
+
+		long queryResultCacheSize = 32;
+		try {
+			queryResultCacheSize = Long.parseLong(handlerConfig.getValue(Geonet.Config.QUERY_RESULT_CACHE_SIZE, "32"));
+		} catch (NumberFormatException nfe) {
+			logger.error("Invalid config parameter: queryResultCacheSize, using "+queryResultCacheSize+" instead.");
+		}
+		logger.info("  - Query result cache size: " + queryResultCacheSize + "MB");
 	
 		String htmlCacheDir = handlerConfig
 				.getMandatoryValue(Geonet.Config.HTMLCACHE_DIR);
@@ -334,7 +351,7 @@ public class Geonetwork implements ApplicationHandler {
 		SettingInfo settingInfo = new SettingInfo(settingMan);
 		searchMan = new SearchManager(path, luceneDir, htmlCacheDir, thesauriDir, summaryConfigXmlFile, logAsynch,
 				logSpatialObject, luceneTermsToExclude, dataStore, 
-				maxWritesInTransaction, settingInfo, 
+				maxWritesInTransaction, queryResultCacheSize * 1024 * 1024, settingInfo, 
 				schemaMan, servletContext, _applicationContext);
 		
 		 
@@ -365,6 +382,24 @@ public class Geonetwork implements ApplicationHandler {
 		} else {
 			xmlSerializer = new XmlSerializerDb(settingMan);
 		}
+
+		long parsedMetadataCacheSize = 0;
+		try {
+			parsedMetadataCacheSize = Long.parseLong(handlerConfig.getValue(Geonet.Config.PARSED_METADATA_CACHE_SIZE, "0"));
+		} catch (NumberFormatException nfe) {
+			logger.error("Invalid config parameter: parsedMetadataCacheSize, using "+parsedMetadataCacheSize+" instead.");
+		}
+		logger.info("  - Parsed metadata cache size: " + parsedMetadataCacheSize + "MB");
+		if (parsedMetadataCacheSize > 0) {
+			xmlSerializer.setParsedMetadataCache(new ParsedMetadataCache(parsedMetadataCacheSize * 1024 * 1024));
+		}
+
+		BinaryMetadataStore binaryMetadataStore = null;
+		if ("true".equals(handlerConfig.getValue(Geonet.Config.BINARY_METADATA_STORE, "false"))) {
+			binaryMetadataStore = new BinaryMetadataStore(new File(systemDataDir, "metadata_binary"));
+			xmlSerializer.setBinaryMetadataStore(binaryMetadataStore);
+		}
+		logger.info("  - Binary metadata store: " + (binaryMetadataStore != null));
 		
 		DataManagerParameter dataManagerParameter = new DataManagerParameter();
 		dataManagerParameter.context = context;
@@ -379,6 +414,12 @@ public class Geonetwork implements ApplicationHandler {
 		dataManagerParameter.dataDir = dataDir;
 		dataManagerParameter.thesaurusDir = thesauriDir;
 		dataManagerParameter.appPath = path;
+		try {
+			dataManagerParameter.indexingFetchThreads = Integer.parseInt(handlerConfig.getValue(Geonet.Config.INDEXING_FETCH_THREADS, "1"));
+			dataManagerParameter.indexingQueueSize = Integer.parseInt(handlerConfig.getValue(Geonet.Config.INDEXING_QUEUE_SIZE, "1000"));
+		} catch (NumberFormatException nfe) {
+			logger.error("Invalid config parameter: indexingFetchThreads or indexingQueueSize, using defaults instead.");
+		}
 
 		DataManager dataMan = new DataManager(dataManagerParameter);
 
@@ -407,6 +448,19 @@ public class Geonetwork implements ApplicationHandler {
 
 		CatalogConfiguration.loadCatalogConfig(path, Csw.CONFIG_FILE);
 
+		long cswRecordCacheSize = 16;
+		long cswRecordCacheDiskSize = 0;
+		try {
+			cswRecordCacheSize = Long.parseLong(handlerConfig.getValue(Geonet.Config.CSW_RECORD_CACHE_SIZE, "16"));
+			cswRecordCacheDiskSize = Long.parseLong(handlerConfig.getValue(Geonet.Config.CSW_RECORD_CACHE_DISK_SIZE, "0"));
+		} catch (NumberFormatException nfe) {
+			logger.error("Invalid config parameter: cswRecordCacheSize or cswRecordCacheDiskSize, using "+cswRecordCacheSize+" and "+cswRecordCacheDiskSize+" instead.");
+		}
+		logger.info("  - CSW record cache size: " + cswRecordCacheSize + "MB, on disk: " + cswRecordCacheDiskSize + "MB");
+		CswRecordCache cswRecordCache = new CswRecordCache(cswRecordCacheSize * 1024 * 1024,
+				new File(htmlCacheDir, "csw"), cswRecordCacheDiskSize * 1024 * 1024);
+		xmlSerializer.addChangeListener(cswRecordCache);
+
 		//------------------------------------------------------------------------
 		//--- initialize catalogue services for the web
 
@@ -455,6 +509,10 @@ public class Geonetwork implements ApplicationHandler {
 		beanFactory.registerSingleton("svnManager", svnManager);
 		beanFactory.registerSingleton("xmlSerializer", xmlSerializer);
 		beanFactory.registerSingleton("harvestManager", harvestMan);
+		beanFactory.registerSingleton("cswRecordCache", cswRecordCache);
+		if (binaryMetadataStore != null) {
+			beanFactory.registerSingleton("binaryMetadataStore", binaryMetadataStore);
+		}
 
 
         // Creates a default site logo, only if the logo image doesn't exists
@@ -494,6 +552,34 @@ public class Geonetwork implements ApplicationHandler {
 		return gnContext;
 	}
 
+	/**
+	 * Returns the stylesheets of the schema plugins that are compiled at startup: the top level stylesheets of the
+	 * schema directories (index fields, uuid, thumbnails, fixed info...) and the schematron rules.
+	 */
+	private List<File> getSchemaStylesheets(SchemaManager schemaMan) {
+		List<File> styleSheets = new ArrayList<File>();
+		for (String schema : schemaMan.getSchemas()) {
+			File schemaDir = new File(schemaMan.getSchemaDir(schema));
+			File[] files = schemaDir.listFiles();
+			if (files != null) {
+				for (File file : files) {
+					if (file.isFile() && file.getName().endsWith(".xsl")) {
+						styleSheets.add(file);
+					}
+				}
+			}
+			String[] rules = schemaMan.getSchema(schema).getSchematronRules();
+			if (rules != null) {
+				for (String rule : rules) {
+					styleSheets.add(new File(new File(schemaDir, "schematron"), rule));
+				}
+			}
+		}
+		return styleSheets;
+	}
+
+	//---------------------------------------------------------------------------
+
     /**
      * Sets up a periodic check whether GeoNetwork can successfully write to the database. If it can't, GeoNetwork will
      * automatically switch to read-only mode.
@@ -953,6 +1039,21 @@ public class Geonetwork implements ApplicationHandler {
         logger.info("shutting down CSW HarvestResponse executionService");
         CswHarvesterResponseExecutionService.getExecutionService().shutdownNow();		
 
+        logger.info("shutting down xslt cache check");
+        CachingTransformerFactory.shutdown();
+
+        logger.info("shutting down schematron executionService");
+        ExecutorService schematronService = SchematronExecutionService.getExecutionService();
+        schematronService.shutdown();
+        try {
+            // let the validations in progress get the reports of the rule sets already queued
+            if (!schematronService.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warning("schematron executionService still running after 30 s");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
 		//------------------------------------------------------------------------
 		//--- end search
 		logger.info("  - search...");
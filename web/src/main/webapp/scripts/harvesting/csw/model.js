@@ -125,6 +125,8 @@ var updateTemp =
 '        <password>{PASSWORD}</password>'+
 '      </account>'+
 '      <rejectDuplicateResource>{REJECTDUPLICATERESOURCE}</rejectDuplicateResource>'+
+'      <fetchThreads>{FETCHTHREADS}</fetchThreads>'+
+'      <fullRecordsInSearch>{FULLRECORDSINSEARCH}</fullRecordsInSearch>'+
 
 '    </site>'+
     
@@ -59,6 +59,7 @@ function init()
 		{ id:'csw.username',    type:'length',   minSize :0,  maxSize :200 },
 		{ id:'csw.password',    type:'length',   minSize :0,  maxSize :200 },
 		{ id:'csw.hopCount',    type:'integer',   minSize :0,  maxSize :200 },
+		{ id:'csw.fetchThreads', type:'integer',  minValue:1,  maxValue:32 },
 	 	{ id:'csw.queryScope',    type:'length',   minSize :0,  maxSize :200 }
 	]);
 
@@ -73,6 +74,8 @@ function setEmpty()
 	this.setEmptyCommon();
 
     $('csw.rejectDuplicateResource').checked = false;
+    $('csw.fetchThreads').value = '4';
+    $('csw.fullRecordsInSearch').checked = false;
     
 	removeAllSearch();
 	
@@ -106,6 +109,8 @@ function setData(node)
     hvutil.setOption(site, 'rejectDuplicateResource', 'csw.rejectDuplicateResource');
     hvutil.setOption(site, 'hopCount', 'csw.hopCount');
     hvutil.setOption(site, 'queryScope', 'csw.queryScope');
+    hvutil.setOption(site, 'fetchThreads', 'csw.fetchThreads');
+    hvutil.setOption(site, 'fullRecordsInSearch', 'csw.fullRecordsInSearch');
     
 	//--- add search entries
 	
@@ -143,6 +148,8 @@ function getData()
 	data.REJECTDUPLICATERESOURCE = $('csw.rejectDuplicateResource').checked;
 	data.HOPCOUNT = $F('csw.hopCount');
 	data.QUERYSCOPE = $('csw.queryScope').checked;
+	data.FETCHTHREADS = $F('csw.fetchThreads');
+	data.FULLRECORDSINSEARCH = $('csw.fullRecordsInSearch').checked;
 	//--- retrieve search information
 	
 	var searchData = [];
@@ -204,6 +204,8 @@ var updateTemp =
 '      <every>{EVERY}</every>'+
 
 '      <validate>{VALIDATE}</validate>'+
+'      <incremental>{INCREMENTAL}</incremental>'+
+'      <searchThreads>{SEARCHTHREADS}</searchThreads>'+
 '    </options>'+
 
 '    <content>'+
@@ -69,7 +69,8 @@ function init()
 		{ id:'oai.url',         type:'length',   minSize :1,  maxSize :200 },
 		{ id:'oai.url',         type:'url' },
 		{ id:'oai.username',    type:'length',   minSize :0,  maxSize :200 },
-		{ id:'oai.password',    type:'length',   minSize :0,  maxSize :200 }
+		{ id:'oai.password',    type:'length',   minSize :0,  maxSize :200 },
+		{ id:'oai.searchThreads', type:'integer', minValue:1,  maxValue:32 }
 	]);
 
 	shower = new Shower('oai.useAccount', 'oai.account');
@@ -89,6 +90,8 @@ function setEmpty()
 	$('oai.url').value = '';
 	
 	$('wd.validate').checked = false;
+	$('oai.incremental').checked = false;
+	$('oai.searchThreads').value = '2';
 
 	var icons = $('oai.icon').options;
 	
@@ -117,6 +120,8 @@ function setData(node)
 	hvutil.setOption(site,    'url',      'oai.url');
 	hvutil.setOption(site,    'icon',     'oai.icon');
 	hvutil.setOption(options, 'validate', 'oai.validate');
+	hvutil.setOption(options, 'incremental',   'oai.incremental');
+	hvutil.setOption(options, 'searchThreads', 'oai.searchThreads');
 	
 	//--- add search entries
 	
@@ -150,6 +155,8 @@ function getData()
 	data.URL      = $F('oai.url');
 	data.ICON     = $F('oai.icon');
 	data.VALIDATE = $('oai.validate').checked;
+	data.INCREMENTAL   = $('oai.incremental').checked;
+	data.SEARCHTHREADS = $F('oai.searchThreads');
 	
 	//--- retrieve search information
 	
@@ -104,6 +104,17 @@
 				<td class="padded"><label for="csw.rejectDuplicateResource"><xsl:value-of select="/root/gui/harvesting/rejectDuplicateResource"/></label></td>
 				<td class="padded"><input id="csw.rejectDuplicateResource" type="checkbox" value=""/></td>
 			</tr>
+
+			<tr>
+				<td class="padded"><label for="csw.fetchThreads"><xsl:value-of select="/root/gui/harvesting/fetchThreads"/></label></td>
+				<td class="padded"><input id="csw.fetchThreads" class="content" type="text" value="4" size="3"
+					title="{/root/gui/harvesting/defaultvalue}4"/></td>
+			</tr>
+
+			<tr>
+				<td class="padded"><label for="csw.fullRecordsInSearch"><xsl:value-of select="/root/gui/harvesting/fullRecordsInSearch"/></label></td>
+				<td class="padded"><input id="csw.fullRecordsInSearch" type="checkbox" value=""/></td>
+			</tr>
 		</table>
 	</xsl:template>
 	
@@ -102,6 +102,19 @@
 		<xsl:call-template name="schedule-widget">
 			<xsl:with-param name="type">oai</xsl:with-param>
 		</xsl:call-template>
+
+		<table border="0">
+			<tr>
+				<td class="padded"><label for="oai.incremental"><xsl:value-of select="/root/gui/harvesting/incremental"/></label></td>
+				<td class="padded"><input id="oai.incremental" type="checkbox" value=""/></td>
+			</tr>
+
+			<tr>
+				<td class="padded"><label for="oai.searchThreads"><xsl:value-of select="/root/gui/harvesting/searchThreads"/></label></td>
+				<td class="padded"><input id="oai.searchThreads" class="content" type="text" value="2" size="3"
+					title="{/root/gui/harvesting/defaultvalue}2"/></td>
+			</tr>
+		</table>
 	</xsl:template>
 	
 	<!-- ============================================================================================= -->
@@ -16,6 +16,8 @@
 		<rejectDuplicateResource><xsl:value-of select="rejectDuplicateResource/value"/></rejectDuplicateResource>
 		<hopCount><xsl:value-of select="hopCount/value" /></hopCount>
 		<queryScope><xsl:value-of select="queryScope/value" /></queryScope>
+		<fetchThreads><xsl:value-of select="fetchThreads/value" /></fetchThreads>
+		<fullRecordsInSearch><xsl:value-of select="fullRecordsInSearch/value" /></fullRecordsInSearch>
 	</xsl:template>
 
 	<!-- ============================================================================================= -->
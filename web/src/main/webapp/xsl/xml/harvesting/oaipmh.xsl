@@ -19,6 +19,9 @@
 
 	<xsl:template match="*" mode="options">
 		<validate><xsl:value-of  select="validate/value" /></validate>
+		<incremental><xsl:value-of  select="incremental/value" /></incremental>
+		<searchThreads><xsl:value-of  select="searchThreads/value" /></searchThreads>
+		<checkpoint><xsl:value-of  select="checkpoint/value" /></checkpoint>
 	</xsl:template>
 
 	<!-- ============================================================================================= -->
@@ -26,12 +29,13 @@
 	<xsl:template match="*" mode="searches">
 		<searches>
 			<xsl:for-each select="children/search">
-				<search>
+				<search id="{@id}">
 					<from><xsl:value-of       select="children/from/value" /></from>
 					<until><xsl:value-of      select="children/until/value" /></until>
 					<set><xsl:value-of        select="children/set/value" /></set>
 					<prefix><xsl:value-of     select="children/prefix/value" /></prefix>
 					<stylesheet><xsl:value-of select="children/stylesheet/value" /></stylesheet>
+					<checkpoint><xsl:value-of select="children/checkpoint/value" /></checkpoint>
 				</search>
 			</xsl:for-each>
 		</searches>